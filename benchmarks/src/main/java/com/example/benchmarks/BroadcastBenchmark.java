@@ -0,0 +1,111 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.Communication;
+import com.example.common.messages.TextMessage;
+import com.example.common.messages.UserStatus;
+import com.example.common.messages.UserUpdateMessage;
+import com.example.common.users.User;
+import com.example.server.network.ClientSession;
+import com.example.server.network.Frame;
+import com.example.server.network.FrameSink;
+import com.example.server.network.Server;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost of one broadcast as the number of connected clients grows.
+ * Clients are in-memory sinks that only count bytes, so the score is the server-side cost
+ * of encoding and handing out frames, without any socket I/O.
+ * The perRecipientEncoding benchmark reproduces the previous behaviour of serializing
+ * the message once for every recipient.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+    // Number of connected clients
+    @Param({"10", "100", "1000", "10000"})
+    private int recipients;
+
+    private Server server; // Server the clients are registered with
+    private List<String> userIds; // The ids of the connected users
+    private Communication presenceUpdate; // Message broadcast to every client
+    private TextMessage textMessage; // Message fanned out to every client
+
+    /**
+     * Registers the in-memory clients directly, skipping the per-join announcements.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        server = new Server();
+        userIds = new ArrayList<>(recipients);
+        User sender = null;
+        for (int i = 0; i < recipients; i++) {
+            User user = new User("user-" + i);
+            userIds.add(user.getId());
+            if (sender == null) {
+                sender = user;
+            }
+            server.getSessions().add(new ClientSession(user, new CountingSink(), null));
+        }
+
+        presenceUpdate = new UserUpdateMessage(new User("newcomer"), UserStatus.ONLINE);
+        GroupChat chat = new GroupChat("benchmark");
+        chat.addParticipant(sender);
+        textMessage = new TextMessage(chat, sender, "The quick brown fox jumps over the lazy dog");
+    }
+
+    /**
+     * Stops the server's heartbeat scheduler.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.shutdown();
+    }
+
+    /**
+     * Broadcast through the server: the message is encoded once.
+     */
+    @Benchmark
+    public void broadcast() {
+        server.broadcast(presenceUpdate);
+    }
+
+    /**
+     * Fan-out of a text message to the members of a chat: the message is encoded once.
+     */
+    @Benchmark
+    public void fanOut() {
+        server.fanOut(userIds, textMessage);
+    }
+
+    /**
+     * Previous broadcast behaviour: the message is encoded again for every recipient.
+     */
+    @Benchmark
+    public void perRecipientEncoding() {
+        for (ClientSession session : server.getSessions().all()) {
+            session.send(Frame.of(presenceUpdate));
+        }
+    }
+
+    /**
+     * Client stand-in that only accounts for the bytes it is sent.
+     */
+    private static final class CountingSink implements FrameSink {
+        private long bytes; // Bytes received so far
+
+        @Override
+        public void send(Frame frame) {
+            bytes += frame.length();
+        }
+    }
+}
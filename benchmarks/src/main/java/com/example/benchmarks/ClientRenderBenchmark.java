@@ -0,0 +1,112 @@
+package com.example.benchmarks;
+
+import com.example.client.gui.Model;
+import com.example.client.gui.TranscriptModel;
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the client's CPU time per message in a burst of 5,000 messages a second, the burst
+ * being applied as the dispatcher does: the messages of each 16 ms tick are added to the chat's
+ * history, then the transcript is told about them and the 40 rows in view are read, as painting does.
+ * Every message is formatted once, by the shared formatter with its minute cache, when it first
+ * comes into view. The messages of a burst span one second across a minute boundary.
+ * The formatPerMessage benchmark reproduces the previous path, which created a DateTimeFormatter
+ * for every message in Controller.showMessage and formatted the message a second time in the model.
+ * Scores are per message; run with {@code -prof gc} to compare the bytes allocated per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientRenderBenchmark {
+    private static final int BURST = 5000; // Messages in a burst, sent within one second
+    private static final int PER_TICK = BURST / 60; // Messages applied in one tick of the dispatcher
+    private static final int VISIBLE_ROWS = 40; // Rows of the transcript in view
+    private static final String PATTERN = "EEEE, MMM dd yyyy HH:mm"; // Timestamp pattern of the transcript
+    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern(PATTERN); // Model's former formatter
+
+    private final User alice = new User("alice"); // Sender of every message
+    private final GroupChat chat = new GroupChat("Team"); // The chat the messages are sent to
+    private final LocalDateTime start = LocalDateTime.of(2024, 3, 5, 14, 6, 59, 500_000_000); // Time of the first message of a burst
+    private final TranscriptModel transcript = new TranscriptModel(); // Transcript the chat is shown in
+    private Model model; // Model the burst is applied to
+    private long nextId; // Id of the next message, unique within the model
+
+    /**
+     * Shows a fresh chat in the transcript before every burst, so that every burst fits in memory.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        model = new Model(alice);
+        model.addChat(chat);
+        model.setCurrentChat(chat);
+        transcript.show(model.getChatHistory(chat));
+    }
+
+    /**
+     * Creates a message of the burst, as the client decodes one and resolves its chat and sender.
+     *
+     * @param index The index of the message in the burst
+     * @return The message
+     */
+    private TextMessage message(int index) {
+        TextMessage message = new TextMessage("m" + nextId++, start.plusNanos(index * 200_000L), chat.getId(),
+                alice.getId(), "Are we still on for the review at three?");
+        message.setChat(chat);
+        message.setSender(alice);
+        return message;
+    }
+
+    /**
+     * Applies a burst a tick at a time, formatting each message once through the render cache.
+     *
+     * @return The length of the rows read, so that the work is not eliminated
+     */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long renderCached() {
+        long length = 0;
+        for (int i = 0; i < BURST; i++) {
+            model.addMessageToChat(message(i));
+            if ((i + 1) % PER_TICK == 0 || i == BURST - 1) {
+                transcript.appended();
+                for (int row = Math.max(0, transcript.getSize() - VISIBLE_ROWS); row < transcript.getSize(); row++) {
+                    length += transcript.getElementAt(row).length();
+                }
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Formats a burst as the client did before the render cache: a formatter created and the line
+     * formatted for every message, then the line formatted again for the history.
+     *
+     * @return The length of the lines formatted, so that the work is not eliminated
+     */
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long formatPerMessage() {
+        StringBuilder history = new StringBuilder();
+        long length = 0;
+        for (int i = 0; i < BURST; i++) {
+            TextMessage message = message(i);
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(PATTERN);
+            String shown = "[" + message.getTimestamp().format(formatter) + "] "
+                    + message.getSender().getUsername() + ": " + message.getContent() + "\n";
+            history.append("[").append(TIMESTAMP_FORMATTER.format(message.getTimestamp())).append("] ")
+                    .append(message.getSender().getUsername()).append(": ").append(message.getContent()).append("\n");
+            length += shown.length();
+        }
+        return length + history.length();
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.codec.FrameDecoder;
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.*;
+import com.example.common.users.User;
+import com.example.common.utils.MessageSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JSON and binary wire codecs for every message type.
+ * Scores are encode and decode throughput; the size of one encoded frame is printed when
+ * each trial starts ("bytes per message").
+ * A decoder is created per operation, as a connection does for its stream, so the score includes
+ * the decoder's setup, which is small next to decoding.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+    // Wire format under test
+    @Param({"JSON", "BINARY"})
+    private WireFormat format;
+
+    // Message type under test
+    @Param({"TEXT", "SYSTEM", "USER_UPDATE"})
+    private CommunicationType type;
+
+    private MessageCodec codec; // Codec of the format
+    private Communication message; // Message encoded by the encode benchmark
+    private byte[] frame; // Frame decoded by the decode benchmark
+
+    /**
+     * Builds a typical message of the type and encodes it once.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        codec = MessageSerializer.getCodec(format);
+        User alice = new User("alice");
+        message = switch (type) {
+            case TEXT -> new TextMessage(new GroupChat("Team"), alice, "Are we still on for the review at three?");
+            case SYSTEM -> new SystemMessage(SystemMessageType.HEARTBEAT, alice.getId());
+            case USER_UPDATE -> new UserUpdateMessage(alice, UserStatus.ONLINE);
+        };
+        frame = codec.encode(message);
+        System.out.printf("%n%s %s: %d bytes per message%n", format, type, frame.length);
+    }
+
+    /**
+     * Encodes the message into a frame.
+     *
+     * @return The frame, so that the work is not eliminated
+     */
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(message);
+    }
+
+    /**
+     * Decodes the frame back into a message.
+     *
+     * @param blackhole Consumes the decoded message
+     */
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        FrameDecoder decoder = codec.newDecoder();
+        blackhole.consume(decoder.decode(ByteBuffer.wrap(frame)));
+    }
+}
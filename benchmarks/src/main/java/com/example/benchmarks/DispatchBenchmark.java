@@ -0,0 +1,133 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.GroupChat;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.server.network.ClientConnection;
+import com.example.server.network.ClientSession;
+import com.example.server.network.Server;
+import com.example.server.network.ServerHandler;
+import com.example.server.processing.ServerMessageProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of dispatching one inbound message through ServerHandler.processMessage.
+ * The message is a heartbeat, whose handling allocates nothing, so the allocation rate reported by
+ * {@code -prof gc} (gc.alloc.rate.norm, bytes per operation) is that of the dispatch itself.
+ * The perMessageProcessor benchmark reproduces the previous factory, which created a new processor
+ * for every message; it skips the per-frame session refresh, which allocates nothing either.
+ * The textMessage benchmark dispatches a text message to a group chat of eight members, connected
+ * through in-memory sinks, so its score adds routing and encoding the message once to the dispatch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DispatchBenchmark {
+    private static final int CHAT_MEMBERS = 8; // Members of the chat the text message is sent to
+
+    private Server server; // Server the connection belongs to
+    private ServerSocket listener; // Local listener the connection is accepted from
+    private Socket clientSide; // The client's end of the connection
+    private ServerHandler handler; // Connection the messages are dispatched on
+    private Communication heartbeat; // Message dispatched by the heartbeat benchmarks
+    private Communication text; // Message dispatched by the text message benchmark
+
+    /**
+     * Opens a loopback connection and logs a user in on it.
+     *
+     * @throws IOException if the loopback connection cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new Server();
+        listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        clientSide = new Socket(listener.getInetAddress(), listener.getLocalPort());
+        handler = new ServerHandler(listener.accept(), server);
+
+        User user = new User("benchmark");
+        server.addClient(user, handler);
+        heartbeat = new SystemMessage(SystemMessageType.HEARTBEAT, user.getId());
+
+        GroupChat chat = new GroupChat("benchmark");
+        chat.addParticipant(user);
+        for (int i = 1; i < CHAT_MEMBERS; i++) {
+            User member = new User("member-" + i);
+            chat.addParticipant(member);
+            server.getSessions().add(new ClientSession(member, frame -> frame.length(WireFormat.BINARY), null));
+        }
+        server.getChats().register(ChatDescriptor.of(chat));
+        text = new TextMessage(chat, user, "Are we still on for the review at three?");
+    }
+
+    /**
+     * Closes the connection and stops the server's heartbeat scheduler.
+     *
+     * @throws IOException if closing the sockets fails
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        server.shutdown();
+        clientSide.close();
+        listener.close();
+    }
+
+    /**
+     * Dispatch through the shared processor tables.
+     */
+    @Benchmark
+    public void processMessage() {
+        handler.processMessage(heartbeat);
+    }
+
+    /**
+     * Dispatch of a text message, routed to the other members of its chat.
+     */
+    @Benchmark
+    public void textMessage() {
+        handler.processMessage(text);
+    }
+
+    /**
+     * Dispatch through a processor created for the message, as before.
+     */
+    @Benchmark
+    public void perMessageProcessor() {
+        LegacySystemProcessor processor = new LegacySystemProcessor();
+        processor.processMessage(heartbeat, server, handler);
+    }
+
+    /**
+     * Stand-in for the previous system message processor: no fields, and an if per system message type.
+     */
+    private static class LegacySystemProcessor extends ServerMessageProcessor {
+
+        /**
+         * Handles a heartbeat the way the previous processor did.
+         *
+         * @param message The communication message received
+         * @param server The server handling the message
+         * @param handler The connection the message was received on
+         */
+        @Override
+        public void processMessage(Communication message, Server server, ClientConnection handler) {
+            SystemMessage systemMessage = (SystemMessage) message;
+            if (systemMessage.getSystemType().equals(SystemMessageType.HEARTBEAT)) {
+                server.updateHeartbeat(systemMessage.getContent());
+            }
+        }
+    }
+}
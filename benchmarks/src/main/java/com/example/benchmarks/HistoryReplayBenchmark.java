@@ -0,0 +1,132 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.common.utils.MessageSerializer;
+import com.example.server.network.Frame;
+import com.example.server.storage.HistoryStore;
+import com.example.server.storage.MessageLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the server-side cost of answering one history request for a binary client.
+ * The objectPath benchmark reproduces the previous behaviour of decoding the stored messages into
+ * a HistoryPage and encoding it again; the rawPath benchmark sends the stored frames as they are.
+ * Both copy the finished frame into a direct buffer standing in for the socket, so the score is the
+ * work done before the kernel takes over. With the log source, pages come from completed segments,
+ * which are mapped; with the memory source, they come from the cached tail of the chat.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryReplayBenchmark {
+    private static final int MESSAGES = 20_000; // Messages in the chat
+    private static final long SEGMENT_BYTES = 1024 * 1024; // Segment size, so that most of the history is in completed segments
+
+    // Messages per page
+    @Param({"50", "200"})
+    private int pageSize;
+
+    // Where pages are read from: "memory" for the cached tail, "log" for the mapped segments
+    @Param({"memory", "log"})
+    private String source;
+
+    private final MessageCodec codec = MessageSerializer.getCodec(WireFormat.BINARY); // Codec of binary clients
+    private final ByteBuffer socket = ByteBuffer.allocateDirect(4 * 1024 * 1024); // Stands in for the socket send buffer
+    private Path directory; // Directory of the log
+    private MessageLog log; // Log holding the chat
+    private HistoryStore store; // Store answering the requests
+    private String chatId; // The chat whose history is read
+    private long cursor; // Cursor of the requested page
+
+    /**
+     * Fills a log with one chat's messages and picks the page to read.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history-replay-benchmark");
+        log = new MessageLog(directory, SEGMENT_BYTES, MessageLog.DEFAULT_SYNC_INTERVAL_MILLIS, MessageLog.DEFAULT_SYNC_EVERY_RECORDS);
+        boolean fromMemory = source.equals("memory");
+        store = new HistoryStore(log, fromMemory ? HistoryStore.DEFAULT_TAIL_SIZE : 0, HistoryStore.DEFAULT_CACHED_CHATS);
+
+        GroupChat chat = new GroupChat("benchmark");
+        User sender = new User("alice");
+        chatId = chat.getId();
+        long middle = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            long position = store.append(new TextMessage(chat, sender, "Message " + i + ": the quick brown fox jumps over the lazy dog"));
+            if (i == MESSAGES / 2) {
+                middle = position;
+            }
+        }
+        log.sync();
+        cursor = fromMemory ? Long.MAX_VALUE : middle;
+        System.out.printf("%n%d segments%n", log.getSegmentCount());
+    }
+
+    /**
+     * Closes the log and deletes its files.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        System.out.printf("%n%d pages from memory, %d from the log%n", store.getHitCount(), store.getMissCount());
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Decodes the page into messages and encodes it again, as every page was sent before.
+     *
+     * @return The bytes written, so that the work is not eliminated
+     * @throws IOException if the log cannot be read
+     */
+    @Benchmark
+    public int objectPath() throws IOException {
+        HistoryPage page = store.page(chatId, cursor, pageSize);
+        byte[] frame = codec.encode(SystemMessage.of(SystemMessageType.HISTORY_PAGE, page));
+        socket.clear();
+        socket.put(frame);
+        return socket.position();
+    }
+
+    /**
+     * Writes the stored frames behind a page head, without decoding them.
+     *
+     * @return The bytes written, so that the work is not eliminated
+     * @throws IOException if the log cannot be read
+     */
+    @Benchmark
+    public int rawPath() throws IOException {
+        Frame frame = Frame.historyPage(store.framePage(chatId, cursor, pageSize));
+        socket.clear();
+        for (ByteBuffer part : frame.buffers(WireFormat.BINARY)) {
+            socket.put(part);
+        }
+        return socket.position();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.server.storage.MessageLog;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures append throughput of the message log on local disk, with the default group-commit policy.
+ * Run with {@code -t N} to append from N threads at once. The log directory is created in the
+ * temporary directory and deleted after each trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageLogBenchmark {
+
+    // Characters of message content
+    @Param({"40", "400"})
+    private int contentLength;
+
+    private Path directory; // Directory of the log
+    private MessageLog log; // Log under test
+    private TextMessage message; // Message appended by every operation
+
+    /**
+     * Opens an empty log.
+     *
+     * @throws IOException if the log cannot be opened
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("message-log-benchmark");
+        log = MessageLog.withDefaults(directory);
+        message = new TextMessage(new GroupChat("benchmark"), new User("alice"), "x".repeat(contentLength));
+    }
+
+    /**
+     * Closes the log and deletes its files.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        System.out.printf("%n%d appends, %d syncs, %d segments%n", log.getAppendCount(), log.getSyncCount(), log.getSegmentCount());
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Appends the message.
+     *
+     * @return The position of the message, so that the work is not eliminated
+     * @throws IOException if the append fails
+     */
+    @Benchmark
+    public long append() throws IOException {
+        return log.append(message);
+    }
+}
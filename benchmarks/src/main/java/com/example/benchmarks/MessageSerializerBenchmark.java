@@ -0,0 +1,82 @@
+package com.example.benchmarks;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.*;
+import com.example.common.users.User;
+import com.example.common.utils.MessageSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures MessageSerializer.serialize and deserialize, the JSON path every JSON client and the
+ * server's JSON connections take, for each kind of message on the wire: text messages, heartbeats,
+ * presence updates, and system messages with a structured payload, a chat announcement and a page of
+ * 50 messages of history. Run with {@code -prof gc} to see the bytes allocated per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageSerializerBenchmark {
+
+    // Message under test
+    @Param({"TEXT", "HEARTBEAT", "USER_UPDATE", "CHAT_CREATED", "HISTORY_PAGE"})
+    private String kind;
+
+    private Communication message; // Message serialized by the serialize benchmark
+    private String json; // JSON parsed by the deserialize benchmark
+
+    /**
+     * Builds a typical message of the kind and serializes it once.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        User alice = new User("alice");
+        User bob = new User("bob");
+        GroupChat chat = new GroupChat("Team");
+        chat.addParticipant(alice);
+        chat.addParticipant(bob);
+        message = switch (kind) {
+            case "TEXT" -> new TextMessage(chat, alice, "Are we still on for the review at three?");
+            case "HEARTBEAT" -> new SystemMessage(SystemMessageType.HEARTBEAT, alice.getId());
+            case "USER_UPDATE" -> new UserUpdateMessage(alice, UserStatus.ONLINE);
+            case "CHAT_CREATED" -> SystemMessage.of(SystemMessageType.CHAT_CREATED, ChatDescriptor.of(chat));
+            case "HISTORY_PAGE" -> {
+                List<TextMessage> messages = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    messages.add(new TextMessage(chat, i % 2 == 0 ? alice : bob, "Message number " + i + " of the page"));
+                }
+                yield SystemMessage.of(SystemMessageType.HISTORY_PAGE, new HistoryPage(chat.getId(), messages, 4096));
+            }
+            default -> throw new IllegalArgumentException("Unknown message kind " + kind);
+        };
+        json = MessageSerializer.serialize(message);
+        System.out.printf("%n%s: %d characters of JSON%n", kind, json.length());
+    }
+
+    /**
+     * Serializes the message to JSON.
+     *
+     * @return The JSON, so that the work is not eliminated
+     */
+    @Benchmark
+    public String serialize() {
+        return MessageSerializer.serialize(message);
+    }
+
+    /**
+     * Parses the JSON back into a message.
+     *
+     * @return The message, so that the work is not eliminated
+     */
+    @Benchmark
+    public Communication deserialize() {
+        return MessageSerializer.deserialize(json);
+    }
+}
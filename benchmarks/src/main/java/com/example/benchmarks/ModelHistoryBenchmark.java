@@ -0,0 +1,122 @@
+package com.example.benchmarks;
+
+import com.example.client.gui.Model;
+import com.example.client.gui.TranscriptModel;
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how the client's chat history behaves as it grows: appending a live message with
+ * Model.addMessageToChat, putting a page of 50 older messages in front, opening the chat in the
+ * transcript, which formats only the rows in view, and exporting the whole history as text. The chat is filled with the given number of
+ * messages before every iteration, and what an iteration adds stays until the next one, so the
+ * scores are for a history at least that long.
+ * Run with {@code -prof gc}: the bytes allocated per operation show which operations copy the transcript.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelHistoryBenchmark {
+    private static final int PAGE_SIZE = 50; // Messages in a page of older history
+    private static final int VISIBLE_ROWS = 40; // Rows of the transcript in view
+
+    // Messages held by the chat
+    @Param({"1000", "10000", "100000"})
+    private int historySize;
+
+    private final User alice = new User("alice"); // Sender of every message
+    private final GroupChat chat = new GroupChat("Team"); // The chat the messages are added to
+    private final LocalDateTime timestamp = LocalDateTime.now(); // Timestamp of every message
+    private Model model; // Model under test
+    private final TranscriptModel transcript = new TranscriptModel(); // Transcript the chat is opened in
+    private long nextId; // Id of the next message, unique within the model
+
+    /**
+     * Fills a fresh model's chat with historySize messages.
+     */
+    @Setup(Level.Iteration)
+    public void setUp() {
+        model = new Model(alice);
+        model.addChat(chat);
+        nextId = 0;
+        for (int i = 0; i < historySize; i++) {
+            model.addMessageToChat(nextMessage());
+        }
+    }
+
+    /**
+     * Creates a message with an id the model has not seen.
+     *
+     * @return The message
+     */
+    private TextMessage nextMessage() {
+        TextMessage message = new TextMessage("m" + nextId++, timestamp, chat.getId(), alice.getId(),
+                "Are we still on for the review at three?");
+        message.setChat(chat);
+        message.setSender(alice);
+        return message;
+    }
+
+    /**
+     * Appends a live message to the chat.
+     *
+     * @return Whether the message was added, so that the work is not eliminated
+     */
+    @Benchmark
+    public boolean addMessageToChat() {
+        return model.addMessageToChat(nextMessage());
+    }
+
+    /**
+     * Puts a page of 50 older messages in front of the chat's history.
+     * The page is built by the operation, as the client decodes one, so the score includes creating
+     * its messages.
+     *
+     * @return The number of messages added, so that the work is not eliminated
+     */
+    @Benchmark
+    public int prependHistory() {
+        List<TextMessage> older = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            older.add(nextMessage());
+        }
+        return model.prependHistory(chat, new HistoryPage(chat.getId(), older, HistoryPage.NO_MORE));
+    }
+
+    /**
+     * Opens the chat in the transcript and formats the rows in view at its bottom, as the view
+     * does when the user switches to the chat.
+     *
+     * @return The length of the rows formatted, so that the work is not eliminated
+     */
+    @Benchmark
+    public int openTranscript() {
+        transcript.show(model.getChatHistory(chat));
+        int length = 0;
+        for (int i = Math.max(0, transcript.getSize() - VISIBLE_ROWS); i < transcript.getSize(); i++) {
+            length += transcript.getElementAt(i).length();
+        }
+        return length;
+    }
+
+    /**
+     * Exports the whole history of the chat as text, as the Get History button does.
+     *
+     * @return The history, so that the work is not eliminated
+     */
+    @Benchmark
+    public String getFormattedChatHistory() {
+        return model.getFormattedChatHistory(chat);
+    }
+}
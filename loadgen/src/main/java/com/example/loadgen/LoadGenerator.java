@@ -0,0 +1,312 @@
+package com.example.loadgen;
+
+import com.example.client.network.ChatConnection;
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.users.User;
+import com.example.common.utils.FlushCounters;
+import com.example.common.utils.LatencyHistogram;
+import com.example.loadgen.LoadOptions.ChatKind;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The LoadGenerator drives a chat server on localhost with many simulated users and reports
+ * send-to-receive latency percentiles, throughput and the server's CPU and heap.
+ * <p>
+ * A run logs the users in, creates a private chat between every user and the next and a group chat
+ * for every groupSize users, then has every user send messages at a fixed rate to chats picked by the
+ * general:private:group mix. After the warm-up, messages are counted for the measured duration.
+ * Unless {@code --connect} names a running server, a server is started in a JVM of its own.
+ */
+public class LoadGenerator {
+    private static final long PROGRESS_INTERVAL_MILLIS = 5000; // Time between progress lines
+    private static final long DRAIN_MILLIS = 2000; // Time allowed for the last messages to arrive
+    private static final long SETUP_TIMEOUT_MILLIS = 30_000; // Longest wait for another user to get all its chats
+
+    private final LoadOptions options; // Settings of the run
+    private final String host; // Host of the server
+    private final int port; // Port of the server
+    private final ServerMonitor monitor; // Reads the server's CPU and heap, or null
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2); // Flushes and heartbeats of every user
+    private final FlushCounters flushCounters = new FlushCounters(); // Messages per flush of every user
+    private final List<VirtualUser> users = new CopyOnWriteArrayList<>(); // The simulated users
+    private final LoadStats stats = new LoadStats(); // Figures of the run
+
+    /**
+     * Constructor for LoadGenerator.
+     *
+     * @param options The settings of the run
+     * @param host    Host of the server
+     * @param port    Port of the server
+     * @param monitor Reads the server's CPU and heap, or null
+     */
+    public LoadGenerator(LoadOptions options, String host, int port, ServerMonitor monitor) {
+        this.options = options;
+        this.host = host;
+        this.port = port;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Runs the load and prints the report.
+     *
+     * @throws IOException if the users cannot connect
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        // Logging in thousands of users takes longer than the server waits for a heartbeat
+        scheduler.scheduleAtFixedRate(() -> users.forEach(user -> user.getConnection().sendHeartbeatIfIdle()),
+                1, 1, TimeUnit.SECONDS);
+        connectUsers();
+        createChats();
+        long setupDone = System.nanoTime();
+        System.out.printf("%d users connected with %s and in their chats after %d ms%n",
+                users.size(), options.format().getName(), TimeUnit.NANOSECONDS.toMillis(setupDone - start));
+
+        long windowStart = setupDone + TimeUnit.SECONDS.toNanos(options.warmupSeconds());
+        long windowEnd = windowStart + TimeUnit.SECONDS.toNanos(options.durationSeconds());
+        stats.setWindow(windowStart, windowEnd);
+        List<Thread> senders = new ArrayList<>(users.size());
+        for (VirtualUser user : users) {
+            senders.add(Thread.ofVirtual().name("load-" + user.getUser().getUsername()).start(() -> user.run(windowEnd, users.size())));
+        }
+
+        ServerMonitor.Sample first = null;
+        ServerMonitor.Sample last = null;
+        long peakHeap = 0;
+        long nextProgress = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS);
+        while (System.nanoTime() < windowEnd) {
+            Thread.sleep(1000);
+            long now = System.nanoTime();
+            ServerMonitor.Sample sample = sample();
+            if (sample != null && stats.inWindow(now)) {
+                first = first == null ? sample : first;
+                last = sample;
+                peakHeap = Math.max(peakHeap, sample.heapUsed());
+            }
+            if (now >= nextProgress) {
+                nextProgress += TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL_MILLIS);
+                printProgress(now < windowStart ? "warm-up" : "measuring", sample);
+            }
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        Thread.sleep(DRAIN_MILLIS);
+
+        printReport(first, last, peakHeap);
+    }
+
+    /**
+     * Connects and logs in every user.
+     *
+     * @throws IOException if a user cannot connect
+     */
+    private void connectUsers() throws IOException {
+        for (int i = 0; i < options.users(); i++) {
+            User user = new User("load-" + i);
+            ChatConnection connection = ChatConnection.open(host, port, options.format(), scheduler, flushCounters);
+            VirtualUser virtualUser = new VirtualUser(user, connection, options, stats);
+            connection.start(virtualUser::receive, stats::disconnected);
+            connection.login(user);
+            users.add(virtualUser);
+        }
+    }
+
+    /**
+     * Creates a private chat between every user and the next and a group chat for every groupSize users,
+     * and waits until the server has announced all of them.
+     *
+     * @throws IOException if a request cannot be sent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private void createChats() throws IOException, InterruptedException {
+        int count = users.size();
+        for (int i = 0; i < (count == 2 ? 1 : count); i++) {
+            List<VirtualUser> members = List.of(users.get(i), users.get((i + 1) % count));
+            ChatDescriptor chat = members.get(0).createChat(ChatType.PRIVATE, members);
+            members.forEach(member -> member.addChat(chat));
+        }
+        for (int first = 0; first + 1 < count; first += options.groupSize()) {
+            List<VirtualUser> members = users.subList(first, Math.min(first + options.groupSize(), count));
+            ChatDescriptor chat = members.get(0).createChat(ChatType.GROUP, members);
+            members.forEach(member -> member.addChat(chat));
+        }
+
+        // Announcements queue behind the presence updates of every login, so only a stall counts as a failure
+        long deadline = System.currentTimeMillis() + SETUP_TIMEOUT_MILLIS;
+        long joined = 0;
+        while (joined < count) {
+            Thread.sleep(50);
+            if (stats.getDisconnects() > 0) {
+                // Usually slow consumers whose outbound queue overflowed with the presence updates of the logins
+                throw new IOException(stats.getDisconnects() + " users were disconnected while logging in; "
+                        + "try a larger outbound queue with --server-jvm-args=-Dchat.outbound.capacity=8192");
+            }
+            long nowJoined = users.stream().filter(VirtualUser::hasJoinedAll).count();
+            if (nowJoined > joined) {
+                joined = nowJoined;
+                deadline = System.currentTimeMillis() + SETUP_TIMEOUT_MILLIS;
+            } else if (System.currentTimeMillis() > deadline) {
+                throw new IOException("The server announced no more chats for " + SETUP_TIMEOUT_MILLIS + " ms; "
+                        + joined + " of " + count + " users are in all their chats");
+            }
+        }
+    }
+
+    /**
+     * Takes a sample of the server's figures, if it is monitored.
+     *
+     * @return The sample, or null
+     */
+    private ServerMonitor.Sample sample() {
+        if (monitor == null) {
+            return null;
+        }
+        try {
+            return monitor.sample();
+        } catch (IOException e) {
+            System.err.println("Error reading the server's figures: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Prints one progress line.
+     *
+     * @param phase  The phase of the run
+     * @param sample The latest sample of the server, or null
+     */
+    private void printProgress(String phase, ServerMonitor.Sample sample) {
+        LatencyHistogram.Snapshot latencies = stats.getLatencies().snapshot();
+        System.out.printf("[%s] sent %d, received %d, p99 %.2f ms%s%n", phase, stats.getSent(), stats.getReceived(),
+                latencies.getValueAtPercentile(99) / 1e6,
+                sample == null ? "" : String.format(", server heap %d MB", sample.heapUsed() >> 20));
+    }
+
+    /**
+     * Prints the report of the measured window.
+     *
+     * @param first    The first sample of the server in the window, or null
+     * @param last     The last sample of the server in the window, or null
+     * @param peakHeap The most heap the server used in the window
+     */
+    private void printReport(ServerMonitor.Sample first, ServerMonitor.Sample last, long peakHeap) {
+        double seconds = options.durationSeconds();
+        System.out.println();
+        System.out.printf("Load: %d users, %.1f msg/s each, %d byte payload, mix %d:%d:%d (general:private:group), groups of %d%n",
+                users.size(), options.rate(), options.payloadBytes(),
+                options.generalWeight(), options.privateWeight(), options.groupWeight(), options.groupSize());
+        System.out.printf("Sent %d messages (%.0f msg/s); received %d of %d deliveries (%.0f deliveries/s); %d send errors, %d disconnects%n",
+                stats.getSent(), stats.getSent() / seconds, stats.getReceived(), stats.getExpected(),
+                stats.getReceived() / seconds, stats.getErrors(), stats.getDisconnects());
+        System.out.printf("Client flushes: %.2f messages per flush%n", flushCounters.getFramesPerFlush());
+        System.out.println();
+        System.out.printf("%-10s %10s %9s %9s %9s %9s %9s %9s%n", "latency ms", "count", "mean", "p50", "p90", "p99", "p99.9", "max");
+        printLatencies("all", stats.getLatencies());
+        for (ChatKind kind : ChatKind.values()) {
+            printLatencies(kind.name().toLowerCase(), stats.getLatencies(kind));
+        }
+        if (first != null && last != null && last != first) {
+            System.out.println();
+            double cores = last.coresSince(first);
+            System.out.printf("Server: %s cores busy, heap %d MB used at peak, %d MB committed; %d GCs taking %d ms%n",
+                    cores < 0 ? "unknown" : String.format("%.2f", cores), peakHeap >> 20, last.heapCommitted() >> 20,
+                    last.gcCount() - first.gcCount(), last.gcMillis() - first.gcMillis());
+        }
+    }
+
+    /**
+     * Prints one row of latencies.
+     *
+     * @param label     The label of the row
+     * @param histogram The latencies, in nanoseconds
+     */
+    private static void printLatencies(String label, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        System.out.printf("%-10s %10d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n", label, snapshot.getCount(),
+                snapshot.getMean() / 1e6,
+                snapshot.getValueAtPercentile(50) / 1e6, snapshot.getValueAtPercentile(90) / 1e6,
+                snapshot.getValueAtPercentile(99) / 1e6, snapshot.getValueAtPercentile(99.9) / 1e6,
+                snapshot.getMax() / 1e6);
+    }
+
+    /**
+     * Logs every user out and closes the connections.
+     */
+    public void close() {
+        for (VirtualUser user : users) {
+            try {
+                user.getConnection().logout();
+            } catch (IOException e) {
+                // Closed by the server already
+            }
+            user.getConnection().close();
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args Options of the form --name=value; see LoadOptions.USAGE
+     * @throws Exception if the run fails
+     */
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        ServerProcess server = null;
+        String host = "localhost";
+        int port;
+        String jmx = options.jmx();
+        if (options.connect() == null) {
+            server = ServerProcess.start(options.transport(), options.serverJvmArgs());
+            port = server.getPort();
+            jmx = server.getJmxAddress();
+            System.out.println("Started a server (" + options.transport().name().toLowerCase() + " transport) on port " + port);
+        } else {
+            int separator = options.connect().lastIndexOf(':');
+            host = options.connect().substring(0, separator);
+            port = Integer.parseInt(options.connect().substring(separator + 1));
+        }
+
+        ServerMonitor monitor = null;
+        if (jmx != null) {
+            try {
+                monitor = ServerMonitor.connect(jmx);
+            } catch (IOException e) {
+                System.err.println("Server CPU and heap are not reported; cannot reach JMX at " + jmx + ": " + e.getMessage());
+            }
+        }
+
+        LoadGenerator generator = new LoadGenerator(options, host, port, monitor);
+        try {
+            generator.run();
+        } finally {
+            generator.close();
+            if (monitor != null) {
+                monitor.close();
+            }
+            if (server != null) {
+                server.stop();
+            }
+        }
+        System.exit(0); // The JMX client leaves threads behind
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.loadgen;
+
+import com.example.common.codec.WireFormat;
+import com.example.server.network.TransportMode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The settings of a load run, read from {@code --name=value} command-line options.
+ *
+ * @param users          Number of virtual users
+ * @param rate           Messages each user sends per second
+ * @param payloadBytes   Characters of content per message
+ * @param generalWeight  Share of messages sent to the general chat
+ * @param privateWeight  Share of messages sent to private chats
+ * @param groupWeight    Share of messages sent to group chats
+ * @param groupSize      Members of each group chat
+ * @param warmupSeconds  Seconds of load before measuring starts
+ * @param durationSeconds Seconds of load measured
+ * @param format         Wire format the users ask for
+ * @param transport      Transport of the spawned server
+ * @param connect        Host and port of a running server, or null to spawn one
+ * @param jmx            Host and port of the JMX agent of a running server, or null
+ * @param serverJvmArgs  Extra JVM options of the spawned server, space separated
+ */
+public record LoadOptions(int users, double rate, int payloadBytes,
+                          int generalWeight, int privateWeight, int groupWeight, int groupSize,
+                          int warmupSeconds, int durationSeconds, WireFormat format, TransportMode transport,
+                          String connect, String jmx, String serverJvmArgs) {
+
+    /**
+     * The usage text printed for unknown options.
+     */
+    static final String USAGE = """
+            Options (all optional):
+              --users=200            virtual users
+              --rate=1               messages per second per user
+              --payload=100          characters of content per message
+              --mix=10:60:30         weights of general:private:group messages
+              --group-size=8         members of each group chat
+              --warmup=10            seconds of load before measuring
+              --duration=30          seconds of load measured
+              --format=binary        wire format: binary or json
+              --transport=nio        transport of the spawned server: blocking, nio or virtual
+              --server-jvm-args=...  extra JVM options of the spawned server, e.g. "-Xmx512m"
+              --connect=host:port    load a running server instead of spawning one
+              --jmx=host:port        JMX agent of the running server, for its CPU and heap
+            """;
+
+    /**
+     * Reads the options, using the defaults for those not given.
+     *
+     * @param args The command-line arguments
+     * @return The options
+     * @throws IllegalArgumentException if an option is unknown or malformed
+     */
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Malformed option " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        String[] mix = values.getOrDefault("mix", "10:60:30").split(":");
+        if (mix.length != 3) {
+            throw new IllegalArgumentException("The mix needs three weights, general:private:group");
+        }
+        WireFormat format = WireFormat.fromName(values.getOrDefault("format", "binary"));
+        if (format == null) {
+            throw new IllegalArgumentException("Unknown format " + values.get("format"));
+        }
+        LoadOptions options = new LoadOptions(
+                Integer.parseInt(values.getOrDefault("users", "200")),
+                Double.parseDouble(values.getOrDefault("rate", "1")),
+                Integer.parseInt(values.getOrDefault("payload", "100")),
+                Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]),
+                Integer.parseInt(values.getOrDefault("group-size", "8")),
+                Integer.parseInt(values.getOrDefault("warmup", "10")),
+                Integer.parseInt(values.getOrDefault("duration", "30")),
+                format,
+                TransportMode.valueOf(values.getOrDefault("transport", "nio").toUpperCase()),
+                values.get("connect"),
+                values.get("jmx"),
+                values.getOrDefault("server-jvm-args", ""));
+
+        values.keySet().removeAll(List.of("users", "rate", "payload", "mix", "group-size", "warmup",
+                "duration", "format", "transport", "connect", "jmx", "server-jvm-args"));
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (options.users < 2 || options.rate <= 0 || options.groupSize < 2
+                || options.generalWeight + options.privateWeight + options.groupWeight <= 0) {
+            throw new IllegalArgumentException("Need at least 2 users, a positive rate, groups of 2 or more and a non-zero mix");
+        }
+        return options;
+    }
+
+    /**
+     * Picks the kind of chat the next message is sent to, by the weights of the mix.
+     *
+     * @param random The random source of the sending user
+     * @return The kind of chat
+     */
+    public ChatKind pick(Random random) {
+        int roll = random.nextInt(generalWeight + privateWeight + groupWeight);
+        if (roll < generalWeight) {
+            return ChatKind.GENERAL;
+        }
+        return roll < generalWeight + privateWeight ? ChatKind.PRIVATE : ChatKind.GROUP;
+    }
+
+    /**
+     * The kinds of chat messages are sent to.
+     */
+    public enum ChatKind {
+        GENERAL, // The general chat, delivered to every user
+        PRIVATE, // A chat between two users
+        GROUP // A group chat of groupSize users
+    }
+}
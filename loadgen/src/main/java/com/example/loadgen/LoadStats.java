@@ -0,0 +1,164 @@
+package com.example.loadgen;
+
+import com.example.common.utils.LatencyHistogram;
+import com.example.loadgen.LoadOptions.ChatKind;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The figures of a load run, shared by all virtual users.
+ * Every message carries the time it was due to be sent, so its latency is measured from that time
+ * to the moment each recipient reads it; a sender that falls behind its schedule adds its delay
+ * instead of hiding it. Only messages due inside the measured window are counted.
+ */
+public class LoadStats {
+    private volatile long windowStart = Long.MAX_VALUE; // Send time, in System.nanoTime, from which messages are counted
+    private volatile long windowEnd = Long.MAX_VALUE; // Send time before which messages are counted
+    private final LatencyHistogram all = new LatencyHistogram(); // Latencies of every delivery
+    private final Map<ChatKind, LatencyHistogram> byKind = new EnumMap<>(ChatKind.class); // Latencies by kind of chat
+    private final LongAdder sent = new LongAdder(); // Messages sent in the window
+    private final LongAdder expected = new LongAdder(); // Deliveries the messages sent in the window should cause
+    private final LongAdder received = new LongAdder(); // Deliveries of messages sent in the window
+    private final LongAdder errors = new LongAdder(); // Messages that could not be sent
+    private final LongAdder disconnects = new LongAdder(); // Users whose connection closed during the run
+
+    /**
+     * Constructor for LoadStats.
+     * Nothing is counted until the window is set.
+     */
+    public LoadStats() {
+        for (ChatKind kind : ChatKind.values()) {
+            byKind.put(kind, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Sets the window of send times whose messages are counted.
+     *
+     * @param start Send time, in System.nanoTime, from which messages are counted
+     * @param end   Send time before which messages are counted
+     */
+    public void setWindow(long start, long end) {
+        windowEnd = end;
+        windowStart = start;
+    }
+
+    /**
+     * Checks if a message due at the given time is counted.
+     *
+     * @param dueNanos The time the message was due to be sent
+     * @return True if the time is inside the measured window
+     */
+    public boolean inWindow(long dueNanos) {
+        return dueNanos >= windowStart && dueNanos < windowEnd;
+    }
+
+    /**
+     * Records a message sent.
+     *
+     * @param dueNanos   The time the message was due to be sent
+     * @param recipients The number of users the server should deliver it to
+     */
+    public void sent(long dueNanos, int recipients) {
+        if (inWindow(dueNanos)) {
+            sent.increment();
+            expected.add(recipients);
+        }
+    }
+
+    /**
+     * Records a delivery.
+     *
+     * @param kind         The kind of chat the message was sent to
+     * @param dueNanos     The time the message was due to be sent
+     * @param arrivedNanos The time the message was read
+     */
+    public void received(ChatKind kind, long dueNanos, long arrivedNanos) {
+        if (inWindow(dueNanos)) {
+            long latency = arrivedNanos - dueNanos;
+            all.record(latency);
+            byKind.get(kind).record(latency);
+            received.increment();
+        }
+    }
+
+    /**
+     * Records a message that could not be sent.
+     */
+    public void error() {
+        errors.increment();
+    }
+
+    /**
+     * Records a connection closed during the run.
+     */
+    public void disconnected() {
+        disconnects.increment();
+    }
+
+    /**
+     * Gets the latencies of every delivery.
+     *
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getLatencies() {
+        return all;
+    }
+
+    /**
+     * Gets the latencies of the deliveries in one kind of chat.
+     *
+     * @param kind The kind of chat
+     * @return The histogram, in nanoseconds
+     */
+    public LatencyHistogram getLatencies(ChatKind kind) {
+        return byKind.get(kind);
+    }
+
+    /**
+     * Gets the number of messages sent in the window.
+     *
+     * @return The sent count
+     */
+    public long getSent() {
+        return sent.sum();
+    }
+
+    /**
+     * Gets the number of deliveries the messages sent in the window should cause.
+     *
+     * @return The expected delivery count
+     */
+    public long getExpected() {
+        return expected.sum();
+    }
+
+    /**
+     * Gets the number of deliveries of messages sent in the window.
+     *
+     * @return The received count
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * Gets the number of messages that could not be sent.
+     *
+     * @return The error count
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Gets the number of connections closed during the run.
+     *
+     * @return The disconnect count
+     */
+    public long getDisconnects() {
+        return disconnects.sum();
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.loadgen;
+
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.List;
+
+/**
+ * The ServerMonitor class reads the CPU time, heap and garbage collections of the server JVM
+ * through its JMX agent. The load generator takes a sample every second and compares the samples
+ * taken at the ends of the measured window.
+ */
+public class ServerMonitor implements Closeable {
+    private static final long CONNECT_TIMEOUT_MILLIS = 10_000; // Longest wait for the JMX agent to come up
+
+    private final JMXConnector connector; // Connection to the JMX agent
+    private final MBeanServerConnection connection; // Beans of the server JVM
+    private final ObjectName operatingSystem; // Bean holding the process CPU time
+    private final MemoryMXBean memory; // Heap of the server JVM
+    private final List<GarbageCollectorMXBean> collectors; // Garbage collectors of the server JVM
+
+    /**
+     * Constructor for ServerMonitor.
+     *
+     * @param connector The connection to the JMX agent
+     * @throws IOException if the beans cannot be read
+     */
+    private ServerMonitor(JMXConnector connector) throws IOException {
+        this.connector = connector;
+        this.connection = connector.getMBeanServerConnection();
+        try {
+            this.operatingSystem = new ObjectName(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        this.memory = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.MEMORY_MXBEAN_NAME, MemoryMXBean.class);
+        this.collectors = ManagementFactory.getPlatformMXBeans(connection, GarbageCollectorMXBean.class);
+    }
+
+    /**
+     * Connects to a JMX agent, retrying while it is starting.
+     *
+     * @param address The host and port of the agent
+     * @return The monitor
+     * @throws IOException if the agent cannot be reached
+     */
+    public static ServerMonitor connect(String address) throws IOException {
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + address + "/jmxrmi");
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                return new ServerMonitor(JMXConnectorFactory.connect(url));
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the current figures of the server JVM.
+     *
+     * @return The sample
+     * @throws IOException if the agent cannot be reached
+     */
+    public Sample sample() throws IOException {
+        long cpuNanos;
+        try {
+            cpuNanos = (Long) connection.getAttribute(operatingSystem, "ProcessCpuTime");
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            cpuNanos = -1; // Not reported by this JVM
+        }
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            gcCount += Math.max(collector.getCollectionCount(), 0);
+            gcMillis += Math.max(collector.getCollectionTime(), 0);
+        }
+        return new Sample(System.nanoTime(), cpuNanos, heap.getUsed(), heap.getCommitted(), gcCount, gcMillis);
+    }
+
+    /**
+     * Closes the connection to the agent.
+     */
+    @Override
+    public void close() {
+        try {
+            connector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the JMX connection: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The figures of the server JVM at one moment.
+     *
+     * @param takenNanos    System.nanoTime of the load generator when the sample was taken
+     * @param cpuNanos      CPU time the server process has used, or -1 if unknown
+     * @param heapUsed      Bytes of heap in use
+     * @param heapCommitted Bytes of heap committed
+     * @param gcCount       Garbage collections so far
+     * @param gcMillis      Time spent in garbage collections so far
+     */
+    public record Sample(long takenNanos, long cpuNanos, long heapUsed, long heapCommitted, long gcCount, long gcMillis) {
+
+        /**
+         * Gets the average number of cores the server kept busy since an earlier sample.
+         *
+         * @param earlier The earlier sample
+         * @return The busy cores, or -1 if the CPU time is unknown
+         */
+        public double coresSince(Sample earlier) {
+            if (cpuNanos < 0 || earlier.cpuNanos < 0 || takenNanos == earlier.takenNanos) {
+                return -1;
+            }
+            return (double) (cpuNanos - earlier.cpuNanos) / (takenNanos - earlier.takenNanos);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.loadgen;
+
+import com.example.server.network.Server;
+import com.example.server.network.TransportMode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The ServerProcess class runs a chat server in a JVM of its own on localhost, so that its CPU time
+ * and heap are not mixed up with the load generator's. The server gets free ports for itself and its
+ * JMX agent and a temporary data directory, which is deleted when it stops. Its output goes to
+ * {@code server.log} in the data directory.
+ */
+public class ServerProcess {
+    private static final long START_TIMEOUT_MILLIS = 30_000; // Longest wait for the server to accept connections
+
+    private final Process process; // The server JVM
+    private final int port; // Port the server listens on
+    private final int jmxPort; // Port of the server's JMX agent
+    private final Path dataDirectory; // Directory of the server's log, inboxes and output
+
+    /**
+     * Constructor for ServerProcess.
+     *
+     * @param process       The server JVM
+     * @param port          Port the server listens on
+     * @param jmxPort       Port of the server's JMX agent
+     * @param dataDirectory Directory of the server's log, inboxes and output
+     */
+    private ServerProcess(Process process, int port, int jmxPort, Path dataDirectory) {
+        this.process = process;
+        this.port = port;
+        this.jmxPort = jmxPort;
+        this.dataDirectory = dataDirectory;
+    }
+
+    /**
+     * Starts a server with the classpath of this JVM and waits until it accepts connections.
+     *
+     * @param transport The transport of the server
+     * @param jvmArgs   Extra JVM options, space separated
+     * @return The running server
+     * @throws IOException if the server cannot be started
+     */
+    public static ServerProcess start(TransportMode transport, String jvmArgs) throws IOException {
+        int port = freePort();
+        int jmxPort = freePort();
+        Path dataDirectory = Files.createTempDirectory("chat-loadgen");
+
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        for (String arg : jvmArgs.trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.addAll(List.of(
+                "-cp", System.getProperty("java.class.path"),
+                "-Dchat.port=" + port,
+                "-Dchat.data.dir=" + dataDirectory,
+                "-Dcom.sun.management.jmxremote.port=" + jmxPort,
+                "-Dcom.sun.management.jmxremote.rmi.port=" + jmxPort,
+                "-Dcom.sun.management.jmxremote.host=127.0.0.1",
+                "-Dcom.sun.management.jmxremote.authenticate=false",
+                "-Dcom.sun.management.jmxremote.ssl=false",
+                Server.class.getName(),
+                transport.name().toLowerCase()));
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(dataDirectory.resolve("server.log").toFile())
+                .start();
+
+        ServerProcess server = new ServerProcess(process, port, jmxPort, dataDirectory);
+        server.awaitListening();
+        return server;
+    }
+
+    /**
+     * Waits until the server accepts connections.
+     *
+     * @throws IOException if the server exits or does not listen in time
+     */
+    private void awaitListening() throws IOException {
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("The server exited with status " + process.exitValue() + "; see " + dataDirectory.resolve("server.log"));
+            }
+            try (Socket probe = new Socket()) {
+                probe.connect(new InetSocketAddress("localhost", port), 500);
+                return;
+            } catch (IOException e) {
+                sleep(100); // Not listening yet
+            }
+        }
+        stop();
+        throw new IOException("The server did not listen on port " + port + " within " + START_TIMEOUT_MILLIS + " ms");
+    }
+
+    /**
+     * Stops the server, letting its shutdown hook run, and deletes its data directory.
+     */
+    public void stop() {
+        process.destroy();
+        try {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+        }
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error deleting " + dataDirectory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return The port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the address of the server's JMX agent.
+     *
+     * @return The host and port
+     */
+    public String getJmxAddress() {
+        return "127.0.0.1:" + jmxPort;
+    }
+
+    /**
+     * Finds a port nothing listens on.
+     *
+     * @return The port
+     * @throws IOException if no port can be bound
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Sleeps, keeping the interrupt status.
+     *
+     * @param millis The time to sleep
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
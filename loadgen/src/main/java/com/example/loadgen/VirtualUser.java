@@ -0,0 +1,222 @@
+package com.example.loadgen;
+
+import com.example.client.network.ChatConnection;
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.common.utils.IDGenerator;
+import com.example.loadgen.LoadOptions.ChatKind;
+import com.example.server.network.Server;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The VirtualUser class is one simulated user: a headless connection, the chats the user is a
+ * member of, and a schedule of messages sent to them at a fixed rate.
+ * <p>
+ * The content of every message starts with the kind of chat and the time the message was due,
+ * {@code <kind>:<nanos>:}, padded to the payload size, so that every recipient can tell its latency.
+ */
+public class VirtualUser {
+    private static final ChatKind[] KINDS = ChatKind.values(); // Kinds of chat by the digit that starts the content
+
+    private final User user; // The simulated user
+    private final ChatConnection connection; // Connection of the user
+    private final LoadOptions options; // Settings of the run
+    private final LoadStats stats; // Figures of the run
+    private final Random random = new Random(ThreadLocalRandom.current().nextLong()); // Picks the chats messages go to
+    private final List<Target> privateChats = new ArrayList<>(); // Private chats of the user
+    private final List<Target> groupChats = new ArrayList<>(); // Group chats of the user
+    private final Set<String> joined = ConcurrentHashMap.newKeySet(); // Chats the server has announced to the user
+    private volatile int generalMembers; // Users the general chat delivers to
+    private volatile boolean running = true; // Whether the user keeps sending
+
+    /**
+     * Constructor for VirtualUser.
+     *
+     * @param user       The simulated user
+     * @param connection The connection of the user, logged in already
+     * @param options    The settings of the run
+     * @param stats      The figures of the run
+     */
+    public VirtualUser(User user, ChatConnection connection, LoadOptions options, LoadStats stats) {
+        this.user = user;
+        this.connection = connection;
+        this.options = options;
+        this.stats = stats;
+    }
+
+    /**
+     * Handles a message the server sent to the user, on the connection's reading thread.
+     *
+     * @param message The message
+     */
+    public void receive(Communication message) {
+        long arrived = System.nanoTime();
+        if (message instanceof TextMessage text) {
+            String content = text.getContent();
+            int separator = content.indexOf(':', 2);
+            int kind = content.isEmpty() ? -1 : content.charAt(0) - '0';
+            if (separator < 0 || kind < 0 || kind >= KINDS.length) {
+                return; // Not sent by the load generator
+            }
+            stats.received(KINDS[kind], Long.parseLong(content, 2, separator, 10), arrived);
+        } else if (message instanceof SystemMessage system && system.getSystemType() == SystemMessageType.CHAT_CREATED) {
+            ChatDescriptor chat = system.getPayload(ChatDescriptor.class);
+            if (chat != null) {
+                joined.add(chat.getId());
+            }
+        }
+    }
+
+    /**
+     * Asks the server to create a chat with the user as one of its members.
+     *
+     * @param type    Whether the chat is private or a group
+     * @param members The members, including this user
+     * @return The chat, to be added to every member with {@link #addChat}
+     * @throws IOException if the request cannot be sent
+     */
+    public ChatDescriptor createChat(ChatType type, List<VirtualUser> members) throws IOException {
+        List<String> memberIds = new ArrayList<>(members.size());
+        for (VirtualUser member : members) {
+            memberIds.add(member.user.getId());
+        }
+        ChatDescriptor chat = new ChatDescriptor(IDGenerator.generateUUID(), type,
+                type == ChatType.GROUP ? "load-group-" + user.getUsername() : null, memberIds);
+        connection.send(SystemMessage.of(SystemMessageType.CHAT_CREATE, chat));
+        return chat;
+    }
+
+    /**
+     * Adds a chat the user is a member of to those it sends messages to.
+     *
+     * @param chat The chat
+     */
+    public void addChat(ChatDescriptor chat) {
+        Target target = new Target(chat.getId(), chat.getParticipantIds().size());
+        (chat.getType() == ChatType.GROUP ? groupChats : privateChats).add(target);
+    }
+
+    /**
+     * Checks if the server has announced every chat of the user.
+     *
+     * @return True once every chat has been announced
+     */
+    public boolean hasJoinedAll() {
+        for (Target target : privateChats) {
+            if (!joined.contains(target.id())) {
+                return false;
+            }
+        }
+        for (Target target : groupChats) {
+            if (!joined.contains(target.id())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends messages at the configured rate until stopped or the given time has passed.
+     * Runs on a thread of its own; the first message is due at a random point of the first interval,
+     * so that the users do not send in lockstep.
+     *
+     * @param untilNanos     The System.nanoTime at which to stop
+     * @param generalMembers The number of users the general chat delivers to
+     */
+    public void run(long untilNanos, int generalMembers) {
+        this.generalMembers = generalMembers;
+        long intervalNanos = (long) (1e9 / options.rate());
+        long due = System.nanoTime() + random.nextLong(intervalNanos);
+        String padding = "x".repeat(options.payloadBytes());
+        while (running && due < untilNanos) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            sendOne(due, padding);
+            due += intervalNanos; // Keep to the schedule even when behind, so that the delay shows in the latency
+        }
+    }
+
+    /**
+     * Sends one message to a chat picked by the mix.
+     *
+     * @param due     The time the message was due
+     * @param padding Characters the content is padded with
+     */
+    private void sendOne(long due, String padding) {
+        ChatKind kind = options.pick(random);
+        if (kind == ChatKind.GROUP && groupChats.isEmpty()) {
+            kind = ChatKind.PRIVATE; // Left over when the users did not divide into groups
+        }
+        String chatId;
+        int recipients;
+        if (kind == ChatKind.GENERAL) {
+            chatId = Server.GENERAL_CHAT_ID;
+            recipients = generalMembers;
+        } else {
+            List<Target> targets = kind == ChatKind.PRIVATE ? privateChats : groupChats;
+            Target target = targets.get(random.nextInt(targets.size()));
+            chatId = target.id();
+            recipients = target.members();
+        }
+
+        String prefix = kind.ordinal() + ":" + due + ":";
+        String content = prefix.length() >= padding.length() ? prefix : prefix + padding.substring(prefix.length());
+        try {
+            connection.send(new TextMessage(IDGenerator.generateUUID(), LocalDateTime.now(), chatId, user.getId(), content));
+            stats.sent(due, recipients);
+        } catch (IOException e) {
+            stats.error();
+        }
+    }
+
+    /**
+     * Stops sending.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Gets the simulated user.
+     *
+     * @return The user
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the connection of the user.
+     *
+     * @return The connection
+     */
+    public ChatConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * A chat messages are sent to.
+     *
+     * @param id      The id of the chat
+     * @param members The number of members the server delivers to
+     */
+    private record Target(String id, int members) {
+    }
+}
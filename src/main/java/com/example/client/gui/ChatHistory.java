@@ -0,0 +1,137 @@
+package com.example.client.gui;
+
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.HistoryRequest;
+import com.example.common.messages.TextMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The ChatHistory class holds the part of a chat's history the client has seen.
+ * Live messages are appended as they arrive and older pages, fetched from the server while the
+ * user scrolls back, are put in front of them. Only the pages the user asked for are kept.
+ * The messages are kept in a MessageStore, so the newest stay in memory and older ones go to the disk cache.
+ */
+public class ChatHistory {
+    private final MessageStore store; // The messages, oldest first
+    private long cursor = HistoryRequest.LATEST; // Cursor of the next older page to request
+    private boolean loading; // Whether a page has been requested and not received yet
+
+    /**
+     * Constructor for a history kept with the configured retention.
+     */
+    public ChatHistory() {
+        this(MessageStore.withDefaults());
+    }
+
+    /**
+     * Constructor for a history kept in a store.
+     *
+     * @param store The store of the messages
+     */
+    public ChatHistory(MessageStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Appends a message whose sender has been resolved, unless the message is already held.
+     *
+     * @param message The message
+     * @return True if the message was appended
+     */
+    boolean append(TextMessage message) {
+        return store.append(StoredMessage.of(message));
+    }
+
+    /**
+     * Puts older messages in front of those held, skipping those already held, and moves the cursor past them.
+     *
+     * @param older      The messages, oldest first, whose senders have been resolved
+     * @param nextCursor Cursor of the page before them, or HistoryPage.NO_MORE
+     * @return The messages added, oldest first
+     */
+    List<StoredMessage> prepend(List<TextMessage> older, long nextCursor) {
+        List<StoredMessage> records = new ArrayList<>(older.size());
+        for (TextMessage message : older) {
+            records.add(StoredMessage.of(message));
+        }
+        List<StoredMessage> added = store.prepend(records);
+        cursor = nextCursor;
+        loading = false;
+        return added;
+    }
+
+    /**
+     * Gets the number of messages held.
+     *
+     * @return The number of messages
+     */
+    public int size() { return store.size(); }
+
+    /**
+     * Gets a message by its position.
+     *
+     * @param index The position, 0 being the oldest message held
+     * @return The message
+     */
+    public StoredMessage get(int index) { return store.get(index); }
+
+    /**
+     * Gets the formatted line of a message by its position, as the transcript and the export show it.
+     * The message is formatted the first time its line is needed.
+     *
+     * @param index The position, 0 being the oldest message held
+     * @return The line, without a line break
+     */
+    public String getLine(int index) { return store.getLine(index); }
+
+    /**
+     * Gets the store of the messages.
+     *
+     * @return The store
+     */
+    public MessageStore getStore() { return store; }
+
+    /**
+     * Releases the messages held and deletes their disk cache.
+     */
+    void close() {
+        store.close();
+    }
+
+    /**
+     * Gets the cursor to request the next older page with.
+     *
+     * @return The cursor, or HistoryPage.NO_MORE if the whole history is held
+     */
+    public long getCursor() { return cursor; }
+
+    /**
+     * Checks if the server has older messages than those held.
+     *
+     * @return True if older pages can be requested
+     */
+    public boolean hasMore() { return cursor != HistoryPage.NO_MORE; }
+
+    /**
+     * Checks if any page has been requested yet.
+     *
+     * @return True once the first page has been requested
+     */
+    public boolean isStarted() { return loading || cursor != HistoryRequest.LATEST; }
+
+    /**
+     * Checks if a page has been requested and not received yet.
+     *
+     * @return True while a page is outstanding
+     */
+    public boolean isLoading() { return loading; }
+
+    /**
+     * Sets whether a page has been requested and not received yet.
+     *
+     * @param loading True when a page is requested
+     */
+    public void setLoading(boolean loading) { this.loading = loading; }
+}
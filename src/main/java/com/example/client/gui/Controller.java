@@ -2,6 +2,7 @@ package com.example.client.gui;
 
 import com.example.client.network.Client;
 import com.example.common.chats.Chat;
+import com.example.common.chats.ChatDescriptor;
 import com.example.common.chats.GroupChat;
 import com.example.common.chats.PrivateChat;
 import com.example.common.messages.*;
@@ -9,18 +10,23 @@ import com.example.common.users.User;
 import com.example.client.gui.listeners.*;
 
 import javax.swing.*;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
 import java.util.Optional;
 
 /**
  * The Controller class is responsible for handling the interactions between the Model and View,
  * managing the application logic, and responding to user input.
+ * Messages from the server are applied on the event dispatch thread, in batches begun and ended by
+ * the dispatcher, so that the transcript is told about new messages once per batch.
  */
 public class Controller {
+    public static final int HISTORY_PAGE_SIZE = 50; // Messages requested per page of history
     private final Model model; // The model containing application state
     private final View view; // The view for the GUI
     private final Client client; // The client for network communication
     private GroupChat generalChat; // The general chat group
+    private boolean pendingRows; // Whether messages have been added to the chat shown and not to the transcript yet
+    private boolean batching; // Whether a batch of messages is being applied
 
     /**
      * Constructs a Controller instance.
@@ -46,6 +52,7 @@ public class Controller {
         this.view.setMessageFieldActionListener(new SendButtonListener(this));
         this.view.setChatListListener(new ChatListListener(this));
         this.view.setGetDetailsButtonListener(new GetDetailsButtonListener(this));
+        this.view.setChatScrollListener(new HistoryScrollListener(this));
     }
 
     /**
@@ -96,6 +103,36 @@ public class Controller {
         view.addChat(chat);
     }
 
+    /**
+     * Finds a chat by its ID.
+     *
+     * @param chatId The ID of the chat to find
+     * @return An Optional containing the chat if found, or an empty Optional if not found
+     */
+    public Optional<Chat> findChatById(String chatId) {
+        return Optional.ofNullable(model.getChat(chatId));
+    }
+
+    /**
+     * Gives a chat the ID the server knows it by, keeping its history.
+     *
+     * @param chat The chat
+     * @param id   The new ID
+     */
+    public void setChatId(Chat chat, String id) {
+        model.changeChatId(chat, id);
+    }
+
+    /**
+     * Registers a chat created on this client with the server, which announces it to the other participants.
+     * Messages sent in the chat are only routed once the server knows the chat.
+     *
+     * @param chat The chat to register
+     */
+    public void registerChat(Chat chat) {
+        client.send(SystemMessage.of(SystemMessageType.CHAT_CREATE, ChatDescriptor.of(chat)));
+    }
+
     /**
      * Adds an active user to the model and view.
      *
@@ -114,17 +151,13 @@ public class Controller {
     public void removeActiveUser(User user) {
         model.removeActiveUser(user);
         view.removeActiveUser(user);
-        for (Chat chat : model.getChats()) {
-            if (chat instanceof GroupChat groupChat) {
-                if (groupChat.getParticipants().contains(user)) {
-                    groupChat.removeParticipant(user); // Remove the user from the group chat
-                    view.updateChat(chat); // Update the chat in the UI
-                }
+        for (Chat chat : List.copyOf(model.getChatsOf(user))) { // Only the chats the user is in
+            if (chat instanceof GroupChat) {
+                model.removeParticipant(chat, user); // Remove the user from the group chat
+                view.updateChat(chat); // Update the chat in the UI
             } else if (chat instanceof PrivateChat privateChat) {
-                if (privateChat.getParticipants().contains(user)) {
-                    privateChat.setActive(false); // Mark the private chat as inactive
-                    view.updateChat(chat); // Update the chat in the UI
-                }
+                privateChat.setActive(false); // Mark the private chat as inactive
+                view.updateChat(chat); // Update the chat in the UI
             }
         }
     }
@@ -137,16 +170,103 @@ public class Controller {
     public void showMessage(TextMessage message) {
         Chat chat = message.getChat();
 
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEEE, MMM dd yyyy HH:mm");
-        String formattedTime = message.getTimestamp().format(formatter);
-        String formattedMessage = "[" + formattedTime + "] " +
-                message.getSender().getUsername() + ": " + message.getContent() + "\n";
-
-        model.addMessageToChat(message);
+        if (!model.addMessageToChat(message)) {
+            return; // Already shown as part of a history page
+        }
 
         // Only display if it's the currently selected chat
         if (chat.equals(model.getCurrentChat())) {
-            view.getChatDisplay().append(formattedMessage);
+            pendingRows = true;
+            if (!batching) {
+                flushDisplay();
+            }
+        }
+    }
+
+    /**
+     * Begins applying a batch of messages. Messages shown until the batch ends are added to the
+     * transcript together.
+     */
+    public void beginBatch() {
+        batching = true;
+    }
+
+    /**
+     * Ends applying a batch of messages and adds the messages it showed to the transcript.
+     */
+    public void endBatch() {
+        batching = false;
+        flushDisplay();
+    }
+
+    /**
+     * Adds the messages held back to the transcript.
+     */
+    private void flushDisplay() {
+        if (pendingRows) {
+            pendingRows = false;
+            view.appendToTranscript();
+        }
+    }
+
+    /**
+     * Shows a chat's history in the transcript.
+     *
+     * @param chat The chat
+     */
+    public void showChat(Chat chat) {
+        pendingRows = false; // The transcript reads the new chat's history whole
+        view.showTranscript(model.getChatHistory(chat));
+    }
+
+    /**
+     * Requests the first page of a chat's history, unless it has been requested already.
+     *
+     * @param chat The chat being opened
+     */
+    public void openChatHistory(Chat chat) {
+        if (!model.getChatHistory(chat).isStarted()) {
+            loadOlderHistory(chat);
+        }
+    }
+
+    /**
+     * Requests the page of a chat's history before the messages shown, if there is one
+     * and no page is on its way already.
+     *
+     * @param chat The chat being scrolled back in
+     */
+    public void loadOlderHistory(Chat chat) {
+        ChatHistory history = model.getChatHistory(chat);
+        if (history.isLoading() || !history.hasMore()) {
+            return;
+        }
+        history.setLoading(true);
+        HistoryRequest request = new HistoryRequest(chat.getId(), history.getCursor(), HISTORY_PAGE_SIZE);
+        client.send(SystemMessage.of(SystemMessageType.HISTORY_REQUEST, request));
+    }
+
+    /**
+     * Puts a page of history received from the server in front of its chat's messages.
+     * Called on the event dispatch thread, so the page is applied together with the display and
+     * switching chats in between cannot show its messages twice.
+     *
+     * @param page The page
+     */
+    public void showHistoryPage(HistoryPage page) {
+        Optional<Chat> knownChat = findChatById(page.chatId());
+        if (knownChat.isEmpty()) {
+            return; // The chat was left while the page was on its way
+        }
+        Chat chat = knownChat.get();
+        for (TextMessage message : page.messages()) {
+            message.setChat(chat);
+            message.setSender(resolveUser(message.getSenderId()));
+        }
+        int added = model.prependHistory(chat, page);
+        if (added > 0 && chat.equals(model.getCurrentChat())) {
+            flushDisplay(); // Tell the transcript about the rows of this batch before moving them
+            view.prependToTranscript(added);
         }
     }
 
@@ -179,23 +299,30 @@ public class Controller {
     }
 
     /**
-     * Finds a user by their ID in the model's active users.
+     * Finds a user by their ID in the model's active users, including the current user.
      *
      * @param userId The ID of the user to find
      * @return An Optional containing the user if found, or an empty Optional if not found
      */
     public Optional<User> findUserById(String userId) {
-        // Stream through all connected users and find the one with matching ID
-        return model.getActiveUsers().stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst();
+        if (model.getCurrentUser().getId().equals(userId)) {
+            return Optional.of(model.getCurrentUser());
+        }
+        return Optional.ofNullable(model.getActiveUser(userId));
     }
 
     /**
-     * Records a heartbeat to maintain the connection to the server.
+     * Finds a user by their ID, standing in a placeholder for users who are no longer online.
+     *
+     * @param userId The ID of the user
+     * @return The user, or a placeholder with the user's ID
      */
-    public void recordHeartbeat() {
-        client.recordHeartbeat();
+    public User resolveUser(String userId) {
+        return findUserById(userId).orElseGet(() -> {
+            User user = new User("Unknown");
+            user.setId(userId);
+            return user;
+        });
     }
 
     /**
@@ -227,6 +354,7 @@ public class Controller {
         model.addChat(generalChat);
         model.setCurrentChat(generalChat);
         view.addChat(generalChat);
+        view.showTranscript(model.getChatHistory(generalChat));
         // Select the general chat in the chat list
         view.getChatList().setSelectedValue(generalChat, true);
     }
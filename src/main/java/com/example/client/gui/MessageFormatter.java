@@ -0,0 +1,71 @@
+package com.example.client.gui;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * The MessageFormatter class formats messages as the lines of the transcript and of the exported history.
+ * The timestamp pattern shows minutes at most, so the formatted time is cached per minute: the messages
+ * of a burst share their minute and only the first of them formats it. The cache holds the
+ * CACHED_MINUTES most recent minutes a slot each, which covers a page of history as well.
+ * The cache is safe to share between threads, since a slot is replaced as a whole.
+ */
+public class MessageFormatter {
+    public static final MessageFormatter DEFAULT = new MessageFormatter("EEEE, MMM dd yyyy HH:mm"); // Formatter used by the client
+    private static final int CACHED_MINUTES = 64; // Slots of the timestamp cache
+    private static final long MILLIS_PER_MINUTE = 60_000; // Length of the cached interval
+    private final DateTimeFormatter timestampFormatter; // Formats the time of a message
+    private final Minute[] minutes = new Minute[CACHED_MINUTES]; // Formatted minutes, by minute modulo the slots
+
+    /**
+     * The Minute record is a formatted minute in the timestamp cache.
+     *
+     * @param minute The minute since the epoch
+     * @param prefix The formatted time, in brackets and followed by a space
+     */
+    private record Minute(long minute, String prefix) {}
+
+    /**
+     * Constructor for a formatter with a timestamp pattern.
+     *
+     * @param pattern The pattern of the time; it must not show seconds, since times are cached per minute
+     */
+    public MessageFormatter(String pattern) {
+        this.timestampFormatter = DateTimeFormatter.ofPattern(pattern);
+    }
+
+    /**
+     * Formats a message as a line of the transcript.
+     *
+     * @param message The message to format
+     * @return The formatted message, without a line break
+     */
+    public String format(StoredMessage message) {
+        String prefix = prefix(message.epochMillis());
+        String sender = message.senderName() != null ? message.senderName() : "Unknown";
+        String content = message.content() != null ? message.content() : "";
+        return new StringBuilder(prefix.length() + sender.length() + 2 + content.length())
+                .append(prefix).append(sender).append(": ").append(content).toString();
+    }
+
+    /**
+     * Gets the formatted time of a message from the cache, formatting its minute if needed.
+     *
+     * @param epochMillis The time of the message
+     * @return The formatted time, in brackets and followed by a space
+     */
+    String prefix(long epochMillis) {
+        long minute = Math.floorDiv(epochMillis, MILLIS_PER_MINUTE);
+        int slot = Math.floorMod(minute, CACHED_MINUTES);
+        Minute cached = minutes[slot];
+        if (cached != null && cached.minute() == minute) {
+            return cached.prefix();
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(minute * MILLIS_PER_MINUTE), ZoneOffset.UTC);
+        String prefix = "[" + timestampFormatter.format(time) + "] ";
+        minutes[slot] = new Minute(minute, prefix);
+        return prefix;
+    }
+}
@@ -0,0 +1,393 @@
+package com.example.client.gui;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The MessageStore class holds the messages of one chat, oldest first, and reads any of them back by index.
+ * The newest messages are kept in memory in a ring of parallel arrays, up to a number of messages and an
+ * estimate of their size. Older messages are moved to a spill file in a disk cache, or dropped if the
+ * store has no cache directory. Messages can be added at either end: live messages after the newest,
+ * pages of older history in front of the oldest.
+ * Each message is formatted once, the first time its line is needed by the transcript or the export,
+ * and its line is kept with it; the spill file keeps the lines of the spilled messages read last.
+ * A store is not thread-safe; the client uses it on the event dispatch thread.
+ */
+public class MessageStore implements Closeable {
+    public static final int ENTRY_OVERHEAD = 64; // Estimated bytes of a message besides its content's and line's characters
+    private static final int INITIAL_CAPACITY = 16; // Slots of the ring of a new store
+    private final int maxMessages; // Most messages held in memory
+    private final long maxBytes; // Most estimated bytes held in memory
+    private final Path spillDirectory; // Directory of the disk cache, or null to drop older messages
+    private final MessageFormatter formatter; // Formats the lines of the messages
+    private SpillFile spill; // Messages older than those in memory, created on first use
+    private String[] messageIds = new String[INITIAL_CAPACITY]; // IDs of the messages in memory
+    private String[] senderIds = new String[INITIAL_CAPACITY]; // Sender IDs of the messages in memory
+    private String[] senderNames = new String[INITIAL_CAPACITY]; // Sender names of the messages in memory
+    private long[] times = new long[INITIAL_CAPACITY]; // Epoch times of the messages in memory
+    private String[] contents = new String[INITIAL_CAPACITY]; // Contents of the messages in memory
+    private String[] lines = new String[INITIAL_CAPACITY]; // Formatted lines of the messages in memory, or null until needed
+    private int head; // Slot of the oldest message in memory
+    private int count; // Number of messages in memory
+    private long bytes; // Estimated bytes of the messages in memory
+    private final Set<String> ids = new HashSet<>(); // IDs of the messages in memory and in the disk cache, to skip those added twice
+    private long dropped; // Messages dropped since they did not fit in memory and could not be spilled
+
+    /**
+     * Constructor for a store with the given retention.
+     *
+     * @param maxMessages    Most messages held in memory, at least 1
+     * @param maxBytes       Most estimated bytes held in memory; a single message is kept even if larger
+     * @param spillDirectory Directory of the disk cache, or null to drop messages that no longer fit
+     */
+    public MessageStore(int maxMessages, long maxBytes, Path spillDirectory) {
+        this(maxMessages, maxBytes, spillDirectory, MessageFormatter.DEFAULT);
+    }
+
+    /**
+     * Constructor for a store with the given retention and formatter.
+     *
+     * @param maxMessages    Most messages held in memory, at least 1
+     * @param maxBytes       Most estimated bytes held in memory; a single message is kept even if larger
+     * @param spillDirectory Directory of the disk cache, or null to drop messages that no longer fit
+     * @param formatter      Formats the lines of the messages
+     */
+    public MessageStore(int maxMessages, long maxBytes, Path spillDirectory, MessageFormatter formatter) {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be at least 1: " + maxMessages);
+        }
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+        this.spillDirectory = spillDirectory;
+        this.formatter = formatter;
+    }
+
+    /**
+     * Creates a store with the retention configured by system properties: chat.client.history.maxMessages
+     * (5000 by default), chat.client.history.maxBytes (2 MiB by default) and chat.client.cacheDir
+     * (chat-client in the temporary directory by default; "none" drops older messages instead).
+     *
+     * @return The store
+     */
+    public static MessageStore withDefaults() {
+        String directory = System.getProperty("chat.client.cacheDir",
+                Path.of(System.getProperty("java.io.tmpdir"), "chat-client").toString());
+        return new MessageStore(Integer.getInteger("chat.client.history.maxMessages", 5000),
+                Long.getLong("chat.client.history.maxBytes", 2L * 1024 * 1024),
+                directory.equals("none") ? null : Path.of(directory));
+    }
+
+    /**
+     * Adds a message after the newest one, unless a message with its ID is held already.
+     * Messages that no longer fit in memory are moved to the disk cache.
+     *
+     * @param message The message
+     * @return True if the message was added
+     */
+    public boolean append(StoredMessage message) {
+        if (message.messageId() != null && !ids.add(message.messageId())) {
+            return false;
+        }
+        grow();
+        put((head + count) % contents.length, message);
+        count++;
+        while (count > 1 && (count > maxMessages || bytes > maxBytes)) {
+            spillLast(removeOldest());
+        }
+        return true;
+    }
+
+    /**
+     * Adds older messages in front of the oldest one, skipping those held already, in memory or on disk.
+     * They are kept in memory while it has room and nothing has been spilled yet, and go to the
+     * disk cache otherwise, so that the messages in memory are always the newest.
+     *
+     * @param older The messages, oldest first
+     * @return The messages added, oldest first
+     */
+    public List<StoredMessage> prepend(List<StoredMessage> older) {
+        List<StoredMessage> added = new ArrayList<>();
+        for (int i = older.size() - 1; i >= 0; i--) {
+            StoredMessage message = older.get(i);
+            if (message.messageId() != null && ids.contains(message.messageId())) {
+                continue;
+            }
+            if (getSpilledCount() == 0 && fits(message)) {
+                grow();
+                head = (head - 1 + contents.length) % contents.length;
+                put(head, message);
+                count++;
+            } else if (!spillFirst(message)) {
+                continue;
+            }
+            if (message.messageId() != null) {
+                ids.add(message.messageId());
+            }
+            added.add(message);
+        }
+        Collections.reverse(added);
+        return added;
+    }
+
+    /**
+     * Gets a message by its position, reading it from the disk cache if it has been spilled.
+     *
+     * @param index The position, 0 being the oldest message
+     * @return The message
+     * @throws IndexOutOfBoundsException If there is no message at the position
+     * @throws UncheckedIOException      If the message cannot be read from the disk cache
+     */
+    public StoredMessage get(int index) {
+        int size = size();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " messages");
+        }
+        int spilled = getSpilledCount();
+        if (index < spilled) {
+            try {
+                return spill.get(index);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read message " + index + " from the disk cache", e);
+            }
+        }
+        int slot = (head + index - spilled) % contents.length;
+        return new StoredMessage(messageIds[slot], senderIds[slot], senderNames[slot], times[slot], contents[slot]);
+    }
+
+    /**
+     * Gets the formatted line of a message by its position, formatting it the first time.
+     *
+     * @param index The position, 0 being the oldest message
+     * @return The line, without a line break
+     * @throws IndexOutOfBoundsException If there is no message at the position
+     * @throws UncheckedIOException      If the message cannot be read from the disk cache
+     */
+    public String getLine(int index) {
+        int size = size();
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + size + " messages");
+        }
+        int spilled = getSpilledCount();
+        if (index < spilled) {
+            try {
+                return spill.getLine(index, formatter);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read message " + index + " from the disk cache", e);
+            }
+        }
+        int slot = (head + index - spilled) % contents.length;
+        String line = lines[slot];
+        if (line == null) {
+            line = formatter.format(new StoredMessage(messageIds[slot], senderIds[slot], senderNames[slot], times[slot], contents[slot]));
+            lines[slot] = line;
+            bytes += 2L * line.length();
+        }
+        return line;
+    }
+
+    /**
+     * Gets the number of messages held in memory and in the disk cache.
+     *
+     * @return The number of messages
+     */
+    public int size() {
+        return getSpilledCount() + count;
+    }
+
+    /**
+     * Gets the number of messages held in memory.
+     *
+     * @return The number of messages in memory
+     */
+    public int getMemoryCount() { return count; }
+
+    /**
+     * Gets the estimated size of the messages held in memory.
+     *
+     * @return The estimated bytes
+     */
+    public long getMemoryBytes() { return bytes; }
+
+    /**
+     * Gets the number of messages moved to the disk cache.
+     *
+     * @return The number of spilled messages
+     */
+    public int getSpilledCount() {
+        return spill != null ? spill.size() : 0;
+    }
+
+    /**
+     * Gets the number of messages dropped because they neither fit in memory nor could be spilled.
+     *
+     * @return The number of dropped messages
+     */
+    public long getDroppedCount() { return dropped; }
+
+    /**
+     * Releases the messages held and deletes the spill file.
+     */
+    @Override
+    public void close() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the message cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Estimates the bytes a message takes in memory.
+     *
+     * @param message The message
+     * @return The estimated bytes
+     */
+    private static long sizeOf(StoredMessage message) {
+        return ENTRY_OVERHEAD + 2L * (message.content() != null ? message.content().length() : 0);
+    }
+
+    /**
+     * Checks if a message can be added to memory without going over the retention.
+     *
+     * @param message The message
+     * @return True if the message fits
+     */
+    private boolean fits(StoredMessage message) {
+        return count == 0 || (count < maxMessages && bytes + sizeOf(message) <= maxBytes);
+    }
+
+    /**
+     * Stores a message in a slot of the ring.
+     *
+     * @param slot    The slot
+     * @param message The message
+     */
+    private void put(int slot, StoredMessage message) {
+        messageIds[slot] = message.messageId();
+        senderIds[slot] = message.senderId();
+        senderNames[slot] = message.senderName();
+        times[slot] = message.epochMillis();
+        contents[slot] = message.content();
+        lines[slot] = null;
+        bytes += sizeOf(message);
+    }
+
+    /**
+     * Takes the oldest message out of memory.
+     *
+     * @return The message
+     */
+    private StoredMessage removeOldest() {
+        StoredMessage message = new StoredMessage(messageIds[head], senderIds[head], senderNames[head], times[head], contents[head]);
+        messageIds[head] = null;
+        senderIds[head] = null;
+        senderNames[head] = null;
+        contents[head] = null;
+        if (lines[head] != null) {
+            bytes -= 2L * lines[head].length();
+            lines[head] = null;
+        }
+        head = (head + 1) % contents.length;
+        count--;
+        bytes -= sizeOf(message);
+        return message;
+    }
+
+    /**
+     * Makes room for one more message in the ring, doubling it up to the most messages held.
+     * The ring holds one slot more than the retention, since a message is added before the oldest is spilled.
+     */
+    private void grow() {
+        if (count < contents.length) {
+            return;
+        }
+        int capacity = Math.min(contents.length * 2, maxMessages + 1);
+        messageIds = copy(messageIds, new String[capacity]);
+        senderIds = copy(senderIds, new String[capacity]);
+        senderNames = copy(senderNames, new String[capacity]);
+        contents = copy(contents, new String[capacity]);
+        lines = copy(lines, new String[capacity]);
+        long[] grownTimes = new long[capacity];
+        for (int i = 0; i < count; i++) {
+            grownTimes[i] = times[(head + i) % times.length];
+        }
+        times = grownTimes;
+        head = 0;
+    }
+
+    /**
+     * Copies the slots of the ring in order, starting at the oldest.
+     *
+     * @param from The slots
+     * @param to   The grown array
+     * @return The grown array
+     */
+    private String[] copy(String[] from, String[] to) {
+        for (int i = 0; i < count; i++) {
+            to[i] = from[(head + i) % from.length];
+        }
+        return to;
+    }
+
+    /**
+     * Moves a message taken out of memory to the disk cache, after the messages already there.
+     * A message that cannot be spilled is dropped and its ID forgotten.
+     *
+     * @param message The message
+     */
+    private void spillLast(StoredMessage message) {
+        try {
+            if (openSpill()) {
+                spill.addLast(message);
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to the message cache: " + e.getMessage());
+        }
+        dropped++;
+        if (message.messageId() != null) {
+            ids.remove(message.messageId());
+        }
+    }
+
+    /**
+     * Adds an older message to the disk cache, in front of the messages already there.
+     *
+     * @param message The message
+     * @return True if the message was added, false if it was dropped
+     */
+    private boolean spillFirst(StoredMessage message) {
+        try {
+            if (openSpill()) {
+                spill.addFirst(message);
+                return true;
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to the message cache: " + e.getMessage());
+        }
+        dropped++;
+        return false;
+    }
+
+    /**
+     * Creates the spill file if the store has a cache directory and the file does not exist yet.
+     *
+     * @return True if there is a spill file
+     * @throws IOException If the file cannot be created
+     */
+    private boolean openSpill() throws IOException {
+        if (spill == null && spillDirectory != null) {
+            spill = SpillFile.create(spillDirectory);
+        }
+        return spill != null;
+    }
+}
@@ -2,25 +2,30 @@ package com.example.client.gui;
 
 import com.example.common.chats.Chat;
 import com.example.common.chats.PrivateChat;
+import com.example.common.messages.HistoryPage;
 import com.example.common.messages.TextMessage;
 import com.example.common.users.User;
 
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 /**
  * The Model class is responsible for managing the state of the client application.
  * It handles chat management, message handling, and user management.
+ * Chats and users are kept in maps by their IDs, together with the private chat with each user and
+ * the chats each user is in, so that looking one up or handling a user going offline does not scan
+ * every chat. Participants of the chats held are changed through the model to keep these up to date.
  */
 public class Model {
     private final User currentUser; // The current user of the application
     private Chat currentChat; // The chat currently being viewed
     private String lastRetrievedSocket = null; // The last retrieved socket address
-    private final Set<User> activeUsers = new HashSet<>(); // Set of active users
-    private final List<Chat> chatList = new ArrayList<>(); // List of chats
-    private final Map<Chat, StringBuilder> history = new HashMap<>(); // Map of chat history
+    private final Map<String, User> activeUsers = new HashMap<>(); // Active users by ID
+    private final Map<String, Chat> chats = new HashMap<>(); // Chats by ID
+    private final Map<String, PrivateChat> privateChats = new HashMap<>(); // Private chats by the ID of the other participant
+    private final Map<String, Set<Chat>> chatsByUser = new HashMap<>(); // Chats each user is in, by user ID
+    private final Map<String, ChatHistory> history = new HashMap<>(); // Chat history by chat ID
+    private Chat generalChat; // The chat every active user is in, the first chat added
     private User coordinator; // The coordinator user
-    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern("EEEE, MMM dd yyyy HH:mm"); // Formatter for timestamps
 
     /**
      * Constructor for creating a new Model.
@@ -40,8 +45,14 @@ public class Model {
      */
     public void addChat(Chat chat) {
         if (!hasChat(chat)) {
-            chatList.add(chat);
-            history.put(chat, new StringBuilder()); // Initialize cache for this chat
+            chats.put(chat.getId(), chat);
+            history.putIfAbsent(chat.getId(), new ChatHistory()); // Initialize cache for this chat
+            for (User participant : chat.getParticipants()) {
+                index(chat, participant);
+            }
+            if (generalChat == null) {
+                generalChat = chat;
+            }
         }
     }
 
@@ -70,18 +81,52 @@ public class Model {
      */
     public void removeChat(Chat chat) {
         if (hasChat(chat)) {
-            chatList.remove(chat);
-            history.remove(chat); // Remove cached history
+            chats.remove(chat.getId());
+            for (User participant : chat.getParticipants()) {
+                unindex(chat, participant);
+            }
+            ChatHistory removed = history.remove(chat.getId()); // Remove cached history
+            if (removed != null) {
+                removed.close();
+            }
+        }
+    }
+
+    /**
+     * Gives a chat the ID the server knows it by, keeping its history.
+     *
+     * @param chat The chat
+     * @param id   The new ID
+     */
+    public void changeChatId(Chat chat, String id) {
+        boolean held = chats.remove(chat.getId()) != null;
+        ChatHistory chatHistory = history.remove(chat.getId());
+        chat.setId(id);
+        if (held) {
+            chats.put(id, chat);
         }
+        if (chatHistory != null) {
+            history.put(id, chatHistory);
+        }
+    }
+
+    /**
+     * Gets the chats.
+     *
+     * @return The chats, in no particular order
+     */
+    public Collection<Chat> getChats() {
+        return Collections.unmodifiableCollection(chats.values());
     }
 
     /**
-     * Gets the list of chats.
+     * Gets a chat by its ID.
      *
-     * @return The list of chats
+     * @param chatId The ID of the chat
+     * @return The chat, or null if there is none with the ID
      */
-    public List<Chat> getChats() {
-        return chatList;
+    public Chat getChat(String chatId) {
+        return chats.get(chatId);
     }
 
     /**
@@ -91,7 +136,7 @@ public class Model {
      * @return True if the chat exists, false otherwise
      */
     public boolean hasChat(Chat chat) {
-        return chatList.contains(chat);
+        return chats.containsKey(chat.getId());
     }
 
     /**
@@ -101,14 +146,74 @@ public class Model {
      * @return True if a private chat exists, false otherwise
      */
     public boolean hasPrivateChatWith(User user) {
-        for (Chat chat : chatList) {
-            if (chat instanceof PrivateChat privateChat) {
-                if (privateChat.getParticipants().contains(user)) {
-                    return true; // A private chat already exists between these users
-                }
-            }
+        return privateChats.containsKey(user.getId());
+    }
+
+    /**
+     * Gets the chats a user is in.
+     *
+     * @param user The user
+     * @return The chats, which the caller must not change
+     */
+    public Set<Chat> getChatsOf(User user) {
+        Set<Chat> userChats = chatsByUser.get(user.getId());
+        return userChats != null ? Collections.unmodifiableSet(userChats) : Set.of();
+    }
+
+    /**
+     * Adds a participant to a chat.
+     *
+     * @param chat The chat
+     * @param user The user joining it
+     */
+    public void addParticipant(Chat chat, User user) {
+        chat.addParticipant(user);
+        if (hasChat(chat)) {
+            index(chat, user);
+        }
+    }
+
+    /**
+     * Removes a participant from a chat.
+     *
+     * @param chat The chat
+     * @param user The user leaving it
+     */
+    public void removeParticipant(Chat chat, User user) {
+        chat.removeParticipant(user);
+        if (hasChat(chat)) {
+            unindex(chat, user);
+        }
+    }
+
+    /**
+     * Records that a user is in a chat.
+     * The chats of a user are compared by identity, since the general chat changes its ID.
+     *
+     * @param chat The chat
+     * @param user The participant
+     */
+    private void index(Chat chat, User user) {
+        chatsByUser.computeIfAbsent(user.getId(), k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(chat);
+        if (chat instanceof PrivateChat privateChat && !user.equals(currentUser)) {
+            privateChats.put(user.getId(), privateChat);
+        }
+    }
+
+    /**
+     * Forgets that a user is in a chat.
+     *
+     * @param chat The chat
+     * @param user The former participant
+     */
+    private void unindex(Chat chat, User user) {
+        Set<Chat> userChats = chatsByUser.get(user.getId());
+        if (userChats != null && userChats.remove(chat) && userChats.isEmpty()) {
+            chatsByUser.remove(user.getId());
+        }
+        if (chat instanceof PrivateChat && privateChats.get(user.getId()) == chat) {
+            privateChats.remove(user.getId());
         }
-        return false; // No private chat exists between these users
     }
 
     // Message Handling
@@ -117,19 +222,33 @@ public class Model {
      * Adds a message to a chat and updates the cached history.
      *
      * @param message The message to add
+     * @return True if the message was added, false if the chat already held it
      */
-    public void addMessageToChat(TextMessage message) {
-        Chat chat = message.getChat();
+    public boolean addMessageToChat(TextMessage message) {
+        return getChatHistory(message.getChat()).append(message);
+    }
+
+    /**
+     * Puts a page of older messages in front of a chat's history.
+     * Messages the chat already holds, such as those that arrived live while the page was on its
+     * way, are skipped.
+     *
+     * @param chat The chat the page belongs to
+     * @param page The page, whose messages have been resolved to the chat and their senders
+     * @return The number of messages that were added
+     */
+    public int prependHistory(Chat chat, HistoryPage page) {
+        return getChatHistory(chat).prepend(page.messages(), page.nextCursor()).size();
+    }
 
-        // Update the cached history
-        StringBuilder cache = history.computeIfAbsent(chat, k -> new StringBuilder());
-        cache.append("[")
-                .append(TIMESTAMP_FORMATTER.format(message.getTimestamp()))
-                .append("] ")
-                .append(message.getSender().getUsername())
-                .append(": ")
-                .append(message.getContent())
-                .append("\n");
+    /**
+     * Gets the history held for a chat, creating it if needed.
+     *
+     * @param chat The chat
+     * @return The chat's history
+     */
+    public ChatHistory getChatHistory(Chat chat) {
+        return history.computeIfAbsent(chat.getId(), k -> new ChatHistory());
     }
 
     /**
@@ -139,7 +258,15 @@ public class Model {
      * @return The formatted chat history
      */
     public String getFormattedChatHistory(Chat chat) {
-        return history.getOrDefault(chat, new StringBuilder()).toString();
+        ChatHistory chatHistory = history.get(chat.getId());
+        if (chatHistory == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < chatHistory.size(); i++) {
+            text.append(chatHistory.getLine(i)).append('\n'); // The lines the transcript shows, formatted once
+        }
+        return text.toString();
     }
 
     // User Management
@@ -151,8 +278,8 @@ public class Model {
      */
     public void addActiveUser(User user) {
         if (!hasActiveUser(user)) {
-            activeUsers.add(user);
-            chatList.getFirst().addParticipant(user); // Add the user to the general chat
+            activeUsers.put(user.getId(), user);
+            addParticipant(generalChat, user); // Add the user to the general chat
         }
     }
 
@@ -162,9 +289,7 @@ public class Model {
      * @param user The user to remove
      */
     public void removeActiveUser(User user) {
-        if (hasActiveUser(user)) {
-            activeUsers.remove(user);
-        }
+        activeUsers.remove(user.getId());
     }
 
     /**
@@ -184,9 +309,17 @@ public class Model {
     /**
      * Gets the set of active users.
      *
-     * @return The set of active users
+     * @return A copy of the set of active users
+     */
+    public Set<User> getActiveUsers() { return new HashSet<>(activeUsers.values()); }
+
+    /**
+     * Gets an active user by their ID.
+     *
+     * @param userId The ID of the user
+     * @return The user, or null if no active user has the ID
      */
-    public Set<User> getActiveUsers() { return activeUsers; }
+    public User getActiveUser(String userId) { return activeUsers.get(userId); }
 
     /**
      * Checks if a user is in the set of active users.
@@ -194,7 +327,7 @@ public class Model {
      * @param user The user to check
      * @return True if the user is active, false otherwise
      */
-    public boolean hasActiveUser(User user) { return activeUsers.contains(user); }
+    public boolean hasActiveUser(User user) { return activeUsers.containsKey(user.getId()); }
 
     /**
      * Gets the current user of the application.
@@ -0,0 +1,262 @@
+package com.example.client.gui;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SpillFile class holds the older messages of a chat that no longer fit in memory.
+ * Records are only ever appended to the file; an index of their offsets keeps them in the order of
+ * the chat, so that messages can be added at either end and read back by their position.
+ * The file is a cache: it is deleted when closed and when the client exits.
+ * The formatted lines of the messages read last are kept by their record's offset, which does not
+ * change when messages are added, so scrolling over the same rows does not read them again.
+ */
+final class SpillFile implements Closeable {
+    private static final int CACHED_LINES = 256; // Most formatted lines kept
+    private final Path path; // Path of the file
+    private final FileChannel channel; // The file the records are appended to
+    private long end; // Offset at which the next record is written
+    private long[] offsets = new long[64]; // Offsets of the records, a ring in the order of the chat
+    private int head; // Slot of the oldest record's offset
+    private int count; // Number of records held
+    private final Map<Long, String> lines = new LinkedHashMap<>(CACHED_LINES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHED_LINES;
+        }
+    }; // Formatted lines by record offset, least recently read first
+
+    /**
+     * Constructor for a spill file on an open channel.
+     *
+     * @param path    Path of the file
+     * @param channel The channel of the file
+     */
+    private SpillFile(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an empty spill file in a directory.
+     *
+     * @param directory The directory of the disk cache, created if needed
+     * @return The spill file
+     * @throws IOException If the file cannot be created
+     */
+    static SpillFile create(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path path = Files.createTempFile(directory, "chat-", ".spill");
+        path.toFile().deleteOnExit();
+        return new SpillFile(path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Adds a message older than those held.
+     *
+     * @param message The message
+     * @throws IOException If the message cannot be written
+     */
+    void addFirst(StoredMessage message) throws IOException {
+        long offset = write(message);
+        grow();
+        head = (head - 1 + offsets.length) % offsets.length;
+        offsets[head] = offset;
+        count++;
+    }
+
+    /**
+     * Adds a message newer than those held.
+     *
+     * @param message The message
+     * @throws IOException If the message cannot be written
+     */
+    void addLast(StoredMessage message) throws IOException {
+        long offset = write(message);
+        grow();
+        offsets[(head + count) % offsets.length] = offset;
+        count++;
+    }
+
+    /**
+     * Reads a message by its position.
+     *
+     * @param index The position, 0 being the oldest message held
+     * @return The message
+     * @throws IOException If the message cannot be read
+     */
+    StoredMessage get(int index) throws IOException {
+        long offset = offsets[(head + index) % offsets.length];
+        ByteBuffer length = read(offset, Integer.BYTES);
+        ByteBuffer record = read(offset + Integer.BYTES, length.getInt());
+        String messageId = readString(record);
+        String senderId = readString(record);
+        String senderName = readString(record);
+        long epochMillis = record.getLong();
+        return new StoredMessage(messageId, senderId, senderName, epochMillis, readString(record));
+    }
+
+    /**
+     * Gets the formatted line of a message by its position, reading and formatting it unless it was read lately.
+     *
+     * @param index     The position, 0 being the oldest message held
+     * @param formatter Formats the message
+     * @return The line
+     * @throws IOException If the message cannot be read
+     */
+    String getLine(int index, MessageFormatter formatter) throws IOException {
+        long offset = offsets[(head + index) % offsets.length];
+        String line = lines.get(offset);
+        if (line == null) {
+            line = formatter.format(get(index));
+            lines.put(offset, line);
+        }
+        return line;
+    }
+
+    /**
+     * Gets the number of messages held.
+     *
+     * @return The number of messages
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Closes and deletes the file.
+     *
+     * @throws IOException If the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Doubles the index if it is full.
+     */
+    private void grow() {
+        if (count < offsets.length) {
+            return;
+        }
+        long[] grown = new long[offsets.length * 2];
+        for (int i = 0; i < count; i++) {
+            grown[i] = offsets[(head + i) % offsets.length];
+        }
+        offsets = grown;
+        head = 0;
+    }
+
+    /**
+     * Appends a record to the file: its length, then the message's strings and time.
+     *
+     * @param message The message
+     * @return The offset of the record
+     * @throws IOException If the record cannot be written
+     */
+    private long write(StoredMessage message) throws IOException {
+        byte[] messageId = bytes(message.messageId());
+        byte[] senderId = bytes(message.senderId());
+        byte[] senderName = bytes(message.senderName());
+        byte[] content = bytes(message.content());
+        int length = 4 * Integer.BYTES + Long.BYTES + length(messageId) + length(senderId) + length(senderName) + length(content);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length);
+        record.putInt(length);
+        putString(record, messageId);
+        putString(record, senderId);
+        putString(record, senderName);
+        record.putLong(message.epochMillis());
+        putString(record, content);
+        record.flip();
+
+        long offset = end;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += channel.write(record, position);
+        }
+        end = position;
+        return offset;
+    }
+
+    /**
+     * Reads bytes from the file.
+     *
+     * @param offset The offset to read at
+     * @param length The number of bytes
+     * @return The bytes, ready to be read
+     * @throws IOException If the bytes cannot be read
+     */
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Spill file ends inside a record at " + offset);
+            }
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Encodes a string as UTF-8.
+     *
+     * @param value The string, or null
+     * @return The bytes, or null
+     */
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * Gets the number of bytes of an encoded string.
+     *
+     * @param bytes The bytes, or null
+     * @return The number of bytes
+     */
+    private static int length(byte[] bytes) {
+        return bytes != null ? bytes.length : 0;
+    }
+
+    /**
+     * Writes an encoded string as its length followed by its bytes; a null string has length -1.
+     *
+     * @param buffer The buffer to write to
+     * @param bytes  The bytes, or null
+     */
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * Reads a string written by putString.
+     *
+     * @param buffer The buffer to read from
+     * @return The string, or null
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
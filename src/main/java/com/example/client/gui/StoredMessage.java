@@ -0,0 +1,42 @@
+package com.example.client.gui;
+
+import com.example.common.messages.TextMessage;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * The StoredMessage record is the part of a text message a chat's history keeps: who sent it, when,
+ * and its content. The content is the string of the message received, not a copy.
+ * Times are epoch milliseconds of the message's timestamp read as UTC, as the binary codec sends them.
+ *
+ * @param messageId   The ID of the message, or null
+ * @param senderId    The ID of the sender
+ * @param senderName  The username of the sender, or null if unknown
+ * @param epochMillis The time the message was sent
+ * @param content     The content of the message
+ */
+public record StoredMessage(String messageId, String senderId, String senderName, long epochMillis, String content) {
+
+    /**
+     * Creates the record of a text message whose sender has been resolved.
+     *
+     * @param message The message
+     * @return The record
+     */
+    public static StoredMessage of(TextMessage message) {
+        String senderName = message.getSender() != null ? message.getSender().getUsername() : null;
+        long epochMillis = message.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+        return new StoredMessage(message.getMessageId(), message.getSenderId(), senderName, epochMillis, message.getContent());
+    }
+
+    /**
+     * Gets the time the message was sent as the timestamp it had.
+     *
+     * @return The timestamp
+     */
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+    }
+}
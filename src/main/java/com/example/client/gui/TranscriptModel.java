@@ -0,0 +1,100 @@
+package com.example.client.gui;
+
+import javax.swing.*;
+
+/**
+ * The TranscriptModel class shows the history of the chat being viewed in the transcript list.
+ * It holds no messages itself: rows are the lines of the chat's history, read when the list paints them,
+ * so only the visible rows are read and formatted, whatever the length of the history; the history
+ * keeps each line once formatted.
+ * The controller reports the messages added to the history, so the list is told about new rows
+ * once per batch of messages instead of once per message.
+ */
+public class TranscriptModel extends AbstractListModel<String> {
+    private ChatHistory history; // History of the chat shown, or null
+    private int shown; // Number of rows the list has been told about
+    private long dropped; // Messages the history had dropped when the list was last told about it
+
+    /**
+     * Shows the history of another chat.
+     *
+     * @param history The history, or null to show nothing
+     */
+    public void show(ChatHistory history) {
+        int previous = shown;
+        this.history = history;
+        shown = 0;
+        if (previous > 0) {
+            fireIntervalRemoved(this, 0, previous - 1);
+        }
+        shown = history != null ? history.size() : 0;
+        dropped = history != null ? history.getStore().getDroppedCount() : 0;
+        if (shown > 0) {
+            fireIntervalAdded(this, 0, shown - 1);
+        }
+    }
+
+    /**
+     * Reports the messages appended to the history since the list was last told about it.
+     * If the history dropped older messages instead of growing, every row is repainted.
+     */
+    public void appended() {
+        if (history == null) {
+            return;
+        }
+        int size = history.size();
+        long droppedNow = history.getStore().getDroppedCount();
+        if (droppedNow != dropped) {
+            dropped = droppedNow;
+            shown = size;
+            fireContentsChanged(this, 0, size - 1); // Every row has moved up
+        } else if (size > shown) {
+            int first = shown;
+            shown = size;
+            fireIntervalAdded(this, first, size - 1);
+        }
+    }
+
+    /**
+     * Reports older messages put in front of the history.
+     *
+     * @param count The number of messages
+     */
+    public void prepended(int count) {
+        if (history == null || count <= 0) {
+            return;
+        }
+        shown += count;
+        fireIntervalAdded(this, 0, count - 1);
+    }
+
+    /**
+     * Gets the history shown.
+     *
+     * @return The history, or null
+     */
+    public ChatHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return The number of messages the list has been told about
+     */
+    @Override
+    public int getSize() {
+        return shown;
+    }
+
+    /**
+     * Gets a row, reading its line from the history.
+     *
+     * @param index The row
+     * @return The formatted message
+     */
+    @Override
+    public String getElementAt(int index) {
+        return history.getLine(index);
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.client.gui;
 
 import com.example.client.gui.cellRenderers.ActiveUserCellRenderer;
+import com.example.client.gui.cellRenderers.TranscriptCellRenderer;
 import com.example.client.gui.dialogs.GroupChatCreationDialog;
 import com.example.client.gui.dialogs.PrivateChatCreationDialog;
 import com.example.common.chats.Chat;
@@ -10,6 +11,7 @@ import javax.swing.*;
 import javax.swing.event.ListSelectionListener;
 import java.awt.*;
 import java.awt.event.ActionListener;
+import java.awt.event.AdjustmentListener;
 import java.awt.event.WindowListener;
 import java.util.Set;
 
@@ -19,7 +21,9 @@ import java.util.Set;
  */
 public class View {
     private final JFrame frame; // Main application window
-    private final JTextArea chatDisplay; // Area to display chat messages
+    private final TranscriptModel transcriptModel; // Rows of the transcript, read from the chat's history
+    private final JList<String> transcript; // List displaying the messages of the chat, a row each
+    private final JScrollPane chatScrollPane; // Scroll pane around the transcript
     private final JTextField messageField; // Field to enter messages
     private final DefaultListModel<Chat> chatListModel; // Model for the list of chats
     private final DefaultListModel<User> activeUsersListModel; // Model for the list of active users
@@ -73,9 +77,19 @@ public class View {
         // Chat Area Panel (Center)
         JPanel chatAreaPanel = new JPanel();
         chatAreaPanel.setLayout(new BorderLayout()); // Set layout for chat area panel
-        chatDisplay = new JTextArea(); // Create chat display area
-        chatDisplay.setEditable(false); // Make chat display area non-editable
-        chatAreaPanel.add(new JScrollPane(chatDisplay), BorderLayout.CENTER); // Add chat display area to chat area panel
+        transcriptModel = new TranscriptModel(); // Rows are read from the history of the chat shown
+        transcript = new JList<>(transcriptModel) {
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                return true; // Rows are as wide as the viewport, so no row is measured for the width
+            }
+        };
+        transcript.setCellRenderer(new TranscriptCellRenderer()); // Format each row as a line of the chat
+        transcript.setFixedCellHeight(transcript.getFontMetrics(transcript.getFont()).getHeight() + 2); // Lay out rows without rendering them
+        transcript.setFixedCellWidth(1); // Rows take the width of the viewport
+        chatScrollPane = new JScrollPane(transcript, ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED,
+                ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER); // Scroll the transcript
+        chatAreaPanel.add(chatScrollPane, BorderLayout.CENTER); // Add the transcript to chat area panel
 
         // Message Input Panel
         JPanel messagePanel = new JPanel();
@@ -129,21 +143,18 @@ public class View {
      */
     public void addActiveUser(User activeUser) {
         System.out.println("Adding active user: " + activeUser.getUsername()); // Print the username of the active user
-        SwingUtilities.invokeLater(() -> activeUsersListModel.addElement(activeUser)); // Add the active user to the model on the event dispatch thread
+        activeUsersListModel.addElement(activeUser); // Called on the event dispatch thread, in order with removals
     }
 
     /**
-     * Updates a chat in the chat list model.
+     * Updates a chat in the chat list.
+     * The list shows the chat objects themselves, so repainting it shows their new state without
+     * searching the list model for the chat.
      *
      * @param chat The chat to update
      */
     public void updateChat(Chat chat) {
-        for (int i = 0; i < chatListModel.getSize(); i++) {
-            if (chatListModel.getElementAt(i).equals(chat)) {  // Find the chat in the UI list
-                chatListModel.set(i, chat);  // Update it
-                break;  // Exit loop after updating
-            }
-        }
+        chatList.repaint();
     }
 
     /**
@@ -179,11 +190,62 @@ public class View {
     public JList<User> getActiveUsersList() {return activeUsersList;}
 
     /**
-     * Gets the chat display area.
+     * Gets the transcript list.
+     *
+     * @return The list displaying the messages of the chat
+     */
+    public JList<String> getTranscript() {return transcript;}
+
+    /**
+     * Shows the history of a chat in the transcript, scrolled to its newest message.
+     * Only the rows in view are read and formatted, however long the history is.
      *
-     * @return The chat display area
+     * @param history The history of the chat
      */
-    public JTextArea getChatDisplay() {return chatDisplay;}
+    public void showTranscript(ChatHistory history) {
+        transcriptModel.show(history);
+        scrollTranscriptToBottom();
+    }
+
+    /**
+     * Adds the messages appended to the history shown to the transcript, following them if the
+     * transcript was scrolled to its newest message.
+     */
+    public void appendToTranscript() {
+        JScrollBar bar = chatScrollPane.getVerticalScrollBar();
+        boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - transcript.getFixedCellHeight();
+        transcriptModel.appended();
+        if (atBottom) {
+            scrollTranscriptToBottom();
+        }
+    }
+
+    /**
+     * Adds older messages put in front of the history shown to the top of the transcript, keeping
+     * the messages the user is looking at in place.
+     *
+     * @param count The number of messages
+     */
+    public void prependToTranscript(int count) {
+        JScrollBar bar = chatScrollPane.getVerticalScrollBar();
+        int fromBottom = bar.getMaximum() - bar.getValue();
+        transcriptModel.prepended(count);
+
+        // Restore the position once the transcript has been laid out with the new rows
+        SwingUtilities.invokeLater(() -> bar.setValue(bar.getMaximum() - fromBottom));
+    }
+
+    /**
+     * Scrolls the transcript to its newest message once it has been laid out.
+     */
+    private void scrollTranscriptToBottom() {
+        SwingUtilities.invokeLater(() -> {
+            int last = transcriptModel.getSize() - 1;
+            if (last >= 0) {
+                transcript.ensureIndexIsVisible(last);
+            }
+        });
+    }
 
     /**
      * Gets the text from the message input field.
@@ -347,4 +409,13 @@ public class View {
     public void setMessageFieldActionListener(ActionListener listener) {
         messageField.addActionListener(listener);
     }
+
+    /**
+     * Sets the listener for scrolling the chat display.
+     *
+     * @param listener The adjustment listener to set
+     */
+    public void setChatScrollListener(AdjustmentListener listener) {
+        chatScrollPane.getVerticalScrollBar().addAdjustmentListener(listener);
+    }
 }
\ No newline at end of file
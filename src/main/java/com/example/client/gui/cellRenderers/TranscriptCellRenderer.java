@@ -0,0 +1,29 @@
+package com.example.client.gui.cellRenderers;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Renderer for the rows of the chat transcript.
+ * Each row shows the formatted line of one message; the list is given a fixed row height, so only
+ * the rows in view are ever rendered. Messages too long for the line are cut off and shown whole as a tooltip.
+ */
+public class TranscriptCellRenderer extends DefaultListCellRenderer {
+
+    /**
+     * Renders the line of a message.
+     *
+     * @param list         The transcript list
+     * @param value        The formatted message
+     * @param index        The row of the message
+     * @param isSelected   Whether the row is selected
+     * @param cellHasFocus Whether the row has focus
+     * @return The component rendering the row
+     */
+    @Override
+    public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+        super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+        setToolTipText((String) value);
+        return this;
+    }
+}
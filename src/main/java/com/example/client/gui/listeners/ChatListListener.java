@@ -34,7 +34,8 @@ public class ChatListListener implements ListSelectionListener {
         // Check if the selected chat is not null and is different from the current chat
         if (chat != null && !chat.equals(controller.getModel().getCurrentChat())) {
             controller.getModel().setCurrentChat(chat); // Update the current chat in the model
-            controller.getView().getChatDisplay().setText(controller.getModel().getFormattedChatHistory(chat)); // Update the chat display with the chat history
+            controller.showChat(chat); // Show the chat's history in the transcript
+            controller.openChatHistory(chat); // Fetch the latest messages the first time the chat is opened
         }
         controller.getView().getChatList().repaint(); // Repaint the chat list to reflect any changes
     }
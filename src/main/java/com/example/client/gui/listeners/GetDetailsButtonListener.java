@@ -1,10 +1,10 @@
 package com.example.client.gui.listeners;
 
 import com.example.client.gui.Controller;
+import com.example.common.messages.IpRequest;
 import com.example.common.messages.SystemMessage;
 import com.example.common.messages.SystemMessageType;
 import com.example.common.users.User;
-import com.google.gson.JsonObject;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
@@ -36,10 +36,8 @@ public class GetDetailsButtonListener implements ActionListener {
         User selectedUser = controller.getView().getActiveUsersList().getSelectedValue(); // Get the selected user
         if (selectedUser != null) {
             controller.getModel().setLastRetrievedSocket(null); // Reset before request
-            JsonObject json = new JsonObject();
-            json.addProperty("senderId", controller.getModel().getCurrentUser().getId());
-            json.addProperty("selectedUserId", selectedUser.getId());
-            SystemMessage request = new SystemMessage(SystemMessageType.IP_REQUEST, json.toString());
+            IpRequest payload = new IpRequest(controller.getModel().getCurrentUser().getId(), selectedUser.getId());
+            SystemMessage request = SystemMessage.of(SystemMessageType.IP_REQUEST, payload);
             controller.getClient().send(request); // Send the IP request message
 
             // Use SwingWorker to wait for the IP without freezing the UI
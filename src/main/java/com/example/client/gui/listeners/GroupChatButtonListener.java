@@ -50,9 +50,9 @@ public class GroupChatButtonListener implements ActionListener {
             controller.getModel().addChat(chat); // Add the group chat to the model
             controller.getModel().setCurrentChat(chat); // Set the group chat as the current chat
             controller.getView().addChat(chat); // Add the group chat to the view
+            controller.registerChat(chat); // Let the server route the chat's messages to its participants
             controller.getView().getChatList().setSelectedValue(chat, true); // Select the new group chat in the chat list
-            controller.getView().getChatDisplay().setText(controller.getModel().getFormattedChatHistory(chat)); // Display the chat history
-            controller.getView().getChatDisplay().setCaretPosition(controller.getView().getChatDisplay().getDocument().getLength()); // Scroll to bottom
+            controller.showChat(chat); // Display the chat history
         }
     }
 }
\ No newline at end of file
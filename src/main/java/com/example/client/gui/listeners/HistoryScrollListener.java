@@ -0,0 +1,44 @@
+package com.example.client.gui.listeners;
+
+import com.example.client.gui.Controller;
+import com.example.common.chats.Chat;
+
+import javax.swing.*;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+
+/**
+ * The HistoryScrollListener class listens for scrolling in the chat display
+ * and fetches older messages when the user reaches the top.
+ */
+public class HistoryScrollListener implements AdjustmentListener {
+    private final Controller controller; // The controller managing the application
+
+    /**
+     * Constructs a HistoryScrollListener instance.
+     *
+     * @param controller The controller managing the application
+     */
+    public HistoryScrollListener(Controller controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Handles the adjustment event when the chat display is scrolled.
+     *
+     * @param e The adjustment event
+     */
+    @Override
+    public void adjustmentValueChanged(AdjustmentEvent e) {
+        JScrollBar bar = (JScrollBar) e.getAdjustable();
+
+        // Only a display taller than its viewport can be scrolled to the top
+        if (e.getValueIsAdjusting() || bar.getValue() > bar.getMinimum() || bar.getMaximum() <= bar.getVisibleAmount()) {
+            return;
+        }
+        Chat chat = controller.getModel().getCurrentChat(); // Get the chat being viewed
+        if (chat != null) {
+            controller.loadOlderHistory(chat); // Request the page before the messages shown
+        }
+    }
+}
@@ -53,9 +53,9 @@ public class PrivateChatButtonListener implements ActionListener {
             chat.addParticipant(controller.getModel().getCurrentUser()); // Add the current user to the chat
             controller.getModel().addChat(chat); // Add the chat to the model
             controller.getView().addChat(chat); // Add the chat to the view
+            controller.registerChat(chat); // Let the server route the chat's messages to its participants
             controller.getView().getChatList().setSelectedValue(chat, true); // Select the new chat in the chat list
-            controller.getView().getChatDisplay().setText(controller.getModel().getFormattedChatHistory(chat)); // Display the chat history
-            controller.getView().getChatDisplay().setCaretPosition(controller.getView().getChatDisplay().getDocument().getLength()); // Scroll to bottom
+            controller.showChat(chat); // Display the chat history
         }
     }
 }
\ No newline at end of file
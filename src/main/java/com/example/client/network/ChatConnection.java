@@ -0,0 +1,361 @@
+package com.example.client.network;
+
+import com.example.common.codec.CodecHandshake;
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
+import com.example.common.events.ChatEvents;
+import com.example.common.events.MessageReceivedEvent;
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.UserStatus;
+import com.example.common.messages.UserUpdateMessage;
+import com.example.common.users.User;
+import com.example.common.utils.FlushCounters;
+import com.example.common.utils.MessageSerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * The ChatConnection class is a connection to the chat server without any user interface.
+ * It settles the wire format, sends messages through a buffer that is flushed shortly after the first
+ * message written to it, and reads what the server sends on a virtual thread, handing every message to a receiver.
+ * <p>
+ * Many connections can live in one JVM: they share the scheduler their flushes run on, so a
+ * connection costs a socket, a buffer and a virtual thread. The caller keeps the connection alive
+ * by calling {@link #sendHeartbeatIfIdle()} every few seconds. The GUI client sends and reads through
+ * a ChatConnection too.
+ */
+public class ChatConnection implements Closeable {
+    public static final long FLUSH_DELAY_MICROS = 1000; // Longest time a sent message waits in the buffer
+    public static final long HEARTBEAT_INTERVAL_MILLIS = 5000; // Time between heartbeats of an idle connection
+    public static final int HANDSHAKE_TIMEOUT_MILLIS = 5000; // Longest wait for the server's codec handshake reply
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000; // Longest wait for the server to accept the connection
+
+    private final Socket socket; // Socket of the connection, or null for a connection over a stream
+    private final String remoteAddress; // Address of the server, as put on flight recorder events
+    private final MessageCodec codec; // Codec of the negotiated wire format
+    private final OutputStream out; // Buffered output stream of the socket, or the stream written to
+    private final ScheduledExecutorService scheduler; // Scheduler the flushes run on, shared with other connections
+    private final FlushCounters flushCounters; // Messages per flush, possibly shared with other connections
+    private final AtomicBoolean flushPending = new AtomicBoolean(false); // Whether a flush has been scheduled
+    private final AtomicInteger unflushedFrames = new AtomicInteger(); // Messages written since the last flush
+    private volatile long lastSendTime; // Time the last message was sent to the server
+    private volatile long lastReceiveTime = System.currentTimeMillis(); // Time the last message was received from the server
+    private volatile User user; // The user logged in on the connection, or null
+    private volatile boolean closed; // Whether the connection has been closed
+
+    /**
+     * Constructor for ChatConnection.
+     *
+     * @param socket        The connected socket, with its wire format settled, or null
+     * @param out           The stream messages are written to
+     * @param format        The negotiated wire format
+     * @param scheduler     The scheduler the flushes run on
+     * @param flushCounters The counters of messages per flush
+     */
+    private ChatConnection(Socket socket, OutputStream out, WireFormat format, ScheduledExecutorService scheduler,
+                           FlushCounters flushCounters) {
+        this.socket = socket;
+        this.remoteAddress = socket != null ? String.valueOf(socket.getRemoteSocketAddress()) : null;
+        this.codec = MessageSerializer.getCodec(format);
+        this.out = out;
+        this.scheduler = scheduler;
+        this.flushCounters = flushCounters;
+    }
+
+    /**
+     * Creates a connection that only writes messages to a stream, without a socket to read from.
+     * Meant for tests, which capture what a client sends.
+     *
+     * @param out           The stream messages are written to, unbuffered so that they show up right away
+     * @param format        The wire format to write
+     * @param scheduler     The scheduler the flushes run on
+     * @param flushCounters The counters of messages per flush
+     * @return The connection
+     */
+    static ChatConnection over(OutputStream out, WireFormat format, ScheduledExecutorService scheduler,
+                               FlushCounters flushCounters) {
+        return new ChatConnection(null, out, format, scheduler, flushCounters);
+    }
+
+    /**
+     * Connects to the server and asks for a wire format.
+     * A server that predates the codec handshake reads the request as a broken JSON frame and
+     * never answers it; if no valid reply arrives within HANDSHAKE_TIMEOUT_MILLIS, the connection
+     * is opened again speaking JSON, which every server understands.
+     *
+     * @param host          The server host
+     * @param port          The server port
+     * @param preferred     The wire format to ask for
+     * @param scheduler     The scheduler the flushes run on
+     * @param flushCounters The counters of messages per flush
+     * @return The connection, not reading yet
+     * @throws IOException if the server cannot be reached
+     */
+    public static ChatConnection open(String host, int port, WireFormat preferred, ScheduledExecutorService scheduler,
+                                      FlushCounters flushCounters) throws IOException {
+        Socket socket = connect(host, port);
+        WireFormat format;
+        try {
+            format = negotiateFormat(socket, preferred);
+        } catch (IOException e) {
+            socket.close();
+            System.err.println("No codec handshake reply from " + host + ":" + port + " (" + e.getMessage() + "), falling back to JSON");
+            socket = connect(host, port);
+            format = WireFormat.JSON;
+        }
+        try {
+            return new ChatConnection(socket, new BufferedOutputStream(socket.getOutputStream()), format, scheduler, flushCounters);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a socket to the server.
+     *
+     * @param host The server host
+     * @param port The server port
+     * @return The connected socket
+     * @throws IOException if the server cannot be reached
+     */
+    private static Socket connect(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true); // Batching is done by the buffer
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Asks the server for a wire format before anything else is sent.
+     * Nothing is sent for JSON, which every server speaks without a handshake.
+     *
+     * @param socket    The connected socket
+     * @param preferred The format to ask for
+     * @return The format the server agreed to
+     * @throws IOException if the handshake fails
+     */
+    public static WireFormat negotiateFormat(Socket socket, WireFormat preferred) throws IOException {
+        if (preferred == WireFormat.JSON) {
+            return WireFormat.JSON;
+        }
+        OutputStream rawOut = socket.getOutputStream();
+        rawOut.write(CodecHandshake.request(preferred));
+        rawOut.flush();
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+        try {
+            return CodecHandshake.readReply(socket.getInputStream());
+        } finally {
+            socket.setSoTimeout(0);
+        }
+    }
+
+    /**
+     * Starts reading what the server sends on a virtual thread.
+     * Only connections with a socket can read.
+     *
+     * @param receiver Called with every message, on the reading thread
+     * @param onClosed Called once the connection is closed, by either side
+     */
+    public void start(Consumer<Communication> receiver, Runnable onClosed) {
+        Thread.ofVirtual().name("chat-connection-reader").start(() -> {
+            try {
+                MessageReader.readFrames(socket.getInputStream(), codec, message -> {
+                    lastReceiveTime = System.currentTimeMillis();
+                    MessageReceivedEvent.emit(ChatEvents.CLIENT, message, remoteAddress);
+                    receiver.accept(message);
+                });
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error in communication: " + e.getMessage());
+                }
+            } finally {
+                close();
+                onClosed.run();
+            }
+        });
+    }
+
+    /**
+     * Logs a user in on the connection without a secret, as a user whose id the server does not protect.
+     *
+     * @param user The user
+     * @throws IOException if the message cannot be written
+     */
+    public void login(User user) throws IOException {
+        login(user, null);
+    }
+
+    /**
+     * Logs a user in on the connection with the secret the client holds for the user's id.
+     *
+     * @param user   The user
+     * @param secret The secret, see ClientIdentity, or null to log in without one
+     * @throws IOException if the message cannot be written
+     */
+    public void login(User user, String secret) throws IOException {
+        this.user = user;
+        send(new UserUpdateMessage(user, UserStatus.ONLINE, secret));
+    }
+
+    /**
+     * Logs the user out, so that the server stops routing messages to the connection.
+     *
+     * @throws IOException if the message cannot be written
+     */
+    public void logout() throws IOException {
+        User current = user;
+        if (current != null) {
+            send(new UserUpdateMessage(current, UserStatus.OFFLINE));
+            flush();
+        }
+    }
+
+    /**
+     * Sends a message to the server.
+     * The message is buffered and flushed within FLUSH_DELAY_MICROS, together with any
+     * other message sent in the meantime. May be called from any thread.
+     *
+     * @param message The message to send
+     * @throws IOException if the message cannot be written
+     */
+    public void send(Communication message) throws IOException {
+        byte[] frame = codec.encode(message);
+        synchronized (out) {
+            out.write(frame);
+        }
+        lastSendTime = System.currentTimeMillis();
+        unflushedFrames.incrementAndGet();
+        scheduleFlush();
+    }
+
+    /**
+     * Sends a heartbeat unless a message has been sent within HEARTBEAT_INTERVAL_MILLIS,
+     * since the server counts any message as a heartbeat.
+     */
+    public void sendHeartbeatIfIdle() {
+        User current = user;
+        if (current == null || closed || System.currentTimeMillis() - lastSendTime < HEARTBEAT_INTERVAL_MILLIS) {
+            return;
+        }
+        try {
+            send(new SystemMessage(SystemMessageType.HEARTBEAT, current.getId()));
+        } catch (IOException e) {
+            System.err.println("Error sending heartbeat: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules a flush of the buffer unless one is already pending.
+     */
+    private void scheduleFlush() {
+        if (flushPending.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flushQuietly, FLUSH_DELAY_MICROS, TimeUnit.MICROSECONDS);
+            } catch (RejectedExecutionException e) {
+                flushQuietly(); // The scheduler has been shut down
+            }
+        }
+    }
+
+    /**
+     * Flushes every buffered message to the server with one write.
+     *
+     * @throws IOException if the write fails
+     */
+    public void flush() throws IOException {
+        flushPending.set(false);
+        int frames = unflushedFrames.getAndSet(0);
+        synchronized (out) {
+            out.flush();
+        }
+        if (frames > 0) {
+            flushCounters.record(frames);
+        }
+    }
+
+    /**
+     * Flushes the buffer, closing the connection if the write fails.
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            if (!closed) {
+                System.err.println("Error sending message: " + e.getMessage());
+                close();
+            }
+        }
+    }
+
+    /**
+     * Gets the time the last message was received from the server.
+     *
+     * @return The time in milliseconds since the epoch
+     */
+    public long getLastReceiveTime() {
+        return lastReceiveTime;
+    }
+
+    /**
+     * Gets the wire format settled with the server.
+     *
+     * @return The wire format
+     */
+    public WireFormat getWireFormat() {
+        return codec.getFormat();
+    }
+
+    /**
+     * Checks if the connection has been closed.
+     *
+     * @return True once closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Gets the socket of the connection.
+     *
+     * @return The socket, or null for a connection over a stream
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Closes the connection without logging out; the reading thread ends.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            if (socket != null) {
+                socket.close();
+            } else {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error disconnecting: " + e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package com.example.client.network;
 
+import com.example.common.codec.WireFormat;
 import com.example.common.messages.*;
 import com.example.common.users.User;
-import com.example.common.utils.MessageSerializer;
+import com.example.common.utils.FlushCounters;
 
 import java.awt.*;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -15,15 +17,17 @@ import javax.swing.*;
 /**
  * The Client class handles the connection to the server, sending and receiving messages,
  * and managing the GUI for user interaction.
+ * Its socket I/O is done by a ChatConnection, which programs that talk to the server without a GUI use directly.
  */
 public class Client {
+    private static final long SERVER_TIMEOUT_MILLIS = 20000; // Silence after which the server is assumed down
+    private static final WireFormat PREFERRED_FORMAT = preferredFormat(); // Wire format asked for when connecting
     private final String host; // Server host
     private final int port; // Server port
-    private PrintWriter out; // Output stream for sending messages
-    private BufferedReader in; // Input stream for receiving messages
-    private Socket socket; // Socket for communication
-    private final ScheduledExecutorService heartbeatChecker = Executors.newScheduledThreadPool(1); // Scheduled executor for heartbeat checking
-    private volatile long lastHeartbeatTime = System.currentTimeMillis(); // Last heartbeat time
+    private volatile ChatConnection connection; // Connection to the server
+    private PrintWriter out; // Writer the connection was replaced with for testing, or null
+    private final ScheduledExecutorService heartbeatChecker = Executors.newScheduledThreadPool(1); // Runs heartbeats, the server check and flushes
+    private final FlushCounters flushCounters = new FlushCounters(); // Messages per flush
     User user;  // The current user
 
     /**
@@ -38,24 +42,21 @@ public class Client {
         startHeartbeatChecker(); // Start the heartbeat checker
     }
 
-    /**
-     * Send a heartbeat message to server.
-     */
-    private void sendHeartbeat() {
-        SystemMessage heartbeatMessage = new SystemMessage(SystemMessageType.HEARTBEAT, user.getId());
-        send(heartbeatMessage);
-    }
-
     /**
      * Starts the heartbeat checker to monitor server connection and send a heartbeat too.
+     * The connection skips the heartbeat while other messages are being sent, since the server
+     * counts any message as a heartbeat, and records when anything was last received.
      */
     private void startHeartbeatChecker() {
         heartbeatChecker.scheduleAtFixedRate(() -> {
-            long currentTime = System.currentTimeMillis();
+            ChatConnection current = connection;
+            if (current == null || current.getSocket() == null) {
+                return; // Not connected to a server
+            }
             // Send heartbeat to the server
-            sendHeartbeat();
-            // If no heartbeat received for more than 20 seconds, assume server is down
-            if (currentTime - lastHeartbeatTime > 20000) {
+            current.sendHeartbeatIfIdle();
+            // If nothing received for more than 20 seconds, assume server is down
+            if (System.currentTimeMillis() - current.getLastReceiveTime() > SERVER_TIMEOUT_MILLIS) {
                 System.err.println("No heartbeat from server for 20 seconds, assuming server is down");
                 disconnect(); // Disconnect the client
                 SwingUtilities.invokeLater(() -> {
@@ -68,32 +69,35 @@ public class Client {
                     System.exit(0); // Exit the application
                 });
             }
-        }, 5, 5, TimeUnit.SECONDS); // Schedule the task to run every 5 seconds
+        }, ChatConnection.HEARTBEAT_INTERVAL_MILLIS, ChatConnection.HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS); // Schedule the task to run every 5 seconds
     }
 
     /**
-     * Records the receipt of a heartbeat from the server.
-     */
-    public void recordHeartbeat() {
-        lastHeartbeatTime = System.currentTimeMillis();
-    }
-
-    /**
-     * Connects to the server.
+     * Connects to the server and settles the wire format.
      * Protected for testing purposes.
      */
     protected void connectToServer() {
         try {
-            this.socket = new Socket(host, port); // Create a new socket
-            out = new PrintWriter(socket.getOutputStream(), true); // Initialize the output stream
-            in = new BufferedReader(new InputStreamReader(socket.getInputStream())); // Initialize the input stream
-            System.out.println("Connected to the server at " + host + ":" + port);
+            connection = ChatConnection.open(host, port, PREFERRED_FORMAT, heartbeatChecker, flushCounters);
+            System.out.println("Connected to the server at " + host + ":" + port + " (" + connection.getWireFormat().getName() + ")");
         } catch (IOException e) {
             System.err.println("Error connecting to the server: " + e.getMessage());
             System.exit(1); // Terminate the program if connection fails
         }
     }
 
+    /**
+     * Reads the wire format to ask for from the chat.codec system property.
+     *
+     * JSON is the default, since every server speaks it; the binary format has to be asked for.
+     *
+     * @return The preferred format, JSON unless configured otherwise
+     */
+    private static WireFormat preferredFormat() {
+        WireFormat format = WireFormat.fromName(System.getProperty("chat.codec", "json"));
+        return format != null ? format : WireFormat.JSON;
+    }
+
     /**
      * Starts the client and handles user login.
      */
@@ -104,31 +108,45 @@ public class Client {
             disconnect(); // Disconnect the client if user cancels
             return; // Exit the start method
         }
-        user = new User(username); // Create a new user
-        UserUpdateMessage message = new UserUpdateMessage(user, UserStatus.ONLINE); // Create a user update message
-        send(message); // Send the user update message
+        ClientIdentity.Login login = ClientIdentity.withDefaults().loginFor(username); // The same user as last time, so the server finds their chats
+        user = login.user();
+        ClientHandler handler = new ClientHandler(this, user); // Set up the GUI before any message arrives
+        try {
+            connection.login(user, login.secret()); // Tell the server the user is online, proving the id is theirs
+        } catch (IOException e) {
+            System.err.println("Error sending message: " + e.getMessage());
+        }
 
         // Register shutdown hook with the current user
         registerShutdownHook(user);
 
-        new Thread(new ClientHandler(in, this, user)).start(); // Start a new thread to handle incoming messages
+        connection.start(handler::receive, () -> { }); // Read on a virtual thread; the heartbeat checker notices a lost server
     }
 
     /**
      * Sends a communication message to the server.
+     * The message is buffered and flushed within ChatConnection.FLUSH_DELAY_MICROS, together with any
+     * other message sent in the meantime.
      *
      * @param message The communication message to send
      */
     public void send(Communication message) {
         try {
-            assert out != null; // Ensure the output stream is not null
-            String jsonMessage = MessageSerializer.serialize(message); // Serialize the message to JSON
-            out.println(jsonMessage); // Send the JSON message
+            connection.send(message);
         } catch (Exception e) {
             System.err.println("Error sending message: " + e.getMessage());
         }
     }
 
+    /**
+     * Retrieves the counters of messages sent per flush.
+     *
+     * @return The client's flush counters
+     */
+    public FlushCounters getFlushCounters() {
+        return flushCounters;
+    }
+
     /**
      * Prompts the user for credentials.
      * Protected for testing purposes.
@@ -175,18 +193,8 @@ public class Client {
      */
     public void disconnect() {
         heartbeatChecker.shutdown(); // Shutdown the heartbeat checker
-        try {
-            if (socket != null) {
-                socket.close(); // Close the socket
-            }
-            if (out != null) {
-                out.close(); // Close the output stream
-            }
-            if (in != null) {
-                in.close(); // Close the input stream
-            }
-        } catch (IOException e) {
-            System.err.println("Error disconnecting: " + e.getMessage());
+        if (connection != null) {
+            connection.close(); // Close the socket
         }
     }
 
@@ -199,13 +207,10 @@ public class Client {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Shutdown hook triggered - notifying server about disconnection");
             if (currentUser != null) {
-                UserUpdateMessage userUpdateMessage = new UserUpdateMessage(currentUser, UserStatus.OFFLINE); // Create a user update message
-                send(userUpdateMessage); // Send the user update message
-                // Small delay to allow message to be sent before full shutdown
                 try {
-                    Thread.sleep(300);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
+                    connection.logout(); // Sends the user update and flushes it before the socket is closed
+                } catch (IOException e) {
+                    System.err.println("Error sending message: " + e.getMessage());
                 }
             }
             disconnect(); // Disconnect the client
@@ -215,57 +220,93 @@ public class Client {
     // Getter and setter methods for testing purposes
 
     /**
-     * Gets the output stream.
+     * Gets the writer the connection was replaced with.
      *
-     * @return The output stream
+     * @return The writer, or null
      */
     public PrintWriter getOut() {
         return out;
     }
 
     /**
-     * Sets the output stream.
+     * Replaces the connection with one writing JSON messages to a writer, as they are sent.
      *
-     * @param out The output stream to set
+     * @param out The writer to send to
      */
     public void setOut(PrintWriter out) {
         this.out = out;
-    }
-
-    /**
-     * Gets the input stream.
-     *
-     * @return The input stream
-     */
-    public BufferedReader getIn() {
-        return in;
-    }
-
-    /**
-     * Sets the input stream.
-     *
-     * @param in The input stream to set
-     */
-    public void setIn(BufferedReader in) {
-        this.in = in;
+        this.connection = ChatConnection.over(new WriterOutputStream(out), WireFormat.JSON, heartbeatChecker, flushCounters);
     }
 
     /**
      * Gets the socket.
      *
-     * @return The socket
+     * @return The socket, or null if not connected to a server
      */
     public Socket getSocket() {
-        return socket;
+        ChatConnection current = connection;
+        return current != null ? current.getSocket() : null;
     }
 
     /**
-     * Sets the socket.
-     *
-     * @param socket The socket to set
+     * Writes the UTF-8 text of the frames a test connection sends to a writer.
+     * Every frame is written with one call, so none is split inside a character.
      */
-    public void setSocket(Socket socket) {
-        this.socket = socket;
+    private static class WriterOutputStream extends OutputStream {
+        private final Writer writer; // Writer the frames go to
+
+        /**
+         * Constructor for WriterOutputStream.
+         *
+         * @param writer The writer the frames go to
+         */
+        WriterOutputStream(Writer writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Writes a single byte as a character.
+         *
+         * @param b The byte
+         * @throws IOException if the writer fails
+         */
+        @Override
+        public void write(int b) throws IOException {
+            writer.write(b);
+        }
+
+        /**
+         * Writes the text of a frame.
+         *
+         * @param b   The bytes
+         * @param off The offset of the frame
+         * @param len The length of the frame
+         * @throws IOException if the writer fails
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writer.write(new String(b, off, len, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Flushes the writer.
+         *
+         * @throws IOException if the writer fails
+         */
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+
+        /**
+         * Closes the writer.
+         *
+         * @throws IOException if the writer fails
+         */
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
     }
 
     /**
@@ -281,7 +322,7 @@ public class Client {
 
         Client client = new Client(args[0]); // Create a new client with the server IP
 
-        if (client.socket == null || client.socket.isClosed()) {
+        if (client.getSocket() == null || client.getSocket().isClosed()) {
             System.err.println("Failed to connect to the server. Exiting...");
             System.exit(1); // Exit if the connection is unsuccessful
         }
@@ -6,30 +6,34 @@ import com.example.client.gui.View;
 import com.example.client.gui.cellRenderers.ChatListCellRenderer;
 import com.example.client.processing.ClientMessageProcessor;
 import com.example.client.processing.ClientMessageProcessorFactory;
+import com.example.client.processing.MessageDispatcher;
+import com.example.common.events.ChatEvents;
+import com.example.common.events.MessageDispatchedEvent;
 import com.example.common.messages.Communication;
 import com.example.common.users.User;
 import com.example.common.utils.MessageSerializer;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import java.util.List;
 
 /**
  * The ClientHandler class is responsible for handling incoming messages from the server.
- * It implements the Runnable interface to allow execution in a separate thread.
+ * The client's ChatConnection reads the messages, as JSON lines or as frames of the codec negotiated
+ * with the server, and hands each one to {@link #receive(Communication)} on its reading thread.
+ * The reading thread only decodes the messages; they are processed in batches on the event dispatch
+ * thread by a MessageDispatcher, since processing them updates the GUI.
  */
-public class ClientHandler implements Runnable {
-    private final BufferedReader in; // BufferedReader for reading messages from the server
+public class ClientHandler {
     private final Controller controller; // Controller for managing the GUI
+    private final MessageDispatcher dispatcher = new MessageDispatcher(this::processBatch); // Hands messages to the event dispatch thread
 
     /**
      * Constructor for creating a new ClientHandler.
+     * Sets up the GUI.
      *
-     * @param in     The BufferedReader for reading messages from the server
      * @param client The client instance
      * @param user   The user instance
      */
-    public ClientHandler(BufferedReader in, Client client, User user) {
-        this.in = in; // Initialize the BufferedReader
+    public ClientHandler(Client client, User user) {
         Model model = new Model(user); // Create a new model with the user
         View view = new View(); // Create a new view
         view.getChatList().setCellRenderer(new ChatListCellRenderer(user)); // Set custom cell renderer
@@ -38,19 +42,33 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * The run method is the entry point for the thread.
-     * It continuously reads messages from the server and processes them.
+     * Handles a message read from the server.
+     * Called on the connection's reading thread, which records that the server is alive.
+     *
+     * @param message The message read
+     */
+    public void receive(Communication message) {
+        dispatcher.submit(message);
+    }
+
+    /**
+     * Processes the messages received since the last tick on the event dispatch thread.
+     * The chat display is updated once for the whole batch.
+     *
+     * @param messages The messages, in order of arrival
      */
-    @Override
-    public void run() {
-        String message;
+    private void processBatch(List<Communication> messages) {
+        controller.beginBatch();
         try {
-            // Continuously read messages from the server
-            while ((message = in.readLine()) != null) {
-                processMessage(message); // Process each message
+            for (Communication message : messages) {
+                try {
+                    processMessage(message);
+                } catch (RuntimeException e) {
+                    System.err.println("Error processing " + message.getType() + " message: " + e.getMessage());
+                }
             }
-        } catch (IOException e) {
-            System.err.println("Error in communication: " + e.getMessage()); // Handle communication errors
+        } finally {
+            controller.endBatch();
         }
     }
 
@@ -60,8 +78,23 @@ public class ClientHandler implements Runnable {
      * @param jsonMessage The JSON message to process
      */
     public void processMessage(String jsonMessage) {
-        Communication message = MessageSerializer.deserialize(jsonMessage); // Deserialize the JSON message to a Communication object
+        processMessage(MessageSerializer.deserialize(jsonMessage)); // Deserialize the JSON message to a Communication object
+    }
+
+    /**
+     * Processes a decoded message received from the server.
+     *
+     * @param message The message to process
+     */
+    public void processMessage(Communication message) {
         ClientMessageProcessor processor = ClientMessageProcessorFactory.getProcessor(message.getType()); // Get the appropriate processor based on the message type
+        if (processor == null) {
+            System.err.println("No processor for " + message.getType() + " messages");
+            return;
+        }
+        MessageDispatchedEvent event = new MessageDispatchedEvent();
+        event.begin();
         processor.processMessage(message, controller); // Process the message using the processor
+        event.finish(ChatEvents.CLIENT, message, null, null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package com.example.client.network;
+
+import com.example.common.users.User;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Properties;
+
+/**
+ * The ClientIdentity class remembers the user id the client logged in with for each username, so that
+ * someone who starts the client again is the same user to the server: their chats and the messages
+ * kept for them while they were offline are found under that id.
+ * Ids are no secret, since the server tells every client who is online, so each id is remembered with
+ * a random secret the client logs in with; the server only accepts the id from a client that sends the
+ * secret it was first claimed with.
+ * The ids are kept in a properties file, .chat-client/identity.properties in the user's home directory
+ * unless the chat.client.identityFile property names another, as the id and the secret separated by a
+ * space. The file is written readable by its owner only, where the file system allows it. Clients
+ * sharing the file and a username share the user, so logging in on one replaces the session of the other.
+ */
+public class ClientIdentity {
+    private static final int SECRET_BYTES = 32; // Random bytes in a secret
+    private static final SecureRandom RANDOM = new SecureRandom(); // Source of the secrets
+
+    private final Path file; // The properties file holding the ids by username
+
+    /**
+     * Constructor for ClientIdentity.
+     *
+     * @param file The properties file holding the ids by username
+     */
+    public ClientIdentity(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Uses the file named by the chat.client.identityFile property, or the default one in the user's home directory.
+     *
+     * @return The identity store
+     */
+    public static ClientIdentity withDefaults() {
+        String file = System.getProperty("chat.client.identityFile");
+        return new ClientIdentity(file != null ? Path.of(file) : Path.of(System.getProperty("user.home"), ".chat-client", "identity.properties"));
+    }
+
+    /**
+     * Gets the user for a username, with the id remembered for it or, the first time, a new id that is remembered.
+     *
+     * @param username The username
+     * @return The user
+     */
+    public User userFor(String username) {
+        return loginFor(username).user();
+    }
+
+    /**
+     * Gets the user for a username and the secret to log in with, those remembered for it or, the first
+     * time, a new id and secret that are remembered. An id remembered without a secret gets one.
+     * If the file cannot be written the user still logs in, but as a new user next time.
+     *
+     * @param username The username
+     * @return The user and their secret
+     */
+    public synchronized Login loginFor(String username) {
+        Properties ids = load();
+        String entry = ids.getProperty(username);
+        int separator = entry != null ? entry.indexOf(' ') : -1;
+        if (separator > 0) {
+            User user = new User(entry.substring(0, separator), username, LocalDateTime.now(), false);
+            return new Login(user, entry.substring(separator + 1));
+        }
+        User user = entry != null ? new User(entry, username, LocalDateTime.now(), false) : new User(username);
+        byte[] secret = new byte[SECRET_BYTES];
+        RANDOM.nextBytes(secret);
+        Login login = new Login(user, Base64.getUrlEncoder().withoutPadding().encodeToString(secret));
+        ids.setProperty(username, user.getId() + " " + login.secret());
+        try {
+            save(ids);
+        } catch (IOException e) {
+            System.err.println("Error saving the user id to " + file + ": " + e.getMessage());
+        }
+        return login;
+    }
+
+    /**
+     * Reads the remembered ids.
+     *
+     * @return The ids by username, empty if there is no file or it cannot be read
+     */
+    private Properties load() {
+        Properties ids = new Properties();
+        if (Files.exists(file)) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                ids.load(reader);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("Error reading user ids from " + file + ": " + e.getMessage());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Writes the ids next to the file and moves them over it, so a crash never leaves the file half written.
+     * The temporary file is created readable by its owner only, which the file keeps once moved.
+     *
+     * @param ids The ids by username
+     * @throws IOException if the file cannot be written
+     */
+    private void save(Properties ids) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "identity", ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                ids.store(writer, "User ids and secrets of the chat client by username");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * A user and the secret the client logs in with.
+     *
+     * @param user   The user
+     * @param secret The secret the server knows the user's id by
+     */
+    public record Login(User user, String secret) {
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.client.network;
+
+import com.example.common.codec.FrameDecoder;
+import com.example.common.codec.MessageCodec;
+import com.example.common.messages.Communication;
+import com.example.common.utils.MessageSerializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+/**
+ * The MessageReader class reads the messages the server sends until the connection is closed,
+ * as JSON lines or as frames of the codec negotiated with the server, and hands each one to a receiver.
+ * It knows nothing of what is done with the messages, so the GUI client and headless clients share it.
+ */
+public final class MessageReader {
+    private static final int READ_BUFFER_SIZE = 8 * 1024; // Size of the buffer frames are read into
+
+    /**
+     * Private constructor; the class only has static methods.
+     */
+    private MessageReader() {
+    }
+
+    /**
+     * Reads JSON messages line by line until the connection is closed.
+     *
+     * @param in       The reader of the connection
+     * @param receiver Called with every message, on the reading thread
+     * @throws IOException if reading fails
+     */
+    public static void readLines(BufferedReader in, Consumer<Communication> receiver) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            receiver.accept(MessageSerializer.deserialize(line));
+        }
+    }
+
+    /**
+     * Reads codec frames until the connection is closed.
+     *
+     * @param in       The input stream of the connection
+     * @param codec    The codec negotiated with the server
+     * @param receiver Called with every message, on the reading thread
+     * @throws IOException if reading fails
+     */
+    public static void readFrames(InputStream in, MessageCodec codec, Consumer<Communication> receiver) throws IOException {
+        FrameDecoder decoder = codec.newDecoder();
+        byte[] chunk = new byte[READ_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(chunk);
+        int read;
+        while ((read = in.read(chunk)) >= 0) {
+            buffer.limit(read).position(0);
+            Communication message;
+            while ((message = decoder.decode(buffer)) != null) {
+                receiver.accept(message);
+            }
+        }
+    }
+}
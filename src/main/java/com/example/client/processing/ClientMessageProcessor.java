@@ -6,6 +6,7 @@ import com.example.common.messages.Communication;
 /**
  * The ClientMessageProcessor class is an abstract base class for processing
  * different types of messages on the client side.
+ * One instance of each processor is shared, so processors must not keep state between messages.
  */
 public abstract class ClientMessageProcessor {
 
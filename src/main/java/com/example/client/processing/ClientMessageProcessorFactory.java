@@ -1,24 +1,64 @@
 package com.example.client.processing;
 
 import com.example.common.messages.CommunicationType;
+import com.example.common.messages.SystemMessageType;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
- * The ClientMessageProcessorFactory class is responsible for creating instances
- * of ClientMessageProcessor based on the type of communication.
+ * The ClientMessageProcessorFactory class provides the ClientMessageProcessor
+ * for each type of communication.
+ * Processors are stateless, since the controller is passed to them, so one instance of each
+ * is shared and looking one up allocates nothing.
  */
 public class ClientMessageProcessorFactory {
+    private static final ClientSystemMessageProcessor systemProcessor = new ClientSystemMessageProcessor(); // Processor for system messages
+    private static volatile Map<CommunicationType, ClientMessageProcessor> processors = createDefaults(); // Processors by message type, replaced on registration
+
+    /**
+     * Creates the table of the built-in processors.
+     *
+     * @return The processors by communication type
+     */
+    private static Map<CommunicationType, ClientMessageProcessor> createDefaults() {
+        Map<CommunicationType, ClientMessageProcessor> defaults = new EnumMap<>(CommunicationType.class);
+        defaults.put(CommunicationType.TEXT, new ClientTextMessageProcessor()); // Processor for text messages
+        defaults.put(CommunicationType.USER_UPDATE, new ClientUserUpdateMessageProcessor()); // Processor for user update messages
+        defaults.put(CommunicationType.SYSTEM, systemProcessor); // Processor for system messages
+        return defaults;
+    }
 
     /**
-     * Returns an instance of ClientMessageProcessor based on the provided communication type.
+     * Returns the ClientMessageProcessor for the provided communication type.
      *
      * @param type The type of communication
-     * @return An instance of ClientMessageProcessor appropriate for the communication type
+     * @return The shared processor for the communication type, or null if none is registered
      */
     public static ClientMessageProcessor getProcessor(CommunicationType type) {
-        return switch (type) {
-            case TEXT -> new ClientTextMessageProcessor(); // Return a processor for text messages
-            case USER_UPDATE -> new ClientUserUpdateMessageProcessor(); // Return a processor for user update messages
-            case SYSTEM -> new ClientSystemMessageProcessor(); // Return a processor for system messages
-        };
+        return processors.get(type);
+    }
+
+    /**
+     * Registers the processor for a communication type, replacing any previous one.
+     * The table is copied, so registering is safe while messages are being processed.
+     *
+     * @param type      The type of communication
+     * @param processor The processor for messages of the type
+     */
+    public static synchronized void register(CommunicationType type, ClientMessageProcessor processor) {
+        Map<CommunicationType, ClientMessageProcessor> updated = new EnumMap<>(processors);
+        updated.put(type, processor);
+        processors = updated;
+    }
+
+    /**
+     * Registers the handler for a system message type with the built-in system message processor.
+     *
+     * @param type    The system message type
+     * @param handler The handler for messages of the type
+     */
+    public static void registerSystemHandler(SystemMessageType type, ClientSystemMessageHandler handler) {
+        systemProcessor.register(type, handler);
     }
-}
\ No newline at end of file
+}
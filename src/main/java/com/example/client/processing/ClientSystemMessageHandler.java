@@ -0,0 +1,20 @@
+package com.example.client.processing;
+
+import com.example.client.gui.Controller;
+import com.example.common.messages.SystemMessage;
+
+/**
+ * The ClientSystemMessageHandler interface handles one type of system message on the client.
+ * Handlers are registered with ClientSystemMessageProcessor by SystemMessageType.
+ */
+@FunctionalInterface
+public interface ClientSystemMessageHandler {
+
+    /**
+     * Handles a system message and updates the GUI accordingly.
+     *
+     * @param message    The system message received
+     * @param controller The controller to update the GUI
+     */
+    void handle(SystemMessage message, Controller controller);
+}
@@ -1,18 +1,55 @@
 package com.example.client.processing;
 
 import com.example.client.gui.Controller;
+import com.example.common.chats.Chat;
+import com.example.common.chats.ChatDescriptor;
 import com.example.common.messages.Communication;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.IpTransition;
 import com.example.common.messages.SystemMessage;
 import com.example.common.messages.SystemMessageType;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * The ClientSystemMessageProcessor class is responsible for processing
  * system messages on the client side. It extends the ClientMessageProcessor
- * class and handles various types of system messages.
+ * class and dispatches each type of system message through a table of handlers;
+ * types without a handler are ignored.
  */
 public class ClientSystemMessageProcessor extends ClientMessageProcessor {
+    private volatile Map<SystemMessageType, ClientSystemMessageHandler> handlers; // Handlers by system message type, replaced on registration
+
+    /**
+     * Constructor for ClientSystemMessageProcessor.
+     * Registers the handlers for the system messages the server sends.
+     */
+    public ClientSystemMessageProcessor() {
+        Map<SystemMessageType, ClientSystemMessageHandler> defaults = new EnumMap<>(SystemMessageType.class);
+        defaults.put(SystemMessageType.ID_TRANSITION, ClientSystemMessageProcessor::processIdTransition);
+        defaults.put(SystemMessageType.SERVER_SHUTDOWN, (message, controller) ->
+                controller.handleServerDisconnect()); // Handle server shutdown
+        defaults.put(SystemMessageType.IP_TRANSITION, ClientSystemMessageProcessor::processIpTransition);
+        defaults.put(SystemMessageType.COORDINATOR_ID_TRANSITION, ClientSystemMessageProcessor::processCoordinatorTransition);
+        defaults.put(SystemMessageType.CHAT_CREATED, ClientSystemMessageProcessor::processChatCreated);
+        defaults.put(SystemMessageType.HISTORY_PAGE, ClientSystemMessageProcessor::processHistoryPage);
+        defaults.put(SystemMessageType.HEARTBEAT, (message, controller) -> { }); // The connection records every message it receives
+        this.handlers = defaults;
+    }
+
+    /**
+     * Registers the handler for a system message type, replacing any previous one.
+     * The table is copied, so registering is safe while messages are being processed.
+     *
+     * @param type    The system message type
+     * @param handler The handler for messages of the type
+     */
+    public synchronized void register(SystemMessageType type, ClientSystemMessageHandler handler) {
+        Map<SystemMessageType, ClientSystemMessageHandler> updated = new EnumMap<>(handlers);
+        updated.put(type, handler);
+        handlers = updated;
+    }
 
     /**
      * Processes a system message and updates the GUI accordingly.
@@ -27,37 +64,80 @@ public class ClientSystemMessageProcessor extends ClientMessageProcessor {
         }
 
         SystemMessageType type = systemMessage.getSystemType(); // Get the type of the system message
-        String content = systemMessage.getContent(); // Get the content of the system message
+        if (type == null) {
+            return; // Sent by a newer server with a type this client does not know
+        }
 
-        switch (type) {
-            case ID_TRANSITION:
-                controller.getGeneralChat().setId(content); // Set the ID of the general chat
-                break;
+        ClientSystemMessageHandler handler = handlers.get(type);
+        if (handler != null) {
+            handler.handle(systemMessage, controller);
+        }
+    }
 
-            case SERVER_SHUTDOWN:
-                controller.handleServerDisconnect(); // Handle server shutdown
-                break; // No further processing needed
+    /**
+     * Takes over the ID the server gave the general chat and loads its latest messages.
+     *
+     * @param message    The ID transition message
+     * @param controller The controller to update the GUI
+     */
+    private static void processIdTransition(SystemMessage message, Controller controller) {
+        controller.setChatId(controller.getGeneralChat(), message.getContent()); // Set the ID of the general chat, keeping its history
+        controller.openChatHistory(controller.getGeneralChat());
+    }
 
-            case IP_TRANSITION:
-                JsonObject json = JsonParser.parseString(content).getAsJsonObject(); // Parse the JSON content
-                String ip = json.get("ip").getAsString(); // Extract the IP address
-                String port = json.get("port").getAsString(); // Extract the port
-                controller.setSocket(ip + ":" + port); // Set the socket address
-                break;
+    /**
+     * Stores the address of a user the client asked for.
+     *
+     * @param message    The IP transition message
+     * @param controller The controller to update the GUI
+     */
+    private static void processIpTransition(SystemMessage message, Controller controller) {
+        IpTransition transition = message.getPayload(IpTransition.class); // Get the address of the user
+        if (transition != null) {
+            controller.setSocket(transition.ip() + ":" + transition.port()); // Set the socket address
+        }
+    }
 
-            case COORDINATOR_ID_TRANSITION:
-                if (!content.isEmpty()) {
-                    controller.findUserById(content).ifPresent(controller::setCoordinator); // Set the coordinator if the content is not empty
-                }
-                break;
+    /**
+     * Marks the user named by the server as the coordinator.
+     *
+     * @param message    The coordinator transition message
+     * @param controller The controller to update the GUI
+     */
+    private static void processCoordinatorTransition(SystemMessage message, Controller controller) {
+        String content = message.getContent();
+        if (content != null && !content.isEmpty()) {
+            controller.findUserById(content).ifPresent(controller::setCoordinator); // Set the coordinator if the content is not empty
+        }
+    }
 
-            case HEARTBEAT:
-                controller.recordHeartbeat(); // Record a heartbeat
-                break;
+    /**
+     * Adds a chat another user created with this user as a member.
+     *
+     * @param message    The chat created message
+     * @param controller The controller to update the GUI
+     */
+    private static void processChatCreated(SystemMessage message, Controller controller) {
+        ChatDescriptor descriptor = message.getPayload(ChatDescriptor.class); // Get the created chat
+        if (descriptor == null) {
+            return;
+        }
+        Chat chat = descriptor.toChat(controller::findUserById); // Resolve the members locally
+        if (!controller.hasChat(chat)) {
+            controller.addChat(chat); // Add chats created by other users
+        }
+    }
 
-            default:
-                // Handle unknown message types
-                break;
+    /**
+     * Shows a page of a chat's history the client asked for.
+     *
+     * @param message    The history page message
+     * @param controller The controller to update the GUI
+     */
+    private static void processHistoryPage(SystemMessage message, Controller controller) {
+        HistoryPage page = message.getPayload(HistoryPage.class); // Get the page
+        if (page != null && page.chatId() != null && page.messages() != null) {
+            controller.showHistoryPage(page);
         }
     }
-}
\ No newline at end of file
+}
@@ -5,6 +5,8 @@ import com.example.common.chats.Chat;
 import com.example.common.messages.Communication;
 import com.example.common.messages.TextMessage;
 
+import java.util.Optional;
+
 /**
  * The ClientTextMessageProcessor class is responsible for processing
  * text messages on the client side. It extends the ClientMessageProcessor
@@ -21,6 +23,20 @@ public class ClientTextMessageProcessor extends ClientMessageProcessor {
     @Override
     public void processMessage(Communication message, Controller controller) {
         TextMessage textMessage = (TextMessage) message; // Cast the message to TextMessage
+
+        // Messages from the server only carry ids; resolve them to the local chat and user
+        if (textMessage.getChat() == null) {
+            Optional<Chat> knownChat = controller.findChatById(textMessage.getChatId());
+            if (knownChat.isEmpty()) {
+                System.err.println("Dropping message for unknown chat " + textMessage.getChatId());
+                return;
+            }
+            textMessage.setChat(knownChat.get());
+        }
+        if (textMessage.getSender() == null) {
+            textMessage.setSender(controller.resolveUser(textMessage.getSenderId()));
+        }
+
         System.out.println(textMessage.getSender().getUsername() + ": " + textMessage.getContent()); // Print the sender's username and message content
 
         Chat chat = textMessage.getChat(); // Get the chat associated with the message
@@ -32,4 +48,4 @@ public class ClientTextMessageProcessor extends ClientMessageProcessor {
 
         controller.showMessage(textMessage); // Display the message in the GUI
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package com.example.client.processing;
+
+import com.example.common.messages.Communication;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * The MessageDispatcher class hands the messages read from the server over to the event dispatch thread.
+ * The reader thread only queues each message; the queued messages are then applied together in
+ * one task per tick, so a burst of messages costs a few layouts and repaints instead of one per message.
+ * A tick runs at once when the previous one is at least a tick interval ago, and otherwise waits for
+ * the interval to pass, so the GUI is updated at most once per frame.
+ */
+public class MessageDispatcher {
+    public static final int MAX_BATCH = 4096; // Most messages applied in one tick, so the GUI stays responsive
+    private static final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().daemon().name("client-dispatch").factory()); // Delays ticks to the next frame
+    private final Queue<Communication> pending = new ConcurrentLinkedQueue<>(); // Messages not applied yet, in order of arrival
+    private final AtomicBoolean tickPending = new AtomicBoolean(false); // Whether a tick has been scheduled
+    private final Consumer<List<Communication>> handler; // Applies a batch of messages on the event dispatch thread
+    private final Executor edt; // Runs ticks on the event dispatch thread
+    private final long tickNanos; // Shortest time between two ticks
+    private volatile long lastTickNanos; // Time the last tick started
+
+    /**
+     * Constructor for a dispatcher running its ticks on the event dispatch thread.
+     *
+     * @param handler Applies a batch of messages
+     */
+    public MessageDispatcher(Consumer<List<Communication>> handler) {
+        this(handler, SwingUtilities::invokeLater, Long.getLong("chat.client.tickMillis", 16));
+    }
+
+    /**
+     * Constructor for a dispatcher running its ticks with an executor.
+     *
+     * @param handler    Applies a batch of messages
+     * @param edt        Runs the ticks, one at a time
+     * @param tickMillis Shortest time between two ticks in milliseconds
+     */
+    public MessageDispatcher(Consumer<List<Communication>> handler, Executor edt, long tickMillis) {
+        this.handler = handler;
+        this.edt = edt;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.lastTickNanos = System.nanoTime() - tickNanos;
+    }
+
+    /**
+     * Queues a message to be applied with the next tick, scheduling the tick unless one is already pending.
+     * Called by the reader thread.
+     *
+     * @param message The message read
+     */
+    public void submit(Communication message) {
+        pending.add(message);
+        scheduleTick();
+    }
+
+    /**
+     * Schedules a tick unless one is already pending.
+     */
+    private void scheduleTick() {
+        if (!tickPending.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = lastTickNanos + tickNanos - System.nanoTime();
+        if (delay <= 0) {
+            edt.execute(this::tick);
+        } else {
+            ticker.schedule(() -> edt.execute(this::tick), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Applies the messages queued since the last tick, at most MAX_BATCH of them.
+     * Messages left over, or queued while the batch is applied, get another tick.
+     */
+    private void tick() {
+        lastTickNanos = System.nanoTime();
+        tickPending.set(false); // Messages queued from here on schedule the next tick
+        List<Communication> batch = new ArrayList<>();
+        Communication message;
+        while (batch.size() < MAX_BATCH && (message = pending.poll()) != null) {
+            batch.add(message);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                handler.accept(batch);
+            }
+        } finally {
+            if (!pending.isEmpty()) {
+                scheduleTick();
+            }
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting for a tick.
+     *
+     * @return The number of queued messages
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.common.chats;
+
+import com.example.common.messages.SystemPayload;
+import com.example.common.users.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * The ChatDescriptor class describes a chat's identity and membership by user ids.
+ * It is exchanged once, as the payload of CHAT_CREATE and CHAT_CREATED messages, so that text
+ * messages only need to carry the chat's id.
+ */
+public class ChatDescriptor implements SystemPayload {
+    private final String id; // Unique identifier of the chat
+    private final ChatType type; // Whether the chat is private or a group
+    private final String name; // Name of a group chat, or null for a private chat
+    private final List<String> participantIds; // IDs of the chat's participants
+
+    /**
+     * Constructor for ChatDescriptor.
+     *
+     * @param id             Unique identifier of the chat
+     * @param type           Whether the chat is private or a group
+     * @param name           Name of a group chat, or null for a private chat
+     * @param participantIds IDs of the chat's participants
+     */
+    public ChatDescriptor(String id, ChatType type, String name, List<String> participantIds) {
+        this.id = id;
+        this.type = type;
+        this.name = name;
+        this.participantIds = participantIds;
+    }
+
+    /**
+     * Describes an existing chat.
+     *
+     * @param chat The chat to describe
+     * @return The chat's descriptor
+     */
+    public static ChatDescriptor of(Chat chat) {
+        List<String> participantIds = new ArrayList<>();
+        for (User participant : chat.getParticipants()) {
+            participantIds.add(participant.getId());
+        }
+        String name = chat instanceof GroupChat groupChat ? groupChat.name : null;
+        return new ChatDescriptor(chat.getId(), chat.getType(), name, participantIds);
+    }
+
+    /**
+     * Builds the described chat, resolving participants through the given lookup.
+     * Participants the lookup does not know are left out.
+     *
+     * @param userLookup Finds a user by ID
+     * @return The chat
+     */
+    public Chat toChat(Function<String, Optional<User>> userLookup) {
+        Chat chat = type == ChatType.GROUP ? new GroupChat(name) : new PrivateChat();
+        chat.setId(id);
+        for (String participantId : participantIds) {
+            userLookup.apply(participantId).ifPresent(chat::addParticipant);
+        }
+        return chat;
+    }
+
+    /**
+     * Gets the ID of the chat.
+     *
+     * @return The chat ID
+     */
+    public String getId() { return id; }
+
+    /**
+     * Gets the type of the chat.
+     *
+     * @return The chat type
+     */
+    public ChatType getType() { return type; }
+
+    /**
+     * Gets the name of a group chat.
+     *
+     * @return The name, or null for a private chat
+     */
+    public String getName() { return name; }
+
+    /**
+     * Gets the IDs of the chat's participants.
+     *
+     * @return The participant IDs
+     */
+    public List<String> getParticipantIds() { return participantIds; }
+}
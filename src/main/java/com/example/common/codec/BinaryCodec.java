@@ -0,0 +1,703 @@
+package com.example.common.codec;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.messages.*;
+import com.example.common.users.User;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The BinaryCodec class encodes messages as compact length-prefixed binary frames.
+ * A frame is the varint length of its body followed by the body:
+ * <pre>
+ * body      = type:u8 messageId:id timestamp:time payload
+ * TEXT      = chatId:id senderId:id content:string
+ * SYSTEM    = systemType:enum content:string payload(present:u8 [fields of the systemType's payload])
+ * USER_UPDATE = status:enum user(present:u8 [id:id username:string createdAt:time coordinator:u8]) secret:string
+ *
+ * IpRequest      = senderId:id selectedUserId:id
+ * IpTransition   = ip:string port:varint
+ * ChatDescriptor = id:id type:enum name:string count:varint participantId:id*count
+ * HistoryRequest = chatId:id before:varlong limit:varint
+ * HistoryPage    = chatId:id nextCursor:varlong count:varint frame*count
+ * </pre>
+ * Ids that are canonical UUIDs take 16 bytes, other ids are written as strings. Timestamps are
+ * epoch milliseconds (UTC) as varints, so they are truncated to the millisecond. Strings are
+ * UTF-8 with a varint length; nullable values store length + 1 and 0 for null. Enums are written by
+ * ordinal + 1, so their constants may only ever be appended. A history page stores its next cursor
+ * + 1, so that NO_MORE takes one byte, and its messages as complete TEXT frames, prefix included.
+ * Those are the frames the server stores, so it can answer a page with the stored bytes as they are.
+ */
+public class BinaryCodec implements MessageCodec {
+    private static final int MAX_LENGTH_PREFIX = 5; // Bytes of the largest varint int
+    private static final int ID_NULL = 0; // Tag of a missing id
+    private static final int ID_UUID = 1; // Tag of an id stored as 16 UUID bytes
+    private static final int ID_STRING = 2; // Tag of an id stored as a string
+
+    private static final CommunicationType[] COMMUNICATION_TYPES = CommunicationType.values(); // Types by ordinal
+    private static final SystemMessageType[] SYSTEM_TYPES = SystemMessageType.values(); // System types by ordinal
+    private static final UserStatus[] STATUSES = UserStatus.values(); // Statuses by ordinal
+    private static final ChatType[] CHAT_TYPES = ChatType.values(); // Chat types by ordinal
+
+    /**
+     * Gets the wire format this codec implements.
+     *
+     * @return BINARY
+     */
+    @Override
+    public WireFormat getFormat() {
+        return WireFormat.BINARY;
+    }
+
+    /**
+     * Encodes a message as a length-prefixed binary frame.
+     *
+     * @param message The message to encode
+     * @return The encoded frame
+     */
+    @Override
+    public byte[] encode(Communication message) {
+        return encodeFrame(message);
+    }
+
+    /**
+     * Encodes the head of a history page frame whose messages are already binary frames, such as
+     * those stored in the server's message log. The head followed by the message frames, exactly as
+     * they are, makes the same frame as encoding the page with the decoded messages, so the
+     * frames never have to be decoded or copied into the page.
+     *
+     * @param message      A HISTORY_PAGE message; its page gives the chat id and cursor, and its messages are ignored
+     * @param count        The number of message frames that follow the head
+     * @param framesLength The total size of the message frames
+     * @return The head of the frame, starting with the length prefix of the whole frame
+     */
+    public static byte[] encodeHistoryPageHead(SystemMessage message, int count, int framesLength) {
+        HistoryPage page = message.getPayload(HistoryPage.class);
+        if (page == null) {
+            throw new IllegalArgumentException("Not a history page");
+        }
+        Writer writer = new Writer();
+        writer.position = MAX_LENGTH_PREFIX; // Leave room for the length prefix
+        writer.writeByte(message.getType().ordinal());
+        writer.writeId(message.getMessageId());
+        writer.writeTimestamp(message.getTimestamp());
+        writer.writeEnum(message.getSystemType());
+        writer.writeString(message.getContent());
+        writer.writeByte(1);
+        writer.writeHistoryPageHead(page, count);
+        return writer.toFrame(framesLength);
+    }
+
+    /**
+     * Encodes a message as a length-prefixed binary frame.
+     *
+     * @param message The message to encode
+     * @return The encoded frame
+     */
+    private static byte[] encodeFrame(Communication message) {
+        Writer writer = new Writer();
+        writer.position = MAX_LENGTH_PREFIX; // Leave room for the length prefix
+        writer.writeByte(message.getType().ordinal());
+        writer.writeId(message.getMessageId());
+        writer.writeTimestamp(message.getTimestamp());
+        switch (message) {
+            case TextMessage text -> {
+                writer.writeId(text.getChatId());
+                writer.writeId(text.getSenderId());
+                writer.writeString(text.getContent());
+            }
+            case SystemMessage system -> {
+                writer.writeEnum(system.getSystemType());
+                writer.writeString(system.getContent());
+                writer.writePayload(system.getPayload());
+            }
+            case UserUpdateMessage update -> {
+                writer.writeEnum(update.getStatus());
+                writer.writeUser(update.getUser());
+                writer.writeString(update.getSecret());
+            }
+            default -> throw new IllegalArgumentException("Cannot encode " + message.getClass().getSimpleName());
+        }
+        return writer.toFrame(0);
+    }
+
+    /**
+     * Creates a decoder reading length-prefixed frames.
+     *
+     * @return A new frame decoder
+     */
+    @Override
+    public FrameDecoder newDecoder() {
+        return new LengthPrefixedDecoder();
+    }
+
+    /**
+     * Decodes the body of one frame.
+     *
+     * @param body The body, positioned at its first byte and limited to its end
+     * @return The decoded message
+     * @throws IllegalArgumentException if the body is malformed
+     */
+    static Communication decodeBody(ByteBuffer body) {
+        try {
+            Reader reader = new Reader(body);
+            CommunicationType type = reader.readEnum(COMMUNICATION_TYPES, reader.readByte() + 1);
+            String messageId = reader.readId();
+            LocalDateTime timestamp = reader.readTimestamp();
+            Communication message = switch (type) {
+                case TEXT -> new TextMessage(messageId, timestamp, reader.readId(), reader.readId(), reader.readString());
+                case SYSTEM -> {
+                    SystemMessageType systemType = reader.readEnum(SYSTEM_TYPES, reader.readVarint());
+                    String content = reader.readString();
+                    yield new SystemMessage(messageId, timestamp, systemType, content, reader.readPayload(systemType));
+                }
+                case USER_UPDATE -> {
+                    UserStatus status = reader.readEnum(STATUSES, reader.readVarint());
+                    User user = reader.readUser();
+                    yield new UserUpdateMessage(messageId, timestamp, user, status, reader.readString());
+                }
+                case null -> throw new IllegalArgumentException("Frame without a message type");
+            };
+            if (body.hasRemaining()) {
+                throw new IllegalArgumentException("Frame has " + body.remaining() + " trailing bytes");
+            }
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Frame is truncated");
+        }
+    }
+
+    /**
+     * Growable buffer the body of a frame is written into.
+     */
+    private static class Writer {
+        private byte[] bytes = new byte[128]; // Frame being written
+        private int position; // Next byte to write
+
+        /**
+         * Makes room for more bytes.
+         *
+         * @param count The number of bytes about to be written
+         */
+        private void ensure(int count) {
+            if (position + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(position + count, bytes.length * 2));
+            }
+        }
+
+        /**
+         * Writes one byte.
+         *
+         * @param value The byte to write
+         */
+        private void writeByte(int value) {
+            ensure(1);
+            bytes[position++] = (byte) value;
+        }
+
+        /**
+         * Writes an unsigned int as a varint of 7 bits per byte.
+         *
+         * @param value The value to write
+         */
+        private void writeVarint(int value) {
+            ensure(MAX_LENGTH_PREFIX);
+            while ((value & ~0x7F) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        /**
+         * Writes an unsigned long as a varint of 7 bits per byte.
+         *
+         * @param value The value to write
+         */
+        private void writeVarlong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[position++] = (byte) value;
+        }
+
+        /**
+         * Writes raw bytes.
+         *
+         * @param value The bytes to write
+         */
+        private void writeBytes(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, position, value.length);
+            position += value.length;
+        }
+
+        /**
+         * Writes a nullable string.
+         *
+         * @param value The string to write
+         */
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, position, utf8.length);
+            position += utf8.length;
+        }
+
+        /**
+         * Writes a nullable id, as 16 bytes if it is a canonical UUID.
+         *
+         * @param id The id to write
+         */
+        private void writeId(String id) {
+            if (id == null) {
+                writeByte(ID_NULL);
+                return;
+            }
+            UUID uuid = parseCanonicalUuid(id);
+            if (uuid == null) {
+                writeByte(ID_STRING);
+                writeString(id);
+                return;
+            }
+            writeByte(ID_UUID);
+            ensure(16);
+            writeLong(uuid.getMostSignificantBits());
+            writeLong(uuid.getLeastSignificantBits());
+        }
+
+        /**
+         * Writes a long as 8 big-endian bytes.
+         *
+         * @param value The value to write
+         */
+        private void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Writes a nullable timestamp as zigzag-encoded epoch milliseconds.
+         *
+         * @param timestamp The timestamp to write
+         */
+        private void writeTimestamp(LocalDateTime timestamp) {
+            if (timestamp == null) {
+                writeVarlong(0);
+                return;
+            }
+            long millis = timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+            writeVarlong(((millis << 1) ^ (millis >> 63)) + 1);
+        }
+
+        /**
+         * Writes a nullable enum constant by its ordinal.
+         *
+         * @param value The constant to write
+         */
+        private void writeEnum(Enum<?> value) {
+            writeVarint(value == null ? 0 : value.ordinal() + 1);
+        }
+
+        /**
+         * Writes a nullable user.
+         *
+         * @param user The user to write
+         */
+        private void writeUser(User user) {
+            if (user == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            writeId(user.getId());
+            writeString(user.getUsername());
+            writeTimestamp(user.getCreatedAt());
+            writeByte(user.getIsCoordinator() ? 1 : 0);
+        }
+
+        /**
+         * Writes a nullable system payload.
+         *
+         * @param payload The payload to write
+         */
+        private void writePayload(SystemPayload payload) {
+            if (payload == null) {
+                writeByte(0);
+                return;
+            }
+            writeByte(1);
+            switch (payload) {
+                case IpRequest request -> {
+                    writeId(request.senderId());
+                    writeId(request.selectedUserId());
+                }
+                case IpTransition transition -> {
+                    writeString(transition.ip());
+                    writeVarint(transition.port());
+                }
+                case ChatDescriptor chat -> {
+                    writeId(chat.getId());
+                    writeEnum(chat.getType());
+                    writeString(chat.getName());
+                    List<String> participantIds = chat.getParticipantIds() != null ? chat.getParticipantIds() : List.of();
+                    writeVarint(participantIds.size());
+                    for (String participantId : participantIds) {
+                        writeId(participantId);
+                    }
+                }
+                case HistoryRequest request -> {
+                    writeId(request.chatId());
+                    writeVarlong(request.before());
+                    writeVarint(request.limit());
+                }
+                case HistoryPage page -> {
+                    List<TextMessage> messages = page.messages() != null ? page.messages() : List.of();
+                    writeHistoryPageHead(page, messages.size());
+                    for (TextMessage message : messages) {
+                        writeBytes(encodeFrame(message));
+                    }
+                }
+                default -> throw new IllegalArgumentException("Cannot encode " + payload.getClass().getSimpleName());
+            }
+        }
+
+        /**
+         * Writes the fields of a history page that come before its message frames.
+         *
+         * @param page  The page
+         * @param count The number of message frames that follow
+         */
+        private void writeHistoryPageHead(HistoryPage page, int count) {
+            writeId(page.chatId());
+            writeVarlong(page.nextCursor() + 1);
+            writeVarint(count);
+        }
+
+        /**
+         * Puts the length prefix in front of the body.
+         *
+         * @param trailingLength Bytes of the body that are sent after the written ones, not part of the result
+         * @return The frame, or its head if bytes are to follow
+         */
+        private byte[] toFrame(int trailingLength) {
+            int bodyLength = position - MAX_LENGTH_PREFIX + trailingLength;
+            int prefixLength = varintSize(bodyLength);
+            int start = MAX_LENGTH_PREFIX - prefixLength;
+            int value = bodyLength;
+            for (int i = start; i < MAX_LENGTH_PREFIX - 1; i++) {
+                bytes[i] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[MAX_LENGTH_PREFIX - 1] = (byte) value;
+            return Arrays.copyOfRange(bytes, start, position);
+        }
+    }
+
+    /**
+     * Cursor over the body of a frame.
+     *
+     * @param buffer The body
+     */
+    private record Reader(ByteBuffer buffer) {
+
+        /**
+         * Reads one unsigned byte.
+         *
+         * @return The byte
+         */
+        private int readByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        /**
+         * Reads a varint int.
+         *
+         * @return The value
+         */
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint is too long");
+        }
+
+        /**
+         * Reads a varint long.
+         *
+         * @return The value
+         */
+        private long readVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint is too long");
+        }
+
+        /**
+         * Reads a nullable string.
+         *
+         * @return The string, or null
+         */
+        private String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining()) {
+                throw new IllegalArgumentException("String runs past the end of the frame");
+            }
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            } else {
+                byte[] utf8 = new byte[length];
+                buffer.get(buffer.position(), utf8);
+                value = new String(utf8, StandardCharsets.UTF_8);
+            }
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        /**
+         * Reads a nullable id.
+         *
+         * @return The id, or null
+         */
+        private String readId() {
+            int tag = readByte();
+            return switch (tag) {
+                case ID_NULL -> null;
+                case ID_UUID -> new UUID(buffer.getLong(), buffer.getLong()).toString();
+                case ID_STRING -> readString();
+                default -> throw new IllegalArgumentException("Unknown id tag " + tag);
+            };
+        }
+
+        /**
+         * Reads a nullable timestamp.
+         *
+         * @return The timestamp, or null
+         */
+        private LocalDateTime readTimestamp() {
+            long encoded = readVarlong();
+            if (encoded == 0) {
+                return null;
+            }
+            long zigzag = encoded - 1;
+            long millis = (zigzag >>> 1) ^ -(zigzag & 1);
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+        }
+
+        /**
+         * Looks up a nullable enum constant by its encoded ordinal.
+         *
+         * @param constants The constants of the enum
+         * @param encoded   The ordinal + 1, or 0 for null
+         * @return The constant, or null
+         */
+        private <E extends Enum<E>> E readEnum(E[] constants, int encoded) {
+            if (encoded == 0) {
+                return null;
+            }
+            if (encoded < 0 || encoded > constants.length) {
+                throw new IllegalArgumentException("Unknown " + constants.getClass().getComponentType().getSimpleName() + " " + (encoded - 1));
+            }
+            return constants[encoded - 1];
+        }
+
+        /**
+         * Reads a nullable user.
+         *
+         * @return The user, or null
+         */
+        private User readUser() {
+            if (readByte() == 0) {
+                return null;
+            }
+            return new User(readId(), readString(), readTimestamp(), readByte() != 0);
+        }
+
+        /**
+         * Reads a nullable system payload of the class the system message type names.
+         *
+         * @param systemType The type of the system message
+         * @return The payload, or null
+         */
+        private SystemPayload readPayload(SystemMessageType systemType) {
+            if (readByte() == 0) {
+                return null;
+            }
+            Class<? extends SystemPayload> payloadType = systemType != null ? systemType.getPayloadType() : null;
+            if (payloadType == IpRequest.class) {
+                return new IpRequest(readId(), readId());
+            } else if (payloadType == IpTransition.class) {
+                return new IpTransition(readString(), readVarint());
+            } else if (payloadType == ChatDescriptor.class) {
+                String id = readId();
+                ChatType type = readEnum(CHAT_TYPES, readVarint());
+                String name = readString();
+                int count = readVarint();
+                if (count < 0 || count > buffer.remaining()) {
+                    throw new IllegalArgumentException("Participant count " + count + " runs past the end of the frame");
+                }
+                List<String> participantIds = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    participantIds.add(readId());
+                }
+                return new ChatDescriptor(id, type, name, participantIds);
+            } else if (payloadType == HistoryRequest.class) {
+                return new HistoryRequest(readId(), readVarlong(), readVarint());
+            } else if (payloadType == HistoryPage.class) {
+                String chatId = readId();
+                long nextCursor = readVarlong() - 1;
+                int count = readVarint();
+                if (count < 0 || count > buffer.remaining()) {
+                    throw new IllegalArgumentException("Message count " + count + " runs past the end of the frame");
+                }
+                List<TextMessage> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    int length = readVarint();
+                    if (length < 0 || length > buffer.remaining()) {
+                        throw new IllegalArgumentException("Message frame runs past the end of the page");
+                    }
+                    ByteBuffer body = buffer.slice(buffer.position(), length);
+                    buffer.position(buffer.position() + length);
+                    if (!(decodeBody(body) instanceof TextMessage message)) {
+                        throw new IllegalArgumentException("History page holds a message that is not a text message");
+                    }
+                    messages.add(message);
+                }
+                return new HistoryPage(chatId, messages, nextCursor);
+            }
+            throw new IllegalArgumentException("Unexpected payload for " + systemType);
+        }
+    }
+
+    /**
+     * Splits the stream into frames by their length prefix.
+     */
+    private static class LengthPrefixedDecoder implements FrameDecoder {
+        private int length = -1; // Length of the current body, or -1 while reading the prefix
+        private int prefixValue; // Prefix bits read so far
+        private int prefixShift; // Bits of the prefix read so far
+        private byte[] body; // Body of a frame split across chunks
+        private int bodyFilled; // Number of body bytes received
+
+        /**
+         * Consumes bytes until the next frame is complete.
+         *
+         * @param buffer The bytes read from the stream
+         * @return The decoded message, or null if no frame has been completed
+         */
+        @Override
+        public Communication decode(ByteBuffer buffer) {
+            while (length < 0) {
+                if (!buffer.hasRemaining()) {
+                    return null;
+                }
+                int b = buffer.get() & 0xFF;
+                prefixValue |= (b & 0x7F) << prefixShift;
+                prefixShift += 7;
+                if ((b & 0x80) == 0) {
+                    if (prefixValue < 0 || prefixValue > MAX_FRAME_SIZE) {
+                        throw new IllegalArgumentException("Frame exceeds " + MAX_FRAME_SIZE + " bytes");
+                    }
+                    length = prefixValue;
+                    prefixValue = 0;
+                    prefixShift = 0;
+                } else if (prefixShift >= 35) {
+                    throw new IllegalArgumentException("Frame length prefix is too long");
+                }
+            }
+
+            if (body == null && buffer.remaining() >= length) {
+                // The whole frame is in the buffer: decode it in place
+                ByteBuffer slice = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                length = -1;
+                return decodeBody(slice);
+            }
+
+            if (body == null) {
+                body = new byte[length];
+                bodyFilled = 0;
+            }
+            int count = Math.min(buffer.remaining(), length - bodyFilled);
+            buffer.get(body, bodyFilled, count);
+            bodyFilled += count;
+            if (bodyFilled < length) {
+                return null; // Wait for the rest of the frame
+            }
+            ByteBuffer complete = ByteBuffer.wrap(body);
+            body = null;
+            length = -1;
+            return decodeBody(complete);
+        }
+    }
+
+    /**
+     * Returns the number of bytes a varint takes.
+     *
+     * @param value The unsigned value
+     * @return The size of its varint encoding
+     */
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Parses an id that is a UUID in its canonical lower-case form.
+     * Anything else, including upper-case UUIDs, returns null so that the id is kept as a string
+     * and comes back unchanged.
+     *
+     * @param id The id
+     * @return The UUID, or null if the id would not survive the round trip
+     */
+    private static UUID parseCanonicalUuid(String id) {
+        if (id.length() != 36) {
+            return null;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : (c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return null;
+            }
+        }
+        return UUID.fromString(id);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.common.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The CodecHandshake class defines how a connection agrees on its wire format.
+ * A client that wants a format other than JSON sends the line {@code CODEC <format>} before anything
+ * else, and the server answers with the line {@code CODEC <format>} naming the format both sides use
+ * from then on. A client that starts right away with a JSON frame keeps speaking JSON, so clients that
+ * predate the handshake keep working unchanged.
+ */
+public final class CodecHandshake {
+    public static final int MAX_LINE_LENGTH = 64; // Longest handshake line accepted
+    private static final String PREFIX = "CODEC "; // Start of every handshake line
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private CodecHandshake() {
+    }
+
+    /**
+     * Encodes the line a client sends to ask for a format.
+     *
+     * @param format The requested format
+     * @return The encoded request line
+     */
+    public static byte[] request(WireFormat format) {
+        return line(format);
+    }
+
+    /**
+     * Encodes the line the server answers with.
+     *
+     * @param format The format the connection will use
+     * @return The encoded reply line
+     */
+    public static byte[] reply(WireFormat format) {
+        return line(format);
+    }
+
+    /**
+     * Parses a handshake line.
+     *
+     * @param line The line, without its line end
+     * @return The format it names, or null if the line is not a handshake or names an unknown format
+     */
+    public static WireFormat parse(String line) {
+        String trimmed = line.strip();
+        if (!trimmed.startsWith(PREFIX)) {
+            return null;
+        }
+        return WireFormat.fromName(trimmed.substring(PREFIX.length()).strip());
+    }
+
+    /**
+     * Reads the server's reply one byte at a time, so nothing after it is consumed.
+     *
+     * @param in The raw input stream of the connection
+     * @return The format the server chose
+     * @throws IOException if the stream ends or the reply is not a valid handshake line
+     */
+    public static WireFormat readReply(InputStream in) throws IOException {
+        byte[] line = new byte[MAX_LINE_LENGTH];
+        int length = 0;
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("Connection closed during the codec handshake");
+            }
+            if (length == MAX_LINE_LENGTH) {
+                throw new IOException("Codec handshake reply is too long");
+            }
+            line[length++] = (byte) b;
+        }
+        WireFormat format = parse(new String(line, 0, length, StandardCharsets.US_ASCII));
+        if (format == null) {
+            throw new IOException("Invalid codec handshake reply");
+        }
+        return format;
+    }
+
+    /**
+     * Encodes a handshake line.
+     *
+     * @param format The format the line names
+     * @return The encoded line
+     */
+    private static byte[] line(WireFormat format) {
+        return (PREFIX + format.getName() + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
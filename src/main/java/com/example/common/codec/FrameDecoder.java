@@ -0,0 +1,23 @@
+package com.example.common.codec;
+
+import com.example.common.messages.Communication;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The FrameDecoder interface splits one inbound byte stream into messages.
+ * Bytes can be handed over in chunks of any size; a frame split across chunks is kept
+ * until the rest of it arrives. A decoder belongs to a single connection and is not thread-safe.
+ */
+public interface FrameDecoder {
+
+    /**
+     * Consumes bytes from the buffer until one message is complete.
+     * Call it again while it returns messages; the remaining bytes stay in the buffer.
+     *
+     * @param buffer The bytes read from the stream
+     * @return The next message, or null if the buffer has been used up without completing one
+     * @throws IllegalArgumentException if a frame is malformed or larger than MessageCodec.MAX_FRAME_SIZE
+     */
+    Communication decode(ByteBuffer buffer);
+}
@@ -0,0 +1,123 @@
+package com.example.common.codec;
+
+import com.example.common.messages.Communication;
+import com.example.common.utils.MessageSerializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The JsonCodec class is the original wire format: one Gson JSON document per line.
+ */
+public class JsonCodec implements MessageCodec {
+
+    /**
+     * Gets the wire format this codec implements.
+     *
+     * @return JSON
+     */
+    @Override
+    public WireFormat getFormat() {
+        return WireFormat.JSON;
+    }
+
+    /**
+     * Encodes a message as UTF-8 JSON followed by a newline.
+     *
+     * @param message The message to encode
+     * @return The encoded frame
+     */
+    @Override
+    public byte[] encode(Communication message) {
+        return (MessageSerializer.serialize(message) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates a decoder splitting the stream on newlines.
+     *
+     * @return A new frame decoder
+     */
+    @Override
+    public FrameDecoder newDecoder() {
+        return new LineDecoder();
+    }
+
+    /**
+     * Splits the stream on newlines, completing any line left over from the previous chunk.
+     * CRLF line ends and empty lines are accepted like BufferedReader.readLine does.
+     */
+    private static class LineDecoder implements FrameDecoder {
+        private static final int RETAINED_LINE_BUFFER_SIZE = 8 * 1024; // Largest line buffer kept between lines
+
+        private byte[] partialLine; // Bytes of a line not yet terminated by a newline
+        private int partialLength; // Number of valid bytes in partialLine
+
+        /**
+         * Consumes bytes up to the end of the next non-empty line.
+         *
+         * @param buffer The bytes read from the stream
+         * @return The message on the line, or null if no line has been completed
+         */
+        @Override
+        public Communication decode(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                int newline = -1;
+                for (int i = start; i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+
+                if (newline < 0) {
+                    appendPartial(buffer, start, buffer.limit() - start); // Wait for the rest of the line
+                    buffer.position(buffer.limit());
+                    return null;
+                }
+
+                appendPartial(buffer, start, newline - start);
+                buffer.position(newline + 1);
+
+                int length = partialLength;
+                if (length > 0 && partialLine[length - 1] == '\r') {
+                    length--;
+                }
+                partialLength = 0;
+                if (length > 0) {
+                    String line = new String(partialLine, 0, length, StandardCharsets.UTF_8);
+                    if (partialLine.length > RETAINED_LINE_BUFFER_SIZE) {
+                        partialLine = null; // Do not keep a large buffer alive for an idle connection
+                    }
+                    return MessageSerializer.deserialize(line);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Appends part of the buffer to the current line.
+         *
+         * @param buffer The buffer
+         * @param offset The offset of the bytes to append
+         * @param length The number of bytes to append
+         */
+        private void appendPartial(ByteBuffer buffer, int offset, int length) {
+            if (length == 0) {
+                return;
+            }
+            int required = partialLength + length;
+            if (required > MAX_FRAME_SIZE) {
+                throw new IllegalArgumentException("Frame exceeds " + MAX_FRAME_SIZE + " bytes");
+            }
+            if (partialLine == null) {
+                partialLine = new byte[Math.max(256, required)];
+            } else if (partialLine.length < required) {
+                partialLine = Arrays.copyOf(partialLine, Math.max(required, partialLine.length * 2));
+            }
+            buffer.get(offset, partialLine, partialLength, length);
+            partialLength = required;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.common.codec;
+
+import com.example.common.messages.Communication;
+
+/**
+ * The MessageCodec interface turns messages into complete wire frames and back.
+ * Implementations are stateless and shared; the state of a connection's inbound stream
+ * lives in the FrameDecoder the codec creates for it.
+ */
+public interface MessageCodec {
+
+    /**
+     * Largest frame a decoder accepts.
+     */
+    int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Gets the wire format this codec implements.
+     *
+     * @return The wire format
+     */
+    WireFormat getFormat();
+
+    /**
+     * Encodes a message into one complete frame, including its delimiter or length prefix.
+     *
+     * @param message The message to encode
+     * @return The encoded frame
+     */
+    byte[] encode(Communication message);
+
+    /**
+     * Creates a decoder for one inbound stream of frames.
+     *
+     * @return A new frame decoder
+     */
+    FrameDecoder newDecoder();
+}
@@ -0,0 +1,36 @@
+package com.example.common.codec;
+
+import java.util.Locale;
+
+/**
+ * The WireFormat enum lists the encodings a connection can use for its frames.
+ * Every connection starts out with JSON; a client can ask for another format when it connects.
+ */
+public enum WireFormat {
+    JSON,   // Newline-delimited Gson JSON, spoken by every client
+    BINARY; // Compact length-prefixed binary frames
+
+    /**
+     * Gets the name of the format as used in the handshake.
+     *
+     * @return The lower-case name of the format
+     */
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds a format by its handshake name.
+     *
+     * @param name The name of the format, in any case
+     * @return The format, or null if there is no such format
+     */
+    public static WireFormat fromName(String name) {
+        for (WireFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.common.events;
+
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+
+/**
+ * Helpers shared by the Java Flight Recorder events of the chat, which are named com.example.chat.*
+ * and listed in the Chat category of a recording.
+ * <p>
+ * Events are created and filled in only on the paths they describe, and only committed when the
+ * recording asks for them, so they cost next to nothing when no recording is running.
+ */
+public final class ChatEvents {
+    public static final String SERVER = "server"; // Side of an event emitted by the server
+    public static final String CLIENT = "client"; // Side of an event emitted by a client
+
+    /**
+     * Private constructor; the class only has static methods.
+     */
+    private ChatEvents() {
+    }
+
+    /**
+     * Names the type of a message in an event, such as TEXT or SYSTEM/HEARTBEAT.
+     *
+     * @param message The message
+     * @return The type name, or OTHER if the message has no type
+     */
+    public static String typeName(Communication message) {
+        if (message == null || message.getType() == null) {
+            return "OTHER";
+        }
+        if (message instanceof SystemMessage systemMessage && systemMessage.getSystemType() != null) {
+            return message.getType().name() + "/" + systemMessage.getSystemType().name();
+        }
+        return message.getType().name();
+    }
+}
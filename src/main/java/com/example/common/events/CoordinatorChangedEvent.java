@@ -0,0 +1,25 @@
+package com.example.common.events;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted when the server assigns a new coordinator, or has none left because the last user left.
+ */
+@Name("com.example.chat.CoordinatorChanged")
+@Label("Coordinator Changed")
+@Category({"Chat", "Connections"})
+@Description("The coordinator assigned or reassigned")
+@StackTrace(false)
+public class CoordinatorChangedEvent extends Event {
+    @Label("Previous Coordinator Id")
+    public String previousId; // Id of the previous coordinator, or null
+
+    @Label("Previous Coordinator")
+    public String previousUsername; // Name of the previous coordinator, or null
+
+    @Label("Coordinator Id")
+    public String coordinatorId; // Id of the new coordinator, or null if there is none
+
+    @Label("Coordinator")
+    public String coordinatorUsername; // Name of the new coordinator, or null if there is none
+}
@@ -0,0 +1,26 @@
+package com.example.common.events;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted when the server has queued a frame for all of its recipients; the duration is the time
+ * taken to queue it. Only fan-outs taking 1 ms or more are recorded by default.
+ */
+@Name("com.example.chat.FanOut")
+@Label("Fan-out Completed")
+@Category({"Chat", "Messages"})
+@Description("A frame queued for all of its recipients")
+@Threshold("1 ms")
+@StackTrace(false)
+public class FanOutEvent extends Event {
+    @Label("Message Type")
+    public String messageType; // Type of the message, such as TEXT or SYSTEM/HEARTBEAT
+
+    @Label("Recipients")
+    public int recipients; // Connected clients the frame was queued for
+
+    @Label("Bytes")
+    @Description("Bytes the frame takes on the wire, over all recipients, each in its own wire format")
+    @DataAmount
+    public long bytes; // Size of the frame times the recipients, in their formats
+}
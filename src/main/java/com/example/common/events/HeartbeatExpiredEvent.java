@@ -0,0 +1,27 @@
+package com.example.common.events;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted when the server removes a session whose client has gone quiet for too long.
+ */
+@Name("com.example.chat.HeartbeatExpired")
+@Label("Heartbeat Expired")
+@Category({"Chat", "Connections"})
+@Description("A session removed because its client stopped sending heartbeats")
+@StackTrace(false)
+public class HeartbeatExpiredEvent extends Event {
+    @Label("User Id")
+    public String userId; // Id of the user whose session expired
+
+    @Label("Username")
+    public String username; // Name of the user whose session expired
+
+    @Label("Remote Address")
+    public String remoteAddress; // Address the client connected from
+
+    @Label("Silence")
+    @Description("Time since the client was last heard from")
+    @Timespan(Timespan.MILLISECONDS)
+    public long silenceMillis; // Time since the last inbound frame
+}
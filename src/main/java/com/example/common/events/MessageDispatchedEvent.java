@@ -0,0 +1,49 @@
+package com.example.common.events;
+
+import com.example.common.messages.Communication;
+import jdk.jfr.*;
+
+/**
+ * Emitted when a message has been handled by its processor, on the server or on a client; the
+ * duration is the time the processor took. Only dispatches taking 1 ms or more are recorded by default.
+ */
+@Name("com.example.chat.MessageDispatched")
+@Label("Message Dispatched")
+@Category({"Chat", "Messages"})
+@Description("A message handled by its processor")
+@Threshold("1 ms")
+@StackTrace(false)
+public class MessageDispatchedEvent extends Event {
+    @Label("Side")
+    @Description("server or client")
+    public String side; // Whether the server or a client handled the message
+
+    @Label("Message Type")
+    public String messageType; // Type of the message, such as TEXT or SYSTEM/HEARTBEAT
+
+    @Label("User Id")
+    public String userId; // Id of the user who sent the message, if known
+
+    @Label("Remote Address")
+    public String remoteAddress; // Address of the other end of the connection, if known
+
+    /**
+     * Ends the event, begun before the message was handed to its processor, and commits it if
+     * the dispatch took long enough for the recording to keep it.
+     *
+     * @param side          Whether the server or a client handled the message
+     * @param message       The message handled
+     * @param userId        Id of the user who sent the message, or null
+     * @param remoteAddress Address of the other end of the connection, or null if not known
+     */
+    public void finish(String side, Communication message, String userId, String remoteAddress) {
+        end();
+        if (shouldCommit()) {
+            this.side = side;
+            this.messageType = ChatEvents.typeName(message);
+            this.userId = userId;
+            this.remoteAddress = remoteAddress;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.common.events;
+
+import com.example.common.messages.Communication;
+import jdk.jfr.*;
+
+/**
+ * Emitted for every message decoded from a connection, on the server or on a client.
+ * Disabled by default, since there is one event per message; enable it for a recording with
+ * {@code +com.example.chat.MessageReceived#enabled=true}.
+ */
+@Name("com.example.chat.MessageReceived")
+@Label("Message Received")
+@Category({"Chat", "Messages"})
+@Description("A message decoded from a connection")
+@Enabled(false)
+@StackTrace(false)
+public class MessageReceivedEvent extends Event {
+    @Label("Side")
+    @Description("server or client")
+    public String side; // Whether the server or a client received the message
+
+    @Label("Message Type")
+    public String messageType; // Type of the message, such as TEXT or SYSTEM/HEARTBEAT
+
+    @Label("Remote Address")
+    public String remoteAddress; // Address of the other end of the connection, if known
+
+    /**
+     * Emits the event for a message, if the recording asks for it.
+     *
+     * @param side          Whether the server or a client received the message
+     * @param message       The message received
+     * @param remoteAddress Address of the other end of the connection, or null if not known
+     */
+    public static void emit(String side, Communication message, String remoteAddress) {
+        MessageReceivedEvent event = new MessageReceivedEvent();
+        if (event.isEnabled()) {
+            event.side = side;
+            event.messageType = ChatEvents.typeName(message);
+            event.remoteAddress = remoteAddress;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.common.events;
+
+import jdk.jfr.*;
+
+/**
+ * Emitted by the server when writing the frames gathered for a client took 10 ms or more, which
+ * is when a client or the network is not keeping up.
+ */
+@Name("com.example.chat.SlowWrite")
+@Label("Slow Write")
+@Category({"Chat", "Connections"})
+@Description("A socket write of the frames gathered for a client that took long")
+@Threshold("10 ms")
+@StackTrace(false)
+public class SlowWriteEvent extends Event {
+    @Label("Remote Address")
+    public String remoteAddress; // Address of the client
+
+    @Label("Frames")
+    public int frames; // Frames written
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes; // Bytes written
+
+    /**
+     * Ends the event, begun before the write, and commits it if the write was slow.
+     *
+     * @param remoteAddress Address of the client
+     * @param frames        Frames written
+     * @param bytes         Bytes written
+     */
+    public void finish(String remoteAddress, int frames, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.remoteAddress = remoteAddress;
+            this.frames = frames;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
@@ -26,6 +26,20 @@ public abstract class Communication {
         this.type = type; // Set the communication type
     }
 
+    /**
+     * Constructor for recreating a received Communication.
+     * Used by decoders, so that no new ID is generated for a message that already has one.
+     *
+     * @param type      The type of the communication
+     * @param messageId The unique identifier of the message
+     * @param timestamp The timestamp when the message was created
+     */
+    protected Communication(CommunicationType type, String messageId, LocalDateTime timestamp) {
+        this.messageId = messageId;
+        this.timestamp = timestamp;
+        this.type = type;
+    }
+
     /**
      * Gets the unique identifier of the message.
      *
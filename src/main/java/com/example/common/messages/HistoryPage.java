@@ -0,0 +1,34 @@
+package com.example.common.messages;
+
+import java.util.List;
+
+/**
+ * Payload of a HISTORY_PAGE message: the server answers a HISTORY_REQUEST with the last messages
+ * of a chat before the requested cursor.
+ *
+ * @param chatId     The ID of the chat
+ * @param messages   The messages, oldest first
+ * @param nextCursor Cursor to request the page before this one with, or NO_MORE at the start of the history
+ */
+public record HistoryPage(String chatId, List<TextMessage> messages, long nextCursor) implements SystemPayload {
+    public static final long NO_MORE = -1; // Cursor of a page that begins the chat's history
+
+    /**
+     * Creates a page without messages that ends the history.
+     *
+     * @param chatId The ID of the chat
+     * @return The empty page
+     */
+    public static HistoryPage empty(String chatId) {
+        return new HistoryPage(chatId, List.of(), NO_MORE);
+    }
+
+    /**
+     * Checks if older messages can be requested.
+     *
+     * @return True if the chat has messages before this page
+     */
+    public boolean hasMore() {
+        return nextCursor != NO_MORE;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.common.messages;
+
+/**
+ * Payload of a HISTORY_REQUEST message: a client asks the server for a page of a chat's history.
+ * Cursors are opaque to the client; it starts from LATEST and then passes the cursor of the
+ * previous page to go further back.
+ *
+ * @param chatId The ID of the chat
+ * @param before Cursor the page ends before, or LATEST for the most recent messages
+ * @param limit  The largest number of messages wanted
+ */
+public record HistoryRequest(String chatId, long before, int limit) implements SystemPayload {
+    public static final long LATEST = Long.MAX_VALUE; // Cursor of the end of a chat's history
+}
@@ -0,0 +1,10 @@
+package com.example.common.messages;
+
+/**
+ * Payload of an IP_REQUEST message: a user asks the server for another user's address.
+ *
+ * @param senderId       The ID of the user asking
+ * @param selectedUserId The ID of the user whose address is requested
+ */
+public record IpRequest(String senderId, String selectedUserId) implements SystemPayload {
+}
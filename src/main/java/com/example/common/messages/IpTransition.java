@@ -0,0 +1,10 @@
+package com.example.common.messages;
+
+/**
+ * Payload of an IP_TRANSITION message: the address the server knows for the requested user.
+ *
+ * @param ip   The IP address of the user
+ * @param port The port of the user's connection
+ */
+public record IpTransition(String ip, int port) implements SystemPayload {
+}
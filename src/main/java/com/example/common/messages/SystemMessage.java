@@ -1,12 +1,17 @@
 package com.example.common.messages;
 
+import java.time.LocalDateTime;
+
 /**
  * The SystemMessage class extends the Communication class and represents a system message
  * with a specific type and content.
+ * Types that need more than a single string carry a structured payload instead, of the class
+ * named by their SystemMessageType.
  */
 public class SystemMessage extends Communication {
     private final SystemMessageType systemType; // The type of the system message
     private final String content; // The content of the system message
+    private final SystemPayload payload; // The structured payload of the system message
 
     /**
      * Constructor for creating a new SystemMessage.
@@ -19,6 +24,51 @@ public class SystemMessage extends Communication {
         super(CommunicationType.SYSTEM); // Call the parent constructor with the communication type SYSTEM
         this.systemType = systemType; // Set the system message type
         this.content = content; // Set the content of the system message
+        this.payload = null; // Plain content messages carry no payload
+    }
+
+    /**
+     * Constructor for creating a new SystemMessage with a structured payload.
+     *
+     * @param systemType The type of the system message
+     * @param payload    The payload, of the class the type names
+     */
+    private SystemMessage(SystemMessageType systemType, SystemPayload payload) {
+        super(CommunicationType.SYSTEM); // Call the parent constructor with the communication type SYSTEM
+        this.systemType = systemType; // Set the system message type
+        this.content = null; // Payload messages carry no string content
+        this.payload = payload; // Set the payload of the system message
+    }
+
+    /**
+     * Creates a new SystemMessage carrying a structured payload.
+     *
+     * @param systemType The type of the system message
+     * @param payload    The payload, of the class the type names
+     * @return The system message
+     * @throws IllegalArgumentException if the type does not carry payloads of this class
+     */
+    public static SystemMessage of(SystemMessageType systemType, SystemPayload payload) {
+        if (payload != null && !payload.getClass().equals(systemType.getPayloadType())) {
+            throw new IllegalArgumentException(systemType + " does not carry a " + payload.getClass().getSimpleName());
+        }
+        return new SystemMessage(systemType, payload);
+    }
+
+    /**
+     * Constructor for recreating a received SystemMessage.
+     *
+     * @param messageId  The unique identifier of the message
+     * @param timestamp  The timestamp when the message was created
+     * @param systemType The type of the system message
+     * @param content    The content of the system message
+     * @param payload    The structured payload of the system message
+     */
+    public SystemMessage(String messageId, LocalDateTime timestamp, SystemMessageType systemType, String content, SystemPayload payload) {
+        super(CommunicationType.SYSTEM, messageId, timestamp);
+        this.systemType = systemType;
+        this.content = content;
+        this.payload = payload;
     }
 
     // Getters
@@ -40,4 +90,23 @@ public class SystemMessage extends Communication {
     public String getContent() {
         return content;
     }
-}
\ No newline at end of file
+
+    /**
+     * Gets the structured payload of the system message.
+     *
+     * @return The payload, or null if the message has none
+     */
+    public SystemPayload getPayload() {
+        return payload;
+    }
+
+    /**
+     * Gets the structured payload of the system message as the expected class.
+     *
+     * @param payloadType The expected class of the payload
+     * @return The payload, or null if the message has no payload of that class
+     */
+    public <T extends SystemPayload> T getPayload(Class<T> payloadType) {
+        return payloadType.isInstance(payload) ? payloadType.cast(payload) : null;
+    }
+}
@@ -1,13 +1,48 @@
 package com.example.common.messages;
 
+import com.example.common.chats.ChatDescriptor;
+
 /**
  * Enum representing different types of system messages.
+ * Types that carry structured data name the class of their payload.
+ * New types must be appended, since the binary wire format identifies them by position.
  */
 public enum SystemMessageType {
-    ID_TRANSITION,            // Message type for ID transition
-    IP_TRANSITION,            // Message type for IP transition
-    IP_REQUEST,               // Message type for IP request
-    COORDINATOR_ID_TRANSITION,// Message type for coordinator ID transition
-    SERVER_SHUTDOWN,          // Message type for server shutdown
-    HEARTBEAT,                // Message type for heartbeat
-}
\ No newline at end of file
+    ID_TRANSITION,                            // Message type for ID transition
+    IP_TRANSITION(IpTransition.class),        // Message type for IP transition
+    IP_REQUEST(IpRequest.class),              // Message type for IP request
+    COORDINATOR_ID_TRANSITION,                // Message type for coordinator ID transition
+    SERVER_SHUTDOWN,                          // Message type for server shutdown
+    HEARTBEAT,                                // Message type for heartbeat
+    CHAT_CREATE(ChatDescriptor.class),        // Message type for a client registering a new chat with the server
+    CHAT_CREATED(ChatDescriptor.class),       // Message type for the server announcing a chat to its members
+    HISTORY_REQUEST(HistoryRequest.class),    // Message type for a client asking for a page of a chat's history
+    HISTORY_PAGE(HistoryPage.class);          // Message type for the server answering with a page of history
+
+    private final Class<? extends SystemPayload> payloadType; // Class of the payload, or null if the type only has content
+
+    /**
+     * Constructor for a type whose messages only carry string content.
+     */
+    SystemMessageType() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a type whose messages carry a structured payload.
+     *
+     * @param payloadType The class of the payload
+     */
+    SystemMessageType(Class<? extends SystemPayload> payloadType) {
+        this.payloadType = payloadType;
+    }
+
+    /**
+     * Gets the class of the payload messages of this type carry.
+     *
+     * @return The payload class, or null if messages of this type only carry string content
+     */
+    public Class<? extends SystemPayload> getPayloadType() {
+        return payloadType;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.common.messages;
+
+/**
+ * The SystemPayload interface marks the structured data a system message can carry.
+ * Each SystemMessageType names the payload class it carries, if any, so decoders can bind the
+ * payload directly instead of passing it around as JSON inside a string.
+ */
+public interface SystemPayload {
+}
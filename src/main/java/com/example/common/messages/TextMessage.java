@@ -3,14 +3,21 @@ package com.example.common.messages;
 import com.example.common.chats.Chat;
 import com.example.common.users.User;
 
+import java.time.LocalDateTime;
+
 /**
  * The TextMessage class extends the Communication class and represents a text message
  * sent in a chat by a user.
+ * On the wire a text message only carries the ids of its chat and sender, so its size does not
+ * depend on how many users are in the chat. The chat and sender objects are local references
+ * that the receiving side resolves from those ids.
  */
 public class TextMessage extends Communication {
-    private Chat chat; // The chat where the message is sent
-    private User sender; // The user who sent the message
+    private String chatId; // The ID of the chat where the message is sent
+    private String senderId; // The ID of the user who sent the message
     private String content; // The content of the message
+    private transient Chat chat; // The chat where the message is sent, resolved locally
+    private transient User sender; // The user who sent the message, resolved locally
 
     /**
      * Constructor for creating a new TextMessage.
@@ -22,15 +29,45 @@ public class TextMessage extends Communication {
      */
     public TextMessage(Chat chat, User sender, String content) {
         super(CommunicationType.TEXT); // Call the parent constructor with the communication type TEXT
-        this.chat = chat; // Set the chat
-        this.sender = sender; // Set the sender
+        setChat(chat); // Set the chat
+        setSender(sender); // Set the sender
         this.content = content; // Set the content
     }
 
+    /**
+     * Constructor for recreating a received TextMessage from the ids it carries on the wire.
+     *
+     * @param messageId The unique identifier of the message
+     * @param timestamp The timestamp when the message was created
+     * @param chatId    The ID of the chat where the message is sent
+     * @param senderId  The ID of the user who sent the message
+     * @param content   The content of the message
+     */
+    public TextMessage(String messageId, LocalDateTime timestamp, String chatId, String senderId, String content) {
+        super(CommunicationType.TEXT, messageId, timestamp);
+        this.chatId = chatId;
+        this.senderId = senderId;
+        this.content = content;
+    }
+
+    /**
+     * Gets the ID of the chat where the message is sent.
+     *
+     * @return The chat ID
+     */
+    public String getChatId() { return chatId; }
+
+    /**
+     * Gets the ID of the user who sent the message.
+     *
+     * @return The sender ID
+     */
+    public String getSenderId() { return senderId; }
+
     /**
      * Gets the chat where the message is sent.
      *
-     * @return The chat where the message is sent
+     * @return The chat where the message is sent, or null if it has not been resolved yet
      */
     public Chat getChat() { return chat; }
 
@@ -39,12 +76,17 @@ public class TextMessage extends Communication {
      *
      * @param chat The chat where the message is sent
      */
-    public void setChat(Chat chat) { this.chat = chat; }
+    public void setChat(Chat chat) {
+        this.chat = chat;
+        if (chat != null) {
+            this.chatId = chat.getId();
+        }
+    }
 
     /**
      * Gets the user who sent the message.
      *
-     * @return The user who sent the message
+     * @return The user who sent the message, or null if it has not been resolved yet
      */
     public User getSender() { return sender; }
 
@@ -53,7 +95,12 @@ public class TextMessage extends Communication {
      *
      * @param sender The user who sent the message
      */
-    public void setSender(User sender) { this.sender = sender; }
+    public void setSender(User sender) {
+        this.sender = sender;
+        if (sender != null) {
+            this.senderId = sender.getId();
+        }
+    }
 
     /**
      * Gets the content of the message.
@@ -68,4 +115,4 @@ public class TextMessage extends Communication {
      * @param content The content of the message
      */
     public void setContent(String content) { this.content = content; }
-}
\ No newline at end of file
+}
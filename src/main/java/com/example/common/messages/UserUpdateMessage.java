@@ -2,6 +2,8 @@ package com.example.common.messages;
 
 import com.example.common.users.User;
 
+import java.time.LocalDateTime;
+
 /**
  * The UserUpdateMessage class extends the Communication class and represents a message
  * used to update the status of a user.
@@ -9,6 +11,7 @@ import com.example.common.users.User;
 public class UserUpdateMessage extends Communication {
     private User user; // The user whose status is being updated
     private UserStatus status; // The new status of the user
+    private String secret; // Secret the client holds for the user's id when logging in, or null
 
     /**
      * Constructor for creating a new UserUpdateMessage.
@@ -23,6 +26,46 @@ public class UserUpdateMessage extends Communication {
         this.status = status; // Set the status
     }
 
+    /**
+     * Constructor for the message a client logs in with, carrying the secret it holds for the user's id.
+     *
+     * @param user   The user logging in
+     * @param status The new status of the user
+     * @param secret The secret the user's id was claimed with, or null to log in without one
+     */
+    public UserUpdateMessage(User user, UserStatus status, String secret) {
+        this(user, status);
+        this.secret = secret;
+    }
+
+    /**
+     * Constructor for recreating a received UserUpdateMessage.
+     *
+     * @param messageId The unique identifier of the message
+     * @param timestamp The timestamp when the message was created
+     * @param user      The user whose status is being updated
+     * @param status    The new status of the user
+     */
+    public UserUpdateMessage(String messageId, LocalDateTime timestamp, User user, UserStatus status) {
+        this(messageId, timestamp, user, status, null);
+    }
+
+    /**
+     * Constructor for recreating a received UserUpdateMessage that may carry a secret.
+     *
+     * @param messageId The unique identifier of the message
+     * @param timestamp The timestamp when the message was created
+     * @param user      The user whose status is being updated
+     * @param status    The new status of the user
+     * @param secret    The secret the client holds for the user's id, or null
+     */
+    public UserUpdateMessage(String messageId, LocalDateTime timestamp, User user, UserStatus status, String secret) {
+        super(CommunicationType.USER_UPDATE, messageId, timestamp);
+        this.user = user;
+        this.status = status;
+        this.secret = secret;
+    }
+
     /**
      * Gets the user whose status is being updated.
      *
@@ -50,4 +93,19 @@ public class UserUpdateMessage extends Communication {
      * @param status The new status of the user
      */
     public void setStatus(UserStatus status) { this.status = status; }
-}
\ No newline at end of file
+
+    /**
+     * Gets the secret the client holds for the user's id. Only a client logging in sends one;
+     * the server never passes it on.
+     *
+     * @return The secret, or null
+     */
+    public String getSecret() { return secret; }
+
+    /**
+     * Sets the secret the client holds for the user's id.
+     *
+     * @param secret The secret, or null
+     */
+    public void setSecret(String secret) { this.secret = secret; }
+}
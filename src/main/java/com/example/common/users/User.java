@@ -28,6 +28,21 @@ public class User {
         this.isCoordinator = false; // Default the coordinator status to false
     }
 
+    /**
+     * Constructor to recreate a user received from the network.
+     *
+     * @param id            The unique identifier of the user
+     * @param username      The username of the user
+     * @param createdAt     The timestamp when the user was created
+     * @param isCoordinator The coordinator status of the user
+     */
+    public User(String id, String username, LocalDateTime createdAt, boolean isCoordinator) {
+        this.id = id;
+        this.username = username;
+        this.createdAt = createdAt;
+        this.isCoordinator = isCoordinator;
+    }
+
     // Getters and Setters
 
     /**
@@ -0,0 +1,267 @@
+package com.example.common.utils;
+
+import com.example.common.messages.*;
+import com.example.common.users.User;
+import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+
+/**
+ * The CommunicationAdapterFactory class creates the Gson adapter for all messages.
+ * Messages are written with their "type" discriminator first, so a reader can bind every
+ * other field straight to the concrete message class while streaming through the JSON once.
+ * Messages from peers that write the discriminator elsewhere are read into a tree once and then
+ * bound the same way. Structured system payloads are nested JSON objects, bound to the class
+ * their SystemMessageType names.
+ */
+class CommunicationAdapterFactory implements TypeAdapterFactory {
+
+    /**
+     * Creates the adapter for Communication and its subclasses.
+     *
+     * @param gson The Gson instance, used for nested values
+     * @param type The requested type
+     * @return The adapter, or null for other types
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (!Communication.class.isAssignableFrom(type.getRawType())) {
+            return null;
+        }
+        return (TypeAdapter<T>) new CommunicationAdapter(gson, (Class<? extends Communication>) type.getRawType()).nullSafe();
+    }
+
+    /**
+     * Streaming adapter binding each message type field by field.
+     */
+    private static class CommunicationAdapter extends TypeAdapter<Communication> {
+        private final Gson gson; // Gson instance for nested values
+        private final Class<? extends Communication> expectedType; // Class the read messages must be instances of
+        private final TypeAdapter<LocalDateTime> timestampAdapter; // Adapter for timestamps
+        private final TypeAdapter<User> userAdapter; // Adapter for users
+
+        /**
+         * Constructor for CommunicationAdapter.
+         *
+         * @param gson         The Gson instance, used for nested values
+         * @param expectedType The class the read messages must be instances of
+         */
+        CommunicationAdapter(Gson gson, Class<? extends Communication> expectedType) {
+            this.gson = gson;
+            this.expectedType = expectedType;
+            this.timestampAdapter = gson.getAdapter(LocalDateTime.class);
+            this.userAdapter = gson.getAdapter(User.class);
+        }
+
+        /**
+         * Writes a message, starting with its type.
+         *
+         * @param out     The writer
+         * @param message The message to write
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void write(JsonWriter out, Communication message) throws IOException {
+            out.beginObject();
+            out.name("type").value(message.getType().name());
+            out.name("messageId").value(message.getMessageId());
+            out.name("timestamp");
+            timestampAdapter.write(out, message.getTimestamp());
+            switch (message) {
+                case TextMessage text -> {
+                    out.name("chatId").value(text.getChatId());
+                    out.name("senderId").value(text.getSenderId());
+                    out.name("content").value(text.getContent());
+                }
+                case SystemMessage system -> {
+                    out.name("systemType").value(system.getSystemType() != null ? system.getSystemType().name() : null);
+                    out.name("content").value(system.getContent());
+                    out.name("payload");
+                    if (system.getPayload() != null) {
+                        gson.toJson(system.getPayload(), system.getPayload().getClass(), out);
+                    } else {
+                        out.nullValue();
+                    }
+                }
+                case UserUpdateMessage update -> {
+                    out.name("user");
+                    userAdapter.write(out, update.getUser());
+                    out.name("status").value(update.getStatus() != null ? update.getStatus().name() : null);
+                    if (update.getSecret() != null) {
+                        out.name("secret").value(update.getSecret()); // Only in the message a client logs in with
+                    }
+                }
+                default -> throw new JsonIOException("Cannot serialize " + message.getClass().getSimpleName());
+            }
+            out.endObject();
+        }
+
+        /**
+         * Reads a message, checking that it is of the requested class.
+         * Nested messages, such as those of a history page, are read through this adapter too.
+         *
+         * @param in The reader, positioned at the message
+         * @return The message
+         * @throws IOException if reading fails
+         */
+        @Override
+        public Communication read(JsonReader in) throws IOException {
+            Communication message = readMessage(in);
+            if (!expectedType.isInstance(message)) {
+                throw new JsonParseException("Expected " + expectedType.getSimpleName() + " but read " + message.getType());
+            }
+            return message;
+        }
+
+        /**
+         * Reads a message in one pass if its type comes first, or through a tree otherwise.
+         *
+         * @param in The reader, positioned at the message
+         * @return The message
+         * @throws IOException if reading fails
+         */
+        private Communication readMessage(JsonReader in) throws IOException {
+            in.beginObject();
+            if (!in.hasNext()) {
+                throw new JsonParseException("Message without a type");
+            }
+            String first = in.nextName();
+            if (first.equals("type")) {
+                Communication message = readFields(in, parseType(in.nextString()));
+                in.endObject();
+                return message;
+            }
+
+            // The discriminator comes later: collect the fields and read them again with the type first
+            JsonObject fields = new JsonObject();
+            fields.add(first, JsonParser.parseReader(in));
+            while (in.hasNext()) {
+                fields.add(in.nextName(), JsonParser.parseReader(in));
+            }
+            in.endObject();
+            JsonElement type = fields.remove("type");
+            if (type == null || !type.isJsonPrimitive()) {
+                throw new JsonParseException("Message without a type");
+            }
+            JsonObject reordered = new JsonObject();
+            reordered.add("type", type);
+            for (var field : fields.entrySet()) {
+                reordered.add(field.getKey(), field.getValue());
+            }
+            return fromJsonTree(reordered);
+        }
+
+        /**
+         * Reads the fields following the discriminator into the concrete message class.
+         * Unknown fields are skipped.
+         *
+         * @param in   The reader, positioned after the discriminator
+         * @param type The type of the message
+         * @return The message
+         * @throws IOException if reading fails
+         */
+        private Communication readFields(JsonReader in, CommunicationType type) throws IOException {
+            String messageId = null;
+            LocalDateTime timestamp = null;
+            String chatId = null;
+            String senderId = null;
+            String content = null;
+            SystemMessageType systemType = null;
+            JsonElement payload = null; // Kept as a tree only if it arrives before its systemType
+            SystemPayload boundPayload = null;
+            User user = null;
+            UserStatus status = null;
+            String secret = null;
+
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "messageId" -> messageId = in.nextString();
+                    case "timestamp" -> timestamp = timestampAdapter.read(in);
+                    case "chatId" -> chatId = in.nextString();
+                    case "senderId" -> senderId = in.nextString();
+                    case "content" -> content = in.nextString();
+                    case "systemType" -> systemType = parseEnum(SystemMessageType.class, in.nextString());
+                    case "payload" -> {
+                        if (systemType != null) {
+                            boundPayload = readPayload(in, systemType);
+                        } else {
+                            payload = JsonParser.parseReader(in);
+                        }
+                    }
+                    case "user" -> user = userAdapter.read(in);
+                    case "status" -> status = parseEnum(UserStatus.class, in.nextString());
+                    case "secret" -> secret = in.nextString();
+                    default -> in.skipValue();
+                }
+            }
+
+            return switch (type) {
+                case TEXT -> new TextMessage(messageId, timestamp, chatId, senderId, content);
+                case SYSTEM -> {
+                    if (payload != null && systemType != null && systemType.getPayloadType() != null) {
+                        boundPayload = gson.fromJson(payload, systemType.getPayloadType());
+                    }
+                    yield new SystemMessage(messageId, timestamp, systemType, content, boundPayload);
+                }
+                case USER_UPDATE -> new UserUpdateMessage(messageId, timestamp, user, status, secret);
+            };
+        }
+
+        /**
+         * Reads a payload as the class its system message type names.
+         *
+         * @param in         The reader, positioned at the payload
+         * @param systemType The type of the system message
+         * @return The payload, or null if the type carries none
+         * @throws IOException if reading fails
+         */
+        private SystemPayload readPayload(JsonReader in, SystemMessageType systemType) throws IOException {
+            if (systemType.getPayloadType() == null) {
+                in.skipValue();
+                return null;
+            }
+            return gson.getAdapter(systemType.getPayloadType()).read(in);
+        }
+
+        /**
+         * Parses the discriminator.
+         *
+         * @param name The name of the message type
+         * @return The message type
+         * @throws JsonParseException if there is no such type
+         */
+        private static CommunicationType parseType(String name) {
+            CommunicationType type = parseEnum(CommunicationType.class, name);
+            if (type == null) {
+                throw new JsonParseException("Unknown message type " + name);
+            }
+            return type;
+        }
+
+        /**
+         * Looks an enum constant up by name, like Gson does for enum fields.
+         *
+         * @param enumType The enum class
+         * @param name     The name of the constant
+         * @return The constant, or null if there is no such constant
+         */
+        private static <E extends Enum<E>> E parseEnum(Class<E> enumType, String name) {
+            try {
+                return Enum.valueOf(enumType, name);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+}
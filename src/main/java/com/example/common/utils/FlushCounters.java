@@ -0,0 +1,71 @@
+package com.example.common.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing how outgoing frames are batched into socket flushes.
+ * Updated concurrently by every writer that shares an instance.
+ */
+public class FlushCounters {
+    private final LongAdder flushes = new LongAdder(); // Number of flushes, i.e. socket writes
+    private final LongAdder frames = new LongAdder(); // Number of frames written
+    private final LongAdder bytes = new LongAdder(); // Number of bytes written
+
+    /**
+     * Records one flush.
+     *
+     * @param frameCount The number of frames written by the flush
+     * @param byteCount  The number of bytes written by the flush
+     */
+    public void record(int frameCount, long byteCount) {
+        flushes.increment();
+        frames.add(frameCount);
+        bytes.add(byteCount);
+    }
+
+    /**
+     * Records one flush whose size in bytes is not known to the writer.
+     *
+     * @param frameCount The number of frames written by the flush
+     */
+    public void record(int frameCount) {
+        record(frameCount, 0);
+    }
+
+    /**
+     * Returns the number of flushes recorded.
+     *
+     * @return The flush count
+     */
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    /**
+     * Returns the number of frames written.
+     *
+     * @return The frame count
+     */
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Returns the number of bytes written.
+     *
+     * @return The byte count
+     */
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Returns the average number of frames written per flush.
+     *
+     * @return Frames per flush, or 0 if nothing has been flushed
+     */
+    public double getFramesPerFlush() {
+        long flushCount = flushes.sum();
+        return flushCount == 0 ? 0 : (double) frames.sum() / flushCount;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.common.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies that any number of threads can record into without locking.
+ * Values are counted in log-linear buckets: every power of two is split into 32 buckets of equal
+ * width, so a value is known to within about 3% whatever its size, and the histogram takes the
+ * same 15 KB whether it holds nanoseconds or seconds. Values below 64 are counted exactly.
+ * <p>
+ * Recording is one increment of an array element; percentiles are read from a snapshot, which
+ * copies the counts and may miss the values recorded while it is being taken.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6; // Buckets below 64 hold a single value each
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // Buckets of the first power of two
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2; // Buckets of every further power of two
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_HALF; // Buckets up to Long.MAX_VALUE
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT); // Values recorded per bucket
+    private final LongAdder total = new LongAdder(); // Values recorded
+    private final LongAdder sum = new LongAdder(); // Sum of the values recorded
+    private final AtomicLong max = new AtomicLong(); // Largest value recorded
+
+    /**
+     * Records a value. Negative values are counted as 0.
+     *
+     * @param value The value, usually in nanoseconds
+     */
+    public void record(long value) {
+        long clamped = Math.max(value, 0);
+        counts.incrementAndGet(bucketOf(clamped));
+        total.increment();
+        sum.add(clamped);
+        if (clamped > max.get()) {
+            max.accumulateAndGet(clamped, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return The count
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    /**
+     * Takes a copy of the counts to read percentiles from.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    /**
+     * Finds the bucket a value is counted in.
+     *
+     * @param value The value, not negative
+     * @return The index of the bucket
+     */
+    static int bucketOf(long value) {
+        int magnitude = Math.max(0, Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1));
+        return magnitude * SUB_BUCKET_HALF + (int) (value >>> magnitude);
+    }
+
+    /**
+     * Finds the largest value counted in a bucket.
+     *
+     * @param bucket The index of the bucket
+     * @return The bucket's highest value
+     */
+    static long highestValueOf(int bucket) {
+        int magnitude = bucket < SUB_BUCKET_COUNT ? 0 : bucket / SUB_BUCKET_HALF - 1;
+        long lowest = (long) (bucket - magnitude * SUB_BUCKET_HALF) << magnitude;
+        return lowest + (1L << magnitude) - 1;
+    }
+
+    /**
+     * The counts of a histogram at one moment.
+     */
+    public static final class Snapshot {
+        private final long[] counts; // Values counted per bucket
+        private final long count; // Values counted
+        private final long sum; // Sum of the values recorded
+        private final long max; // Largest value recorded
+
+        /**
+         * Constructor for Snapshot.
+         *
+         * @param counts Values counted per bucket
+         * @param count  Values counted
+         * @param sum    Sum of the values recorded
+         * @param max    Largest value recorded
+         */
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Gets the value below which a given share of the values lie.
+         * The value is the top of its bucket, so it is never below the exact percentile.
+         *
+         * @param percentile The share, from 0 to 100
+         * @return The value at the percentile, or 0 if nothing was counted
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.clamp(percentile, 0, 100) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Takes away the counts of an earlier snapshot of the same histogram, leaving what was
+         * recorded in between. The largest value in between is not kept by the histogram, so it is
+         * the top of the highest bucket counted in between.
+         *
+         * @param earlier A snapshot of the same histogram taken before this one
+         * @return The snapshot of the values recorded in between
+         */
+        public Snapshot since(Snapshot earlier) {
+            long[] difference = new long[counts.length];
+            long intervalMax = 0;
+            for (int i = 0; i < counts.length; i++) {
+                difference[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                if (difference[i] > 0) {
+                    intervalMax = Math.min(highestValueOf(i), max);
+                }
+            }
+            return new Snapshot(difference, Math.max(0, count - earlier.count), Math.max(0, sum - earlier.sum), intervalMax);
+        }
+
+        /**
+         * Gets the number of values counted.
+         *
+         * @return The count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Gets the mean of the values recorded.
+         *
+         * @return The mean, or 0 if nothing was counted
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Gets the sum of the values recorded.
+         *
+         * @return The sum
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Gets the largest value recorded.
+         *
+         * @return The maximum
+         */
+        public long getMax() {
+            return max;
+        }
+    }
+}
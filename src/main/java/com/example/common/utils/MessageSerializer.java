@@ -1,5 +1,9 @@
 package com.example.common.utils;
 
+import com.example.common.codec.BinaryCodec;
+import com.example.common.codec.JsonCodec;
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
 import com.example.common.messages.*;
 import com.example.common.chats.Chat;
 import com.example.common.chats.ChatType;
@@ -7,24 +11,24 @@ import com.example.common.chats.GroupChat;
 import com.example.common.chats.PrivateChat;
 import com.google.gson.typeadapters.RuntimeTypeAdapterFactory;
 import com.google.gson.*;
-import java.lang.reflect.Type;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Utility class for serializing and deserializing messages.
+ * The static methods work with JSON; getCodec gives access to every wire format a connection can use.
  */
 public class MessageSerializer {
     private static final Gson gson; // Gson instance for serialization and deserialization
+    private static final Map<WireFormat, MessageCodec> codecs = new EnumMap<>(WireFormat.class); // Codecs by wire format
 
     static {
-        // Register subclasses for Communication
-        RuntimeTypeAdapterFactory<Communication> communicationAdapter =
-                RuntimeTypeAdapterFactory.of(Communication.class, "type")
-                        .registerSubtype(TextMessage.class, CommunicationType.TEXT.name())
-                        .registerSubtype(UserUpdateMessage.class, CommunicationType.USER_UPDATE.name())
-                        .registerSubtype(SystemMessage.class, CommunicationType.SYSTEM.name());
-
         // Register subclasses for Chat
         RuntimeTypeAdapterFactory<Chat> chatAdapter =
                 RuntimeTypeAdapterFactory.of(Chat.class, "type")
@@ -33,10 +37,24 @@ public class MessageSerializer {
 
         // Initialize the Gson instance with custom adapters
         gson = new GsonBuilder()
-                .registerTypeAdapterFactory(communicationAdapter)
+                .registerTypeAdapterFactory(new CommunicationAdapterFactory())
                 .registerTypeAdapterFactory(chatAdapter)
                 .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
                 .create();
+
+        // Register the wire codecs
+        codecs.put(WireFormat.JSON, new JsonCodec());
+        codecs.put(WireFormat.BINARY, new BinaryCodec());
+    }
+
+    /**
+     * Gets the codec for a wire format.
+     *
+     * @param format The wire format
+     * @return The shared codec for the format
+     */
+    public static MessageCodec getCodec(WireFormat format) {
+        return codecs.get(format);
     }
 
     /**
@@ -56,30 +74,32 @@ public class MessageSerializer {
      * @return The deserialized Communication object
      */
     public static Communication deserialize(String json) {
-        Communication message = gson.fromJson(json, Communication.class);
-        if (message.getType() == null) {
-            JsonObject jsonObject = JsonParser.parseString(json).getAsJsonObject();
-            if (jsonObject.has("type")) {
-                message.setType(CommunicationType.valueOf(jsonObject.get("type").getAsString()));
-            }
-        }
-        return message;
+        return gson.fromJson(json, Communication.class);
     }
 
     /**
      * Custom TypeAdapter for LocalDateTime to handle serialization and deserialization.
+     * It works on the token stream, so reading a timestamp builds no intermediate tree.
      */
-    private static class LocalDateTimeAdapter implements JsonSerializer<LocalDateTime>, JsonDeserializer<LocalDateTime> {
+    private static class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
         private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME; // Formatter for LocalDateTime
 
         @Override
-        public JsonElement serialize(LocalDateTime localDateTime, Type type, JsonSerializationContext context) {
-            return new JsonPrimitive(localDateTime.format(formatter)); // Serialize LocalDateTime to JSON string
+        public void write(JsonWriter out, LocalDateTime localDateTime) throws IOException {
+            if (localDateTime == null) {
+                out.nullValue();
+            } else {
+                out.value(localDateTime.format(formatter)); // Serialize LocalDateTime to JSON string
+            }
         }
 
         @Override
-        public LocalDateTime deserialize(JsonElement json, Type type, JsonDeserializationContext context) {
-            return LocalDateTime.parse(json.getAsString(), formatter); // Deserialize JSON string to LocalDateTime
+        public LocalDateTime read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return LocalDateTime.parse(in.nextString(), formatter); // Deserialize JSON string to LocalDateTime
         }
     }
 }
\ No newline at end of file
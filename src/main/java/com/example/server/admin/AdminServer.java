@@ -0,0 +1,315 @@
+package com.example.server.admin;
+
+import com.example.common.messages.CommunicationType;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.users.User;
+import com.example.common.utils.FlushCounters;
+import com.example.common.utils.LatencyHistogram;
+import com.example.server.network.*;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * The AdminServer class is an HTTP listener for operators, on a port of its own, built on the
+ * JDK's HTTP server so that it needs no further dependencies. It answers two GET requests:
+ * <ul>
+ *     <li>{@code /metrics}: the server's counters, queue depths, pipeline latencies and the JVM's
+ *     heap and garbage collections, in the Prometheus text format</li>
+ *     <li>{@code /sessions}: the logged-in users, their connections and chats, and the coordinator, as JSON</li>
+ * </ul>
+ * There is no authentication, so the listener should only be bound to an address operators can reach.
+ */
+public class AdminServer {
+    private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8"; // Content type of the metrics page
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8"; // Content type of the sessions dump
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999}; // Quantiles of the pipeline latencies
+    private static final double NANOS_PER_SECOND = 1e9; // Latencies are recorded in nanoseconds and exported in seconds
+
+    private final Server server; // The chat server reported on
+    private final ServerTransport transport; // The transport serving the clients, or null if there is none
+    private final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create(); // Writes the sessions dump
+    private HttpServer http; // The HTTP listener, or null before start
+    private ExecutorService executor; // Handles the requests, one virtual thread each
+
+    /**
+     * Constructor for AdminServer.
+     *
+     * @param server    The chat server to report on
+     * @param transport The transport serving the clients, or null if there is none
+     */
+    public AdminServer(Server server, ServerTransport transport) {
+        this.server = server;
+        this.transport = transport;
+    }
+
+    /**
+     * Binds the listener and starts answering requests in the background.
+     *
+     * @param host The address to listen on, such as 127.0.0.1 to only answer local requests
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the listener cannot be opened
+     */
+    public void start(String host, int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        http.setExecutor(executor);
+        http.createContext("/metrics", exchange -> respond(exchange, PROMETHEUS_CONTENT_TYPE, this::renderMetrics));
+        http.createContext("/sessions", exchange -> respond(exchange, JSON_CONTENT_TYPE, this::renderSessions));
+        http.start();
+    }
+
+    /**
+     * Returns the port the listener is bound to.
+     *
+     * @return The local port, or -1 if the listener has not been started
+     */
+    public int getLocalPort() {
+        return http != null ? http.getAddress().getPort() : -1;
+    }
+
+    /**
+     * Stops the listener, letting requests being answered finish.
+     */
+    public void stop() {
+        if (http != null) {
+            http.stop(0);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Answers a GET request with a page, or any other request with 405 Method Not Allowed.
+     * A page that fails to render is answered with 500 Internal Server Error.
+     *
+     * @param exchange    The request
+     * @param contentType The content type of the page
+     * @param page        Renders the page
+     * @throws IOException if the response cannot be written
+     */
+    private void respond(HttpExchange exchange, String contentType, Supplier<String> page) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body;
+            try {
+                body = page.get().getBytes(StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                System.err.println("Error answering admin request " + exchange.getRequestURI() + ": " + e.getMessage());
+                exchange.sendResponseHeaders(500, -1); // Report the failure instead of dropping the connection
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * Renders the metrics page in the Prometheus text format.
+     * Counters count from the start of the server; the pipeline latencies are summaries of
+     * everything recorded since then.
+     *
+     * @return The page
+     */
+    public String renderMetrics() {
+        PrometheusText text = new PrometheusText();
+        ServerCounters counters = server.getCounters();
+        FlushCounters flushes = server.getFlushCounters();
+
+        if (transport != null) {
+            text.metric("chat_connections", "gauge", "Client connections currently open")
+                    .sample("chat_connections", transport.getActiveConnections());
+        }
+        text.metric("chat_sessions", "gauge", "Users currently logged in")
+                .sample("chat_sessions", server.getSessions().size());
+        text.metric("chat_chats", "gauge", "Chats registered with the server")
+                .sample("chat_chats", server.getChats().size());
+
+        text.metric("chat_messages_received_total", "counter", "Messages received from clients, by type");
+        for (int kind = 0; kind < PipelineMetrics.KIND_COUNT; kind++) {
+            if (kind != PipelineMetrics.OTHER) {
+                text.sample("chat_messages_received_total", kindLabels(kind), counters.getMessagesReceived(kind));
+            }
+        }
+        text.metric("chat_frames_sent_total", "counter", "Frames written to clients, by message type; a frame sent to several clients counts once for each");
+        for (int kind = 0; kind < PipelineMetrics.KIND_COUNT; kind++) {
+            text.sample("chat_frames_sent_total", kindLabels(kind), counters.getFramesSent(kind));
+        }
+        text.metric("chat_bytes_received_total", "counter", "Bytes read from clients")
+                .sample("chat_bytes_received_total", counters.getBytesReceived());
+        text.metric("chat_bytes_sent_total", "counter", "Bytes written to clients")
+                .sample("chat_bytes_sent_total", flushes.getBytes());
+        text.metric("chat_flushes_total", "counter", "Socket writes of the frames gathered for a client")
+                .sample("chat_flushes_total", flushes.getFlushes());
+        text.metric("chat_heartbeat_expirations_total", "counter", "Sessions removed because their client stopped sending heartbeats")
+                .sample("chat_heartbeat_expirations_total", counters.getHeartbeatExpirations());
+        text.metric("chat_coordinator_changes_total", "counter", "Coordinators assigned")
+                .sample("chat_coordinator_changes_total", counters.getCoordinatorChanges());
+        text.metric("chat_slow_consumer_disconnects_total", "counter", "Clients disconnected because their outbound queue overflowed")
+                .sample("chat_slow_consumer_disconnects_total", counters.getSlowConsumerDisconnects());
+
+        int totalDepth = 0;
+        int maxDepth = 0;
+        for (ClientSession session : server.getSessions().all()) {
+            if (session.getConnection() != null) {
+                int depth = session.getConnection().getOutboundQueueDepth();
+                totalDepth += depth;
+                maxDepth = Math.max(maxDepth, depth);
+            }
+        }
+        text.metric("chat_outbound_queue_depth", "gauge", "Frames waiting to be written, over all clients")
+                .sample("chat_outbound_queue_depth", totalDepth);
+        text.metric("chat_outbound_queue_depth_max", "gauge", "Frames waiting to be written to the client furthest behind")
+                .sample("chat_outbound_queue_depth_max", maxDepth);
+
+        renderPipeline(text, server.getMetrics());
+        renderJvm(text);
+        return text.toString();
+    }
+
+    /**
+     * Adds the latencies of every pipeline stage and kind of message recorded so far, as summaries in seconds.
+     *
+     * @param text    The page
+     * @param metrics The pipeline metrics
+     */
+    private static void renderPipeline(PrometheusText text, PipelineMetrics metrics) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+        PipelineMetrics.Snapshot snapshot = metrics.snapshot();
+        text.metric("chat_pipeline_latency_seconds", "summary", "Time spent in each stage of the server pipeline, by stage and message type");
+        for (PipelineStage stage : PipelineStage.values()) {
+            for (int kind = 0; kind < PipelineMetrics.KIND_COUNT; kind++) {
+                LatencyHistogram.Snapshot latencies = snapshot.get(stage, kind);
+                if (latencies == null) {
+                    continue;
+                }
+                String labels = kindLabels(stage.getLabel(), kind, null);
+                for (double quantile : QUANTILES) {
+                    text.sample("chat_pipeline_latency_seconds", kindLabels(stage.getLabel(), kind, String.valueOf(quantile)),
+                            latencies.getValueAtPercentile(quantile * 100) / NANOS_PER_SECOND);
+                }
+                text.sample("chat_pipeline_latency_seconds_sum", labels, latencies.getSum() / NANOS_PER_SECOND);
+                text.sample("chat_pipeline_latency_seconds_count", labels, latencies.getCount());
+            }
+        }
+    }
+
+    /**
+     * Adds the heap, garbage collections and threads of the JVM.
+     *
+     * @param text The page
+     */
+    private static void renderJvm(PrometheusText text) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        text.metric("jvm_memory_heap_used_bytes", "gauge", "Heap in use")
+                .sample("jvm_memory_heap_used_bytes", heap.getUsed());
+        text.metric("jvm_memory_heap_committed_bytes", "gauge", "Heap committed by the JVM")
+                .sample("jvm_memory_heap_committed_bytes", heap.getCommitted());
+        text.metric("jvm_memory_heap_max_bytes", "gauge", "Largest heap the JVM may use, or -1 if unbounded")
+                .sample("jvm_memory_heap_max_bytes", heap.getMax());
+
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        text.metric("jvm_gc_collections_total", "counter", "Garbage collections, by collector");
+        for (GarbageCollectorMXBean collector : collectors) {
+            text.sample("jvm_gc_collections_total", PrometheusText.labels("gc", collector.getName()), Math.max(0, collector.getCollectionCount()));
+        }
+        text.metric("jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collections, by collector");
+        for (GarbageCollectorMXBean collector : collectors) {
+            text.sample("jvm_gc_collection_seconds_total", PrometheusText.labels("gc", collector.getName()), Math.max(0, collector.getCollectionTime()) / 1000.0);
+        }
+        text.metric("jvm_threads_live", "gauge", "Platform threads alive")
+                .sample("jvm_threads_live", ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    /**
+     * Formats the labels of a kind of message.
+     *
+     * @param kind The kind, as counted by PipelineMetrics
+     * @return The labels
+     */
+    private static String kindLabels(int kind) {
+        return kindLabels(null, kind, null);
+    }
+
+    /**
+     * Formats the labels of a pipeline sample.
+     *
+     * @param stage    The stage, or null
+     * @param kind     The kind of message, as counted by PipelineMetrics
+     * @param quantile The quantile, or null
+     * @return The labels
+     */
+    private static String kindLabels(String stage, int kind, String quantile) {
+        CommunicationType type = PipelineMetrics.typeOf(kind);
+        SystemMessageType systemType = PipelineMetrics.systemTypeOf(kind);
+        return PrometheusText.labels("stage", stage,
+                "type", type != null ? type.name() : "OTHER",
+                "system_type", systemType != null ? systemType.name() : null,
+                "quantile", quantile);
+    }
+
+    /**
+     * Renders the sessions dump as JSON: the coordinator, then every logged-in user with the address
+     * it connected from, how long ago it was last heard from, the frames waiting to be written to it
+     * and the chats it is in.
+     *
+     * @return The dump
+     */
+    public String renderSessions() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> dump = new LinkedHashMap<>();
+        User coordinator = server.getCoordinatorManager().getCoordinator();
+        dump.put("coordinator", coordinator != null ? userEntry(coordinator) : null);
+        dump.put("sessionCount", server.getSessions().size());
+        dump.put("chatCount", server.getChats().size());
+
+        List<ClientSession> sessions = new ArrayList<>(server.getSessions().all());
+        sessions.sort(Comparator.comparing(session -> session.getUser().getUsername(), Comparator.nullsFirst(Comparator.naturalOrder())));
+        List<Map<String, Object>> entries = new ArrayList<>(sessions.size());
+        for (ClientSession session : sessions) {
+            Map<String, Object> entry = userEntry(session.getUser());
+            entry.put("coordinator", session.getUser().getIsCoordinator());
+            entry.put("address", session.getSocketAddress());
+            entry.put("lastHeartbeatMillisAgo", now - session.getLastHeartbeat());
+            entry.put("outboundQueueDepth", session.getConnection() != null ? session.getConnection().getOutboundQueueDepth() : 0);
+            entry.put("chats", new TreeSet<>(server.getChats().chatsOf(session.getUserId())));
+            entries.add(entry);
+        }
+        dump.put("sessions", entries);
+        return gson.toJson(dump);
+    }
+
+    /**
+     * Describes a user in the sessions dump.
+     *
+     * @param user The user
+     * @return The user's id and name
+     */
+    private static Map<String, Object> userEntry(User user) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("userId", user.getId());
+        entry.put("username", user.getUsername());
+        return entry;
+    }
+}
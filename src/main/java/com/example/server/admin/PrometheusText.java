@@ -0,0 +1,82 @@
+package com.example.server.admin;
+
+/**
+ * The PrometheusText class builds a page in the Prometheus text exposition format: every metric
+ * is announced by its HELP and TYPE lines, followed by one line per sample.
+ */
+public class PrometheusText {
+    private final StringBuilder text = new StringBuilder(); // The page built so far
+
+    /**
+     * Announces a metric. Its samples must follow before the next metric is announced.
+     *
+     * @param name The metric name
+     * @param type The metric type: counter, gauge or summary
+     * @param help What the metric measures
+     * @return This builder
+     */
+    public PrometheusText metric(String name, String type, String help) {
+        text.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    /**
+     * Adds a sample without labels.
+     *
+     * @param name  The sample name
+     * @param value The value
+     * @return This builder
+     */
+    public PrometheusText sample(String name, double value) {
+        return sample(name, "", value);
+    }
+
+    /**
+     * Adds a sample.
+     *
+     * @param name   The sample name
+     * @param labels The labels, as made by labels(), or an empty string
+     * @param value  The value
+     * @return This builder
+     */
+    public PrometheusText sample(String name, String labels, double value) {
+        text.append(name).append(labels).append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            text.append((long) value); // Counts are written without a fraction
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+        return this;
+    }
+
+    /**
+     * Formats labels, skipping those whose value is null.
+     *
+     * @param namesAndValues Label names each followed by its value
+     * @return The labels in braces, or an empty string if there are none
+     */
+    public static String labels(String... namesAndValues) {
+        StringBuilder labels = new StringBuilder();
+        for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+            if (namesAndValues[i + 1] == null) {
+                continue;
+            }
+            labels.append(labels.isEmpty() ? "{" : ",").append(namesAndValues[i]).append("=\"")
+                    .append(namesAndValues[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return labels.isEmpty() ? "" : labels.append('}').toString();
+    }
+
+    /**
+     * Returns the page.
+     *
+     * @return The text built so far
+     */
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
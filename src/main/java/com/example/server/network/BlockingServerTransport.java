@@ -0,0 +1,114 @@
+package com.example.server.network;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The BlockingServerTransport class accepts clients on a ServerSocket and runs
+ * one ServerHandler per connection on the given executor.
+ * With a virtual-thread executor the handlers' blocking reads and writes park instead of
+ * holding a carrier thread. This relies on the server only writing through plain JDK
+ * PrintWriter/OutputStream chains, which lock with ReentrantLock internally; never subclass
+ * them or wrap socket I/O in a synchronized block, as that would pin the carrier thread.
+ */
+public class BlockingServerTransport implements ServerTransport {
+    private final Server server; // Reference to the server
+    private final ExecutorService pool; // Executor running one ServerHandler per client
+    private final AtomicInteger activeConnections = new AtomicInteger(); // Handlers currently running
+    private volatile ServerSocket listener; // The listening socket
+    private Thread acceptor; // Thread accepting incoming connections
+
+    /**
+     * Constructor for BlockingServerTransport.
+     *
+     * @param server The server the handlers deliver messages to
+     * @param pool   The executor running the handlers
+     */
+    public BlockingServerTransport(Server server, ExecutorService pool) {
+        this.server = server;
+        this.pool = pool;
+    }
+
+    /**
+     * Binds the listening socket and starts the acceptor thread.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the listening socket cannot be opened
+     */
+    @Override
+    public void start(int port) throws IOException {
+        listener = new ServerSocket(port); // Create a server socket on the given port
+        acceptor = new Thread(this::acceptLoop, "chat-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Accepts incoming connections until the listening socket is closed.
+     */
+    private void acceptLoop() {
+        try {
+            while (!listener.isClosed()) {
+                Socket socket = listener.accept(); // Accept incoming client connections
+                ServerHandler handler = new ServerHandler(socket, server); // Create a handler for the client
+                pool.execute(() -> serve(handler)); // Execute the handler in a separate thread
+            }
+        } catch (IOException e) {
+            if (!listener.isClosed()) {
+                System.err.println("Error accepting connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs a handler while counting it as an active connection.
+     *
+     * @param handler The handler to run
+     */
+    private void serve(ServerHandler handler) {
+        activeConnections.incrementAndGet();
+        try {
+            handler.run();
+        } finally {
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the port the listening socket is bound to.
+     *
+     * @return The local port, or -1 if the transport has not been started
+     */
+    @Override
+    public int getLocalPort() {
+        return listener != null ? listener.getLocalPort() : -1;
+    }
+
+    /**
+     * Returns the number of handlers currently running.
+     * Connections queued behind a saturated pool are accepted but not counted.
+     *
+     * @return The number of active connections
+     */
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Closes the listening socket and stops the handler threads.
+     */
+    @Override
+    public void stop() {
+        try {
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing listener: " + e.getMessage());
+        }
+        pool.shutdownNow();
+    }
+}
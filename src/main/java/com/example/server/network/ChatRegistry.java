@@ -0,0 +1,568 @@
+package com.example.server.network;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.server.storage.Journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ChatRegistry class is the server's authoritative record of which chats exist and who is in them.
+ * Chats are indexed by id and every user's chats are indexed by user id, so routing a text message
+ * and cleaning up after a user leaves only touch the chats involved.
+ * The general chat is not registered; it always includes every logged-in user.
+ * <p>
+ * Members who log out can stay in their chats while they are offline, so that the messages kept for
+ * them in the offline inbox still belong to a chat when they return; the registry notes since when
+ * each of them has been offline, and {@link #expireMembers(long)} removes those gone too long.
+ * A registry opened on a directory records every change in a {@link Journal} next to the inboxes,
+ * so chats and their members survive a restart:
+ * <pre>
+ * REGISTERED = 1:u8 chatId type:u8 hasName:u8 name? count:int userId*count
+ * REMOVED    = 2:u8 chatId
+ * LEFT       = 3:u8 userId
+ * OFFLINE    = 4:u8 userId sinceMillis:long
+ * ONLINE     = 5:u8 userId
+ * string     = length:short utf8
+ * </pre>
+ * Members who were online when the server stopped count as offline since it started again.
+ * Changes are made one at a time, so they reach the journal in order; lookups take no lock.
+ */
+public class ChatRegistry implements Closeable {
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50; // Longest time a change waits to be synced
+    private static final String JOURNAL_NAME = "chats.journal"; // File name of the journal
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024; // Smallest journal that is compacted
+    private static final int COMPACT_RATIO = 4; // Journal bytes per live byte that trigger compaction
+    private static final byte REGISTERED = 1; // Kind of a record adding a chat
+    private static final byte REMOVED = 2; // Kind of a record dropping a chat
+    private static final byte LEFT = 3; // Kind of a record removing a user from all of their chats
+    private static final byte OFFLINE = 4; // Kind of a record noting that a member went offline
+    private static final byte ONLINE = 5; // Kind of a record noting that a member is back online
+
+    private final Map<String, RegisteredChat> chats = new ConcurrentHashMap<>(); // Chats by chat id
+    private final Map<String, Set<String>> chatsByUser = new ConcurrentHashMap<>(); // Chat ids by member id
+    private final Map<String, Long> offlineSince = new ConcurrentHashMap<>(); // Time offline members went offline, by member id
+    private final ReentrantLock lock = new ReentrantLock(); // Makes changes one at a time
+    private final Journal journal; // Records every change, or null if the registry is kept in memory only
+    private final ScheduledExecutorService syncer; // Thread syncing and compacting the journal, or null without one
+    private long nextCompactionCheck = COMPACT_MIN_BYTES; // Journal size at which compaction is considered next
+
+    /**
+     * Constructor for a ChatRegistry kept in memory only.
+     */
+    public ChatRegistry() {
+        this.journal = null;
+        this.syncer = null;
+    }
+
+    /**
+     * Constructor for a ChatRegistry that survives a restart.
+     * Opens the journal in a directory, creating it if needed, and replays it.
+     *
+     * @param directory          The directory of the journal
+     * @param syncIntervalMillis Longest time a change waits to be synced
+     * @throws IOException if the journal cannot be opened
+     */
+    public ChatRegistry(Path directory, long syncIntervalMillis) throws IOException {
+        this.journal = new Journal(directory.resolve(JOURNAL_NAME), this::apply);
+        long now = System.currentTimeMillis();
+        for (String userId : List.copyOf(chatsByUser.keySet())) {
+            if (!offlineSince.containsKey(userId)) {
+                memberOffline(userId, now); // Online when the server stopped, so the TTL starts now
+            }
+        }
+
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-registry-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a registry that survives a restart, with the default sync interval.
+     *
+     * @param directory The directory of the journal
+     * @return The registry
+     * @throws IOException if the journal cannot be opened
+     */
+    public static ChatRegistry withDefaults(Path directory) throws IOException {
+        return new ChatRegistry(directory, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Applies one journal record while the journal is replayed.
+     *
+     * @param body The body of the record
+     */
+    private void apply(ByteBuffer body) {
+        byte kind = body.get();
+        switch (kind) {
+            case REGISTERED -> {
+                String chatId = Journal.getString(body);
+                ChatType type = ChatType.values()[body.get()];
+                String name = body.get() != 0 ? Journal.getString(body) : null;
+                int count = body.getInt();
+                Set<String> members = ConcurrentHashMap.newKeySet();
+                for (int i = 0; i < count; i++) {
+                    members.add(Journal.getString(body));
+                }
+                addChat(new RegisteredChat(chatId, type, name, members));
+            }
+            case REMOVED -> dropChat(Journal.getString(body));
+            case LEFT -> dropMember(Journal.getString(body));
+            case OFFLINE -> {
+                String userId = Journal.getString(body);
+                offlineSince.put(userId, body.getLong());
+            }
+            case ONLINE -> offlineSince.remove(Journal.getString(body));
+            default -> throw new IllegalArgumentException("Unknown chat record " + kind);
+        }
+    }
+
+    /**
+     * Registers a chat, unless a chat with the same id already exists.
+     *
+     * @param descriptor The chat to register
+     * @return True if the chat was registered, false if its id was already taken
+     * @throws IllegalArgumentException if the chat's id, name or a member id is too long to be journaled
+     */
+    public boolean register(ChatDescriptor descriptor) {
+        checkLength(descriptor.getId(), "Chat id");
+        if (descriptor.getName() != null) {
+            checkLength(descriptor.getName(), "Chat name");
+        }
+        for (String memberId : descriptor.getParticipantIds()) {
+            checkLength(memberId, "Member id");
+        }
+        Set<String> members = ConcurrentHashMap.newKeySet();
+        members.addAll(descriptor.getParticipantIds());
+        RegisteredChat chat = new RegisteredChat(descriptor.getId(), descriptor.getType(), descriptor.getName(), members);
+        lock.lock();
+        try {
+            if (!addChat(chat)) {
+                return false; // Ids are generated by clients, so never let a second chat take one over
+            }
+            if (journal != null) {
+                write(registered(chat));
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fails for a string a journal record cannot hold, the same for a registry kept in memory only.
+     *
+     * @param value The string
+     * @param what  What the string is, for the message
+     * @throws IllegalArgumentException if the string is too long
+     */
+    private static void checkLength(String value, String what) {
+        if (value.getBytes(StandardCharsets.UTF_8).length > Journal.MAX_STRING_BYTES) {
+            throw new IllegalArgumentException(what + " is too long");
+        }
+    }
+
+    /**
+     * Adds a chat and indexes it under its members. Must be called with the lock held, or during replay.
+     *
+     * @param chat The chat
+     * @return True if the chat was added, false if its id was already taken
+     */
+    private boolean addChat(RegisteredChat chat) {
+        if (chats.putIfAbsent(chat.id(), chat) != null) {
+            return false;
+        }
+        for (String memberId : chat.members()) {
+            chatsByUser.computeIfAbsent(memberId, id -> ConcurrentHashMap.newKeySet()).add(chat.id());
+        }
+        return true;
+    }
+
+    /**
+     * Finds a chat by id.
+     *
+     * @param chatId The id of the chat
+     * @return The chat, or null if no such chat is registered
+     */
+    public RegisteredChat get(String chatId) {
+        return chatId != null ? chats.get(chatId) : null;
+    }
+
+    /**
+     * Removes a user from all of their chats; chats left without members are dropped.
+     *
+     * @param userId The id of the user
+     */
+    public void removeMember(String userId) {
+        lock.lock();
+        try {
+            if (dropMember(userId)) {
+                write(userRecord(LEFT, userId, 0));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a user from all of their chats and forgets when they went offline.
+     * Must be called with the lock held, or during replay.
+     *
+     * @param userId The id of the user
+     * @return True if the user was in any chats
+     */
+    private boolean dropMember(String userId) {
+        offlineSince.remove(userId);
+        Set<String> chatIds = chatsByUser.remove(userId);
+        if (chatIds == null) {
+            return false; // The user is in no chats
+        }
+        for (String chatId : chatIds) {
+            RegisteredChat chat = chats.get(chatId);
+            if (chat != null) {
+                chat.members().remove(userId);
+                if (chat.members().isEmpty()) {
+                    chats.remove(chatId, chat);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops a chat, removing it from the chats of all its members.
+     *
+     * @param chatId The id of the chat
+     */
+    public void remove(String chatId) {
+        lock.lock();
+        try {
+            if (dropChat(chatId) && journal != null) {
+                byte[] id = chatId.getBytes(StandardCharsets.UTF_8);
+                write(Journal.putString(ByteBuffer.allocate(1 + 2 + id.length).put(REMOVED), id).flip());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops a chat; members left in no chats are forgotten. Must be called with the lock held, or during replay.
+     *
+     * @param chatId The id of the chat
+     * @return True if the chat existed
+     */
+    private boolean dropChat(String chatId) {
+        RegisteredChat chat = chats.remove(chatId);
+        if (chat == null) {
+            return false;
+        }
+        for (String memberId : chat.members()) {
+            Set<String> remaining = chatsByUser.computeIfPresent(memberId, (id, chatIds) -> {
+                chatIds.remove(chatId);
+                return chatIds.isEmpty() ? null : chatIds;
+            });
+            if (remaining == null) {
+                offlineSince.remove(memberId);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notes that a member went offline, keeping them in their chats until they return or expire.
+     * Users in no chats are not tracked.
+     *
+     * @param userId      The id of the user
+     * @param sinceMillis The time the user went offline
+     */
+    public void memberOffline(String userId, long sinceMillis) {
+        lock.lock();
+        try {
+            if (chatsByUser.containsKey(userId)) {
+                offlineSince.put(userId, sinceMillis);
+                write(userRecord(OFFLINE, userId, sinceMillis));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Notes that a member is back online, so they no longer expire.
+     *
+     * @param userId The id of the user
+     */
+    public void memberOnline(String userId) {
+        if (!offlineSince.containsKey(userId)) {
+            return; // Already online, or in no chats
+        }
+        lock.lock();
+        try {
+            if (offlineSince.remove(userId) != null) {
+                write(userRecord(ONLINE, userId, 0));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the members who went offline before a cutoff from all of their chats.
+     *
+     * @param cutoffMillis Members offline since before this time are removed
+     * @return The ids of the removed members
+     */
+    public List<String> expireMembers(long cutoffMillis) {
+        List<String> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            for (Map.Entry<String, Long> entry : offlineSince.entrySet()) {
+                if (entry.getValue() < cutoffMillis) {
+                    expired.add(entry.getKey());
+                }
+            }
+            for (String userId : expired) {
+                removeMember(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return expired;
+    }
+
+    /**
+     * Gets the time a member went offline.
+     *
+     * @param userId The id of the user
+     * @return The time in milliseconds, or null if the user is online or in no chats
+     */
+    public Long getOfflineSince(String userId) {
+        return offlineSince.get(userId);
+    }
+
+    /**
+     * Returns the ids of the chats a user is in.
+     *
+     * @param userId The id of the user
+     * @return The chat ids, empty if the user is in no chats
+     */
+    public Collection<String> chatsOf(String userId) {
+        Set<String> chatIds = chatsByUser.get(userId);
+        return chatIds != null ? chatIds : Set.of();
+    }
+
+    /**
+     * Returns the number of registered chats.
+     *
+     * @return The number of chats
+     */
+    public int size() {
+        return chats.size();
+    }
+
+    /**
+     * Builds the record of a registered chat.
+     *
+     * @param chat The chat
+     * @return The record body, ready to be read
+     */
+    private static ByteBuffer registered(RegisteredChat chat) {
+        byte[] id = chat.id().getBytes(StandardCharsets.UTF_8);
+        byte[] name = chat.name() != null ? chat.name().getBytes(StandardCharsets.UTF_8) : null;
+        List<byte[]> members = new ArrayList<>(chat.members().size());
+        int length = 1 + 2 + id.length + 1 + 1 + (name != null ? 2 + name.length : 0) + 4;
+        for (String memberId : chat.members()) {
+            byte[] member = memberId.getBytes(StandardCharsets.UTF_8);
+            members.add(member);
+            length += 2 + member.length;
+        }
+        ByteBuffer body = Journal.putString(ByteBuffer.allocate(length).put(REGISTERED), id).put((byte) chat.type().ordinal());
+        body.put((byte) (name != null ? 1 : 0));
+        if (name != null) {
+            Journal.putString(body, name);
+        }
+        body.putInt(members.size());
+        for (byte[] member : members) {
+            Journal.putString(body, member);
+        }
+        return body.flip();
+    }
+
+    /**
+     * Builds a record about one user.
+     *
+     * @param kind        LEFT, OFFLINE or ONLINE
+     * @param userId      The id of the user
+     * @param sinceMillis The time the user went offline, for an OFFLINE record
+     * @return The record body, ready to be read
+     */
+    private static ByteBuffer userRecord(byte kind, String userId, long sinceMillis) {
+        byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = Journal.putString(ByteBuffer.allocate(1 + 2 + id.length + 8).put(kind), id);
+        if (kind == OFFLINE) {
+            body.putLong(sinceMillis);
+        }
+        return body.flip();
+    }
+
+    /**
+     * Appends a record to the journal, if there is one. Must be called with the lock held.
+     * A change that cannot be journaled is still made; it is only lost if the server restarts.
+     *
+     * @param body The record body
+     */
+    private void write(ByteBuffer body) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(body);
+        } catch (IOException e) {
+            System.err.println("Error journaling a chat change: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Forces the journaled changes to disk and compacts the journal if it has grown too large.
+     * Whether to compact is only considered each time the journal has doubled, since it means
+     * walking every chat. The lock is only held to write the records and to take a snapshot of
+     * the chats, so logins and logouts do not wait for the disk.
+     *
+     * @throws IOException if writing, syncing or compacting fails
+     */
+    public void sync() throws IOException {
+        if (journal == null || !journal.sync(lock)) {
+            return;
+        }
+        boolean compact;
+        lock.lock();
+        try {
+            if (journal.size() < nextCompactionCheck) {
+                return;
+            }
+            compact = journal.size() > COMPACT_RATIO * liveBytes();
+            nextCompactionCheck = Math.max(COMPACT_MIN_BYTES, 2 * journal.size());
+        } finally {
+            lock.unlock();
+        }
+        if (compact) {
+            journal.rewrite(lock, this::snapshot);
+        }
+    }
+
+    /**
+     * Syncs the journal, reporting failures instead of throwing them.
+     */
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing the chat registry: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estimates the bytes a journal holding only the current chats and offline members would take.
+     * Must be called with the lock held.
+     *
+     * @return The estimated size
+     */
+    private long liveBytes() {
+        long bytes = 0;
+        for (RegisteredChat chat : chats.values()) {
+            bytes += Journal.HEADER_SIZE + 1 + 2 + chat.id().length() + 2 + (chat.name() != null ? 2 + chat.name().length() : 0) + 4;
+            for (String memberId : chat.members()) {
+                bytes += 2 + memberId.length();
+            }
+        }
+        for (String userId : offlineSince.keySet()) {
+            bytes += Journal.HEADER_SIZE + 1 + 2 + userId.length() + 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Builds the records of the current chats and offline members, for rewriting the journal.
+     * Must be called with the lock held.
+     *
+     * @return The bodies of the records
+     */
+    private List<ByteBuffer> snapshot() {
+        List<ByteBuffer> records = new ArrayList<>(chats.size() + offlineSince.size());
+        for (RegisteredChat chat : chats.values()) {
+            records.add(registered(chat));
+        }
+        for (Map.Entry<String, Long> entry : offlineSince.entrySet()) {
+            records.add(userRecord(OFFLINE, entry.getKey(), entry.getValue()));
+        }
+        return records;
+    }
+
+    /**
+     * Syncs the journal and closes it; a registry kept in memory only has nothing to close.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        syncer.shutdown();
+        lock.lock();
+        try {
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A chat known to the server.
+     *
+     * @param id      The id of the chat
+     * @param type    Whether the chat is private or a group
+     * @param name    The name of a group chat, or null for a private chat
+     * @param members The ids of the chat's members
+     */
+    public record RegisteredChat(String id, ChatType type, String name, Set<String> members) {
+
+        /**
+         * Checks if a user is a member of the chat.
+         *
+         * @param userId The id of the user
+         * @return True if the user is a member
+         */
+        public boolean hasMember(String userId) {
+            return userId != null && members.contains(userId);
+        }
+
+        /**
+         * Describes the chat for its members.
+         *
+         * @return The chat's descriptor
+         */
+        public ChatDescriptor toDescriptor() {
+            return new ChatDescriptor(id, type, name, List.copyOf(members));
+        }
+    }
+}
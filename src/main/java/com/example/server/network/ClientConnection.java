@@ -0,0 +1,53 @@
+package com.example.server.network;
+
+import com.example.common.codec.WireFormat;
+
+/**
+ * The ClientConnection interface represents a single client attached to the server,
+ * independently of the transport that carries its frames.
+ * It is implemented by the thread-per-connection ServerHandler and by the NIO transport,
+ * both of which write the encoded frames they are sent straight to their socket.
+ */
+public interface ClientConnection extends FrameSink {
+
+    /**
+     * Returns the address of the connected client.
+     *
+     * @return String representation of the client's IP address and port, or "Unknown"
+     */
+    String getClientSocket();
+
+    /**
+     * Returns the wire format of the frames written to the client.
+     *
+     * @return The format settled with the client, JSON until it is settled
+     */
+    WireFormat getWireFormat();
+
+    /**
+     * Returns the number of frames queued for the client but not yet written.
+     *
+     * @return The outbound queue depth
+     */
+    int getOutboundQueueDepth();
+
+    /**
+     * Attaches the session of the user who logged in on this connection.
+     * From then on every inbound frame counts as proof that the client is alive.
+     *
+     * @param session The client's session
+     */
+    void setSession(ClientSession session);
+
+    /**
+     * Returns the session of the user who logged in on this connection.
+     *
+     * @return The client's session, or null before login
+     */
+    ClientSession getSession();
+
+    /**
+     * Closes the underlying connection to the client.
+     */
+    void close();
+}
@@ -0,0 +1,112 @@
+package com.example.server.network;
+
+import com.example.common.codec.WireFormat;
+import com.example.common.users.User;
+
+/**
+ * The ClientSession class holds everything the server knows about one logged-in client:
+ * the user, where its frames are sent, the connection it arrived on, its socket address
+ * and when it was last heard from.
+ */
+public class ClientSession {
+    private final User user; // The logged-in user
+    private final FrameSink sink; // Where frames for the client are sent
+    private final ClientConnection connection; // The connection the client is attached to, or null
+    private final String socketAddress; // Address of the client, resolved once at login
+    private volatile long lastHeartbeat; // Time of the last heartbeat in milliseconds
+
+    /**
+     * Constructor for ClientSession.
+     * The session counts as alive from the moment it is created.
+     *
+     * @param user       The logged-in user
+     * @param sink       Where frames for the client are sent
+     * @param connection The connection the client is attached to, or null if it has none
+     */
+    public ClientSession(User user, FrameSink sink, ClientConnection connection) {
+        this.user = user;
+        this.sink = sink;
+        this.connection = connection;
+        this.socketAddress = connection != null ? connection.getClientSocket() : "Unknown";
+        this.lastHeartbeat = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the logged-in user.
+     *
+     * @return The user
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the id of the logged-in user.
+     *
+     * @return The user id
+     */
+    public String getUserId() {
+        return user.getId();
+    }
+
+    /**
+     * Gets the sink frames for the client are sent to.
+     *
+     * @return The frame sink
+     */
+    public FrameSink getSink() {
+        return sink;
+    }
+
+    /**
+     * Gets the connection the client is attached to.
+     *
+     * @return The connection, or null if the client has none
+     */
+    public ClientConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Gets the address of the client.
+     *
+     * @return String representation of the client's IP address and port, or "Unknown"
+     */
+    public String getSocketAddress() {
+        return socketAddress;
+    }
+
+    /**
+     * Gets the wire format of the frames sent to the client.
+     *
+     * @return The connection's format, or JSON for a client without a connection
+     */
+    public WireFormat getWireFormat() {
+        return connection != null ? connection.getWireFormat() : WireFormat.JSON;
+    }
+
+    /**
+     * Gets the time the client was last heard from.
+     *
+     * @return The time of the last heartbeat in milliseconds
+     */
+    public long getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+
+    /**
+     * Records that the client has just been heard from.
+     */
+    public void recordHeartbeat() {
+        lastHeartbeat = System.currentTimeMillis();
+    }
+
+    /**
+     * Sends an encoded frame to the client.
+     *
+     * @param frame The frame to send
+     */
+    public void send(Frame frame) {
+        sink.send(frame);
+    }
+}
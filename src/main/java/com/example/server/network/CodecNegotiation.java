@@ -0,0 +1,68 @@
+package com.example.server.network;
+
+import com.example.common.codec.CodecHandshake;
+import com.example.common.codec.WireFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The CodecNegotiation class settles the wire format of one connection from the first bytes the
+ * client sends (see CodecHandshake).
+ * A client whose first byte opens a JSON frame is a JSON client and gets no reply; any other client
+ * has sent a handshake line and is answered with the format it asked for, or JSON if the server
+ * does not know that format. Not thread-safe; a connection feeds it from its reading thread.
+ */
+class CodecNegotiation {
+    private final byte[] line = new byte[CodecHandshake.MAX_LINE_LENGTH]; // Handshake line read so far
+    private int length; // Number of bytes in line
+    private WireFormat format; // The negotiated format, or null while negotiating
+    private boolean replyRequired; // Whether the client sent a handshake line and waits for the reply
+
+    /**
+     * Consumes handshake bytes from the buffer.
+     * Bytes after the handshake are left in the buffer for the frame decoder.
+     *
+     * @param buffer The bytes read from the client
+     * @return True once the format is known
+     * @throws IllegalArgumentException if the handshake line is too long
+     */
+    boolean offer(ByteBuffer buffer) {
+        while (format == null && buffer.hasRemaining()) {
+            byte b = buffer.get(buffer.position());
+            if (length == 0 && b == '{') {
+                format = WireFormat.JSON; // A client that predates the handshake
+                break;
+            }
+            buffer.get();
+            if (b == '\n') {
+                WireFormat requested = CodecHandshake.parse(new String(line, 0, length, StandardCharsets.US_ASCII));
+                format = requested != null ? requested : WireFormat.JSON;
+                replyRequired = true;
+            } else if (length == line.length) {
+                throw new IllegalArgumentException("Codec handshake exceeds " + line.length + " bytes");
+            } else {
+                line[length++] = b;
+            }
+        }
+        return format != null;
+    }
+
+    /**
+     * Gets the negotiated format.
+     *
+     * @return The format, or null while negotiating
+     */
+    WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gets the reply the client waits for.
+     *
+     * @return The reply frame, or null if the client did not ask for a format
+     */
+    Frame reply() {
+        return replyRequired ? Frame.raw(CodecHandshake.reply(format)) : null;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.server.network;
 
+import com.example.common.events.CoordinatorChangedEvent;
 import com.example.common.messages.SystemMessage;
 import com.example.common.messages.SystemMessageType;
 import com.example.common.users.User;
@@ -10,7 +11,7 @@ import com.example.common.users.User;
  */
 public class CoordinatorManager {
     private final Server server; // Reference to the server
-    private User coordinator = null; // The current coordinator
+    private volatile User coordinator = null; // The current coordinator, also read by the admin endpoint
 
     /**
      * Constructor for CoordinatorManager.
@@ -62,6 +63,7 @@ public class CoordinatorManager {
      * @param newCoordinator The user to set as coordinator
      */
     public void setCoordinator(User newCoordinator) {
+        User previous = coordinator;
         if (newCoordinator != null) {
             // First, reset any existing coordinator
             if (coordinator != null) {
@@ -74,10 +76,20 @@ public class CoordinatorManager {
 
             // Log the new coordinator assignment
             System.out.println("COORDINATOR: " + coordinator.getUsername() + " is now the coordinator");
+            server.getCounters().coordinatorChanged();
         } else {
             // Clear the coordinator if newCoordinator is null
             coordinator = null;
         }
+
+        CoordinatorChangedEvent event = new CoordinatorChangedEvent();
+        if (event.isEnabled() && (previous != null || newCoordinator != null)) {
+            event.previousId = previous != null ? previous.getId() : null;
+            event.previousUsername = previous != null ? previous.getUsername() : null;
+            event.coordinatorId = newCoordinator != null ? newCoordinator.getId() : null;
+            event.coordinatorUsername = newCoordinator != null ? newCoordinator.getUsername() : null;
+            event.commit();
+        }
     }
 
     /**
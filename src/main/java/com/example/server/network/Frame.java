@@ -0,0 +1,342 @@
+package com.example.server.network;
+
+import com.example.common.codec.BinaryCodec;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.Communication;
+import com.example.common.messages.CommunicationType;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.UserUpdateMessage;
+import com.example.common.utils.MessageSerializer;
+import com.example.server.storage.FramePage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The Frame class holds one message encoded for the wire.
+ * A frame is immutable, so the same instance can be handed to any number of recipients.
+ * The message is encoded at most once per wire format, the first time a recipient using that
+ * format needs it, however many clients receive it. Methods without a format use JSON.
+ * A frame also remembers what kind of message it carries, so outbound queues can decide
+ * which frames to drop or merge when a client falls behind.
+ * <p>
+ * A binary frame can also be made of parts that are written one after the other, such as views of
+ * the mapped message log, so that stored frames reach the socket without being decoded or copied.
+ */
+public final class Frame {
+    private static final WireFormat[] FORMATS = WireFormat.values(); // Every wire format
+
+    private final Communication message; // The message, or null if the frame was encoded up front
+    private final AtomicReferenceArray<byte[]> encoded = new AtomicReferenceArray<>(FORMATS.length); // Encoded frames by format; never exposed so they cannot be modified
+    private final ByteBuffer[] binaryParts; // Parts making up the binary frame, or null if it is encoded as one array
+    private final boolean heartbeat; // Whether the frame is a heartbeat
+    private final String presenceKey; // Id of the user whose presence the frame updates, or null
+    private final int kind; // Kind of message carried, as counted by PipelineMetrics
+    private final long createdNanos = System.nanoTime(); // Time the frame was created, from which its time in the queues is measured
+
+    /**
+     * Constructor for Frame.
+     *
+     * @param message     The message to encode, or null for a frame encoded up front
+     * @param binaryParts Parts making up the binary frame, or null
+     * @param heartbeat   Whether the frame is a heartbeat
+     * @param presenceKey Id of the user whose presence the frame updates, or null
+     * @param kind        Kind of message carried, as counted by PipelineMetrics
+     */
+    private Frame(Communication message, ByteBuffer[] binaryParts, boolean heartbeat, String presenceKey, int kind) {
+        this.message = message;
+        this.binaryParts = binaryParts;
+        this.heartbeat = heartbeat;
+        this.presenceKey = presenceKey;
+        this.kind = kind;
+    }
+
+    /**
+     * Wraps a message into a frame that encodes it on demand.
+     *
+     * @param message The message to send
+     * @return The frame
+     */
+    public static Frame of(Communication message) {
+        boolean heartbeat = message instanceof SystemMessage systemMessage
+                && systemMessage.getSystemType() == SystemMessageType.HEARTBEAT;
+        String presenceKey = message instanceof UserUpdateMessage update && update.getUser() != null
+                ? update.getUser().getId()
+                : null;
+        return new Frame(message, null, heartbeat, presenceKey, PipelineMetrics.kindOf(message));
+    }
+
+    /**
+     * Creates a frame from binary parts written one after the other without being copied, such as
+     * message frames read back from the message log. Clients using another format get the frame
+     * decoded and encoded again the first time one of them needs it.
+     * The frame is counted as a text message in the pipeline metrics, which is all the log holds.
+     *
+     * @param parts The parts of the binary frame, each from its position to its limit; must not be modified afterwards
+     * @return The frame
+     */
+    public static Frame gathered(ByteBuffer... parts) {
+        return gathered(PipelineMetrics.kindOf(CommunicationType.TEXT), parts);
+    }
+
+    /**
+     * Creates a frame from binary parts written one after the other without being copied.
+     *
+     * @param kind  Kind of message carried, as counted by PipelineMetrics
+     * @param parts The parts of the binary frame, each from its position to its limit; must not be modified afterwards
+     * @return The frame
+     */
+    private static Frame gathered(int kind, ByteBuffer... parts) {
+        ByteBuffer[] views = new ByteBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            views[i] = parts[i].asReadOnlyBuffer();
+        }
+        return new Frame(null, views, false, null, kind);
+    }
+
+    /**
+     * Creates a HISTORY_PAGE frame from a page of stored message frames: a small head followed by
+     * the stored frames as they are, so that no message is decoded or encoded for binary clients.
+     *
+     * @param page The page of stored frames
+     * @return The frame
+     */
+    public static Frame historyPage(FramePage page) {
+        SystemMessage message = SystemMessage.of(SystemMessageType.HISTORY_PAGE, new HistoryPage(page.chatId(), List.of(), page.nextCursor()));
+        ByteBuffer[] parts = new ByteBuffer[page.frames().size() + 1];
+        parts[0] = ByteBuffer.wrap(BinaryCodec.encodeHistoryPageHead(message, page.frames().size(), page.framesLength()));
+        for (int i = 0; i < page.frames().size(); i++) {
+            parts[i + 1] = page.frames().get(i);
+        }
+        return gathered(PipelineMetrics.kindOf(SystemMessageType.HISTORY_PAGE), parts);
+    }
+
+    /**
+     * Wraps bytes that are the same in every wire format, such as a handshake reply.
+     *
+     * @param bytes The bytes to send
+     * @return The frame
+     */
+    static Frame raw(byte[] bytes) {
+        Frame frame = new Frame(null, null, false, null, PipelineMetrics.OTHER);
+        for (int i = 0; i < FORMATS.length; i++) {
+            frame.encoded.set(i, bytes);
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the frame encoded in a wire format, encoding it on first use.
+     * Recipients racing on the first use may both encode it, but all of them use the same result.
+     *
+     * @param format The wire format
+     * @return The encoded frame
+     */
+    private byte[] bytes(WireFormat format) {
+        byte[] bytes = encoded.get(format.ordinal());
+        if (bytes == null) {
+            byte[] encodedBytes;
+            if (binaryParts == null) {
+                encodedBytes = MessageSerializer.getCodec(format).encode(message);
+            } else if (format == WireFormat.BINARY) {
+                encodedBytes = joinParts();
+            } else {
+                Communication decoded = MessageSerializer.getCodec(WireFormat.BINARY).newDecoder().decode(ByteBuffer.wrap(joinParts()));
+                encodedBytes = MessageSerializer.getCodec(format).encode(decoded);
+            }
+            encoded.compareAndSet(format.ordinal(), null, encodedBytes);
+            bytes = encoded.get(format.ordinal());
+        }
+        return bytes;
+    }
+
+    /**
+     * Encodes the frame in a wire format ahead of writing it, recording the time taken in the
+     * pipeline metrics if this is its first use in that format.
+     *
+     * @param format  The wire format
+     * @param metrics The metrics the encoding time is recorded in
+     */
+    void encode(WireFormat format, PipelineMetrics metrics) {
+        if (!gathered(format) && encoded.get(format.ordinal()) == null) {
+            long start = metrics.start();
+            bytes(format);
+            metrics.record(PipelineStage.ENCODE, kind, start);
+        }
+    }
+
+    /**
+     * Copies the binary parts into one array.
+     *
+     * @return The binary frame
+     */
+    private byte[] joinParts() {
+        byte[] joined = new byte[length(WireFormat.BINARY)];
+        int offset = 0;
+        for (ByteBuffer part : binaryParts) {
+            int length = part.remaining();
+            part.get(part.position(), joined, offset, length);
+            offset += length;
+        }
+        return joined;
+    }
+
+    /**
+     * Checks if the frame is written from its parts in a wire format.
+     *
+     * @param format The wire format
+     * @return True if the frame is written part by part
+     */
+    private boolean gathered(WireFormat format) {
+        return binaryParts != null && format == WireFormat.BINARY;
+    }
+
+    /**
+     * Returns a read-only view of the JSON frame, positioned at its first byte.
+     *
+     * @return A read-only buffer over the encoded frame
+     */
+    public ByteBuffer buffer() {
+        return buffer(WireFormat.JSON);
+    }
+
+    /**
+     * Returns a read-only view of the frame in a wire format, positioned at its first byte.
+     * Every call returns an independent view, so recipients can consume it concurrently.
+     *
+     * @param format The wire format
+     * @return A read-only buffer over the encoded frame
+     */
+    public ByteBuffer buffer(WireFormat format) {
+        return ByteBuffer.wrap(bytes(format)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns read-only views of the frame in a wire format, to be written one after the other.
+     * A frame made of parts is returned as those parts, without copying them; any other frame is one buffer.
+     * Every call returns independent views, so recipients can consume them concurrently.
+     *
+     * @param format The wire format
+     * @return The buffers making up the encoded frame
+     */
+    public ByteBuffer[] buffers(WireFormat format) {
+        if (!gathered(format)) {
+            return new ByteBuffer[]{buffer(format)};
+        }
+        ByteBuffer[] views = new ByteBuffer[binaryParts.length];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = binaryParts[i].duplicate();
+        }
+        return views;
+    }
+
+    /**
+     * Writes the whole JSON frame to an output stream.
+     *
+     * @param out The stream to write to
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(out, WireFormat.JSON);
+    }
+
+    /**
+     * Writes the whole frame in a wire format to an output stream.
+     *
+     * @param out    The stream to write to
+     * @param format The wire format
+     * @throws IOException if the stream cannot be written
+     */
+    public void writeTo(OutputStream out, WireFormat format) throws IOException {
+        if (!gathered(format)) {
+            out.write(bytes(format));
+            return;
+        }
+        WritableByteChannel channel = Channels.newChannel(out);
+        for (ByteBuffer part : buffers(format)) {
+            while (part.hasRemaining()) {
+                channel.write(part);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the JSON frame.
+     *
+     * @return The number of bytes, including the trailing newline
+     */
+    public int length() {
+        return length(WireFormat.JSON);
+    }
+
+    /**
+     * Returns the size of the frame in a wire format.
+     *
+     * @param format The wire format
+     * @return The number of bytes, including the delimiter or length prefix
+     */
+    public int length(WireFormat format) {
+        if (!gathered(format)) {
+            return bytes(format).length;
+        }
+        int length = 0;
+        for (ByteBuffer part : binaryParts) {
+            length += part.remaining();
+        }
+        return length;
+    }
+
+    /**
+     * Checks if the frame is a heartbeat, which can be dropped without losing state.
+     *
+     * @return True if the frame carries a heartbeat
+     */
+    public boolean isHeartbeat() {
+        return heartbeat;
+    }
+
+    /**
+     * Returns the id of the user whose presence this frame updates.
+     * A later presence frame with the same key supersedes an earlier one.
+     *
+     * @return The user id, or null if the frame is not a presence update
+     */
+    public String getPresenceKey() {
+        return presenceKey;
+    }
+
+    /**
+     * Returns the kind of message the frame carries.
+     *
+     * @return The kind, as counted by PipelineMetrics
+     */
+    int getKind() {
+        return kind;
+    }
+
+    /**
+     * Returns the time the frame was created.
+     *
+     * @return The time in System.nanoTime
+     */
+    long getCreatedNanos() {
+        return createdNanos;
+    }
+
+    /**
+     * Decodes the JSON frame back into text, including the trailing newline.
+     *
+     * @return The frame as a string
+     */
+    public String text() {
+        return new String(bytes(WireFormat.JSON), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.server.network;
+
+/**
+ * The FrameSink interface is the outgoing side of a client connection.
+ * Implementations write an already encoded frame to their client without re-serializing it.
+ */
+public interface FrameSink {
+
+    /**
+     * Sends an encoded frame to the client.
+     * May be called from any thread.
+     *
+     * @param frame The frame to send
+     */
+    void send(Frame frame);
+}
@@ -0,0 +1,228 @@
+package com.example.server.network;
+
+import com.example.server.storage.LogRecord;
+import com.example.server.storage.MessageLog;
+import com.example.server.storage.OfflineInbox;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The InboxDrainer class delivers the messages users missed while they were offline once they log in again.
+ * Users whose inboxes are to be drained wait in one queue served by a single thread, which sends each
+ * user one batch at a time and then puts them at the back of the queue if more is waiting. Delivery is
+ * paced to a total number of messages per second, so thousands of users logging in at once after an
+ * outage get their messages in turns instead of all at once.
+ */
+public class InboxDrainer {
+    public static final int DEFAULT_BATCH_SIZE = 100; // Messages sent to a user per turn
+    public static final int DEFAULT_MESSAGES_PER_SECOND = 20_000; // Most messages delivered per second
+
+    private final OfflineInbox inbox; // Inboxes of the users
+    private final MessageLog log; // Log the messages are read from
+    private final SessionRegistry sessions; // Sessions the messages are sent to
+    private final int batchSize; // Messages sent to a user per turn
+    private final long nanosPerMessage; // Delivery time budgeted per message
+    private final LinkedBlockingQueue<String> ready = new LinkedBlockingQueue<>(); // Users waiting for their next turn
+    private final Set<String> scheduled = ConcurrentHashMap.newKeySet(); // Users in the queue or being served
+    private final Thread thread; // Thread serving the queue
+    private volatile boolean running = true; // Whether the drainer has not been stopped
+
+    private final LongAdder drained = new LongAdder(); // Messages delivered
+    private final LongAdder batches = new LongAdder(); // Batches delivered
+    private final LongAdder busyNanos = new LongAdder(); // Time spent delivering, including pacing
+    private long burstStartNanos; // Start of the current run of deliveries
+    private long burstDrained; // Messages delivered in the current run
+    private int burstUsers; // Users whose inboxes were emptied in the current run
+
+    /**
+     * Constructor for InboxDrainer.
+     * Starts the delivery thread.
+     *
+     * @param inbox             The inboxes of the users
+     * @param log               The log the messages are read from
+     * @param sessions          The sessions the messages are sent to
+     * @param batchSize         Messages sent to a user per turn
+     * @param messagesPerSecond Most messages delivered per second
+     */
+    public InboxDrainer(OfflineInbox inbox, MessageLog log, SessionRegistry sessions, int batchSize, int messagesPerSecond) {
+        this.inbox = inbox;
+        this.log = log;
+        this.sessions = sessions;
+        this.batchSize = batchSize;
+        this.nanosPerMessage = TimeUnit.SECONDS.toNanos(1) / messagesPerSecond;
+        this.thread = new Thread(this::run, "inbox-drainer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Creates a drainer with the default batch size and delivery rate.
+     *
+     * @param inbox    The inboxes of the users
+     * @param log      The log the messages are read from
+     * @param sessions The sessions the messages are sent to
+     * @return The drainer
+     */
+    public static InboxDrainer withDefaults(OfflineInbox inbox, MessageLog log, SessionRegistry sessions) {
+        return new InboxDrainer(inbox, log, sessions, DEFAULT_BATCH_SIZE, DEFAULT_MESSAGES_PER_SECOND);
+    }
+
+    /**
+     * Queues a user's inbox for delivery, unless it is queued already or empty.
+     * May be called from any thread.
+     *
+     * @param userId The id of the user
+     */
+    public void schedule(String userId) {
+        if (inbox.size(userId) > 0 && scheduled.add(userId)) {
+            ready.offer(userId);
+        }
+    }
+
+    /**
+     * Serves the queue of users until the drainer is stopped.
+     */
+    private void run() {
+        while (running) {
+            String userId;
+            try {
+                userId = ready.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (userId == null) {
+                continue;
+            }
+            if (burstStartNanos == 0) {
+                burstStartNanos = System.nanoTime();
+            }
+
+            long startNanos = System.nanoTime();
+            int sent = 0;
+            boolean failed = false;
+            try {
+                sent = drainBatch(userId);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error delivering offline messages to " + userId + ": " + e.getMessage());
+                failed = true;
+            }
+
+            if (!failed && sessions.contains(userId) && inbox.size(userId) > 0) {
+                ready.offer(userId); // Let the other users have their turn first
+            } else {
+                scheduled.remove(userId);
+                burstUsers++;
+                if (!failed && sessions.contains(userId)) {
+                    schedule(userId); // Messages queued just as the user was taken off the queue
+                }
+            }
+
+            // Keep to the delivery rate
+            long budgetNanos = sent * nanosPerMessage;
+            long spentNanos = System.nanoTime() - startNanos;
+            if (spentNanos < budgetNanos) {
+                LockSupport.parkNanos(budgetNanos - spentNanos);
+            }
+            drained.add(sent);
+            burstDrained += sent;
+            busyNanos.add(System.nanoTime() - startNanos);
+
+            if (ready.isEmpty()) {
+                report();
+            }
+        }
+    }
+
+    /**
+     * Sends one batch of a user's waiting messages and removes them from the inbox.
+     *
+     * @param userId The id of the user
+     * @return The number of messages sent
+     * @throws IOException if the inbox or the log fails
+     */
+    private int drainBatch(String userId) throws IOException {
+        ClientSession session = sessions.get(userId);
+        if (session == null) {
+            return 0; // Gone again; the messages wait for the next login
+        }
+        OfflineInbox.Batch batch = inbox.peek(userId, batchSize);
+        if (batch == null) {
+            return 0;
+        }
+        List<LogRecord> records = log.readAt(batch.positions());
+        for (LogRecord record : records) {
+            // Binary clients get the stored frame as it is, straight from the mapped log
+            session.send(Frame.gathered(record.frame()));
+        }
+        inbox.acknowledge(userId, batch.endSequence());
+        batches.increment();
+        return records.size();
+    }
+
+    /**
+     * Reports the run of deliveries that has just ended.
+     */
+    private void report() {
+        if (burstDrained > 0) {
+            long elapsedNanos = Math.max(System.nanoTime() - burstStartNanos, 1);
+            System.out.printf("Delivered %d offline messages to %d users in %d ms (%.0f messages/s); %d messages wait in %d inboxes%n",
+                    burstDrained, burstUsers, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    burstDrained * 1e9 / elapsedNanos, inbox.getPendingCount(), inbox.getUserCount());
+        }
+        burstStartNanos = 0;
+        burstDrained = 0;
+        burstUsers = 0;
+    }
+
+    /**
+     * Stops the delivery thread; messages not delivered yet stay in their inboxes.
+     */
+    public void stop() {
+        running = false;
+        thread.interrupt();
+    }
+
+    /**
+     * Returns the number of messages delivered from inboxes.
+     *
+     * @return The drained message count
+     */
+    public long getDrainedCount() {
+        return drained.sum();
+    }
+
+    /**
+     * Returns the number of batches delivered.
+     *
+     * @return The batch count
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * Returns the delivery rate while the drainer was busy.
+     *
+     * @return Messages delivered per second of delivery time, or 0 if nothing has been delivered
+     */
+    public double getDrainRate() {
+        long nanos = busyNanos.sum();
+        return nanos == 0 ? 0 : drained.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the number of users waiting for their inboxes to be delivered.
+     *
+     * @return The number of queued users
+     */
+    public int getWaitingUsers() {
+        return scheduled.size();
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.server.network;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The LivenessTracker class finds sessions that have not been heard from within the timeout
+ * using a hashed timer wheel.
+ * Each session sits in the bucket of the tick its deadline falls in. Refreshing a session only
+ * updates its last heartbeat time; when its bucket comes due, a refreshed session is moved to the
+ * bucket of its new deadline and a stale one is reported as expired. Each tick therefore only
+ * touches the sessions whose deadline falls in it, instead of scanning every session.
+ */
+public class LivenessTracker {
+    private final SessionRegistry sessions; // Registry deciding whether a tracked session is still logged in
+    private final long timeoutMillis; // Time without inbound frames after which a session expires
+    private final long tickMillis; // Duration of one wheel bucket
+    private final Queue<ClientSession>[] wheel; // Buckets of sessions by deadline tick
+    private final int mask; // Mask mapping a tick to its bucket
+    private volatile long processedTick; // Last tick whose bucket has been processed
+
+    private final AtomicLong expirations = new AtomicLong(); // Sessions expired so far
+    private final AtomicLong sessionsScanned = new AtomicLong(); // Sessions examined by all ticks
+    private final AtomicLong scanNanos = new AtomicLong(); // Time spent processing buckets
+    private volatile long lastScanNanos; // Time spent by the last tick
+    private volatile int lastScanSessions; // Sessions examined by the last tick
+
+    /**
+     * Constructor for LivenessTracker.
+     *
+     * @param sessions      The registry of logged-in sessions
+     * @param timeoutMillis Time without inbound frames after which a session expires
+     * @param tickMillis    Resolution of the wheel; expiry happens up to one tick late
+     */
+    @SuppressWarnings("unchecked")
+    public LivenessTracker(SessionRegistry sessions, long timeoutMillis, long tickMillis) {
+        this.sessions = sessions;
+        this.timeoutMillis = timeoutMillis;
+        this.tickMillis = tickMillis;
+
+        // Make the wheel longer than the timeout so every deadline falls within one rotation
+        int buckets = Integer.highestOneBit((int) (timeoutMillis / tickMillis) + 2) << 1;
+        this.wheel = new Queue[buckets];
+        for (int i = 0; i < buckets; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.mask = buckets - 1;
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    /**
+     * Starts tracking a session, counting it as alive from its last heartbeat.
+     * May be called from any thread.
+     *
+     * @param session The session to track
+     */
+    public void track(ClientSession session) {
+        schedule(session, session.getLastHeartbeat() + timeoutMillis);
+    }
+
+    /**
+     * Puts a session in the bucket of its deadline.
+     *
+     * @param session  The session
+     * @param deadline The time the session expires unless it is refreshed
+     */
+    private void schedule(ClientSession session, long deadline) {
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, processedTick + 1);
+        wheel[(int) (tick & mask)].add(session);
+    }
+
+    /**
+     * Processes every bucket that has come due since the last call.
+     * Must only be called from one thread at a time.
+     *
+     * @param now The current time in milliseconds
+     * @return The sessions that have expired
+     */
+    public List<ClientSession> expire(long now) {
+        long startNanos = System.nanoTime();
+        long currentTick = now / tickMillis;
+        List<ClientSession> expired = new ArrayList<>();
+        List<ClientSession> due = new ArrayList<>();
+        int scanned = 0;
+
+        while (processedTick < currentTick) {
+            long tick = processedTick + 1;
+            Queue<ClientSession> bucket = wheel[(int) (tick & mask)];
+            ClientSession session;
+            while ((session = bucket.poll()) != null) {
+                due.add(session);
+            }
+            processedTick = tick; // Sessions scheduled from now on go to later buckets
+
+            for (ClientSession candidate : due) {
+                scanned++;
+                if (sessions.get(candidate.getUserId()) != candidate) {
+                    continue; // The session has logged out or been replaced
+                }
+                long deadline = candidate.getLastHeartbeat() + timeoutMillis;
+                if (deadline <= now) {
+                    expired.add(candidate);
+                } else {
+                    schedule(candidate, deadline); // Refreshed since it was scheduled
+                }
+            }
+            due.clear();
+        }
+
+        long elapsed = System.nanoTime() - startNanos;
+        expirations.addAndGet(expired.size());
+        sessionsScanned.addAndGet(scanned);
+        scanNanos.addAndGet(elapsed);
+        lastScanNanos = elapsed;
+        lastScanSessions = scanned;
+        return expired;
+    }
+
+    /**
+     * Returns the number of sessions expired so far.
+     *
+     * @return The expiration count
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * Returns the number of sessions examined by all ticks.
+     *
+     * @return The scanned session count
+     */
+    public long getSessionsScanned() {
+        return sessionsScanned.get();
+    }
+
+    /**
+     * Returns the total time spent processing buckets.
+     *
+     * @return The scan time in nanoseconds
+     */
+    public long getScanNanos() {
+        return scanNanos.get();
+    }
+
+    /**
+     * Returns the time spent by the last tick.
+     *
+     * @return The scan time in nanoseconds
+     */
+    public long getLastScanNanos() {
+        return lastScanNanos;
+    }
+
+    /**
+     * Returns the number of sessions examined by the last tick.
+     *
+     * @return The scanned session count
+     */
+    public int getLastScanSessions() {
+        return lastScanSessions;
+    }
+}
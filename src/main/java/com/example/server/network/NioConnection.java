@@ -0,0 +1,404 @@
+package com.example.server.network;
+
+import com.example.common.codec.FrameDecoder;
+import com.example.common.codec.WireFormat;
+import com.example.common.events.ChatEvents;
+import com.example.common.events.MessageDispatchedEvent;
+import com.example.common.events.MessageReceivedEvent;
+import com.example.common.events.SlowWriteEvent;
+import com.example.common.messages.Communication;
+import com.example.common.utils.MessageSerializer;
+import com.example.server.processing.ServerMessageProcessor;
+import com.example.server.processing.ServerMessageProcessorFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The NioConnection class is the NIO counterpart of ServerHandler.
+ * It decodes frames in the connection's negotiated wire format from a non-blocking channel, dispatches them to the
+ * message processors on its event loop, and queues outgoing frames on a bounded OutboundQueue
+ * that the event loop drains whenever the channel is writable. Frames queued during one event loop
+ * cycle are written together with a single gathering write at the end of the cycle.
+ */
+public class NioConnection implements ClientConnection {
+    private static final int MAX_GATHERED_FRAMES = 64; // Most frames written by one gathering write
+
+    private final SocketChannel channel; // The client channel
+    private final SelectionKey key; // The channel's key in the event loop's selector
+    private final NioEventLoop eventLoop; // The event loop owning this connection
+    private final Server server; // Reference to the server
+    private final PipelineMetrics metrics; // Latencies of the server's pipeline stages
+    private final ServerCounters counters; // Messages, bytes and events counted by the server
+    private final OutboundQueue outbound = OutboundQueue.withDefaults(); // Frames waiting to be written
+    private volatile ClientSession session; // Session of the user logged in on this connection
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false); // Whether a flush is pending on the loop
+    private final String clientSocket; // Cached address of the client
+    private ByteBuffer[] gather = new ByteBuffer[MAX_GATHERED_FRAMES]; // Buffers handed to one gathering write, one or more per frame
+    private boolean[] frameEnds = new boolean[MAX_GATHERED_FRAMES]; // Whether each buffer in gather ends a frame
+    private int gatherStart; // Index of the first buffer in gather not yet fully written
+    private int gatherEnd; // Index after the last buffer in gather
+    private int gatheredFrames; // Frames in gather not yet fully written
+    private final CodecNegotiation negotiation = new CodecNegotiation(); // Settles the wire format
+    private FrameDecoder decoder; // Decoder of the client's frames, or null during the handshake
+    private volatile WireFormat wireFormat = WireFormat.JSON; // Format of the frames written to the client
+    private volatile boolean closed; // Whether the connection has been closed
+
+    /**
+     * Constructor for NioConnection.
+     *
+     * @param channel   The client channel
+     * @param key       The channel's selection key
+     * @param eventLoop The event loop owning the channel
+     * @param server    The server instance
+     */
+    public NioConnection(SocketChannel channel, SelectionKey key, NioEventLoop eventLoop, Server server) {
+        this.channel = channel;
+        this.key = key;
+        this.eventLoop = eventLoop;
+        this.server = server;
+        this.metrics = server.getMetrics();
+        this.counters = server.getCounters();
+        this.clientSocket = resolveClientSocket(channel);
+    }
+
+    /**
+     * Returns the IP address of the connected client.
+     *
+     * @return String representation of the client's IP address and port
+     */
+    @Override
+    public String getClientSocket() {
+        return clientSocket;
+    }
+
+    /**
+     * Reads whatever is available on the channel and dispatches every complete frame.
+     * Called on the event loop when the channel is readable.
+     *
+     * @param readBuffer The event loop's shared read buffer
+     */
+    void onReadable(ByteBuffer readBuffer) {
+        try {
+            int read;
+            long start = metrics.start();
+            while ((read = channel.read(readBuffer.clear())) > 0) {
+                metrics.record(PipelineStage.READ, PipelineMetrics.OTHER, start);
+                counters.bytesReceived(read);
+                readBuffer.flip();
+                decodeFrames(readBuffer);
+                if (closed) {
+                    return;
+                }
+                start = metrics.start();
+            }
+            if (read < 0) {
+                close(); // The client closed the connection
+            }
+        } catch (IOException e) {
+            System.err.println("Error in communication: " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Settles the wire format if needed, then dispatches every complete frame in the buffer.
+     * Frames split across reads are completed by the decoder.
+     *
+     * @param buffer The bytes just read from the channel
+     */
+    private void decodeFrames(ByteBuffer buffer) {
+        try {
+            if (decoder == null) {
+                if (!negotiation.offer(buffer)) {
+                    return; // The handshake is not complete yet
+                }
+                startCodec();
+            }
+            Communication message;
+            long start = metrics.start();
+            while (!closed && (message = decoder.decode(buffer)) != null) {
+                metrics.record(PipelineStage.DECODE, PipelineMetrics.kindOf(message), start);
+                dispatch(message);
+                start = metrics.start();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error decoding frame from " + clientSocket + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Switches the connection to the negotiated wire format and answers the handshake.
+     */
+    private void startCodec() {
+        wireFormat = negotiation.getFormat();
+        Frame reply = negotiation.reply();
+        if (reply != null) {
+            send(reply); // Queued before any other frame, since the client has not logged in yet
+        }
+        decoder = MessageSerializer.getCodec(wireFormat).newDecoder();
+    }
+
+    /**
+     * Processes one decoded frame, closing the connection if it cannot be handled.
+     *
+     * @param message The message received from the client
+     */
+    private void dispatch(Communication message) {
+        try {
+            processMessage(message);
+        } catch (RuntimeException e) {
+            System.err.println("Error processing message from " + clientSocket + ": " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Processes a decoded message by delegating it to the appropriate processor.
+     *
+     * @param message The message received from the client
+     */
+    public void processMessage(Communication message) {
+        counters.messageReceived(PipelineMetrics.kindOf(message));
+        MessageReceivedEvent.emit(ChatEvents.SERVER, message, clientSocket);
+
+        // Any frame from the client shows that it is alive
+        ClientSession current = session;
+        if (current != null) {
+            current.recordHeartbeat();
+        }
+
+        // Get the appropriate message processor based on the message type
+        ServerMessageProcessor processor = ServerMessageProcessorFactory.getProcessor(message.getType());
+        if (processor == null) {
+            System.err.println("No processor for " + message.getType() + " messages");
+            return;
+        }
+
+        // Process the message using the obtained processor
+        MessageDispatchedEvent event = new MessageDispatchedEvent();
+        event.begin();
+        long start = metrics.start();
+        processor.processMessage(message, this.server, this);
+        metrics.record(PipelineStage.DISPATCH, PipelineMetrics.kindOf(message), start);
+        event.finish(ChatEvents.SERVER, message, current != null ? current.getUserId() : null, clientSocket);
+    }
+
+    /**
+     * Queues an encoded frame and makes sure the event loop will flush it.
+     * May be called from any thread and never blocks; a client whose queue overflows is disconnected.
+     *
+     * @param frame The frame to send
+     */
+    @Override
+    public void send(Frame frame) {
+        if (closed) {
+            return;
+        }
+        if (!outbound.offer(frame)) {
+            counters.slowConsumerDisconnected();
+            System.err.println("Client " + clientSocket + " is not keeping up, disconnecting");
+            close();
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            eventLoop.execute(this::flush); // Runs once the loop's current cycle has been processed
+        }
+    }
+
+    /**
+     * Continues flushing once the channel has become writable again.
+     * Called on the event loop.
+     */
+    void onWritable() {
+        flush();
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the socket buffer is full.
+     * Up to MAX_GATHERED_FRAMES frames are handed to the channel with each gathering write.
+     * Called on the event loop.
+     */
+    private void flush() {
+        try {
+            while (gatherFrames()) {
+                SlowWriteEvent slowWrite = new SlowWriteEvent();
+                slowWrite.begin();
+                long start = metrics.start();
+                long written = channel.write(gather, gatherStart, gatherEnd - gatherStart);
+                metrics.record(PipelineStage.WRITE, PipelineMetrics.OTHER, start);
+                int frames = 0;
+                while (gatherStart < gatherEnd && !gather[gatherStart].hasRemaining()) {
+                    gather[gatherStart] = null;
+                    if (frameEnds[gatherStart++]) {
+                        frames++;
+                    }
+                }
+                gatheredFrames -= frames;
+                server.getFlushCounters().record(frames, written);
+                slowWrite.finish(clientSocket, frames, written);
+                if (gatherStart < gatherEnd) {
+                    // The socket buffer is full; resume when the channel becomes writable
+                    if (key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                    return;
+                }
+            }
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+            flushScheduled.set(false);
+
+            // A frame may have been queued after the queue was seen empty
+            if (outbound.depth() > 0 && flushScheduled.compareAndSet(false, true)) {
+                flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing to " + clientSocket + ": " + e.getMessage());
+            close();
+        } catch (RuntimeException e) {
+            System.err.println("Error flushing to " + clientSocket + ", closing it: " + e); // Handed over as a task, so close only this connection
+            close();
+        }
+    }
+
+    /**
+     * Moves queued frames into the gather array behind any frame still partly written.
+     * A frame made of several parts, such as a history page of stored frames, takes one slot per part.
+     * The time every frame spent queued and its encoding are recorded in the pipeline metrics.
+     * Called on the event loop.
+     *
+     * @return True if there is anything to write
+     */
+    private boolean gatherFrames() {
+        if (gatherStart == gatherEnd) {
+            gatherStart = 0;
+            gatherEnd = 0;
+        }
+        Frame next;
+        while (gatheredFrames < MAX_GATHERED_FRAMES && (next = outbound.poll()) != null) {
+            metrics.record(PipelineStage.QUEUE, next.getKind(), next.getCreatedNanos(), metrics.start());
+            counters.frameSent(next.getKind());
+            next.encode(wireFormat, metrics);
+            ByteBuffer[] parts = next.buffers(wireFormat); // Each connection writes through its own views
+            if (gatherEnd + parts.length > gather.length) {
+                // Move the unwritten buffers to the front, and grow the array if they still do not fit
+                int pending = gatherEnd - gatherStart;
+                ByteBuffer[] buffers = gather;
+                boolean[] ends = frameEnds;
+                if (pending + parts.length > gather.length) {
+                    buffers = new ByteBuffer[pending + parts.length];
+                    ends = new boolean[pending + parts.length];
+                }
+                System.arraycopy(gather, gatherStart, buffers, 0, pending);
+                System.arraycopy(frameEnds, gatherStart, ends, 0, pending);
+                if (buffers == gather) {
+                    Arrays.fill(gather, pending, gatherEnd, null); // Drop the references left behind the moved buffers
+                }
+                gather = buffers;
+                frameEnds = ends;
+                gatherStart = 0;
+                gatherEnd = pending;
+            }
+            for (int i = 0; i < parts.length; i++) {
+                gather[gatherEnd] = parts[i];
+                frameEnds[gatherEnd++] = i == parts.length - 1;
+            }
+            gatheredFrames++;
+        }
+        return gatherStart < gatherEnd;
+    }
+
+    /**
+     * Attaches the session of the user who logged in on this connection.
+     *
+     * @param session The client's session
+     */
+    @Override
+    public void setSession(ClientSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the session of the user who logged in on this connection.
+     *
+     * @return The client's session, or null before login
+     */
+    @Override
+    public ClientSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns the wire format of the frames written to the client.
+     *
+     * @return The format settled with the client, JSON until it is settled
+     */
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the client.
+     *
+     * @return The outbound queue depth
+     */
+    @Override
+    public int getOutboundQueueDepth() {
+        return outbound.depth();
+    }
+
+    /**
+     * Closes the channel and drops any frames still queued.
+     */
+    @Override
+    public void close() {
+        outbound.close(); // Stop queueing right away, whichever thread is closing
+        if (!eventLoop.inEventLoop()) {
+            eventLoop.execute(this::close);
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        eventLoop.connectionClosed();
+        key.cancel();
+        Arrays.fill(gather, null);
+        gatherStart = 0;
+        gatherEnd = 0;
+        gatheredFrames = 0;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Formats the remote address of a channel like ServerHandler does.
+     *
+     * @param channel The client channel
+     * @return String representation of the client's IP address and port
+     */
+    private static String resolveClientSocket(SocketChannel channel) {
+        try {
+            SocketAddress address = channel.getRemoteAddress();
+            if (address instanceof InetSocketAddress inet && inet.getAddress() != null) {
+                return inet.getAddress().getHostAddress() + ":" + inet.getPort();
+            }
+        } catch (IOException e) {
+            System.err.println("Error resolving client address: " + e.getMessage());
+        }
+        return "Unknown";
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.server.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The NioEventLoop class owns one Selector and the connections registered with it.
+ * All reads, frame decoding, dispatching and socket writes of its connections happen on
+ * its single thread; other threads hand work over through the task queue.
+ * Flushes requested while the ready keys are processed run once the cycle is over, or sooner
+ * if the cycle takes longer than OutboundQueue.MAX_FLUSH_DELAY_NANOS.
+ */
+public class NioEventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024; // Size of the read buffer shared by all connections
+
+    private final Server server; // Reference to the server
+    private final Selector selector; // Selector multiplexing this loop's connections
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>(); // Work handed over by other threads
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE); // Shared read buffer
+    private final Thread thread; // The thread running this loop
+    private final AtomicInteger activeConnections; // Connection count shared with the transport
+    private volatile boolean running = true; // Whether the loop should keep running
+
+    /**
+     * Constructor for NioEventLoop.
+     *
+     * @param server            The server the connections deliver messages to
+     * @param name              The name of the loop's thread
+     * @param activeConnections Connection count shared with the transport
+     * @throws IOException if the selector cannot be opened
+     */
+    public NioEventLoop(Server server, String name, AtomicInteger activeConnections) throws IOException {
+        this.server = server;
+        this.activeConnections = activeConnections;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, name);
+    }
+
+    /**
+     * Starts the loop's thread.
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Registers an accepted channel with this loop.
+     * May be called from any thread.
+     *
+     * @param channel The accepted client channel
+     */
+    public void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(new NioConnection(channel, key, this, server));
+                activeConnections.incrementAndGet();
+            } catch (IOException e) {
+                System.err.println("Error registering connection: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    /**
+     * Runs a task on the loop's thread and wakes the selector up if needed.
+     *
+     * @param task The task to run
+     */
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Checks if the caller is running on this loop's thread.
+     *
+     * @return True if called from the loop's thread
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * The run method selects ready channels and runs pending tasks until shut down.
+     */
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select();
+                runTasks();
+
+                long cycleStart = System.nanoTime();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                    if (System.nanoTime() - cycleStart >= OutboundQueue.MAX_FLUSH_DELAY_NANOS) {
+                        runTasks(); // Do not hold back flushes for longer than the cap
+                        cycleStart = System.nanoTime();
+                    }
+                }
+                runTasks(); // Flush what the cycle has queued
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    System.err.println("Error in event loop: " + e.getMessage());
+                }
+            }
+        }
+        closeAll();
+    }
+
+    /**
+     * Handles the ready operations of one connection.
+     *
+     * @param key The selection key of the connection
+     */
+    private void processKey(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.onReadable(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.onWritable();
+            }
+        } catch (CancelledKeyException e) {
+            connection.close();
+        } catch (RuntimeException e) {
+            System.err.println("Error handling connection, closing it: " + e); // Only this connection is lost, not the loop
+            connection.close();
+        }
+    }
+
+    /**
+     * Runs all tasks handed over by other threads.
+     * A task that fails is logged and skipped, so that it does not stop the loop's other connections.
+     */
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                System.err.println("Error running event loop task: " + e);
+            }
+        }
+    }
+
+    /**
+     * Records that one of this loop's connections has been closed.
+     */
+    void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Stops the loop; its connections are closed on the loop's thread.
+     */
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Closes every connection and the selector.
+     */
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioConnection connection) {
+                connection.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Error closing selector: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes a channel, ignoring errors.
+     *
+     * @param channel The channel to close
+     */
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+}
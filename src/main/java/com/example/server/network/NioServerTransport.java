@@ -0,0 +1,150 @@
+package com.example.server.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The NioServerTransport class accepts clients on a non-blocking ServerSocketChannel and
+ * spreads them round-robin over a small, fixed set of NioEventLoop threads.
+ * An idle connection costs a selection key and a few small buffers instead of a thread.
+ */
+public class NioServerTransport implements ServerTransport {
+    private static final long ACCEPT_RETRY_MILLIS = 100; // Pause after a failed accept before trying again
+    private final Server server; // Reference to the server
+    private final NioEventLoop[] eventLoops; // Event loops serving accepted connections
+    private final AtomicInteger activeConnections = new AtomicInteger(); // Connections currently registered
+    private ServerSocketChannel listener; // The listening channel
+    private Selector acceptSelector; // Selector waiting for incoming connections
+    private Thread acceptor; // Thread accepting incoming connections
+    private volatile boolean running; // Whether the transport is accepting clients
+    private int nextLoop = 0; // Index of the event loop receiving the next connection
+
+    /**
+     * Constructor for NioServerTransport.
+     *
+     * @param server         The server the connections deliver messages to
+     * @param eventLoopCount The number of event loop threads to run
+     */
+    public NioServerTransport(Server server, int eventLoopCount) {
+        this.server = server;
+        this.eventLoops = new NioEventLoop[Math.max(1, eventLoopCount)];
+    }
+
+    /**
+     * Binds the listening channel and starts the acceptor and event loop threads.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the listening channel cannot be opened
+     */
+    @Override
+    public void start(int port) throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new NioEventLoop(server, "chat-nio-" + i, activeConnections);
+            eventLoops[i].start();
+        }
+
+        acceptSelector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port), 1024); // Generous backlog for reconnect storms
+        listener.configureBlocking(false);
+        listener.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        acceptor = new Thread(this::acceptLoop, "chat-nio-acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Accepts incoming connections and hands them to the event loops until the transport is stopped.
+     * A failed accept, such as one refused for lack of file descriptors, is reported and retried
+     * after a short pause; the connection waits in the backlog meanwhile.
+     */
+    private void acceptLoop() {
+        while (running) {
+            try {
+                acceptSelector.select();
+                acceptSelector.selectedKeys().clear();
+
+                SocketChannel channel;
+                while ((channel = accept()) != null) {
+                    eventLoops[nextLoop].register(channel);
+                    nextLoop = (nextLoop + 1) % eventLoops.length;
+                }
+            } catch (ClosedSelectorException e) {
+                return; // The transport has been stopped
+            } catch (IOException e) {
+                if (!running) {
+                    return;
+                }
+                System.err.println("Error accepting connection, retrying in " + ACCEPT_RETRY_MILLIS + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts one pending connection.
+     * Package-private so that tests can make it fail.
+     *
+     * @return The accepted channel, or null if no connection is pending
+     * @throws IOException if accepting fails
+     */
+    SocketChannel accept() throws IOException {
+        return listener.accept();
+    }
+
+    /**
+     * Returns the port the listening channel is bound to.
+     *
+     * @return The local port, or -1 if the transport has not been started
+     */
+    @Override
+    public int getLocalPort() {
+        return listener != null ? listener.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Returns the number of connections registered with the event loops.
+     *
+     * @return The number of active connections
+     */
+    @Override
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Closes the listening channel and stops the event loops.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            if (acceptSelector != null) {
+                acceptSelector.wakeup();
+                acceptSelector.close();
+            }
+            if (listener != null) {
+                listener.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing listener: " + e.getMessage());
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            if (eventLoop != null) {
+                eventLoop.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.server.network;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The OutboundQueue class is the bounded queue of frames waiting to be written to one client.
+ * Senders never block on it: when it is full the enabled overflow policies decide whether the
+ * new frame is dropped, merged into a queued one, or whether the client has to be disconnected.
+ * It locks with a ReentrantLock so that virtual threads waiting on it are not pinned.
+ */
+public class OutboundQueue {
+    private static final int DEFAULT_CAPACITY = 1024; // Frames queued per client unless configured otherwise
+
+    // Longest time a written frame may wait in a writer's buffer before it is flushed
+    public static final long MAX_FLUSH_DELAY_NANOS =
+            TimeUnit.MICROSECONDS.toNanos(Long.getLong("chat.outbound.flushIntervalMicros", 1000));
+
+    private final Frame[] frames; // Ring buffer of queued frames
+    private final Set<OverflowPolicy> policies; // Policies applied when the queue is full
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the ring buffer
+    private final Condition notEmpty = lock.newCondition(); // Signalled when a frame is queued
+    private final AtomicLong droppedFrames = new AtomicLong(); // Frames dropped because the queue was full
+    private final AtomicLong coalescedFrames = new AtomicLong(); // Presence frames merged into a queued one
+    private int head; // Index of the oldest frame
+    private int size; // Number of queued frames
+    private boolean closed; // Whether the queue accepts no more frames
+
+    /**
+     * Constructor for OutboundQueue.
+     *
+     * @param capacity The maximum number of queued frames
+     * @param policies The policies applied when the queue is full
+     */
+    public OutboundQueue(int capacity, Set<OverflowPolicy> policies) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Outbound queue capacity must be positive: " + capacity);
+        }
+        this.frames = new Frame[capacity];
+        this.policies = policies.isEmpty() ? EnumSet.noneOf(OverflowPolicy.class) : EnumSet.copyOf(policies);
+    }
+
+    /**
+     * Creates a queue configured by the chat.outbound.capacity and chat.outbound.policies
+     * system properties; by default it holds 1024 frames and applies every policy.
+     *
+     * @return A new queue
+     */
+    public static OutboundQueue withDefaults() {
+        int capacity = Integer.getInteger("chat.outbound.capacity", DEFAULT_CAPACITY);
+        String configured = System.getProperty("chat.outbound.policies");
+        Set<OverflowPolicy> policies = EnumSet.allOf(OverflowPolicy.class);
+        if (configured != null) {
+            policies = EnumSet.noneOf(OverflowPolicy.class);
+            for (String name : configured.split(",")) {
+                if (!name.isBlank()) {
+                    policies.add(OverflowPolicy.valueOf(name.trim().toUpperCase()));
+                }
+            }
+        }
+        return new OutboundQueue(capacity, policies);
+    }
+
+    /**
+     * Queues a frame, applying the overflow policies if the queue is full.
+     *
+     * @param frame The frame to queue
+     * @return False if the client cannot keep up and should be disconnected, true otherwise
+     *         (including when the frame was dropped or merged)
+     */
+    public boolean offer(Frame frame) {
+        lock.lock();
+        try {
+            if (closed) {
+                return true; // Nothing is delivered to a closed connection any more
+            }
+            if (size == frames.length && !makeRoom(frame)) {
+                if (policies.contains(OverflowPolicy.DISCONNECT_SLOW_CONSUMER)) {
+                    return false;
+                }
+                droppedFrames.incrementAndGet(); // Without disconnects, the newest frame is lost
+                return true;
+            }
+            if (size < frames.length) {
+                frames[(head + size) % frames.length] = frame;
+                size++;
+                notEmpty.signal();
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the drop and coalesce policies to a full queue.
+     * Called with the lock held.
+     *
+     * @param frame The frame that does not fit
+     * @return True if the frame has been handled or room has been made for it
+     */
+    private boolean makeRoom(Frame frame) {
+        if (policies.contains(OverflowPolicy.DROP_HEARTBEATS)) {
+            if (frame.isHeartbeat()) {
+                droppedFrames.incrementAndGet(); // Clients only need the newest heartbeat
+                return true;
+            }
+            int queuedHeartbeat = indexOf(null, true);
+            if (queuedHeartbeat >= 0) {
+                removeAt(queuedHeartbeat);
+                droppedFrames.incrementAndGet();
+                return true;
+            }
+        }
+        if (policies.contains(OverflowPolicy.COALESCE_PRESENCE) && frame.getPresenceKey() != null) {
+            int queuedUpdate = indexOf(frame.getPresenceKey(), false);
+            if (queuedUpdate >= 0) {
+                removeAt(queuedUpdate); // The newer status wins, queued behind the frames sent before it
+                coalescedFrames.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the oldest queued frame that is a heartbeat or updates the given user's presence.
+     * Called with the lock held.
+     *
+     * @param presenceKey The presence key to look for, or null to look for a heartbeat
+     * @param heartbeat   Whether a heartbeat is looked for
+     * @return The position of the frame counted from the head, or -1 if none is queued
+     */
+    private int indexOf(String presenceKey, boolean heartbeat) {
+        for (int i = 0; i < size; i++) {
+            Frame queued = frames[(head + i) % frames.length];
+            if (heartbeat ? queued.isHeartbeat() : presenceKey.equals(queued.getPresenceKey())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the frame at the given position, keeping the order of the others.
+     * Called with the lock held.
+     *
+     * @param position The position of the frame counted from the head
+     */
+    private void removeAt(int position) {
+        for (int i = position; i < size - 1; i++) {
+            frames[(head + i) % frames.length] = frames[(head + i + 1) % frames.length];
+        }
+        frames[(head + size - 1) % frames.length] = null;
+        size--;
+    }
+
+    /**
+     * Removes the oldest frame without waiting.
+     *
+     * @return The oldest frame, or null if the queue is empty
+     */
+    public Frame poll() {
+        lock.lock();
+        try {
+            return size == 0 ? null : removeHead();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits up to the given time for a frame and then moves up to maxFrames queued frames,
+     * oldest first, into the given list.
+     *
+     * @param batch     The list the frames are added to
+     * @param maxFrames The maximum number of frames to move
+     * @param timeout   How long to wait for a frame
+     * @param unit      The unit of the timeout
+     * @return The number of frames moved; 0 if the wait timed out or the queue was closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public int drainTo(List<Frame> batch, int maxFrames, long timeout, TimeUnit unit) throws InterruptedException {
+        lock.lock();
+        try {
+            long nanos = unit.toNanos(timeout);
+            while (size == 0 && !closed) {
+                if (nanos <= 0) {
+                    return 0;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            int moved = 0;
+            while (size > 0 && moved < maxFrames) {
+                batch.add(removeHead());
+                moved++;
+            }
+            return moved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest frame.
+     * Called with the lock held and a non-empty queue.
+     *
+     * @return The oldest frame
+     */
+    private Frame removeHead() {
+        Frame frame = frames[head];
+        frames[head] = null;
+        head = (head + 1) % frames.length;
+        size--;
+        return frame;
+    }
+
+    /**
+     * Discards every queued frame and rejects new ones, waking up a waiting writer.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            Arrays.fill(frames, null);
+            size = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the queue has been closed.
+     *
+     * @return True if the queue accepts no more frames
+     */
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of frames waiting to be written.
+     *
+     * @return The queue depth
+     */
+    public int depth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the maximum number of frames the queue holds.
+     *
+     * @return The capacity
+     */
+    public int capacity() {
+        return frames.length;
+    }
+
+    /**
+     * Returns the number of frames dropped because the queue was full.
+     *
+     * @return The number of dropped frames
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * Returns the number of presence frames merged into an already queued update.
+     *
+     * @return The number of coalesced frames
+     */
+    public long getCoalescedFrames() {
+        return coalescedFrames.get();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.server.network;
+
+/**
+ * The OverflowPolicy enum lists what an outbound queue may do when a frame arrives
+ * and the queue is already full. Enabled policies are tried in declaration order.
+ */
+public enum OverflowPolicy {
+    DROP_HEARTBEATS,         // Drop the incoming heartbeat, or evict a queued one to make room
+    COALESCE_PRESENCE,       // Replace the queued presence update for the same user with the newer one
+    DISCONNECT_SLOW_CONSUMER // Close the connection of a client that cannot keep up
+}
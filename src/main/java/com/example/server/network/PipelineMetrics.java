@@ -0,0 +1,325 @@
+package com.example.server.network;
+
+import com.example.common.messages.Communication;
+import com.example.common.messages.CommunicationType;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.utils.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The PipelineMetrics class records how long messages spend in each stage of the server's pipeline,
+ * in a LatencyHistogram per stage and kind of message. The kind is the CommunicationType of the
+ * message, and for system messages their SystemMessageType; reads and writes, which are not tied to
+ * one message, and frames whose message is not known are counted as OTHER.
+ * <p>
+ * Recording takes no lock and allocates nothing once the histogram of a stage and kind exists, so it
+ * can stay on in production: a stage costs one System.nanoTime call and one histogram update, and
+ * consecutive stages share the call between them. With recording disabled, nothing is measured.
+ * Snapshots can be taken at any time, and the values recorded since the previous dump can be
+ * written periodically as one line per stage and kind.
+ */
+public class PipelineMetrics {
+    public static final int OTHER = 0; // Kind of the samples not tied to one kind of message
+    private static final CommunicationType[] TYPES = CommunicationType.values(); // Every communication type
+    private static final SystemMessageType[] SYSTEM_TYPES = SystemMessageType.values(); // Every system message type
+    private static final int FIRST_SYSTEM_KIND = 1 + TYPES.length; // Kind of the first system message type
+    public static final int KIND_COUNT = FIRST_SYSTEM_KIND + SYSTEM_TYPES.length; // Number of kinds
+    private static final PipelineStage[] STAGES = PipelineStage.values(); // Every stage
+    private static final double[] DUMPED_PERCENTILES = {50, 90, 99, 99.9}; // Percentiles written by a dump
+
+    private final boolean enabled; // Whether latencies are recorded
+    private final AtomicReferenceArray<LatencyHistogram> histograms = new AtomicReferenceArray<>(STAGES.length * KIND_COUNT); // Histograms by stage and kind, created on first use
+    private Snapshot lastDump; // Snapshot taken by the previous dump, or null before the first one; only used by the dumping thread
+
+    /**
+     * Constructor for PipelineMetrics.
+     *
+     * @param enabled Whether latencies are recorded
+     */
+    public PipelineMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Creates metrics that record unless the chat.metrics.enabled system property is false.
+     *
+     * @return New metrics
+     */
+    public static PipelineMetrics withDefaults() {
+        return new PipelineMetrics(!"false".equalsIgnoreCase(System.getProperty("chat.metrics.enabled")));
+    }
+
+    /**
+     * Finds the kind a message is counted as.
+     *
+     * @param message The message
+     * @return The kind, from 0 to KIND_COUNT - 1
+     */
+    public static int kindOf(Communication message) {
+        if (message == null || message.getType() == null) {
+            return OTHER;
+        }
+        if (message instanceof SystemMessage systemMessage && systemMessage.getSystemType() != null) {
+            return kindOf(systemMessage.getSystemType());
+        }
+        return kindOf(message.getType());
+    }
+
+    /**
+     * Finds the kind a message of a given type is counted as, whatever its system message type.
+     *
+     * @param type The communication type
+     * @return The kind, from 0 to KIND_COUNT - 1
+     */
+    public static int kindOf(CommunicationType type) {
+        return 1 + type.ordinal();
+    }
+
+    /**
+     * Finds the kind a system message of a given type is counted as.
+     *
+     * @param type The system message type
+     * @return The kind, from 0 to KIND_COUNT - 1
+     */
+    public static int kindOf(SystemMessageType type) {
+        return FIRST_SYSTEM_KIND + type.ordinal();
+    }
+
+    /**
+     * Gets the name of a kind in the dumped lines, such as TEXT or SYSTEM/HEARTBEAT.
+     *
+     * @param kind The kind
+     * @return The name
+     */
+    public static String kindName(int kind) {
+        if (kind == OTHER) {
+            return "OTHER";
+        }
+        SystemMessageType systemType = systemTypeOf(kind);
+        return systemType == null ? typeOf(kind).name() : CommunicationType.SYSTEM.name() + "/" + systemType.name();
+    }
+
+    /**
+     * Gets the communication type of the messages of a kind.
+     *
+     * @param kind The kind
+     * @return The communication type, or null for OTHER
+     */
+    public static CommunicationType typeOf(int kind) {
+        if (kind == OTHER) {
+            return null;
+        }
+        return kind < FIRST_SYSTEM_KIND ? TYPES[kind - 1] : CommunicationType.SYSTEM;
+    }
+
+    /**
+     * Gets the system message type of the messages of a kind.
+     *
+     * @param kind The kind
+     * @return The system message type, or null if the kind is not one of a system message type
+     */
+    public static SystemMessageType systemTypeOf(int kind) {
+        return kind >= FIRST_SYSTEM_KIND ? SYSTEM_TYPES[kind - FIRST_SYSTEM_KIND] : null;
+    }
+
+    /**
+     * Checks if latencies are recorded.
+     *
+     * @return True if recording is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Reads the clock at the start of a stage.
+     *
+     * @return The time in System.nanoTime, or 0 if recording is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records a stage that ends now.
+     *
+     * @param stage      The stage
+     * @param kind       The kind of message the stage handled
+     * @param startNanos The time the stage started, as returned by start()
+     * @return The time the stage ended, from which a following stage can be timed
+     */
+    public long record(PipelineStage stage, int kind, long startNanos) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        histogram(stage, kind).record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * Records a stage whose end is already known.
+     *
+     * @param stage      The stage
+     * @param kind       The kind of message the stage handled
+     * @param startNanos The time the stage started, in System.nanoTime
+     * @param endNanos   The time the stage ended, in System.nanoTime
+     */
+    public void record(PipelineStage stage, int kind, long startNanos, long endNanos) {
+        if (enabled) {
+            histogram(stage, kind).record(endNanos - startNanos);
+        }
+    }
+
+    /**
+     * Gets the histogram of a stage and kind, creating it on first use.
+     *
+     * @param stage The stage
+     * @param kind  The kind of message
+     * @return The histogram
+     */
+    private LatencyHistogram histogram(PipelineStage stage, int kind) {
+        int index = stage.ordinal() * KIND_COUNT + kind;
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histograms.compareAndSet(index, null, new LatencyHistogram());
+            histogram = histograms.get(index);
+        }
+        return histogram;
+    }
+
+    /**
+     * Takes a copy of every histogram.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot() {
+        LatencyHistogram.Snapshot[] snapshots = new LatencyHistogram.Snapshot[histograms.length()];
+        for (int i = 0; i < snapshots.length; i++) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (histogram != null) {
+                snapshots[i] = histogram.snapshot();
+            }
+        }
+        return new Snapshot(snapshots);
+    }
+
+    /**
+     * Writes what was recorded since the previous dump, one line per stage and kind, to a file,
+     * or to standard output if no file is given. Nothing is written if nothing was recorded.
+     * Meant to be called periodically from one thread.
+     *
+     * @param file The file the lines are appended to, or null for standard output
+     */
+    public void dump(Path file) {
+        Snapshot current = snapshot();
+        Snapshot interval = lastDump != null ? current.since(lastDump) : current;
+        lastDump = current;
+        List<String> lines = interval.format(Instant.now().toString());
+        if (lines.isEmpty()) {
+            return;
+        }
+        if (file == null) {
+            lines.forEach(System.out::println);
+            return;
+        }
+        try {
+            Files.write(file, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Error writing pipeline metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * The histograms of every stage and kind at one moment.
+     */
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot[] snapshots; // Snapshots by stage and kind, null where nothing was ever recorded
+
+        /**
+         * Constructor for Snapshot.
+         *
+         * @param snapshots Snapshots by stage and kind
+         */
+        private Snapshot(LatencyHistogram.Snapshot[] snapshots) {
+            this.snapshots = snapshots;
+        }
+
+        /**
+         * Gets the latencies of a stage for one kind of message.
+         *
+         * @param stage The stage
+         * @param kind  The kind of message
+         * @return The latencies in nanoseconds, or null if nothing was ever recorded for them
+         */
+        public LatencyHistogram.Snapshot get(PipelineStage stage, int kind) {
+            return snapshots[stage.ordinal() * KIND_COUNT + kind];
+        }
+
+        /**
+         * Takes away an earlier snapshot of the same metrics, leaving what was recorded in between.
+         *
+         * @param earlier A snapshot taken before this one
+         * @return The snapshot of the latencies recorded in between
+         */
+        public Snapshot since(Snapshot earlier) {
+            LatencyHistogram.Snapshot[] difference = new LatencyHistogram.Snapshot[snapshots.length];
+            for (int i = 0; i < snapshots.length; i++) {
+                if (snapshots[i] != null) {
+                    difference[i] = earlier.snapshots[i] != null ? snapshots[i].since(earlier.snapshots[i]) : snapshots[i];
+                }
+            }
+            return new Snapshot(difference);
+        }
+
+        /**
+         * Formats one line per stage and kind with anything recorded, in pipeline order, such as
+         * {@code metrics 2026-01-01T10:00:00Z decode TEXT count=1200 mean=2.1us p50=1.9us p90=3.0us p99=7.8us p99.9=15.6us max=40.2us}.
+         *
+         * @param time The time put on every line
+         * @return The lines
+         */
+        public List<String> format(String time) {
+            List<String> lines = new ArrayList<>();
+            for (PipelineStage stage : STAGES) {
+                for (int kind = 0; kind < KIND_COUNT; kind++) {
+                    LatencyHistogram.Snapshot snapshot = get(stage, kind);
+                    if (snapshot == null || snapshot.getCount() == 0) {
+                        continue;
+                    }
+                    StringBuilder line = new StringBuilder("metrics ").append(time).append(' ')
+                            .append(stage.getLabel()).append(' ').append(kindName(kind))
+                            .append(" count=").append(snapshot.getCount())
+                            .append(" mean=").append(micros(snapshot.getMean()));
+                    for (double percentile : DUMPED_PERCENTILES) {
+                        line.append(" p").append(percentile == (long) percentile ? String.valueOf((long) percentile) : String.valueOf(percentile))
+                                .append('=').append(micros(snapshot.getValueAtPercentile(percentile)));
+                    }
+                    line.append(" max=").append(micros(snapshot.getMax()));
+                    lines.add(line.toString());
+                }
+            }
+            return lines;
+        }
+
+        /**
+         * Formats nanoseconds as microseconds with one decimal.
+         *
+         * @param nanos The duration in nanoseconds
+         * @return The formatted duration
+         */
+        private static String micros(double nanos) {
+            return String.format(Locale.ROOT, "%.1fus", nanos / 1000);
+        }
+    }
+}
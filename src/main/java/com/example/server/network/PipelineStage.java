@@ -0,0 +1,36 @@
+package com.example.server.network;
+
+/**
+ * The PipelineStage enum lists the stages a message goes through in the server, from the bytes
+ * arriving on a connection to the bytes leaving for its recipients, whose latencies are recorded
+ * by PipelineMetrics. Stages are listed in the order a message goes through them.
+ */
+public enum PipelineStage {
+    READ("read"),           // One non-blocking read from a client's channel (NIO transport only)
+    DECODE("decode"),       // Decoding one message from the bytes read
+    DISPATCH("dispatch"),   // Handling one message in its processor, including the fan-out it causes
+    FAN_OUT("fan-out"),     // Queueing one frame for all of its recipients
+    QUEUE("queue"),         // From a frame being created to a writer taking it off a client's queue
+    ENCODE("encode"),       // Encoding one frame in a wire format, the first time a recipient needs it
+    WRITE("write");         // One socket write of the frames gathered for a client
+
+    private final String label; // Name of the stage in the dumped lines
+
+    /**
+     * Constructor for PipelineStage.
+     *
+     * @param label Name of the stage in the dumped lines
+     */
+    PipelineStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the name of the stage in the dumped lines.
+     *
+     * @return The label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -1,17 +1,24 @@
 package com.example.server.network;
 
+import com.example.common.codec.WireFormat;
+import com.example.common.events.FanOutEvent;
+import com.example.common.events.HeartbeatExpiredEvent;
 import com.example.common.messages.*;
 import com.example.common.users.User;
-import com.example.common.utils.MessageSerializer;
+import com.example.common.utils.FlushCounters;
+import com.example.server.admin.AdminServer;
+import com.example.server.storage.FramePage;
+import com.example.server.storage.HistoryStore;
+import com.example.server.storage.MessageLog;
+import com.example.server.storage.OfflineInbox;
 
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -20,71 +27,175 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * handling messaging, and coordinating the chat server operations.
  */
 public class Server {
-    private final Map<User, Long> clientHeartbeats = new ConcurrentHashMap<>(); // Stores the last heartbeat time for each client
-    private final Map<User, PrintWriter> clientWriters = new ConcurrentHashMap<>(); // Map to store clients and their output streams
-    private final Map<User, ServerHandler> clientHandlers = new ConcurrentHashMap<>(); // Map to store clients and their handlers
-    private static final String GENERAL_CHAT_ID = "general-chat"; // Fixed ID for the general chat
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = 20000; // Time without inbound frames before a client is assumed down
+    private static final long LIVENESS_TICK_MILLIS = 1000; // Resolution of the liveness tracker
+    private final SessionRegistry sessions = new SessionRegistry(); // Sessions of the logged-in clients by user id
+    private final LivenessTracker liveness = new LivenessTracker(sessions, HEARTBEAT_TIMEOUT_MILLIS, LIVENESS_TICK_MILLIS); // Finds clients that went quiet
+    public static final String GENERAL_CHAT_ID = "general-chat"; // Fixed ID for the general chat
+    private final ChatRegistry chats; // Chats and their members, by chat id
+    private final UserCredentials credentials; // Secrets the user ids were claimed with
     private final CoordinatorManager coordinatorManager; // Manages the coordinator among clients
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1); // Scheduler for periodic tasks
     private final AtomicBoolean isRunning = new AtomicBoolean(true); // Flag to indicate if the server is running
+    private final FlushCounters flushCounters = new FlushCounters(); // Frames per flush across all connections
+    private final PipelineMetrics metrics = PipelineMetrics.withDefaults(); // Latencies of the pipeline stages across all connections
+    private final ServerCounters counters = new ServerCounters(); // Messages, bytes and events counted across all connections
+    private final MessageLog messageLog; // Durable record of the routed text messages, or null if they are not kept
+    private final HistoryStore history; // Answers history queries from the message log, or null if messages are not kept
+    private final OfflineInbox inbox; // Messages waiting for members of chats who are offline, or null if they are dropped
+    private final InboxDrainer inboxDrainer; // Delivers the inboxes of users who log in again, or null without an inbox
+    private final ExecutorService historyReaders = Executors.newVirtualThreadPerTaskExecutor(); // Answers history queries off the connection threads
 
     /**
      * Constructor for the Server class.
      * Initializes the coordinator manager and starts the heartbeat scheduler.
+     * Text messages are not persisted.
      */
     public Server() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a Server that persists the text messages it routes.
+     * Messages for members of a chat who are offline are dropped.
+     *
+     * @param messageLog The log text messages are appended to, or null to not persist them
+     */
+    public Server(MessageLog messageLog) {
+        this(messageLog, null);
+    }
+
+    /**
+     * Constructor for a Server that persists the text messages it routes and keeps those sent to
+     * members of a chat who are offline until they log in again.
+     *
+     * @param messageLog The log text messages are appended to, or null to not persist them
+     * @param inbox      The inboxes of offline users, or null to drop their messages; requires a message log
+     */
+    public Server(MessageLog messageLog, OfflineInbox inbox) {
+        this(messageLog, inbox, new ChatRegistry());
+    }
+
+    /**
+     * Constructor for a Server that persists the text messages it routes and keeps those sent to
+     * members of a chat who are offline until they log in again, with the chats they are in kept
+     * in a registry of its own, such as one that survives a restart along with the inboxes.
+     * Members offline for longer than the chat.inbox.memberTtlHours property (168 by default)
+     * are removed from their chats and their inboxes are emptied.
+     *
+     * @param messageLog The log text messages are appended to, or null to not persist them
+     * @param inbox      The inboxes of offline users, or null to drop their messages; requires a message log
+     * @param chats      The registry of chats and their members
+     */
+    public Server(MessageLog messageLog, OfflineInbox inbox, ChatRegistry chats) {
+        this(messageLog, inbox, chats, new UserCredentials());
+    }
+
+    /**
+     * Constructor for a Server that persists the text messages it routes and keeps those sent to
+     * members of a chat who are offline until they log in again, with the chats they are in and the
+     * secrets their ids were claimed with kept in stores of its own, such as ones that survive a
+     * restart along with the inboxes.
+     *
+     * @param messageLog  The log text messages are appended to, or null to not persist them
+     * @param inbox       The inboxes of offline users, or null to drop their messages; requires a message log
+     * @param chats       The registry of chats and their members
+     * @param credentials The secrets the user ids were claimed with
+     */
+    public Server(MessageLog messageLog, OfflineInbox inbox, ChatRegistry chats, UserCredentials credentials) {
+        this.chats = chats;
+        this.credentials = credentials;
+        this.messageLog = messageLog;
+        this.history = messageLog != null ? HistoryStore.withDefaults(messageLog) : null;
+        this.inbox = messageLog != null ? inbox : null;
+        this.inboxDrainer = this.inbox != null ? InboxDrainer.withDefaults(this.inbox, messageLog, sessions) : null;
+
         // Initialize the coordinator manager with reference to this server
         this.coordinatorManager = new CoordinatorManager(this);
 
         // Start heartbeat scheduler
         startHeartbeat();
+        startMetricsDump();
+        startMemberExpiry();
     }
 
     /**
      * Main method to start the chat server.
+     * The transport can be selected with the first argument (blocking or nio); blocking is the default.
+     * Text messages are logged under the directory named by the chat.data.dir property ("data" by default),
+     * in a directory of this node's own, with the inboxes of offline users, the chats they are in and
+     * the secrets their ids were claimed with kept in its inbox subdirectory.
+     * The server listens on port 7005 unless the chat.port property names another.
+     * The latencies of the pipeline stages are printed every minute, see startMetricsDump.
+     * If the chat.admin.port property is set, an AdminServer answers on that port, on the address named
+     * by chat.admin.host (127.0.0.1 by default).
      *
      * @param args Command-line arguments
      * @throws Exception if an error occurs while starting the server
      */
     public static void main(String[] args) throws Exception {
-        System.out.println("The chat server is running...");
-        ExecutorService pool = Executors.newFixedThreadPool(500); // Thread pool for handling client connections
-        Server server = new Server();
+        TransportMode mode = args.length > 0 ? TransportMode.valueOf(args[0].toUpperCase()) : TransportMode.BLOCKING;
+        int port = Integer.getInteger("chat.port", 7005); // Port the server listens on
+        Path logDirectory = Path.of(System.getProperty("chat.data.dir", "data"), "node-" + port);
+        Path inboxDirectory = logDirectory.resolve("inbox");
+        Server server = new Server(MessageLog.withDefaults(logDirectory), OfflineInbox.withDefaults(inboxDirectory),
+                ChatRegistry.withDefaults(inboxDirectory), new UserCredentials(inboxDirectory));
+        ServerTransport transport = ServerTransportFactory.create(mode, server);
+        Integer adminPort = Integer.getInteger("chat.admin.port"); // Port of the admin listener, or null for none
+        AdminServer admin = adminPort != null ? new AdminServer(server, transport) : null;
 
         // Add shutdown hook to gracefully shut down the server
-        Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
-
-        try (ServerSocket listener = new ServerSocket(7005)) { // Create a server socket on port 7005
-            while (true) {
-                Socket socket = listener.accept(); // Accept incoming client connections
-                ServerHandler handler = new ServerHandler(socket, server); // Create a handler for the client
-                pool.execute(handler); // Execute the handler in a separate thread
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (admin != null) {
+                admin.stop();
             }
+            server.shutdown();
+            transport.stop();
+        }));
+
+        transport.start(port); // Listen on the port
+        System.out.println("The chat server is running (" + mode.name().toLowerCase() + " transport)...");
+        if (admin != null) {
+            String adminHost = System.getProperty("chat.admin.host", "127.0.0.1");
+            admin.start(adminHost, adminPort);
+            System.out.println("Admin endpoint at http://" + adminHost + ":" + admin.getLocalPort() + "/metrics and /sessions");
         }
     }
 
     /**
      * Update the last heartbeat time for a client
+     *
+     * @param userId The ID of the user who sent the heartbeat
      */
-    public void updateHeartbeat(Optional<User> user) {
-        if (user.isPresent()) {
-            User sender = user.get();
-            clientHeartbeats.put(sender, System.currentTimeMillis());
+    public void updateHeartbeat(String userId) {
+        ClientSession session = sessions.get(userId);
+        if (session != null) {
+            session.recordHeartbeat();
         }
     }
 
     /**
      * Starts the heartbeat scheduler to send periodic heartbeat messages to clients and check client heartbeats.
+     * Client liveness is checked every second, but only for the sessions whose deadline has come.
      */
     private void startHeartbeat() {
         scheduler.scheduleAtFixedRate(() -> {
-            long currentTime = System.currentTimeMillis();
-            clientHeartbeats.forEach((user, lastHeartbeat) -> {
-                if (currentTime - lastHeartbeat > 20000) { // 20 seconds timeout
-                    System.err.println("No heartbeat from client " + user.getUsername() + " for 20 seconds, assuming client is down");
-                    removeClient(user); // Remove the client if no heartbeat received
+            for (ClientSession session : liveness.expire(System.currentTimeMillis())) {
+                System.err.println("No heartbeat from client " + session.getUser().getUsername() + " for 20 seconds, assuming client is down");
+                counters.heartbeatExpired();
+                HeartbeatExpiredEvent event = new HeartbeatExpiredEvent();
+                if (event.isEnabled()) {
+                    event.userId = session.getUserId();
+                    event.username = session.getUser().getUsername();
+                    event.remoteAddress = session.getSocketAddress();
+                    event.silenceMillis = System.currentTimeMillis() - session.getLastHeartbeat();
+                    event.commit();
                 }
-            });
+                removeClient(session); // Remove the client if no heartbeat received, unless it has logged in again
+            }
+        }, LIVENESS_TICK_MILLIS, LIVENESS_TICK_MILLIS, TimeUnit.MILLISECONDS); // Schedule the check to run every second
+
+        scheduler.scheduleAtFixedRate(() -> {
             if (isRunning.get()) {
                 SystemMessage heartbeat = new SystemMessage(SystemMessageType.HEARTBEAT, null); // Create a heartbeat message
                 broadcast(heartbeat); // Broadcast the heartbeat message to all clients
@@ -92,6 +203,52 @@ public class Server {
         }, 0, 10, TimeUnit.SECONDS); // Schedule the task to run every 10 seconds
     }
 
+    /**
+     * Dumps the latencies of the pipeline stages recorded since the previous dump, every 60 seconds
+     * unless the chat.metrics.dumpSeconds property gives another interval (0 turns the dump off).
+     * The lines are printed, or appended to the file named by the chat.metrics.file property.
+     */
+    private void startMetricsDump() {
+        long interval = Long.getLong("chat.metrics.dumpSeconds", 60);
+        if (!metrics.isEnabled() || interval <= 0) {
+            return;
+        }
+        String file = System.getProperty("chat.metrics.file");
+        Path path = file != null ? Path.of(file) : null;
+        scheduler.scheduleAtFixedRate(() -> metrics.dump(path), interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes members who have been offline for longer than the chat.inbox.memberTtlHours property
+     * allows (168 hours by default) from their chats, checking once a minute. Without an inbox,
+     * members leave their chats as soon as they log out and nothing needs to expire.
+     */
+    private void startMemberExpiry() {
+        if (inbox == null) {
+            return;
+        }
+        long ttlMillis = TimeUnit.HOURS.toMillis(Long.getLong("chat.inbox.memberTtlHours", 168));
+        scheduler.scheduleAtFixedRate(() -> expireOfflineMembers(System.currentTimeMillis() - ttlMillis), 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Removes the members who went offline before a cutoff from their chats and empties their inboxes.
+     *
+     * @param cutoffMillis Members offline since before this time are removed
+     */
+    public void expireOfflineMembers(long cutoffMillis) {
+        if (inbox == null) {
+            return;
+        }
+        for (String userId : chats.expireMembers(cutoffMillis)) {
+            try {
+                inbox.discard(userId);
+            } catch (IOException e) {
+                System.err.println("Error discarding the inbox of " + userId + ": " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * Shuts down the server and notifies all clients.
      */
@@ -111,44 +268,138 @@ public class Server {
             Thread.currentThread().interrupt(); // Restore the interrupt status
         }
 
+        // Write the messages that have not been synced yet
+        historyReaders.shutdown();
+        if (inbox != null) {
+            inboxDrainer.stop();
+            try {
+                inbox.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the offline inbox: " + e.getMessage());
+            }
+        }
+        try {
+            chats.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the chat registry: " + e.getMessage());
+        }
+        try {
+            credentials.close();
+        } catch (IOException e) {
+            System.err.println("Error closing the user credentials: " + e.getMessage());
+        }
+        if (messageLog != null) {
+            try {
+                messageLog.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the message log: " + e.getMessage());
+            }
+        }
+
         System.out.println("Server terminated.");
     }
 
     /**
-     * Adds a new client to the server.
+     * Checks if a client logging in may take a user's id, before its session is bound and the
+     * messages kept for the user are delivered to it; see UserCredentials.
+     *
+     * @param user   The user the client logs in as
+     * @param secret The secret the client sent, or null
+     * @return True if the client may log in, false if the id was claimed with another secret or cannot be claimed
+     */
+    public boolean checkCredentials(User user, String secret) {
+        try {
+            return credentials.verify(user.getId(), secret);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error checking the credentials of " + user.getId() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Adds a new client to the server; frames for the client are written to its connection.
+     *
+     * @param user The user to add
+     * @param handler The connection the client is attached to
+     */
+    public void addClient(User user, ClientConnection handler) {
+        addClient(user, handler, handler);
+    }
+
+    /**
+     * Adds a new client to the server whose frames are written to a PrintWriter.
      *
      * @param user The user to add
      * @param writer The PrintWriter for sending messages to the client
-     * @param handler The handler managing the client connection
+     * @param handler The connection the client is attached to
+     */
+    public void addClient(User user, PrintWriter writer, ClientConnection handler) {
+        addClient(user, new WriterFrameSink(writer), handler);
+    }
+
+    /**
+     * Registers a client and brings it up to date with the users already online.
+     *
+     * @param user The user to add
+     * @param sink Where frames for the client are sent
+     * @param handler The connection the client is attached to
      */
-    public void addClient(User user, PrintWriter writer, ServerHandler handler) {
+    private void addClient(User user, FrameSink sink, ClientConnection handler) {
         // Notify all clients about the new user
         broadcast(new UserUpdateMessage(user, UserStatus.ONLINE));
-        clientWriters.put(user, writer); // Add the user and their writer to the map
-        clientHandlers.put(user, handler); // Store the handler
+        ClientSession session = new ClientSession(user, sink, handler);
+        sessions.add(session); // Register the user's session
+        chats.memberOnline(user.getId()); // Stop the user's chats from expiring them
+        liveness.track(session); // Expire the session if the client goes quiet
+        if (handler != null) {
+            handler.setSession(session); // Let every inbound frame refresh the session
+        }
         send(user, new SystemMessage(SystemMessageType.ID_TRANSITION, GENERAL_CHAT_ID)); // Send ID transition message to the new user
-        for (User activeUser : clientWriters.keySet()) {
-            send(user, new UserUpdateMessage(activeUser, UserStatus.ONLINE)); // Notify the new user about all online users
+        for (ClientSession activeSession : sessions.all()) {
+            send(user, new UserUpdateMessage(activeSession.getUser(), UserStatus.ONLINE)); // Notify the new user about all online users
         }
     }
 
     /**
-     * Removes a client from the server.
+     * Removes a client from the server, whichever session the user currently has.
      *
      * @param user The user to remove
+     * @return True if the user's session was removed, false if the user was not logged in
+     */
+    public boolean removeClient(User user) {
+        ClientSession session = sessions.get(user.getId());
+        return session != null && removeClient(session);
+    }
+
+    /**
+     * Removes a client's session from the server, unless the user has logged in again since and
+     * the session has been replaced; a heartbeat timeout or a logout on the old connection then
+     * leaves the new session alone.
+     * Only the first of several concurrent removals of the same session has any effect.
+     *
+     * @param session The session to remove
+     * @return True if the session was removed, false if it was replaced or already removed
      */
-    public void removeClient(User user) {
-        clientWriters.remove(user); // Remove the user from the writers map
-        clientHandlers.remove(user); // Remove the user from the handlers map
-        clientHeartbeats.remove(user); // Remove the user from the heartbeat map
+    public boolean removeClient(ClientSession session) {
+        if (!sessions.remove(session)) {
+            return false; // The client has already been removed, or has logged in again
+        }
+
+        if (inbox != null) {
+            // Stay in the chats, so that their messages are kept for the user until they return or expire
+            chats.memberOffline(session.getUserId(), System.currentTimeMillis());
+        } else {
+            chats.removeMember(session.getUserId()); // Leave all chats
+        }
 
         // Reassign the coordinator if necessary
-        if (user.getIsCoordinator()) {
+        if (session.getUser().getIsCoordinator()) {
             coordinatorManager.reassignCoordinator();
         }
 
         // Notify all clients about the user leaving
-        broadcast(new UserUpdateMessage(user, UserStatus.OFFLINE));
+        broadcast(new UserUpdateMessage(session.getUser(), UserStatus.OFFLINE));
+        return true;
     }
 
     /**
@@ -158,10 +409,9 @@ public class Server {
      * @return Optional containing the User if found, or empty if not found
      */
     public Optional<User> findUserById(String userId) {
-        // Stream through all connected users and find the one with matching ID
-        return clientWriters.keySet().stream()
-                .filter(user -> user.getId().equals(userId))
-                .findFirst();
+        // Look the session up by the user's ID
+        ClientSession session = sessions.get(userId);
+        return session != null ? Optional.of(session.getUser()) : Optional.empty();
     }
 
     /**
@@ -171,21 +421,22 @@ public class Server {
      * @return String representation of the user's socket address
      */
     public String getUserSocket(User user) {
-        ServerHandler handler = clientHandlers.get(user); // Get the handler for the user
-        if (handler != null) {
-            return handler.getClientSocket(); // Return the socket information
+        ClientSession session = sessions.get(user.getId()); // Get the session for the user
+        if (session != null) {
+            return session.getSocketAddress(); // Return the socket information
         }
-        return "Unknown"; // Return "Unknown" if handler is not found
+        return "Unknown"; // Return "Unknown" if the user is not logged in
     }
 
     /**
-     * Retrieves the PrintWriter for a given user.
+     * Retrieves the frame sink for a given user.
      *
-     * @param user The user whose PrintWriter is needed
-     * @return The PrintWriter for the user, or null if not found
+     * @param user The user whose sink is needed
+     * @return The FrameSink for the user, or null if not found
      */
-    public PrintWriter getClient(User user) {
-        return clientWriters.get(user);
+    public FrameSink getClient(User user) {
+        ClientSession session = sessions.get(user.getId());
+        return session != null ? session.getSink() : null;
     }
 
     /**
@@ -195,12 +446,11 @@ public class Server {
      */
     public User selectRandomUser() {
         // Get all online users
-        List<User> onlineUsers = new ArrayList<>(clientWriters.keySet());
+        List<ClientSession> onlineSessions = new ArrayList<>(sessions.all());
 
-        if (!onlineUsers.isEmpty()) {
+        if (!onlineSessions.isEmpty()) {
             // Choose a random user from the online users
-            Random random = new Random();
-            return onlineUsers.get(random.nextInt(onlineUsers.size()));
+            return onlineSessions.get(ThreadLocalRandom.current().nextInt(onlineSessions.size())).getUser();
         } else {
             // Return null without logging - CoordinatorManager will handle messaging
             return null;
@@ -208,21 +458,186 @@ public class Server {
     }
 
     /**
-     * Exposes the client writers map for coordinator management.
+     * Retrieves the liveness tracker, which also reports expirations and scan cost.
+     *
+     * @return The liveness tracker
+     */
+    public LivenessTracker getLivenessTracker() {
+        return liveness;
+    }
+
+    /**
+     * Retrieves the secrets the user ids were claimed with.
+     *
+     * @return The user credentials
+     */
+    public UserCredentials getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * Retrieves the registry of chats the server routes text messages to.
+     *
+     * @return The chat registry
+     */
+    public ChatRegistry getChats() {
+        return chats;
+    }
+
+    /**
+     * Exposes the session registry for coordinator management.
+     *
+     * @return The sessions of the logged-in clients
+     */
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
+
+    /**
+     * Returns the number of frames queued for all connected clients but not yet written.
+     *
+     * @return The total outbound queue depth
+     */
+    public int getOutboundQueueDepth() {
+        int depth = 0;
+        for (ClientSession session : sessions.all()) {
+            if (session.getConnection() != null) {
+                depth += session.getConnection().getOutboundQueueDepth();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Retrieves the counters of frames written per socket flush.
+     *
+     * @return The server's flush counters
+     */
+    public FlushCounters getFlushCounters() {
+        return flushCounters;
+    }
+
+    /**
+     * Retrieves the latencies of the pipeline stages, which can be snapshotted at any time.
      *
-     * @return The map of client writers
+     * @return The server's pipeline metrics
      */
-    public Map<User, PrintWriter> getClientWriters() {
-        return clientWriters;
+    public PipelineMetrics getMetrics() {
+        return metrics;
     }
 
     /**
-     * Exposes the client handlers map for coordinator management.
+     * Retrieves the counters of messages, bytes and events handled since the server started.
      *
-     * @return The map of client handlers
+     * @return The server's counters
      */
-    public Map<User, ServerHandler> getClientHandlers() {
-        return clientHandlers;
+    public ServerCounters getCounters() {
+        return counters;
+    }
+
+    /**
+     * Appends a routed text message to the message log, if messages are persisted.
+     * The message goes through the history store, so that it shows up in history queries right away.
+     *
+     * @param message The message to persist
+     */
+    public void persist(TextMessage message) {
+        persist(message, List.of());
+    }
+
+    /**
+     * Appends a routed text message to the message log and keeps it for the recipients who are offline,
+     * if messages are persisted.
+     *
+     * @param message           The message to persist
+     * @param offlineRecipients The ids of the recipients the message could not be sent to
+     */
+    public void persist(TextMessage message, Collection<String> offlineRecipients) {
+        if (history == null) {
+            return;
+        }
+        try {
+            long position = history.append(message);
+            if (inbox != null && !offlineRecipients.isEmpty()) {
+                inbox.enqueue(offlineRecipients, position);
+                for (String recipientId : offlineRecipients) {
+                    if (sessions.contains(recipientId)) {
+                        inboxDrainer.schedule(recipientId); // Logged in while the message was routed
+                    }
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error persisting message " + message.getMessageId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Brings a user who has logged in up to date with the chats they are in and starts delivering
+     * the messages sent to them while they were offline.
+     *
+     * @param user The user who has logged in
+     */
+    public void deliverOfflineMessages(User user) {
+        if (inbox == null) {
+            return;
+        }
+        for (String chatId : chats.chatsOf(user.getId())) {
+            ChatRegistry.RegisteredChat chat = chats.get(chatId);
+            if (chat != null) {
+                send(user, SystemMessage.of(SystemMessageType.CHAT_CREATED, chat.toDescriptor()));
+            }
+        }
+        inboxDrainer.schedule(user.getId());
+    }
+
+    /**
+     * Gets the inboxes of offline users.
+     *
+     * @return The offline inbox, or null if messages for offline users are dropped
+     */
+    public OfflineInbox getInbox() {
+        return inbox;
+    }
+
+    /**
+     * Gets the drainer delivering the inboxes of users who log in again.
+     *
+     * @return The inbox drainer, or null if messages for offline users are dropped
+     */
+    public InboxDrainer getInboxDrainer() {
+        return inboxDrainer;
+    }
+
+    /**
+     * Gets the log text messages are persisted to.
+     *
+     * @return The message log, or null if messages are not persisted
+     */
+    public MessageLog getMessageLog() {
+        return messageLog;
+    }
+
+    /**
+     * Gets the store history queries are answered from.
+     *
+     * @return The history store, or null if messages are not persisted
+     */
+    public HistoryStore getHistory() {
+        return history;
+    }
+
+    /**
+     * Runs a history query on a thread of its own, so that reading the log never holds up
+     * the connection thread, which in the NIO transport serves many clients.
+     *
+     * @param query The query to run
+     */
+    public void queryHistory(Runnable query) {
+        try {
+            historyReaders.execute(query);
+        } catch (RejectedExecutionException e) {
+            System.err.println("Dropping history query during shutdown");
+        }
     }
 
     /**
@@ -245,12 +660,98 @@ public class Server {
 
     /**
      * Broadcasts a message to all connected clients.
+     * The message is serialized once and the same frame is sent to every client.
      *
      * @param message The message to broadcast
      */
     public void broadcast(Communication message) {
-        for (PrintWriter writer : clientWriters.values()) {
-            writer.println(MessageSerializer.serialize(message)); // Send the serialized message to each client
+        if (!sessions.isEmpty()) {
+            broadcast(Frame.of(message));
+        }
+    }
+
+    /**
+     * Broadcasts an encoded frame to all connected clients.
+     *
+     * @param frame The frame to broadcast
+     */
+    public void broadcast(Frame frame) {
+        FanOutEvent event = new FanOutEvent();
+        boolean tallyFormats = event.isEnabled();
+        event.begin();
+        long start = metrics.start();
+        int recipients = 0;
+        int binaryRecipients = 0;
+        for (ClientSession session : sessions.all()) {
+            session.send(frame); // Send the same encoded bytes to each client
+            recipients++;
+            if (tallyFormats && session.getWireFormat() == WireFormat.BINARY) {
+                binaryRecipients++;
+            }
+        }
+        metrics.record(PipelineStage.FAN_OUT, frame.getKind(), start);
+        finishFanOut(event, frame, recipients, binaryRecipients);
+    }
+
+    /**
+     * Sends a message to every connected client among the given recipients.
+     * The message is serialized once, and only if at least one recipient is connected.
+     *
+     * @param recipientIds The ids of the users to send the message to
+     * @param message The message to send
+     * @return The ids of the recipients who are not connected
+     */
+    public List<String> fanOut(Collection<String> recipientIds, Communication message) {
+        FanOutEvent event = new FanOutEvent();
+        boolean tallyFormats = event.isEnabled();
+        event.begin();
+        long start = metrics.start();
+        Frame frame = null;
+        int recipients = 0;
+        int binaryRecipients = 0;
+        List<String> offline = List.of();
+        for (String recipientId : recipientIds) {
+            ClientSession session = sessions.get(recipientId); // Get the session for each recipient
+            if (session != null) {
+                if (frame == null) {
+                    frame = Frame.of(message); // Encode lazily on the first connected recipient
+                }
+                session.send(frame);
+                recipients++;
+                if (tallyFormats && session.getWireFormat() == WireFormat.BINARY) {
+                    binaryRecipients++;
+                }
+            } else {
+                if (offline.isEmpty()) {
+                    offline = new ArrayList<>();
+                }
+                offline.add(recipientId);
+            }
+        }
+        if (frame != null) {
+            metrics.record(PipelineStage.FAN_OUT, frame.getKind(), start);
+            finishFanOut(event, frame, recipients, binaryRecipients);
+        }
+        return offline;
+    }
+
+    /**
+     * Ends a fan-out event and commits it if the recording keeps it.
+     * The frame's size is only looked up then, so that it is not encoded for the event otherwise.
+     *
+     * @param event            The event, begun before the frame was queued
+     * @param frame            The frame queued
+     * @param recipients       The clients the frame was queued for
+     * @param binaryRecipients Those of them using the binary wire format
+     */
+    private static void finishFanOut(FanOutEvent event, Frame frame, int recipients, int binaryRecipients) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.messageType = PipelineMetrics.kindName(frame.getKind());
+            event.recipients = recipients;
+            event.bytes = (binaryRecipients > 0 ? (long) binaryRecipients * frame.length(WireFormat.BINARY) : 0)
+                    + (recipients > binaryRecipients ? (long) (recipients - binaryRecipients) * frame.length(WireFormat.JSON) : 0);
+            event.commit();
         }
     }
 
@@ -261,9 +762,36 @@ public class Server {
      * @param message The message to send
      */
     public void send(User user, Communication message) {
-        PrintWriter writer = clientWriters.get(user); // Get the writer for the user
-        if (writer != null) {
-            writer.println(MessageSerializer.serialize(message)); // Send the serialized message
+        sendFrame(user, Frame.of(message)); // Send the encoded message
+    }
+
+    /**
+     * Sends an already encoded frame to a specific client, such as frames read back from the message log.
+     *
+     * @param user The user to send the frame to
+     * @param frame The frame to send
+     */
+    public void sendFrame(User user, Frame frame) {
+        FanOutEvent event = new FanOutEvent();
+        event.begin();
+        ClientSession session = sessions.get(user.getId()); // Get the session for the user
+        if (session != null) {
+            session.send(frame);
+            finishFanOut(event, frame, 1, session.getWireFormat() == WireFormat.BINARY ? 1 : 0);
         }
     }
+
+    /**
+     * Sends a page of a chat's history to a specific client as its stored frames.
+     * The page goes out as a binary HISTORY_PAGE frame made of a small head followed by the message
+     * frames as they are in the log, so binary clients are sent views of the mapped log without a
+     * single message being decoded or encoded. Clients using JSON get the page decoded and encoded
+     * for them instead.
+     *
+     * @param user The user to send the page to
+     * @param page The page of stored frames
+     */
+    public void sendHistory(User user, FramePage page) {
+        sendFrame(user, Frame.historyPage(page));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+package com.example.server.network;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of what the server has handled since it started, for the admin endpoint.
+ * Messages and frames are counted per kind of message, as PipelineMetrics tells them apart.
+ * Updated concurrently by every connection; counting takes no lock and allocates nothing.
+ */
+public class ServerCounters {
+    private final LongAdder[] messagesReceived = adders(PipelineMetrics.KIND_COUNT); // Messages decoded from clients, by kind
+    private final LongAdder[] framesSent = adders(PipelineMetrics.KIND_COUNT); // Frames taken off the queues to be written, by kind
+    private final LongAdder bytesReceived = new LongAdder(); // Bytes read from clients
+    private final LongAdder heartbeatExpirations = new LongAdder(); // Sessions removed for going quiet
+    private final LongAdder coordinatorChanges = new LongAdder(); // Coordinators assigned
+    private final LongAdder slowConsumerDisconnects = new LongAdder(); // Clients disconnected for not keeping up
+
+    /**
+     * Creates an array of counters.
+     *
+     * @param count The number of counters
+     * @return The counters, all at zero
+     */
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * Counts a message received from a client.
+     *
+     * @param kind The kind of message, as counted by PipelineMetrics
+     */
+    public void messageReceived(int kind) {
+        messagesReceived[kind].increment();
+    }
+
+    /**
+     * Counts a frame taken off a client's queue to be written.
+     *
+     * @param kind The kind of message the frame carries, as counted by PipelineMetrics
+     */
+    public void frameSent(int kind) {
+        framesSent[kind].increment();
+    }
+
+    /**
+     * Counts bytes read from a client.
+     *
+     * @param bytes The number of bytes read
+     */
+    public void bytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Counts a session removed because its client stopped sending heartbeats.
+     */
+    public void heartbeatExpired() {
+        heartbeatExpirations.increment();
+    }
+
+    /**
+     * Counts a coordinator being assigned.
+     */
+    public void coordinatorChanged() {
+        coordinatorChanges.increment();
+    }
+
+    /**
+     * Counts a client disconnected because its outbound queue overflowed.
+     */
+    public void slowConsumerDisconnected() {
+        slowConsumerDisconnects.increment();
+    }
+
+    /**
+     * Returns the number of messages of a kind received from clients.
+     *
+     * @param kind The kind of message
+     * @return The message count
+     */
+    public long getMessagesReceived(int kind) {
+        return messagesReceived[kind].sum();
+    }
+
+    /**
+     * Returns the number of frames of a kind taken off the queues to be written.
+     * A frame sent to several clients is counted once for each of them.
+     *
+     * @param kind The kind of message
+     * @return The frame count
+     */
+    public long getFramesSent(int kind) {
+        return framesSent[kind].sum();
+    }
+
+    /**
+     * Returns the number of bytes read from clients.
+     *
+     * @return The byte count
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    /**
+     * Returns the number of sessions removed because their client stopped sending heartbeats.
+     *
+     * @return The expiration count
+     */
+    public long getHeartbeatExpirations() {
+        return heartbeatExpirations.sum();
+    }
+
+    /**
+     * Returns the number of coordinators assigned.
+     *
+     * @return The change count
+     */
+    public long getCoordinatorChanges() {
+        return coordinatorChanges.sum();
+    }
+
+    /**
+     * Returns the number of clients disconnected because their outbound queue overflowed.
+     *
+     * @return The disconnect count
+     */
+    public long getSlowConsumerDisconnects() {
+        return slowConsumerDisconnects.sum();
+    }
+}
@@ -1,26 +1,48 @@
 package com.example.server.network;
 
+import com.example.common.codec.FrameDecoder;
+import com.example.common.codec.WireFormat;
+import com.example.common.events.ChatEvents;
+import com.example.common.events.MessageDispatchedEvent;
+import com.example.common.events.MessageReceivedEvent;
+import com.example.common.events.SlowWriteEvent;
 import com.example.common.messages.Communication;
 import com.example.common.utils.MessageSerializer;
 import com.example.server.processing.ServerMessageProcessor;
 import com.example.server.processing.ServerMessageProcessorFactory;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The ServerHandler class implements the Runnable interface and handles client communication.
- * It reads messages from the client, processes them, and sends responses.
+ * It reads messages from the client, processes them, and sends responses, in the wire format
+ * settled when the client connects.
+ * Outgoing frames are put on a bounded OutboundQueue and written by a dedicated virtual writer
+ * thread, so a slow client never blocks the thread that sends to it. The writer gathers every
+ * frame queued meanwhile into one buffered write and flushes at the latest after
+ * OutboundQueue.MAX_FLUSH_DELAY_NANOS.
  */
-public class ServerHandler implements Runnable {
+public class ServerHandler implements Runnable, ClientConnection {
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024; // Size of the buffer frames are gathered in
+    private static final int READ_BUFFER_SIZE = 8 * 1024; // Size of the buffer frames are read into
 
     private final Socket socket; // The socket for client-server communication
     private final Server server; // Reference to the server
-    private BufferedReader in; // Reader for input stream from the client
-    private PrintWriter out; // Writer for output stream to the client
+    private final PipelineMetrics metrics; // Latencies of the server's pipeline stages
+    private final ServerCounters counters; // Messages, bytes and events counted by the server
+    private InputStream in; // Input stream from the client
+    private OutputStream out; // Output stream to the client
+    private final OutboundQueue outbound = OutboundQueue.withDefaults(); // Frames waiting to be written
+    private volatile ClientSession session; // Session of the user logged in on this connection
+    private volatile WireFormat wireFormat = WireFormat.JSON; // Format of the frames written to the client
 
     /**
      * Constructor for ServerHandler.
@@ -32,15 +54,17 @@ public class ServerHandler implements Runnable {
     public ServerHandler(Socket socket, Server server) {
         this.socket = socket;
         this.server = server;
+        this.metrics = server.getMetrics();
+        this.counters = server.getCounters();
         try {
             // Initialize the input stream from the socket
-            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            this.in = socket.getInputStream();
         } catch (IOException e) {
             System.err.println("Error initializing input stream: " + e.getMessage());
         }
         try {
             // Initialize the output stream to the socket
-            this.out = new PrintWriter(socket.getOutputStream(), true);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
         } catch (IOException e) {
             System.err.println("Error initializing output stream: " + e.getMessage());
         }
@@ -51,6 +75,7 @@ public class ServerHandler implements Runnable {
      *
      * @return String representation of the client's IP address and port
      */
+    @Override
     public String getClientSocket() {
         if (socket != null && socket.getInetAddress() != null) {
             return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
@@ -60,20 +85,55 @@ public class ServerHandler implements Runnable {
 
     /**
      * The run method is executed when the thread starts.
-     * It continuously reads messages from the client, processes them, and handles exceptions.
+     * It settles the wire format with the client, then continuously reads messages from the client,
+     * processes them, and handles exceptions.
+     * Decoding is timed per message; reads are not, since a blocking read also waits for the client.
+     * The writer draining the outbound queue is started here, once the streams are known to be open,
+     * so that a connection still waiting for a thread of the pool has no writer yet.
      */
     public void run() {
+        if (in == null || out == null) {
+            outbound.close(); // Drop anything queued for a connection that never opened
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println("Error closing socket: " + e.getMessage());
+            }
+            return;
+        }
+
+        // Start the writer draining the outbound queue
+        Thread.ofVirtual().name("chat-writer-" + getClientSocket()).start(this::writeLoop);
         try {
-            String message;
+            CodecNegotiation negotiation = new CodecNegotiation();
+            FrameDecoder decoder = null;
+            byte[] chunk = new byte[READ_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            int read;
             // Continuously read messages from the client
-            while ((message = in.readLine()) != null) {
-                processMessage(message);
+            while ((read = in.read(chunk)) >= 0) {
+                counters.bytesReceived(read);
+                buffer.limit(read).position(0);
+                if (decoder == null) {
+                    if (!negotiation.offer(buffer)) {
+                        continue; // The handshake is not complete yet
+                    }
+                    decoder = startCodec(negotiation);
+                }
+                Communication message;
+                long start = metrics.start();
+                while ((message = decoder.decode(buffer)) != null) {
+                    metrics.record(PipelineStage.DECODE, PipelineMetrics.kindOf(message), start);
+                    processMessage(message);
+                    start = metrics.start();
+                }
             }
         } catch (IOException e) {
             System.err.println("Error in communication: " + e.getMessage());
         } finally {
             try {
-                // Close the input stream and socket when done
+                // Stop the writer, then close the input stream and socket when done
+                outbound.close();
                 in.close();
                 socket.close();
             } catch (IOException e) {
@@ -83,18 +143,164 @@ public class ServerHandler implements Runnable {
     }
 
     /**
-     * Processes the received message by deserializing it and delegating it to the appropriate processor.
+     * Switches the connection to the negotiated wire format and answers the handshake.
+     *
+     * @param negotiation The completed negotiation
+     * @return The decoder for the client's frames
+     */
+    private FrameDecoder startCodec(CodecNegotiation negotiation) {
+        wireFormat = negotiation.getFormat();
+        Frame reply = negotiation.reply();
+        if (reply != null) {
+            send(reply); // Queued before any other frame, since the client has not logged in yet
+        }
+        return MessageSerializer.getCodec(wireFormat).newDecoder();
+    }
+
+    /**
+     * Queues an encoded frame for the writer thread.
+     * May be called from any thread and never blocks; a client whose queue overflows is disconnected.
+     *
+     * @param frame The frame to send
+     */
+    @Override
+    public void send(Frame frame) {
+        if (!outbound.offer(frame)) {
+            counters.slowConsumerDisconnected();
+            System.err.println("Client " + getClientSocket() + " is not keeping up, disconnecting");
+            close();
+        }
+    }
+
+    /**
+     * Writes queued frames to the socket until the queue is closed.
+     * Frames keep being gathered into the buffer while more are queued, until the queue
+     * runs dry or the flush delay has elapsed; then the buffer is flushed with one write.
+     * The time every frame spent queued, its encoding and the flush are recorded in the pipeline metrics.
+     */
+    private void writeLoop() {
+        List<Frame> batch = new ArrayList<>();
+        try {
+            while (!outbound.isClosed()) {
+                if (outbound.drainTo(batch, Integer.MAX_VALUE, 1, TimeUnit.SECONDS) == 0) {
+                    continue;
+                }
+                SlowWriteEvent slowWrite = new SlowWriteEvent();
+                slowWrite.begin();
+                long flushDeadline = System.nanoTime() + OutboundQueue.MAX_FLUSH_DELAY_NANOS;
+                WireFormat format = wireFormat;
+                int frames = 0;
+                long bytes = 0;
+                do {
+                    long taken = metrics.start();
+                    for (Frame frame : batch) {
+                        metrics.record(PipelineStage.QUEUE, frame.getKind(), frame.getCreatedNanos(), taken);
+                        counters.frameSent(frame.getKind());
+                        frame.encode(format, metrics);
+                        frame.writeTo(out, format);
+                        frames++;
+                        bytes += frame.length(format);
+                    }
+                    batch.clear();
+                } while (System.nanoTime() < flushDeadline
+                        && outbound.drainTo(batch, Integer.MAX_VALUE, 0, TimeUnit.NANOSECONDS) > 0);
+                long flushStart = metrics.start();
+                out.flush();
+                metrics.record(PipelineStage.WRITE, PipelineMetrics.OTHER, flushStart);
+                slowWrite.finish(getClientSocket(), frames, bytes);
+                server.getFlushCounters().record(frames, bytes);
+            }
+        } catch (IOException e) {
+            if (!outbound.isClosed()) {
+                System.err.println("Error writing to " + getClientSocket() + ": " + e.getMessage());
+                close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupt status
+        }
+    }
+
+    /**
+     * Attaches the session of the user who logged in on this connection.
+     *
+     * @param session The client's session
+     */
+    @Override
+    public void setSession(ClientSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Returns the session of the user who logged in on this connection.
+     *
+     * @return The client's session, or null before login
+     */
+    @Override
+    public ClientSession getSession() {
+        return session;
+    }
+
+    /**
+     * Returns the wire format of the frames written to the client.
+     *
+     * @return The format settled with the client, JSON until it is settled
+     */
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    /**
+     * Returns the number of frames waiting to be written to the client.
+     *
+     * @return The outbound queue depth
+     */
+    @Override
+    public int getOutboundQueueDepth() {
+        return outbound.depth();
+    }
+
+    /**
+     * Closes the socket, which also ends the read loop in run() and the writer.
+     */
+    @Override
+    public void close() {
+        outbound.close();
+        try {
+            socket.close();
+        } catch (IOException e) {
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Processes a decoded message by delegating it to the appropriate processor.
      *
-     * @param jsonMessage The JSON formatted message received from the client
+     * @param message The message received from the client
      */
-    public void processMessage(String jsonMessage) {
-        // Deserialize the JSON message to a Communication object
-        Communication message = MessageSerializer.deserialize(jsonMessage);
+    public void processMessage(Communication message) {
+        counters.messageReceived(PipelineMetrics.kindOf(message));
+        MessageReceivedEvent.emit(ChatEvents.SERVER, message, getClientSocket());
+
+        // Any frame from the client shows that it is alive
+        ClientSession current = session;
+        if (current != null) {
+            current.recordHeartbeat();
+        }
 
         // Get the appropriate message processor based on the message type
         ServerMessageProcessor processor = ServerMessageProcessorFactory.getProcessor(message.getType());
+        if (processor == null) {
+            System.err.println("No processor for " + message.getType() + " messages");
+            return;
+        }
 
         // Process the message using the obtained processor
-        processor.processMessage(message, this.server, out, this);
+        MessageDispatchedEvent event = new MessageDispatchedEvent();
+        event.begin();
+        long start = metrics.start();
+        processor.processMessage(message, this.server, this);
+        metrics.record(PipelineStage.DISPATCH, PipelineMetrics.kindOf(message), start);
+        event.finish(ChatEvents.SERVER, message, current != null ? current.getUserId() : null, getClientSocket());
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.example.server.network;
+
+import java.io.IOException;
+
+/**
+ * The ServerTransport interface abstracts how client connections are accepted and read.
+ * Every transport speaks the same wire protocol, settling each connection's wire format with the
+ * codec handshake, and hands decoded frames to the server's message processors.
+ */
+public interface ServerTransport {
+
+    /**
+     * Binds the transport to the given port and starts accepting clients in the background.
+     *
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException if the listener cannot be opened
+     */
+    void start(int port) throws IOException;
+
+    /**
+     * Returns the port the transport is bound to.
+     *
+     * @return The local port, or -1 if the transport has not been started
+     */
+    int getLocalPort();
+
+    /**
+     * Returns the number of client connections currently being served.
+     *
+     * @return The number of active connections
+     */
+    int getActiveConnections();
+
+    /**
+     * Stops accepting clients and releases the transport's threads.
+     */
+    void stop();
+}
@@ -0,0 +1,31 @@
+package com.example.server.network;
+
+import java.util.concurrent.Executors;
+
+/**
+ * The ServerTransportFactory class is responsible for creating the ServerTransport
+ * selected at startup.
+ */
+public class ServerTransportFactory {
+    private static final int BLOCKING_POOL_SIZE = 500; // Size of the thread pool for the blocking transport
+
+    /**
+     * Returns the ServerTransport matching the given mode.
+     *
+     * @param mode   The transport mode selected at startup
+     * @param server The server the transport delivers messages to
+     * @return The corresponding ServerTransport
+     */
+    public static ServerTransport create(TransportMode mode, Server server) {
+        return switch (mode) {
+            // For BLOCKING, keep the classic fixed pool running one ServerHandler per client
+            case BLOCKING -> new BlockingServerTransport(server, Executors.newFixedThreadPool(BLOCKING_POOL_SIZE));
+
+            // For VIRTUAL, run the same ServerHandler on a fresh virtual thread per client
+            case VIRTUAL -> new BlockingServerTransport(server, Executors.newVirtualThreadPerTaskExecutor());
+
+            // For NIO, use one event loop per available processor
+            case NIO -> new NioServerTransport(server, Runtime.getRuntime().availableProcessors());
+        };
+    }
+}
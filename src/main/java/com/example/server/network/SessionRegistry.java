@@ -0,0 +1,91 @@
+package com.example.server.network;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The SessionRegistry class indexes the sessions of all logged-in clients by user id.
+ * Lookups, additions and removals take constant time and are atomic, so a session that is
+ * removed concurrently by a logout and a heartbeat timeout is only removed once.
+ */
+public class SessionRegistry {
+    private final Map<String, ClientSession> sessions = new ConcurrentHashMap<>(); // Sessions by user id
+
+    /**
+     * Adds a session, replacing any previous session of the same user.
+     *
+     * @param session The session to add
+     * @return The replaced session, or null if the user had none
+     */
+    public ClientSession add(ClientSession session) {
+        return sessions.put(session.getUserId(), session);
+    }
+
+    /**
+     * Removes the session of a user.
+     *
+     * @param userId The id of the user
+     * @return The removed session, or null if the user had none (or it was already removed)
+     */
+    public ClientSession remove(String userId) {
+        return sessions.remove(userId);
+    }
+
+    /**
+     * Removes a session, unless the user has logged in again and it has been replaced.
+     *
+     * @param session The session to remove
+     * @return True if the session was removed, false if it was replaced or already removed
+     */
+    public boolean remove(ClientSession session) {
+        return sessions.remove(session.getUserId(), session);
+    }
+
+    /**
+     * Finds the session of a user.
+     *
+     * @param userId The id of the user
+     * @return The session, or null if the user is not logged in
+     */
+    public ClientSession get(String userId) {
+        return userId != null ? sessions.get(userId) : null;
+    }
+
+    /**
+     * Checks if a user is logged in.
+     *
+     * @param userId The id of the user
+     * @return True if the user has a session
+     */
+    public boolean contains(String userId) {
+        return userId != null && sessions.containsKey(userId);
+    }
+
+    /**
+     * Returns a live view of all sessions.
+     *
+     * @return The sessions
+     */
+    public Collection<ClientSession> all() {
+        return sessions.values();
+    }
+
+    /**
+     * Returns the number of logged-in clients.
+     *
+     * @return The number of sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Checks if no client is logged in.
+     *
+     * @return True if there are no sessions
+     */
+    public boolean isEmpty() {
+        return sessions.isEmpty();
+    }
+}
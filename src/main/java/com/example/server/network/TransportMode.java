@@ -0,0 +1,10 @@
+package com.example.server.network;
+
+/**
+ * Enum representing the transports the server can be started with.
+ */
+public enum TransportMode {
+    BLOCKING, // One pooled platform thread per connection (ServerHandler)
+    VIRTUAL,  // One virtual thread per connection (ServerHandler), no pool ceiling
+    NIO       // A few selector event loops multiplexing all connections
+}
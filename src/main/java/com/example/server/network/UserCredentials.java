@@ -0,0 +1,151 @@
+package com.example.server.network;
+
+import com.example.server.storage.Journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The UserCredentials class keeps the secret each user id was claimed with, so that a client cannot log
+ * in under an id it merely learned, as every client learns the ids of the users online, and be handed
+ * that user's chats and the messages kept for them while they were offline.
+ * The chat client remembers a secret with its id (see ClientIdentity) and sends it when it logs in; the
+ * first login with a secret claims the id and later ones must send the same secret. Only a SHA-256 hash
+ * of each secret is kept. A user who logs in without a secret does not claim their id, which is then
+ * as open to anyone as it was before; an id claimed once can no longer be used without its secret.
+ * Credentials opened on a directory record every claim in a {@link Journal} next to the inboxes,
+ * so claims survive a restart along with what they protect:
+ * <pre>
+ * CLAIMED = 1:u8 userId hash
+ * string  = length:short utf8
+ * </pre>
+ * The hash is stored as Base64. Claims are never withdrawn, so the journal only holds live state.
+ */
+public class UserCredentials implements Closeable {
+    private static final String JOURNAL_NAME = "credentials.journal"; // File name of the journal
+    private static final byte CLAIMED = 1; // Kind of a record noting the secret a user id was claimed with
+
+    private final Map<String, byte[]> hashes = new ConcurrentHashMap<>(); // Hashes of the secrets by user id
+    private final ReentrantLock lock = new ReentrantLock(); // Makes claims one at a time
+    private final Journal journal; // Records every claim, or null if the credentials are kept in memory only
+
+    /**
+     * Constructor for UserCredentials kept in memory only, which protect ids until the server stops.
+     */
+    public UserCredentials() {
+        this.journal = null;
+    }
+
+    /**
+     * Constructor for UserCredentials that survive a restart.
+     * Opens the journal in a directory, creating it if needed, and replays it.
+     *
+     * @param directory The directory of the journal
+     * @throws IOException if the journal cannot be opened
+     */
+    public UserCredentials(Path directory) throws IOException {
+        this.journal = new Journal(directory.resolve(JOURNAL_NAME), this::apply);
+    }
+
+    /**
+     * Applies one journal record while the journal is replayed.
+     *
+     * @param body The body of the record
+     */
+    private void apply(ByteBuffer body) {
+        byte kind = body.get();
+        if (kind != CLAIMED) {
+            throw new IllegalArgumentException("Unknown credentials record " + kind);
+        }
+        String userId = Journal.getString(body);
+        hashes.put(userId, Base64.getDecoder().decode(Journal.getString(body)));
+    }
+
+    /**
+     * Checks if a client may log in under a user id. A secret for an id nobody has claimed yet claims it,
+     * and the claim is synced before the login is accepted.
+     *
+     * @param userId The user id the client logs in under
+     * @param secret The secret the client sent, or null
+     * @return True if the id is the client's, false if it was claimed with another secret
+     * @throws IOException if the claim cannot be journaled
+     * @throws IllegalArgumentException if the user id is too long to be journaled
+     */
+    public boolean verify(String userId, String secret) throws IOException {
+        if (secret == null) {
+            return !hashes.containsKey(userId);
+        }
+        byte[] hash = hash(secret);
+        lock.lock();
+        try {
+            byte[] known = hashes.get(userId);
+            if (known != null) {
+                return MessageDigest.isEqual(known, hash);
+            }
+            if (journal != null) {
+                byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+                byte[] encoded = Base64.getEncoder().encode(hash);
+                journal.append(Journal.putString(Journal.putString(
+                        ByteBuffer.allocate(1 + 2 + id.length + 2 + encoded.length).put(CLAIMED), id), encoded).flip());
+            }
+            hashes.put(userId, hash);
+        } finally {
+            lock.unlock();
+        }
+        if (journal != null) {
+            journal.sync(lock);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a user id has been claimed.
+     *
+     * @param userId The user id
+     * @return True if logging in under the id takes its secret
+     */
+    public boolean isClaimed(String userId) {
+        return hashes.containsKey(userId);
+    }
+
+    /**
+     * Hashes a secret.
+     *
+     * @param secret The secret
+     * @return Its SHA-256 hash
+     */
+    private static byte[] hash(String secret) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Every JVM provides it
+        }
+    }
+
+    /**
+     * Syncs the journal and closes it; credentials kept in memory only have nothing to close.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.server.network;
+
+import java.io.PrintWriter;
+
+/**
+ * The WriterFrameSink class adapts a PrintWriter to the FrameSink interface,
+ * for clients that are reached through a character stream rather than a socket.
+ */
+public class WriterFrameSink implements FrameSink {
+    private final PrintWriter writer; // The writer frames are written to
+
+    /**
+     * Constructor for WriterFrameSink.
+     *
+     * @param writer The writer frames are written to
+     */
+    public WriterFrameSink(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the frame's text to the writer and flushes it.
+     *
+     * @param frame The frame to send
+     */
+    @Override
+    public void send(Frame frame) {
+        writer.print(frame.text());
+        writer.flush();
+    }
+}
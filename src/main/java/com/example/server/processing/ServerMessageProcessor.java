@@ -1,14 +1,14 @@
 package com.example.server.processing;
 
 import com.example.common.messages.Communication;
+import com.example.server.network.ClientConnection;
 import com.example.server.network.Server;
-import com.example.server.network.ServerHandler;
-
-import java.io.PrintWriter;
 
 /**
  * The ServerMessageProcessor class is an abstract class that defines
  * the structure for processing messages on the server.
+ * One instance of each processor is shared by all connections, so processors must not keep
+ * state between messages.
  */
 public abstract class ServerMessageProcessor {
 
@@ -17,8 +17,7 @@ public abstract class ServerMessageProcessor {
      *
      * @param message The communication message received
      * @param server The server handling the message
-     * @param out The PrintWriter to send responses
-     * @param handler The server handler managing client connections
+     * @param handler The connection the message was received on
      */
-    public abstract void processMessage(Communication message, Server server, PrintWriter out, ServerHandler handler);
+    public abstract void processMessage(Communication message, Server server, ClientConnection handler);
 }
\ No newline at end of file
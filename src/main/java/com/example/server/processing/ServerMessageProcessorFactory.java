@@ -1,30 +1,64 @@
 package com.example.server.processing;
 
 import com.example.common.messages.CommunicationType;
+import com.example.common.messages.SystemMessageType;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
- * The ServerMessageProcessorFactory class is responsible for creating instances of ServerMessageProcessor
- * based on the type of communication message received.
+ * The ServerMessageProcessorFactory class provides the ServerMessageProcessor
+ * for each type of communication message received.
+ * Processors are stateless, since everything they work on is passed to them, so one instance of each
+ * is shared by all connections and looking one up allocates nothing.
  */
 public class ServerMessageProcessorFactory {
+    private static final ServerSystemMessageProcessor systemProcessor = new ServerSystemMessageProcessor(); // Processor for system messages
+    private static volatile Map<CommunicationType, ServerMessageProcessor> processors = createDefaults(); // Processors by message type, replaced on registration
+
+    /**
+     * Creates the table of the built-in processors.
+     *
+     * @return The processors by message type
+     */
+    private static Map<CommunicationType, ServerMessageProcessor> createDefaults() {
+        Map<CommunicationType, ServerMessageProcessor> defaults = new EnumMap<>(CommunicationType.class);
+        defaults.put(CommunicationType.TEXT, new ServerTextMessageProcessor());
+        defaults.put(CommunicationType.USER_UPDATE, new ServerUserUpdateMessageProcessor());
+        defaults.put(CommunicationType.SYSTEM, systemProcessor);
+        return defaults;
+    }
 
     /**
      * Returns the appropriate ServerMessageProcessor based on the CommunicationType.
      *
      * @param type The type of communication message
-     * @return The corresponding ServerMessageProcessor
+     * @return The corresponding ServerMessageProcessor, or null if none is registered for the type
      */
     public static ServerMessageProcessor getProcessor(CommunicationType type) {
-        // Use a switch expression to return the appropriate processor based on the communication type
-        return switch (type) {
-            // For TEXT type, return an instance of ServerTextMessageProcessor
-            case TEXT -> new ServerTextMessageProcessor();
+        return processors.get(type);
+    }
 
-            // For USER_UPDATE type, return an instance of ServerUserUpdateMessageProcessor
-            case USER_UPDATE -> new ServerUserUpdateMessageProcessor();
+    /**
+     * Registers the processor for a message type, replacing any previous one.
+     * The table is copied, so registering is safe while messages are being processed.
+     *
+     * @param type The type of communication message
+     * @param processor The processor for messages of the type; it is shared by all connections
+     */
+    public static synchronized void register(CommunicationType type, ServerMessageProcessor processor) {
+        Map<CommunicationType, ServerMessageProcessor> updated = new EnumMap<>(processors);
+        updated.put(type, processor);
+        processors = updated;
+    }
 
-            // For SYSTEM type, return an instance of ServerSystemMessageProcessor
-            case SYSTEM -> new ServerSystemMessageProcessor();
-        };
+    /**
+     * Registers the handler for a system message type with the built-in system message processor.
+     *
+     * @param type The system message type
+     * @param handler The handler for messages of the type; it is shared by all connections
+     */
+    public static void registerSystemHandler(SystemMessageType type, ServerSystemMessageHandler handler) {
+        systemProcessor.register(type, handler);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,23 @@
+package com.example.server.processing;
+
+import com.example.common.messages.SystemMessage;
+import com.example.server.network.ClientConnection;
+import com.example.server.network.Server;
+
+/**
+ * The ServerSystemMessageHandler interface handles one type of system message on the server.
+ * Handlers are registered with ServerSystemMessageProcessor by SystemMessageType and shared by
+ * all connections, so they must not keep per-message state.
+ */
+@FunctionalInterface
+public interface ServerSystemMessageHandler {
+
+    /**
+     * Handles a system message.
+     *
+     * @param message The system message received
+     * @param server The server handling the message
+     * @param handler The connection the message was received on
+     */
+    void handle(SystemMessage message, Server server, ClientConnection handler);
+}
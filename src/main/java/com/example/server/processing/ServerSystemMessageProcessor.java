@@ -1,79 +1,209 @@
 package com.example.server.processing;
 
+import com.example.common.chats.ChatDescriptor;
 import com.example.common.messages.Communication;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.HistoryRequest;
+import com.example.common.messages.IpRequest;
+import com.example.common.messages.IpTransition;
 import com.example.common.messages.SystemMessage;
 import com.example.common.messages.SystemMessageType;
 import com.example.common.users.User;
+import com.example.server.network.ClientConnection;
+import com.example.server.network.ClientSession;
+import com.example.server.network.ChatRegistry;
 import com.example.server.network.Server;
-import com.example.server.network.ServerHandler;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.example.server.storage.FramePage;
+import com.example.server.storage.HistoryStore;
 
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * The ServerSystemMessageProcessor class extends ServerMessageProcessor
  * and is responsible for processing system messages on the server.
+ * Each SystemMessageType is dispatched through a table of handlers; types without a handler are ignored.
  */
 public class ServerSystemMessageProcessor extends ServerMessageProcessor {
+    public static final int MAX_HISTORY_PAGE = 200; // Most messages returned for one history request
+    private volatile Map<SystemMessageType, ServerSystemMessageHandler> handlers; // Handlers by system message type, replaced on registration
+
+    /**
+     * Constructor for ServerSystemMessageProcessor.
+     * Registers the handlers for the system messages clients send.
+     */
+    public ServerSystemMessageProcessor() {
+        Map<SystemMessageType, ServerSystemMessageHandler> defaults = new EnumMap<>(SystemMessageType.class);
+        defaults.put(SystemMessageType.IP_REQUEST, this::processIpRequest);
+        defaults.put(SystemMessageType.CHAT_CREATE, (message, server, handler) ->
+                createChat(message.getPayload(ChatDescriptor.class), server, handler));
+        defaults.put(SystemMessageType.HISTORY_REQUEST, this::processHistoryRequest);
+        // Update the records of the user who has sent the heartbeat
+        defaults.put(SystemMessageType.HEARTBEAT, (message, server, handler) -> server.updateHeartbeat(message.getContent()));
+        this.handlers = defaults;
+    }
+
+    /**
+     * Registers the handler for a system message type, replacing any previous one.
+     * The table is copied, so registering is safe while messages are being processed.
+     *
+     * @param type The system message type
+     * @param handler The handler for messages of the type
+     */
+    public synchronized void register(SystemMessageType type, ServerSystemMessageHandler handler) {
+        Map<SystemMessageType, ServerSystemMessageHandler> updated = new EnumMap<>(handlers);
+        updated.put(type, handler);
+        handlers = updated;
+    }
 
     /**
      * Processes the incoming system message.
      *
      * @param message The communication message received
      * @param server The server handling the message
-     * @param out The PrintWriter to send responses
-     * @param handler The server handler managing client connections
+     * @param handler The connection the message was received on
      */
     @Override
-    public void processMessage(Communication message, Server server, PrintWriter out, ServerHandler handler) {
+    public void processMessage(Communication message, Server server, ClientConnection handler) {
         // Cast the received message to SystemMessage
         SystemMessage systemMessage = (SystemMessage) message;
+        if (systemMessage.getSystemType() == null) {
+            return; // Sent by a newer client with a type this server does not know
+        }
+
+        ServerSystemMessageHandler systemHandler = handlers.get(systemMessage.getSystemType());
+        if (systemHandler != null) {
+            systemHandler.handle(systemMessage, server, handler);
+        }
+    }
+
+    /**
+     * Answers a client's request for the address of another user.
+     *
+     * @param systemMessage The IP request
+     * @param server The server handling the message
+     * @param handler The connection the message was received on
+     */
+    private void processIpRequest(SystemMessage systemMessage, Server server, ClientConnection handler) {
+        IpRequest request = systemMessage.getPayload(IpRequest.class);
+        if (request == null) {
+            System.err.println("Ignoring IP request without a payload");
+            return;
+        }
+
+        // Find the sender and selected user by their IDs
+        Optional<User> senderOpt = server.findUserById(request.senderId());
+        Optional<User> selectedUserOpt = server.findUserById(request.selectedUserId());
+
+        // If the selected user is present, proceed with processing
+        if (selectedUserOpt.isPresent()) {
+            User requestedUser = selectedUserOpt.get();
+
+            // Get the socket address of the requested user
+            String socket = server.getUserSocket(requestedUser);
 
-        // Check if the system message type is IP_REQUEST
-        if (systemMessage.getSystemType().equals(SystemMessageType.IP_REQUEST)) {
-            // Parse the JSON content of the system message
-            JsonObject json = JsonParser.parseString(systemMessage.getContent()).getAsJsonObject();
-            String senderId = json.get("senderId").getAsString();
-            String selectedUserId = json.get("selectedUserId").getAsString();
-
-            // Find the sender and selected user by their IDs
-            Optional<User> senderOpt = server.findUserById(senderId);
-            Optional<User> selectedUserOpt = server.findUserById(selectedUserId);
-
-            // If the selected user is present, proceed with processing
-            if (selectedUserOpt.isPresent()) {
-                User requestedUser = selectedUserOpt.get();
-
-                // Get the socket address of the requested user
-                String socket = server.getUserSocket(requestedUser);
-
-                // Check if the socket address is unknown
-                if (socket.equals("Unknown")) {
-                    /* @ToDo: Add the logic */
-                } else {
-                    // If the sender is present, prepare and send the response
-                    if (senderOpt.isPresent()) {
-                        User sender = senderOpt.get();
-                        JsonObject responseContent = new JsonObject();
-                        responseContent.addProperty("ip", socket.split(":")[0]);
-                        responseContent.addProperty("port", socket.split(":")[1]);
-
-                        // Create a new system message for IP transition and send it to the sender
-                        SystemMessage response = new SystemMessage(SystemMessageType.IP_TRANSITION, responseContent.toString());
-                        server.send(sender, response);
-                    }
+            // Check if the socket address is unknown
+            if (socket.equals("Unknown")) {
+                /* @ToDo: Add the logic */
+            } else {
+                // If the sender is present, prepare and send the response
+                if (senderOpt.isPresent()) {
+                    User sender = senderOpt.get();
+                    int separator = socket.lastIndexOf(':');
+                    IpTransition transition = new IpTransition(socket.substring(0, separator),
+                            Integer.parseInt(socket.substring(separator + 1)));
+
+                    // Create a new system message for IP transition and send it to the sender
+                    SystemMessage response = SystemMessage.of(SystemMessageType.IP_TRANSITION, transition);
+                    server.send(sender, response);
                 }
             }
         }
-        // Check if the system message type is HEARTBEAT
-        if (systemMessage.getSystemType().equals(SystemMessageType.HEARTBEAT)) {
-            // Find the user who has sent the heartbeat
-            Optional<User> user = server.findUserById(systemMessage.getContent());
+    }
 
-            // Update their records
-            server.updateHeartbeat(user);
+    /**
+     * Registers a chat created by a client and announces it to its members.
+     * The creator has to be one of the members, and the chat id must not be taken.
+     *
+     * @param descriptor The chat the client created
+     * @param server The server handling the message
+     * @param handler The connection the message was received on
+     */
+    private void createChat(ChatDescriptor descriptor, Server server, ClientConnection handler) {
+        ClientSession session = handler != null ? handler.getSession() : null;
+        if (session == null || descriptor == null || descriptor.getId() == null || descriptor.getType() == null
+                || descriptor.getParticipantIds() == null || !descriptor.getParticipantIds().contains(session.getUserId())) {
+            System.err.println("Rejecting chat creation from a client that is not one of its members");
+            return;
         }
+        try {
+            if (!server.getChats().register(descriptor)) {
+                System.err.println("Rejecting chat creation for existing chat " + descriptor.getId());
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Rejecting chat creation: " + e.getMessage());
+            return;
+        }
+
+        // Tell every member about the chat so that its messages can be routed by id alone
+        SystemMessage created = SystemMessage.of(SystemMessageType.CHAT_CREATED, descriptor);
+        server.fanOut(descriptor.getParticipantIds(), created);
+    }
+
+    /**
+     * Answers a client's request for a page of a chat's history.
+     * Only members of a chat may read its history; everyone may read the general chat's.
+     * Others get an empty page.
+     * The log is read on a thread of its own. A failed read is answered with an empty page that keeps the cursor, so the client can try again.
+     *
+     * @param systemMessage The history request
+     * @param server The server handling the message
+     * @param handler The connection the message was received on
+     */
+    private void processHistoryRequest(SystemMessage systemMessage, Server server, ClientConnection handler) {
+        HistoryRequest request = systemMessage.getPayload(HistoryRequest.class);
+        ClientSession session = handler != null ? handler.getSession() : null;
+        if (request == null || session == null || request.chatId() == null) {
+            System.err.println("Ignoring history request without a chat or a session");
+            return;
+        }
+        String chatId = request.chatId();
+        if (!Server.GENERAL_CHAT_ID.equals(chatId)) {
+            ChatRegistry.RegisteredChat chat = server.getChats().get(chatId);
+            if (chat == null || !chat.hasMember(session.getUserId())) {
+                // Answer with an empty page, so that the client stops asking
+                System.err.println("Rejecting history request for chat " + chatId + " from a client that is not one of its members");
+                server.send(session.getUser(), SystemMessage.of(SystemMessageType.HISTORY_PAGE, HistoryPage.empty(chatId)));
+                return;
+            }
+        }
+
+        HistoryStore history = server.getHistory();
+        if (history == null) {
+            server.send(session.getUser(), SystemMessage.of(SystemMessageType.HISTORY_PAGE, HistoryPage.empty(chatId)));
+            return;
+        }
+        int limit = Math.clamp(request.limit(), 1, MAX_HISTORY_PAGE);
+        server.queryHistory(() -> {
+            FramePage page;
+            try {
+                page = history.framePage(chatId, request.before(), limit);
+            } catch (IOException e) {
+                System.err.println("Error reading the history of chat " + chatId + ": " + e.getMessage());
+                server.send(session.getUser(), SystemMessage.of(SystemMessageType.HISTORY_PAGE, new HistoryPage(chatId, List.of(), request.before())));
+                return;
+            } catch (RuntimeException e) {
+                // Such as a cursor the log cannot make sense of; an empty page without a cursor stops the client asking
+                System.err.println("Error reading the history of chat " + chatId + ": " + e);
+                server.send(session.getUser(), SystemMessage.of(SystemMessageType.HISTORY_PAGE, HistoryPage.empty(chatId)));
+                return;
+            }
+            // Replay the stored frames as they are, without decoding the messages
+            server.sendHistory(session.getUser(), page);
+        });
     }
-}
\ No newline at end of file
+}
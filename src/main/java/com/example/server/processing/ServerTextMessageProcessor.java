@@ -2,17 +2,19 @@ package com.example.server.processing;
 
 import com.example.common.messages.Communication;
 import com.example.common.messages.TextMessage;
-import com.example.common.utils.MessageSerializer;
-import com.example.common.chats.Chat;
-import com.example.common.users.User;
+import com.example.server.network.ChatRegistry;
+import com.example.server.network.ClientConnection;
+import com.example.server.network.ClientSession;
 import com.example.server.network.Server;
-import com.example.server.network.ServerHandler;
 
-import java.io.PrintWriter;
+import java.util.List;
 
 /**
  * The ServerTextMessageProcessor class extends ServerMessageProcessor
  * and is responsible for processing text messages on the server.
+ * Messages are routed by chat id to the members the server has on record for the chat,
+ * never to participants named by the sender. Every routed message is then persisted, and kept
+ * for the members of the chat who are offline until they log in again.
  */
 public class ServerTextMessageProcessor extends ServerMessageProcessor {
 
@@ -21,26 +23,37 @@ public class ServerTextMessageProcessor extends ServerMessageProcessor {
      *
      * @param message The communication message received
      * @param server The server handling the message
-     * @param out The PrintWriter to send responses
-     * @param handler The server handler managing client connections
+     * @param handler The connection the message was received on
      */
     @Override
-    public void processMessage(Communication message, Server server, PrintWriter out, ServerHandler handler) {
+    public void processMessage(Communication message, Server server, ClientConnection handler) {
         // Cast the received message to TextMessage
         TextMessage textMessage = (TextMessage) message;
 
-        // Retrieve the chat from the message
-        Chat targetChat = textMessage.getChat();
-
-        // Broadcast the text message to all active users in the chat
-        for (User recipient : targetChat.getParticipants()) {
-            // Get the PrintWriter for each participant
-            PrintWriter writer = server.getClient(recipient);
+        // Only accept messages sent in the name of the user logged in on the connection
+        ClientSession session = handler != null ? handler.getSession() : null;
+        if (session == null || !session.getUserId().equals(textMessage.getSenderId())) {
+            System.err.println("Dropping text message from a connection not logged in as its sender");
+            return;
+        }
 
-            // If the writer is not null, send the serialized text message
-            if (writer != null) {
-                writer.println(MessageSerializer.serialize(textMessage));
+        // The general chat includes every logged-in user
+        List<String> offlineRecipients = List.of();
+        if (Server.GENERAL_CHAT_ID.equals(textMessage.getChatId())) {
+            server.broadcast(textMessage);
+        } else {
+            // Look the chat up by its id
+            ChatRegistry.RegisteredChat targetChat = server.getChats().get(textMessage.getChatId());
+            if (targetChat == null || !targetChat.hasMember(session.getUserId())) {
+                System.err.println("Dropping text message for unknown chat " + textMessage.getChatId());
+                return;
             }
+
+            // Encode the text message once and send it to all active members of the chat
+            offlineRecipients = server.fanOut(targetChat.members(), textMessage);
         }
+
+        // Keep a durable record of the message once it has been routed, and hold it for the members who are offline
+        server.persist(textMessage, offlineRecipients);
     }
-}
\ No newline at end of file
+}
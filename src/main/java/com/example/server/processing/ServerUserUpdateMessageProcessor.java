@@ -2,12 +2,11 @@ package com.example.server.processing;
 
 import com.example.common.messages.*;
 import com.example.common.users.User;
+import com.example.server.network.ClientConnection;
+import com.example.server.network.ClientSession;
 import com.example.server.network.Server;
-import com.example.server.network.ServerHandler;
 import com.example.server.network.CoordinatorManager;
 
-import java.io.PrintWriter;
-
 /**
  * The ServerUserUpdateMessageProcessor class extends ServerMessageProcessor
  * and is responsible for processing user update messages on the server.
@@ -19,11 +18,10 @@ public class ServerUserUpdateMessageProcessor extends ServerMessageProcessor {
      *
      * @param message The communication message received
      * @param server The server handling the message
-     * @param out The PrintWriter to send responses
-     * @param handler The server handler managing client connections
+     * @param handler The connection the message was received on
      */
     @Override
-    public void processMessage(Communication message, Server server, PrintWriter out, ServerHandler handler) {
+    public void processMessage(Communication message, Server server, ClientConnection handler) {
         // Cast the received message to UserUpdateMessage
         UserUpdateMessage userUpdateMessage = (UserUpdateMessage) message;
 
@@ -38,8 +36,17 @@ public class ServerUserUpdateMessageProcessor extends ServerMessageProcessor {
 
         // Check if the user status is ONLINE
         if (userUpdateMessage.getStatus().equals(UserStatus.ONLINE)) {
+            // Turn away a client that does not hold the secret the user's id was claimed with
+            if (!server.checkCredentials(user, userUpdateMessage.getSecret())) {
+                System.err.println("Rejecting login of " + user.getUsername() + " under a user id claimed with another secret");
+                if (handler != null) {
+                    handler.close();
+                }
+                return;
+            }
+
             // Add the client to the server
-            server.addClient(user, out, handler);
+            server.addClient(user, handler);
 
             // If there is no current coordinator, assign this user as the coordinator
             if (coordinatorManager.getCoordinator() == null) {
@@ -49,16 +56,21 @@ public class ServerUserUpdateMessageProcessor extends ServerMessageProcessor {
             // Create a system message for coordinator transition and broadcast it
             SystemMessage systemMessage = new SystemMessage(SystemMessageType.COORDINATOR_ID_TRANSITION, coordinatorManager.getCoordinator().getId());
             server.broadcast(systemMessage);
+
+            // Hand over what the user missed while offline, in batches
+            server.deliverOfflineMessages(user);
         } else {
             // Check if the user is the current coordinator and needs reassignment
             boolean needReassignment = coordinatorManager.getCoordinator() != null &&
                     coordinatorManager.getCoordinator().getId().equals(user.getId());
 
-            // Remove the client from the server
-            server.removeClient(user);
+            // Remove the session of this connection; one the user has logged in with again since stays,
+            // and a connection that has not logged in cannot log anyone out
+            ClientSession session = handler != null ? handler.getSession() : null;
+            boolean removed = session != null ? server.removeClient(session) : handler == null && server.removeClient(user);
 
             // Reassign the coordinator if necessary
-            if (needReassignment) {
+            if (removed && needReassignment) {
                 System.out.println("COORDINATOR: " + user.getUsername() + " (coordinator) has left the chat");
                 coordinatorManager.reassignCoordinator();
             }
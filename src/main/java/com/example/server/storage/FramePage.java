@@ -0,0 +1,28 @@
+package com.example.server.storage;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A page of a chat's history as the binary frames stored in the message log, to be sent to clients
+ * without decoding the messages. Frames of completed segments are views of the mapped files.
+ *
+ * @param chatId     The id of the chat
+ * @param frames     The binary frames of the messages, oldest first; each a read-only buffer from its position to its limit
+ * @param nextCursor Cursor to request the page before this one with, or HistoryPage.NO_MORE at the start of the history
+ */
+public record FramePage(String chatId, List<ByteBuffer> frames, long nextCursor) {
+
+    /**
+     * Returns the total size of the frames.
+     *
+     * @return The number of bytes
+     */
+    public int framesLength() {
+        int length = 0;
+        for (ByteBuffer frame : frames) {
+            length += frame.remaining();
+        }
+        return length;
+    }
+}
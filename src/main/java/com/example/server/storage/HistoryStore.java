@@ -0,0 +1,347 @@
+package com.example.server.storage;
+
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.TextMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The HistoryStore class answers history queries from the message log.
+ * Queries are pages of a chat's messages before a cursor, the cursor being the log position of
+ * the oldest message of the previous page. Most queries ask for the latest messages of a chat
+ * that is being talked in, so the store keeps the tail of the most recently used chats in
+ * memory, in least-recently-used order, and only reads the log for older pages or cold chats.
+ * <p>
+ * A tail is loaded from the log the first time a chat is queried and then kept up to date by
+ * every append, so it never has to be read again while it stays cached.
+ * <p>
+ * Pages come either as messages or as the binary frames stored in the log. Tails keep the frames
+ * and decode a message only when it is first asked for, so a page of frames, which is sent to
+ * binary clients as it is, never decodes a message, whether it comes from memory or from the
+ * mapped log.
+ */
+public class HistoryStore {
+    public static final int DEFAULT_TAIL_SIZE = 256; // Messages kept in memory per chat
+    public static final int DEFAULT_CACHED_CHATS = 1024; // Chats whose tails are kept in memory
+
+    private final MessageLog log; // Log the messages are stored in
+    private final int tailSize; // Messages kept in memory per chat
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the tails
+    private final LinkedHashMap<String, ChatTail> tails; // Tails by chat id, least recently used first
+    private final LongAdder hits = new LongAdder(); // Pages answered from memory
+    private final LongAdder misses = new LongAdder(); // Pages read from the log
+
+    /**
+     * Constructor for HistoryStore.
+     *
+     * @param log         The log the messages are stored in
+     * @param tailSize    Messages kept in memory per chat
+     * @param cachedChats Chats whose tails are kept in memory
+     */
+    public HistoryStore(MessageLog log, int tailSize, int cachedChats) {
+        this.log = log;
+        this.tailSize = tailSize;
+        this.tails = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChatTail> eldest) {
+                return size() > cachedChats;
+            }
+        };
+    }
+
+    /**
+     * Creates a store with the default cache sizes.
+     *
+     * @param log The log the messages are stored in
+     * @return The store
+     */
+    public static HistoryStore withDefaults(MessageLog log) {
+        return new HistoryStore(log, DEFAULT_TAIL_SIZE, DEFAULT_CACHED_CHATS);
+    }
+
+    /**
+     * Appends a text message to the log and to the cached tail of its chat.
+     *
+     * @param message The message to append
+     * @return The position of the message in the log
+     * @throws IOException if the message cannot be written
+     */
+    public long append(TextMessage message) throws IOException {
+        LogRecord record = log.appendRecord(message);
+        lock.lock();
+        try {
+            ChatTail tail = tails.get(message.getChatId());
+            if (tail != null) {
+                tail.add(record.position(), new Entry(record.frame(), message));
+            }
+        } finally {
+            lock.unlock();
+        }
+        return record.position();
+    }
+
+    /**
+     * Gets the last messages of a chat before a cursor.
+     *
+     * @param chatId The id of the chat
+     * @param before The cursor the page ends before, or HistoryRequest.LATEST
+     * @param limit  The largest number of messages to return
+     * @return The page
+     * @throws IOException if the log cannot be read
+     */
+    public HistoryPage page(String chatId, long before, int limit) throws IOException {
+        Selection selection = select(chatId, before, limit);
+        List<TextMessage> messages = new ArrayList<>(selection.entries().size());
+        for (Entry entry : selection.entries()) {
+            messages.add(entry.message());
+        }
+        return new HistoryPage(chatId, messages, selection.nextCursor());
+    }
+
+    /**
+     * Gets the last messages of a chat before a cursor as their stored binary frames,
+     * without decoding them.
+     *
+     * @param chatId The id of the chat
+     * @param before The cursor the page ends before, or HistoryRequest.LATEST
+     * @param limit  The largest number of messages to return
+     * @return The page of frames
+     * @throws IOException if the log cannot be read
+     */
+    public FramePage framePage(String chatId, long before, int limit) throws IOException {
+        Selection selection = select(chatId, before, limit);
+        List<ByteBuffer> frames = new ArrayList<>(selection.entries().size());
+        for (Entry entry : selection.entries()) {
+            frames.add(entry.frame().duplicate());
+        }
+        return new FramePage(chatId, frames, selection.nextCursor());
+    }
+
+    /**
+     * Picks the last messages of a chat before a cursor, from the cached tail if it reaches far enough
+     * and from the log otherwise.
+     *
+     * @param chatId The id of the chat
+     * @param before The cursor the page ends before, or HistoryRequest.LATEST
+     * @param limit  The largest number of messages to return
+     * @return The messages, oldest first, and the cursor of the page before them
+     * @throws IOException if the log cannot be read
+     */
+    private Selection select(String chatId, long before, int limit) throws IOException {
+        ChatTail loading = null; // Tail to fill from the log, if this query is the first for the chat
+        long loadBefore = 0; // Position the tail is loaded up to
+        lock.lock();
+        try {
+            ChatTail tail = tails.get(chatId);
+            if (tail == null) {
+                // Appends made from now on go to the new tail; the log supplies everything before them
+                loading = new ChatTail(tailSize);
+                tails.put(chatId, loading);
+                loadBefore = log.getNextPosition();
+            } else if (tail.loaded) {
+                Selection selection = tail.select(before, limit);
+                if (selection != null) {
+                    hits.increment();
+                    return selection;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (loading != null) {
+            List<LogRecord> records = log.readBefore(chatId, loadBefore, tailSize);
+            lock.lock();
+            try {
+                loading.load(records);
+                Selection selection = loading.select(before, limit);
+                if (selection != null) {
+                    misses.increment();
+                    return selection;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Older than the cached tail: read one record more than asked, to tell if there are more
+        misses.increment();
+        List<LogRecord> records = log.readBefore(chatId, before, limit + 1);
+        boolean more = records.size() > limit;
+        if (more) {
+            records = records.subList(1, records.size());
+        }
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            entries.add(new Entry(record.frame(), null));
+        }
+        long nextCursor = more ? records.get(0).position() : HistoryPage.NO_MORE;
+        return new Selection(entries, nextCursor);
+    }
+
+    /**
+     * Gets the number of chats whose tails are cached.
+     *
+     * @return The number of cached chats
+     */
+    public int getCachedChatCount() {
+        lock.lock();
+        try {
+            return tails.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of pages answered from memory.
+     *
+     * @return The hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of pages that had to read the log.
+     *
+     * @return The miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * The latest messages of one chat, by log position.
+     */
+    private static class ChatTail {
+        private final int capacity; // Most messages kept
+        private final TreeMap<Long, Entry> messages = new TreeMap<>(); // Messages by position
+        private boolean loaded; // Whether the messages before the first append have been read from the log
+        private boolean complete; // Whether the chat has no messages before the first one kept
+
+        /**
+         * Constructor for ChatTail.
+         *
+         * @param capacity Most messages kept
+         */
+        private ChatTail(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Adds a message, dropping the oldest one if the tail is full.
+         *
+         * @param position The position of the message in the log
+         * @param entry    The message
+         */
+        private void add(long position, Entry entry) {
+            messages.putIfAbsent(position, entry);
+            while (messages.size() > capacity) {
+                messages.pollFirstEntry();
+                complete = false;
+            }
+        }
+
+        /**
+         * Merges the messages read from the log with those appended while they were read.
+         *
+         * @param records The last records of the chat before the first append, oldest first
+         */
+        private void load(List<LogRecord> records) {
+            complete = records.size() < capacity;
+            for (LogRecord record : records) {
+                add(record.position(), new Entry(record.frame(), null));
+            }
+            loaded = true;
+        }
+
+        /**
+         * Picks a page from the kept messages.
+         *
+         * @param before The cursor the page ends before
+         * @param limit  The largest number of messages to return
+         * @return The page, or null if it reaches back past the kept messages
+         */
+        private Selection select(long before, int limit) {
+            NavigableMap<Long, Entry> older = messages.headMap(before, false);
+            int available = older.size();
+            if (available < limit && !complete) {
+                return null;
+            }
+            int count = Math.min(limit, available);
+            Entry[] page = new Entry[count];
+            long first = HistoryPage.NO_MORE;
+            Iterator<Map.Entry<Long, Entry>> newestFirst = older.descendingMap().entrySet().iterator();
+            for (int i = count - 1; i >= 0; i--) {
+                Map.Entry<Long, Entry> entry = newestFirst.next();
+                page[i] = entry.getValue();
+                first = entry.getKey();
+            }
+            boolean more = available > limit || !complete;
+            return new Selection(List.of(page), more ? first : HistoryPage.NO_MORE);
+        }
+    }
+
+    /**
+     * The messages picked for a page.
+     *
+     * @param entries    The messages, oldest first
+     * @param nextCursor Cursor of the page before them, or HistoryPage.NO_MORE
+     */
+    private record Selection(List<Entry> entries, long nextCursor) {
+    }
+
+    /**
+     * One message of a chat's history, held as its stored frame and decoded on first use.
+     */
+    private static final class Entry {
+        private final ByteBuffer frame; // The binary frame, read-only
+        private volatile TextMessage message; // The decoded message, or null until first asked for
+
+        /**
+         * Constructor for Entry.
+         *
+         * @param frame   The binary frame
+         * @param message The message, or null to decode it when first asked for
+         */
+        private Entry(ByteBuffer frame, TextMessage message) {
+            this.frame = frame;
+            this.message = message;
+        }
+
+        /**
+         * Gets the binary frame.
+         *
+         * @return A read-only buffer over the frame; callers take their own view of it
+         */
+        private ByteBuffer frame() {
+            return frame;
+        }
+
+        /**
+         * Gets the message, decoding it on first use.
+         * Threads racing on the first use may both decode it.
+         *
+         * @return The message
+         */
+        private TextMessage message() {
+            TextMessage current = message;
+            if (current == null) {
+                current = LogRecord.decode(frame);
+                message = current;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.example.server.storage;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
+
+/**
+ * The Journal class is the file a store that keeps its state in memory records every change in,
+ * so that the state can be rebuilt when the server starts again:
+ * <pre>
+ * record = length:int crc:int body
+ * </pre>
+ * What a body holds is up to the store. Records are gathered in a buffer and written when it fills
+ * or the journal is synced; replaying the journal cuts off a record only partly written. Once the
+ * journal has grown well beyond the state it describes, the store rewrites it with just that state.
+ * A journal is not thread-safe; its store guards it with its own lock, which syncs and rewrites
+ * only take around the work that needs it, so they do not hold up changes to the store while they
+ * wait for the disk.
+ */
+public class Journal implements Closeable {
+    public static final int HEADER_SIZE = 8; // Bytes of the length and CRC fields
+    public static final int MAX_STRING_BYTES = 0xFFFF; // Longest string a record can hold, in UTF-8 bytes
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024; // Bytes gathered before they are written to the file
+
+    private final Path path; // The journal file
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE); // Records not written to the file yet
+    private final CRC32C crc = new CRC32C(); // Checksum of the record being written
+    private FileChannel channel; // The open journal file
+    private long size; // Bytes in the journal, including those still in the write buffer
+    private boolean dirty; // Whether records have been written since the last sync
+    private volatile boolean closed; // Whether the journal has been closed
+    private final ReentrantLock maintenance = new ReentrantLock(); // Keeps syncs and rewrites from overlapping
+
+    /**
+     * Constructor for Journal.
+     * Opens the journal file, creating it and its directory if needed, and replays its records.
+     *
+     * @param path   The journal file
+     * @param replay Applies the body of each complete record, oldest first; a RuntimeException marks the record as malformed
+     * @throws IOException if the journal cannot be opened or read
+     */
+    public Journal(Path path, Consumer<ByteBuffer> replay) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay(replay);
+    }
+
+    /**
+     * Replays the records of the journal, cutting off a record only partly written.
+     *
+     * @param replay Applies the body of each record
+     * @throws IOException if the journal cannot be read
+     */
+    private void replay(Consumer<ByteBuffer> replay) throws IOException {
+        long fileSize = channel.size();
+        long validSize = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0)), WRITE_BUFFER_SIZE));
+        CRC32C check = new CRC32C();
+        try {
+            while (validSize + HEADER_SIZE <= fileSize) {
+                int length = in.readInt();
+                int expected = in.readInt();
+                if (length <= 0 || validSize + HEADER_SIZE + length > fileSize) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                in.readFully(body);
+                check.reset();
+                check.update(body);
+                if ((int) check.getValue() != expected) {
+                    break;
+                }
+                replay.accept(ByteBuffer.wrap(body));
+                validSize += HEADER_SIZE + length;
+            }
+        } catch (EOFException | RuntimeException e) {
+            // The record at validSize is incomplete or malformed
+        }
+        if (validSize < fileSize) {
+            System.err.println("Cutting " + (fileSize - validSize) + " bytes of incomplete records off " + path.getFileName());
+            channel.truncate(validSize);
+            channel.force(true);
+        }
+        size = validSize;
+        channel.position(validSize);
+    }
+
+    /**
+     * Appends a record to the write buffer, writing the buffer out first if it is full.
+     * Must be called with the store's lock held.
+     *
+     * @param body The body of the record
+     * @throws IOException if the journal is closed or writing fails
+     */
+    public void append(ByteBuffer body) throws IOException {
+        if (closed) {
+            throw new IOException(path.getFileName() + " is closed");
+        }
+        int recordLength = HEADER_SIZE + body.remaining();
+        if (writeBuffer.remaining() < recordLength) {
+            flushBuffer();
+        }
+        ByteBuffer target = recordLength <= writeBuffer.capacity() ? writeBuffer : ByteBuffer.allocate(recordLength);
+        putRecord(target, body, crc);
+        if (target != writeBuffer) {
+            writeFully(channel, target.flip());
+        }
+        size += recordLength;
+        dirty = true;
+    }
+
+    /**
+     * Writes the buffered records to the file. Must be called with the store's lock held.
+     *
+     * @throws IOException if writing fails
+     */
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        try {
+            writeFully(channel, writeBuffer);
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Writes the buffered records while holding the store's lock, then forces them to disk
+     * without it, so that changes made in the meantime do not wait for the disk.
+     *
+     * @param lock The lock of the store
+     * @return True if there was anything to sync, false if nothing was appended since the last sync
+     * @throws IOException if writing or syncing fails
+     */
+    public boolean sync(Lock lock) throws IOException {
+        maintenance.lock();
+        try {
+            FileChannel target;
+            lock.lock();
+            try {
+                if (closed || !dirty) {
+                    return false;
+                }
+                flushBuffer();
+                dirty = false;
+                target = channel;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                if (!closed) {
+                    throw e;
+                }
+                // Closed in the meantime, which forced the file
+            }
+            return true;
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    /**
+     * Replaces the journal with one holding only the state of the store.
+     * The state is taken while holding the store's lock, but written to a file next to the journal
+     * without it; the lock is taken again to copy over the records appended in the meantime and to
+     * move the new file over the journal. A crash at any point leaves a complete journal in place.
+     *
+     * @param lock     The lock of the store
+     * @param snapshot Returns the bodies of the records holding the state; called with the lock held
+     * @return True if the journal was rewritten, false if it was closed in the meantime
+     * @throws IOException if the new journal cannot be written; the old one is kept
+     */
+    public boolean rewrite(Lock lock, Supplier<List<ByteBuffer>> snapshot) throws IOException {
+        maintenance.lock();
+        try {
+            long mark; // Size of the journal the snapshot covers
+            List<ByteBuffer> bodies;
+            lock.lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                flushBuffer();
+                mark = size;
+                bodies = snapshot.get();
+            } finally {
+                lock.unlock();
+            }
+
+            Path temporary = path.resolveSibling(path.getFileName() + ".compacting");
+            FileChannel target = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            boolean replaced = false;
+            try {
+                long written = writeRecords(target, bodies);
+                target.force(true);
+                lock.lock();
+                try {
+                    if (closed) {
+                        return false;
+                    }
+                    flushBuffer();
+                    long appended = size - mark; // Records appended while the snapshot was written, synced with the next sync
+                    for (long copied = 0; copied < appended; ) {
+                        copied += channel.transferTo(mark + copied, appended - copied, target);
+                    }
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    replaced = true;
+                    channel.close();
+                    channel = target;
+                    size = written + appended;
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            } finally {
+                if (!replaced) {
+                    target.close();
+                    Files.deleteIfExists(temporary);
+                }
+            }
+        } finally {
+            maintenance.unlock();
+        }
+    }
+
+    /**
+     * Writes records to a file through a buffer of its own, without the store's lock.
+     *
+     * @param target The file
+     * @param bodies The bodies of the records
+     * @return The bytes written
+     * @throws IOException if writing fails
+     */
+    private static long writeRecords(FileChannel target, List<ByteBuffer> bodies) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        CRC32C check = new CRC32C();
+        long written = 0;
+        for (ByteBuffer body : bodies) {
+            int recordLength = HEADER_SIZE + body.remaining();
+            if (buffer.remaining() < recordLength) {
+                writeFully(target, buffer.flip());
+                buffer.clear();
+            }
+            ByteBuffer record = recordLength <= buffer.capacity() ? buffer : ByteBuffer.allocate(recordLength);
+            putRecord(record, body, check);
+            if (record != buffer) {
+                writeFully(target, record.flip());
+            }
+            written += recordLength;
+        }
+        writeFully(target, buffer.flip());
+        return written;
+    }
+
+    /**
+     * Puts a record, its length and checksum followed by its body, into a buffer.
+     *
+     * @param target The buffer, with room for the record
+     * @param body   The body of the record
+     * @param check  The checksum to compute the record's CRC with
+     */
+    private static void putRecord(ByteBuffer target, ByteBuffer body, CRC32C check) {
+        check.reset();
+        check.update(body.duplicate());
+        target.putInt(body.remaining()).putInt((int) check.getValue()).put(body);
+    }
+
+    /**
+     * Writes all the remaining bytes of a buffer to a file.
+     *
+     * @param target The file
+     * @param buffer The bytes
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel target, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    /**
+     * Syncs the journal and closes it.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushBuffer();
+        channel.force(false);
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Gets the number of bytes in the journal, including those not written to the file yet.
+     *
+     * @return The journal size
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Writes a string to a record body as its length in bytes and its UTF-8 bytes.
+     * Stores check the strings they are given against MAX_STRING_BYTES before changing anything.
+     *
+     * @param body  The body
+     * @param value The string
+     * @return The body
+     * @throws IllegalArgumentException if the string is longer than MAX_STRING_BYTES
+     */
+    public static ByteBuffer putString(ByteBuffer body, byte[] value) {
+        if (value.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String of " + value.length + " bytes is too long for a journal record");
+        }
+        return body.putShort((short) value.length).put(value);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, byte[])}.
+     *
+     * @param body The body, positioned at the string
+     * @return The string
+     */
+    public static String getString(ByteBuffer body) {
+        int length = body.getShort() & 0xFFFF;
+        String value = new String(body.array(), body.arrayOffset() + body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+}
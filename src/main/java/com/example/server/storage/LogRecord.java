@@ -0,0 +1,41 @@
+package com.example.server.storage;
+
+import com.example.common.codec.FrameDecoder;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.TextMessage;
+import com.example.common.utils.MessageSerializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A text message read back from the message log.
+ * The frame of a record read from a completed segment is a view of the mapped file, so it can be
+ * sent to clients as it is without ever being copied onto the heap.
+ *
+ * @param position   The position of the record in the log, increasing with every append
+ * @param appendedAt When the server appended the message, in epoch milliseconds; never decreases along the log
+ * @param chatId     The id of the chat the message was sent in
+ * @param frame      The message as a binary codec frame, a read-only buffer from its position to its limit
+ */
+public record LogRecord(long position, long appendedAt, String chatId, ByteBuffer frame) {
+
+    /**
+     * Decodes the message.
+     *
+     * @return The text message
+     */
+    public TextMessage toMessage() {
+        return decode(frame);
+    }
+
+    /**
+     * Decodes a stored frame, leaving the buffer's position where it was.
+     *
+     * @param frame The binary frame of a text message
+     * @return The text message
+     */
+    static TextMessage decode(ByteBuffer frame) {
+        FrameDecoder decoder = MessageSerializer.getCodec(WireFormat.BINARY).newDecoder();
+        return (TextMessage) decoder.decode(frame.duplicate());
+    }
+}
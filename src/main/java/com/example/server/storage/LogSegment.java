@@ -0,0 +1,442 @@
+package com.example.server.storage;
+
+import com.example.common.codec.MessageCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One file of the message log, holding the records from its base position on.
+ * A record is written as:
+ * <pre>
+ * length:int crc:int payload
+ * payload = appendedAt:long chatIdLength:short chatId:utf8 frame:bytes
+ * </pre>
+ * where length is the size of the payload and crc its CRC-32C. The frame is the message as
+ * encoded by the binary codec. Numbers are big-endian.
+ * Writes are made by the log under its lock; reads may run concurrently. Once the log has moved on
+ * to the next segment, a segment is sealed and never written again: it is then mapped into memory
+ * on its first read, and reads hand out views of the mapping instead of copying records onto the heap.
+ * The segment being appended to is read with positional reads.
+ */
+class LogSegment {
+    static final String SUFFIX = ".log"; // File name suffix of segments
+    static final int HEADER_SIZE = 8; // Bytes of the length and CRC fields
+    static final int PAYLOAD_FIXED_SIZE = 10; // Bytes of the append time and chat id length fields
+    static final int MAX_PAYLOAD_SIZE = PAYLOAD_FIXED_SIZE + 0xFFFF + MessageCodec.MAX_FRAME_SIZE + 5; // Largest valid payload
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024; // Bytes read at once while scanning
+
+    private final Path path; // The segment file
+    private final long basePosition; // Log position of the first byte of the file
+    private final FileChannel channel; // Channel for reading and appending
+    private final SegmentIndex index = new SegmentIndex(); // Sparse index by chat id and time
+    private long size; // Bytes of records in the segment, including those still in the log's write buffer
+    private long writtenSize; // Bytes of records written to the file
+    private long lastAppendedAt = Long.MIN_VALUE; // Append time of the last record
+    private volatile boolean sealed; // Whether the segment is complete and will not be written again
+    private volatile MappedByteBuffer mapped; // The sealed file mapped into memory, or null until first read
+
+    /**
+     * Constructor for LogSegment.
+     *
+     * @param path         The segment file
+     * @param basePosition Log position of the first byte of the file
+     * @param channel      Channel for reading and appending
+     */
+    private LogSegment(Path path, long basePosition, FileChannel channel) {
+        this.path = path;
+        this.basePosition = basePosition;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a new, empty segment.
+     *
+     * @param directory    The directory of the log
+     * @param basePosition Log position of the first byte of the segment
+     * @return The segment
+     * @throws IOException if the file cannot be created
+     */
+    static LogSegment create(Path directory, long basePosition) throws IOException {
+        Path path = directory.resolve(fileName(basePosition));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(path, basePosition, channel);
+    }
+
+    /**
+     * Opens an existing segment, checking every record and indexing the valid ones.
+     * A segment that is still appended to may end in a record that was only partly written
+     * when the server stopped; such a tail is cut off. Any other damage ends the segment
+     * at the last valid record, without changing the file.
+     *
+     * @param path         The segment file
+     * @param basePosition Log position of the first byte of the file
+     * @param truncateTail True if invalid bytes at the end may be cut off
+     * @return The segment
+     * @throws IOException if the file cannot be read
+     */
+    static LogSegment open(Path path, long basePosition, boolean truncateTail) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LogSegment segment = new LogSegment(path, basePosition, channel);
+        long fileSize = channel.size();
+        long validSize = segment.scan(0, fileSize, (position, appendedAt, chatId, frame) -> {
+            segment.index.add(chatId, appendedAt, position);
+            segment.lastAppendedAt = appendedAt;
+            return true;
+        });
+        if (validSize < fileSize) {
+            if (truncateTail) {
+                System.err.println("Cutting " + (fileSize - validSize) + " bytes of incomplete records off " + path.getFileName());
+                channel.truncate(validSize);
+                channel.force(true);
+            } else {
+                System.err.println("Ignoring " + (fileSize - validSize) + " bytes of damaged records in " + path.getFileName());
+            }
+        }
+        segment.size = validSize;
+        segment.writtenSize = validSize;
+        return segment;
+    }
+
+    /**
+     * Returns the file name of the segment starting at a position.
+     *
+     * @param basePosition Log position of the first byte of the segment
+     * @return The file name
+     */
+    static String fileName(long basePosition) {
+        return String.format("%020d%s", basePosition, SUFFIX);
+    }
+
+    /**
+     * Notes a record appended to the log's write buffer for this segment.
+     *
+     * @param chatId       The id of the record's chat
+     * @param appendedAt   The append time of the record
+     * @param position     The log position of the record
+     * @param recordLength The size of the record in bytes
+     */
+    void recordAppended(String chatId, long appendedAt, long position, int recordLength) {
+        index.add(chatId, appendedAt, position);
+        lastAppendedAt = appendedAt;
+        size += recordLength;
+    }
+
+    /**
+     * Writes records at the end of the file.
+     *
+     * @param records The records, from position to limit
+     * @throws IOException if writing fails
+     */
+    void write(ByteBuffer records) throws IOException {
+        while (records.hasRemaining()) {
+            writtenSize += channel.write(records, writtenSize);
+        }
+    }
+
+    /**
+     * Forces the written records to the storage device.
+     *
+     * @throws IOException if syncing fails
+     */
+    void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * Marks the segment as complete, so that it is mapped into memory for reading from now on.
+     * Must be called after the last write to the segment.
+     */
+    void seal() {
+        sealed = true;
+    }
+
+    /**
+     * Returns the mapping of a sealed segment, mapping the file on first use.
+     * The mapping stays valid for as long as any view of it is referenced, even after the segment is closed.
+     *
+     * @return The mapped file, or null if the segment is still written to or too large to map
+     * @throws IOException if the file cannot be mapped
+     */
+    private MappedByteBuffer mapped() throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current != null || !sealed || writtenSize > Integer.MAX_VALUE) {
+            return current;
+        }
+        synchronized (this) {
+            if (mapped == null) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, writtenSize);
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * Returns a frame handed to a record visitor in a form that may be kept after the call.
+     * Views of a mapped segment are kept as they are; frames read into a scan buffer are copied.
+     *
+     * @param frame The frame passed to the visitor
+     * @return A read-only buffer over the frame
+     */
+    static ByteBuffer retain(ByteBuffer frame) {
+        if (frame.isDirect()) {
+            return frame.asReadOnlyBuffer(); // A view of the mapped file, which the scan never reuses
+        }
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(frame.position(), bytes);
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException if closing fails
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the records between two offsets of the file, stopping at the first invalid one.
+     *
+     * @param from    Offset of the first record to read
+     * @param to      Offset to stop at
+     * @param visitor Receives every valid record, and returns false to stop early
+     * @return The offset just past the last record read
+     * @throws IOException if reading fails
+     */
+    long scan(long from, long to, RecordVisitor visitor) throws IOException {
+        MappedByteBuffer file = mapped();
+        ByteBuffer buffer;
+        long readOffset; // File offset of the next byte to read into the buffer
+        if (file != null) {
+            buffer = file.slice((int) from, (int) Math.max(0, Math.min(to, writtenSize) - from)); // The whole range, read in place
+            readOffset = to;
+        } else {
+            buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE).limit(0);
+            readOffset = from;
+        }
+        long offset = from; // File offset of the record at the buffer's position
+        CRC32C crc = new CRC32C();
+        byte[] chatIdBytes = new byte[64]; // Chat id of the current record
+        while (offset < to) {
+            if (buffer.remaining() < HEADER_SIZE) {
+                if (file != null) {
+                    break; // The range ends inside a header; a mapped range cannot be refilled
+                }
+                readOffset = fill(buffer, readOffset, to);
+                if (buffer.remaining() < HEADER_SIZE) {
+                    break; // The last record was cut short
+                }
+            }
+            int start = buffer.position();
+            int length = buffer.getInt(start);
+            if (length < PAYLOAD_FIXED_SIZE || length > MAX_PAYLOAD_SIZE) {
+                break;
+            }
+            int recordLength = HEADER_SIZE + length;
+            if (buffer.remaining() < recordLength) {
+                if (file != null) {
+                    break; // The mapped range holds everything there is
+                }
+                if (buffer.capacity() < recordLength) {
+                    ByteBuffer larger = ByteBuffer.allocate(recordLength);
+                    larger.put(buffer).flip();
+                    buffer = larger;
+                }
+                readOffset = fill(buffer, readOffset, to);
+                start = buffer.position();
+                if (buffer.remaining() < recordLength) {
+                    break;
+                }
+            }
+
+            crc.reset();
+            crc.update(buffer.slice(start + HEADER_SIZE, length));
+            if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+                break;
+            }
+            long appendedAt = buffer.getLong(start + HEADER_SIZE);
+            int chatIdLength = buffer.getShort(start + HEADER_SIZE + 8) & 0xFFFF;
+            int frameStart = start + HEADER_SIZE + PAYLOAD_FIXED_SIZE + chatIdLength;
+            int frameLength = length - PAYLOAD_FIXED_SIZE - chatIdLength;
+            if (frameLength <= 0) {
+                break;
+            }
+            if (chatIdBytes.length < chatIdLength) {
+                chatIdBytes = new byte[chatIdLength];
+            }
+            buffer.get(start + HEADER_SIZE + PAYLOAD_FIXED_SIZE, chatIdBytes, 0, chatIdLength);
+            String chatId = new String(chatIdBytes, 0, chatIdLength, StandardCharsets.UTF_8);
+            boolean more = visitor.visit(basePosition + offset, appendedAt, chatId, buffer.slice(frameStart, frameLength));
+            buffer.position(start + recordLength);
+            offset += recordLength;
+            if (!more) {
+                break;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the record at an offset of the file.
+     *
+     * @param offset Offset of the record
+     * @return The record, or null if there is no valid record at the offset
+     * @throws IOException if reading fails
+     */
+    LogRecord read(long offset) throws IOException {
+        if (offset < 0 || offset + HEADER_SIZE > writtenSize) {
+            return null;
+        }
+        MappedByteBuffer file = mapped();
+        ByteBuffer header;
+        if (file != null) {
+            header = file.slice((int) offset, HEADER_SIZE);
+        } else {
+            header = ByteBuffer.allocate(HEADER_SIZE);
+            if (!readFully(header, offset)) {
+                return null;
+            }
+        }
+        int length = header.getInt(0);
+        if (length < PAYLOAD_FIXED_SIZE || length > MAX_PAYLOAD_SIZE || offset + HEADER_SIZE + length > writtenSize) {
+            return null;
+        }
+        ByteBuffer payload;
+        if (file != null) {
+            payload = file.slice((int) offset + HEADER_SIZE, length); // Read in place
+        } else {
+            payload = ByteBuffer.allocate(length);
+            if (!readFully(payload, offset + HEADER_SIZE)) {
+                return null;
+            }
+            payload.flip();
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != header.getInt(4)) {
+            return null;
+        }
+        long appendedAt = payload.getLong(0);
+        int chatIdLength = payload.getShort(8) & 0xFFFF;
+        int frameLength = length - PAYLOAD_FIXED_SIZE - chatIdLength;
+        if (frameLength <= 0) {
+            return null;
+        }
+        byte[] chatIdBytes = new byte[chatIdLength];
+        payload.get(PAYLOAD_FIXED_SIZE, chatIdBytes);
+        String chatId = new String(chatIdBytes, StandardCharsets.UTF_8);
+        ByteBuffer frame = payload.slice(PAYLOAD_FIXED_SIZE + chatIdLength, frameLength).asReadOnlyBuffer();
+        return new LogRecord(basePosition + offset, appendedAt, chatId, frame);
+    }
+
+    /**
+     * Fills a buffer from an offset of the file.
+     *
+     * @param buffer The buffer to fill
+     * @param offset Offset of the first byte to read
+     * @return False if the file ends first
+     * @throws IOException if reading fails
+     */
+    private boolean readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                return false;
+            }
+            offset += read;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the front of the buffer and reads more after them.
+     *
+     * @param buffer     The buffer, in read mode
+     * @param readOffset File offset of the next byte to read
+     * @param to         Offset to stop reading at
+     * @return The file offset of the next byte to read
+     * @throws IOException if reading fails
+     */
+    private long fill(ByteBuffer buffer, long readOffset, long to) throws IOException {
+        buffer.compact();
+        buffer.limit((int) Math.min(buffer.capacity(), buffer.position() + (to - readOffset)));
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readOffset);
+            if (read < 0) {
+                break;
+            }
+            readOffset += read;
+        }
+        buffer.flip();
+        return readOffset;
+    }
+
+    /**
+     * Gets the sparse index of the segment.
+     *
+     * @return The index
+     */
+    SegmentIndex getIndex() { return index; }
+
+    /**
+     * Gets the log position of the first byte of the segment.
+     *
+     * @return The base position
+     */
+    long getBasePosition() { return basePosition; }
+
+    /**
+     * Gets the number of bytes of records in the segment, including those not written yet.
+     *
+     * @return The size of the segment
+     */
+    long getSize() { return size; }
+
+    /**
+     * Gets the number of bytes of records written to the file.
+     *
+     * @return The written size
+     */
+    long getWrittenSize() { return writtenSize; }
+
+    /**
+     * Gets the append time of the last record in the segment.
+     *
+     * @return The time, or Long.MIN_VALUE if the segment is empty
+     */
+    long getLastAppendedAt() { return lastAppendedAt; }
+
+    /**
+     * Gets the segment file.
+     *
+     * @return The path of the file
+     */
+    Path getPath() { return path; }
+
+    /**
+     * Receives the records read by a scan.
+     */
+    @FunctionalInterface
+    interface RecordVisitor {
+
+        /**
+         * Receives one record.
+         *
+         * @param position   The log position of the record
+         * @param appendedAt The append time of the record
+         * @param chatId     The id of the record's chat
+         * @param frame      The encoded message; only valid during the call unless kept with retain
+         * @return True to continue the scan
+         * @throws IOException if handling the record fails
+         */
+        boolean visit(long position, long appendedAt, String chatId, ByteBuffer frame) throws IOException;
+    }
+}
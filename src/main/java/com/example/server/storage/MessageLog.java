@@ -0,0 +1,509 @@
+package com.example.server.storage;
+
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.TextMessage;
+import com.example.common.utils.MessageSerializer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * The MessageLog class durably records the text messages routed by the server.
+ * Messages are appended to segment files in a directory of their own, each record checked by a CRC,
+ * and a new segment is started when the current one is full. Nothing is ever rewritten.
+ * <p>
+ * Appends are gathered in a write buffer and synced to disk together (group commit): a background
+ * thread syncs every syncIntervalMillis, or as soon as syncEveryRecords records are waiting, so an
+ * append never waits for the disk and a record is durable within about syncIntervalMillis.
+ * When the log is opened again, a record that was only partly written is cut off.
+ * <p>
+ * Every segment keeps a sparse index by chat id and append time, used to seek to a chat's
+ * messages from a point in time without reading the whole log.
+ */
+public class MessageLog implements Closeable {
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024; // Size at which a new segment is started
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50; // Longest time a record waits to be synced
+    public static final int DEFAULT_SYNC_EVERY_RECORDS = 8192; // Records waiting that trigger a sync right away
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024; // Bytes gathered before they are written to the file
+
+    private static final MessageCodec codec = MessageSerializer.getCodec(WireFormat.BINARY); // Codec of the stored frames
+
+    private final Path directory; // Directory of the segment files
+    private final long segmentBytes; // Size at which a new segment is started
+    private final int syncEveryRecords; // Records waiting that trigger a sync right away
+    private final ReentrantLock lock = new ReentrantLock(); // Guards appends, the segment list and the indexes
+    private final List<LogSegment> segments = new ArrayList<>(); // Segments in log order
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE); // Records not written to the file yet
+    private final CRC32C crc = new CRC32C(); // Checksum of the record being appended
+    private LogSegment active; // Segment appended to
+    private final List<LogSegment> unforced = new ArrayList<>(); // Sealed segments the sync thread has yet to force to disk
+    private long nextPosition; // Log position of the next record
+    private long lastAppendedAt; // Append time of the last record, so that times never decrease
+    private int unsyncedRecords; // Records appended since the last sync
+    private boolean closed; // Whether the log has been closed
+    private final ScheduledExecutorService syncer; // Thread syncing the log to disk
+    private final AtomicBoolean syncRequested = new AtomicBoolean(); // Whether an early sync has been requested
+    private final LongAdder appends = new LongAdder(); // Number of records appended
+    private final LongAdder syncs = new LongAdder(); // Number of syncs to disk
+
+    /**
+     * Constructor for MessageLog.
+     * Opens the log in a directory, creating it if needed, and checks the records already in it.
+     *
+     * @param directory          The directory of the segment files
+     * @param segmentBytes       Size at which a new segment is started
+     * @param syncIntervalMillis Longest time a record waits to be synced
+     * @param syncEveryRecords   Records waiting that trigger a sync right away
+     * @throws IOException if the log cannot be opened
+     */
+    public MessageLog(Path directory, long segmentBytes, long syncIntervalMillis, int syncEveryRecords) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.syncEveryRecords = syncEveryRecords;
+        Files.createDirectories(directory);
+        openSegments();
+
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-log-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens a log with the default segment size and sync policy.
+     *
+     * @param directory The directory of the segment files
+     * @return The log
+     * @throws IOException if the log cannot be opened
+     */
+    public static MessageLog withDefaults(Path directory) throws IOException {
+        return new MessageLog(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_SYNC_EVERY_RECORDS);
+    }
+
+    /**
+     * Opens the existing segments in position order, or creates the first one.
+     *
+     * @throws IOException if a segment cannot be opened
+     */
+    private void openSegments() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().matches("\\d{20}\\" + LogSegment.SUFFIX)).sorted().toList();
+        }
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            long basePosition = Long.parseLong(file.getFileName().toString().substring(0, 20));
+            boolean last = i == files.size() - 1;
+            LogSegment segment = LogSegment.open(file, basePosition, last);
+            if (!last) {
+                segment.seal();
+            }
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.add(LogSegment.create(directory, 0));
+        }
+        active = segments.get(segments.size() - 1);
+        nextPosition = active.getBasePosition() + active.getSize();
+        lastAppendedAt = Math.max(active.getLastAppendedAt(), 0);
+    }
+
+    /**
+     * Appends a text message to the log.
+     * The message is durable once the next sync has completed.
+     *
+     * @param message The message to append
+     * @return The position of the message in the log
+     * @throws IOException if the message cannot be written
+     * @throws IllegalArgumentException if the message has no chat id
+     */
+    public long append(TextMessage message) throws IOException {
+        return appendRecord(message).position();
+    }
+
+    /**
+     * Appends a text message to the log and returns its record, frame included, so that the
+     * caller can keep the encoded message without encoding it again.
+     * The message is durable once the next sync has completed.
+     *
+     * @param message The message to append
+     * @return The record of the message
+     * @throws IOException if the message cannot be written
+     * @throws IllegalArgumentException if the message has no chat id
+     */
+    public LogRecord appendRecord(TextMessage message) throws IOException {
+        String chatId = message.getChatId();
+        if (chatId == null) {
+            throw new IllegalArgumentException("Cannot log a message without a chat id");
+        }
+        byte[] frame = codec.encode(message);
+        byte[] chatIdBytes = chatId.getBytes(StandardCharsets.UTF_8);
+        if (chatIdBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Chat id is too long");
+        }
+        int payloadLength = LogSegment.PAYLOAD_FIXED_SIZE + chatIdBytes.length + frame.length;
+        int recordLength = LogSegment.HEADER_SIZE + payloadLength;
+
+        long position;
+        long appendedAt;
+        boolean syncNow;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Message log is closed");
+            }
+            if (active.getSize() > 0 && active.getSize() + recordLength > segmentBytes) {
+                roll();
+            }
+            if (writeBuffer.remaining() < recordLength) {
+                flushBuffer();
+            }
+            position = nextPosition;
+            appendedAt = Math.max(System.currentTimeMillis(), lastAppendedAt);
+
+            // Records larger than the write buffer are written on their own
+            ByteBuffer target = recordLength <= writeBuffer.capacity() ? writeBuffer : ByteBuffer.allocate(recordLength);
+            int start = target.position();
+            target.putInt(payloadLength).putInt(0).putLong(appendedAt).putShort((short) chatIdBytes.length).put(chatIdBytes).put(frame);
+            crc.reset();
+            crc.update(target.slice(start + LogSegment.HEADER_SIZE, payloadLength));
+            target.putInt(start + 4, (int) crc.getValue());
+            if (target != writeBuffer) {
+                active.write(target.flip());
+            }
+
+            active.recordAppended(chatId, appendedAt, position, recordLength);
+            nextPosition += recordLength;
+            lastAppendedAt = appendedAt;
+            syncNow = ++unsyncedRecords >= syncEveryRecords;
+        } finally {
+            lock.unlock();
+        }
+        appends.increment();
+
+        // Let the sync thread write the batch, so that the appending thread never waits for the disk
+        if (syncNow && syncRequested.compareAndSet(false, true)) {
+            syncer.execute(this::syncQuietly);
+        }
+        return new LogRecord(position, appendedAt, chatId, ByteBuffer.wrap(frame).asReadOnlyBuffer());
+    }
+
+    /**
+     * Reads the messages of a chat appended at or after a time, in log order.
+     *
+     * @param chatId     The id of the chat
+     * @param fromMillis The earliest append time wanted, in epoch milliseconds
+     * @param limit      The largest number of messages to return
+     * @return The records of the messages
+     * @throws IOException if the log cannot be read
+     */
+    public List<LogRecord> read(String chatId, long fromMillis, int limit) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        if (limit <= 0) {
+            return records;
+        }
+
+        // Work out where to scan while holding the lock, then scan without it
+        List<long[]> ranges = new ArrayList<>(); // Segment number, start offset and end offset
+        List<LogSegment> snapshot;
+        lock.lock();
+        try {
+            flushBuffer();
+            snapshot = List.copyOf(segments);
+            for (int i = 0; i < snapshot.size(); i++) {
+                LogSegment segment = snapshot.get(i);
+                if (segment.getLastAppendedAt() < fromMillis) {
+                    continue; // Everything in the segment is older
+                }
+                long start = segment.getIndex().seek(chatId, fromMillis);
+                if (start >= 0) {
+                    ranges.add(new long[]{i, start - segment.getBasePosition(), segment.getWrittenSize()});
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (long[] range : ranges) {
+            snapshot.get((int) range[0]).scan(range[1], range[2], (position, appendedAt, recordChatId, frame) -> {
+                if (appendedAt >= fromMillis && recordChatId.equals(chatId)) {
+                    records.add(new LogRecord(position, appendedAt, recordChatId, LogSegment.retain(frame)));
+                }
+                return records.size() < limit;
+            });
+            if (records.size() >= limit) {
+                break;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Reads the last messages of a chat before a position, in log order.
+     * Segments are searched from the newest back, each from the index entry that covers the
+     * number of messages still wanted, so paging back through a long history reads little more
+     * than the page itself.
+     *
+     * @param chatId The id of the chat
+     * @param before The position the messages must come before; Long.MAX_VALUE for the latest
+     * @param limit  The largest number of messages to return
+     * @return The records of the messages
+     * @throws IOException if the log cannot be read
+     */
+    public List<LogRecord> readBefore(String chatId, long before, int limit) throws IOException {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Work out where to scan while holding the lock, newest segment first, then scan without it
+        List<long[]> ranges = new ArrayList<>(); // Segment number, start offset and end offset
+        List<LogSegment> snapshot;
+        lock.lock();
+        try {
+            flushBuffer();
+            snapshot = List.copyOf(segments);
+            for (int i = snapshot.size() - 1; i >= 0; i--) {
+                LogSegment segment = snapshot.get(i);
+                if (segment.getBasePosition() >= before) {
+                    continue; // Everything in the segment is newer
+                }
+                long start = segment.getIndex().seekBefore(chatId, before, limit);
+                if (start >= 0) {
+                    long end = Math.min(segment.getWrittenSize(), before - segment.getBasePosition());
+                    ranges.add(new long[]{i, start - segment.getBasePosition(), end});
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        ArrayDeque<LogRecord> records = new ArrayDeque<>(); // Newest records found, oldest first
+        for (long[] range : ranges) {
+            int wanted = limit - records.size();
+            ArrayDeque<LogRecord> found = new ArrayDeque<>(); // Last records of the chat in this range
+            snapshot.get((int) range[0]).scan(range[1], range[2], (position, appendedAt, recordChatId, frame) -> {
+                if (recordChatId.equals(chatId)) {
+                    if (found.size() == wanted) {
+                        found.removeFirst();
+                    }
+                    found.addLast(new LogRecord(position, appendedAt, recordChatId, LogSegment.retain(frame)));
+                }
+                return true;
+            });
+            while (!found.isEmpty()) {
+                records.addFirst(found.removeLast());
+            }
+            if (records.size() >= limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(records);
+    }
+
+    /**
+     * Reads the messages at given positions, such as those held for a user who was offline.
+     *
+     * @param positions The positions of the messages, as returned by append
+     * @return The records, in the order of the positions; positions without a valid record are skipped
+     * @throws IOException if the log cannot be read
+     */
+    public List<LogRecord> readAt(long[] positions) throws IOException {
+        List<LogSegment> snapshot;
+        lock.lock();
+        try {
+            flushBuffer();
+            snapshot = List.copyOf(segments);
+        } finally {
+            lock.unlock();
+        }
+
+        List<LogRecord> records = new ArrayList<>(positions.length);
+        for (long position : positions) {
+            // Find the last segment starting at or before the position
+            int low = 0;
+            int high = snapshot.size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (snapshot.get(middle).getBasePosition() <= position) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (high < 0) {
+                continue;
+            }
+            LogSegment segment = snapshot.get(high);
+            LogRecord record = segment.read(position - segment.getBasePosition());
+            if (record != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes the buffered records and forces them to disk, together with the last records of
+     * segments completed since the previous sync.
+     *
+     * @throws IOException if writing or syncing fails
+     */
+    public void sync() throws IOException {
+        LogSegment segment;
+        List<LogSegment> sealed;
+        lock.lock();
+        try {
+            syncRequested.set(false);
+            if (closed || (unsyncedRecords == 0 && unforced.isEmpty())) {
+                return;
+            }
+            flushBuffer();
+            unsyncedRecords = 0;
+            segment = active;
+            sealed = List.copyOf(unforced);
+            unforced.clear();
+        } finally {
+            lock.unlock();
+        }
+        // Appends carry on into the write buffer while the disk catches up
+        for (LogSegment complete : sealed) {
+            complete.force();
+        }
+        segment.force();
+        syncs.increment();
+    }
+
+    /**
+     * Syncs the log, reporting failures instead of throwing them.
+     */
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing the message log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the buffered records to the active segment. Must be called with the lock held.
+     *
+     * @throws IOException if writing fails
+     */
+    private void flushBuffer() throws IOException {
+        if (writeBuffer.position() == 0) {
+            return;
+        }
+        writeBuffer.flip();
+        try {
+            active.write(writeBuffer);
+        } finally {
+            writeBuffer.clear();
+        }
+    }
+
+    /**
+     * Completes the active segment and starts a new one. Must be called with the lock held.
+     * The completed segment is forced to disk by the next sync, so the appending thread does not wait for it.
+     *
+     * @throws IOException if the segments cannot be written
+     */
+    private void roll() throws IOException {
+        flushBuffer();
+        active.seal();
+        unforced.add(active);
+        active = LogSegment.create(directory, nextPosition);
+        segments.add(active);
+    }
+
+    /**
+     * Syncs the log and closes its files.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            flushBuffer();
+            for (LogSegment segment : unforced) {
+                segment.force();
+            }
+            unforced.clear();
+            active.force();
+            closed = true;
+            for (LogSegment segment : segments) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the position the next message will be appended at.
+     *
+     * @return The next position
+     */
+    public long getNextPosition() {
+        lock.lock();
+        try {
+            return nextPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return The segment count
+     */
+    public int getSegmentCount() {
+        lock.lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages appended since the log was opened.
+     *
+     * @return The append count
+     */
+    public long getAppendCount() {
+        return appends.sum();
+    }
+
+    /**
+     * Gets the number of syncs to disk since the log was opened.
+     *
+     * @return The sync count
+     */
+    public long getSyncCount() {
+        return syncs.sum();
+    }
+}
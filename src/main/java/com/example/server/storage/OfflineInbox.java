@@ -0,0 +1,519 @@
+package com.example.server.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The OfflineInbox class holds the text messages waiting for users who were offline when they were sent.
+ * Messages are already in the message log, so an inbox only stores their log positions, eight bytes
+ * each, and every inbox keeps at most capacity of them; when it is full the oldest is dropped.
+ * <p>
+ * Inboxes live in memory and every change is recorded in a {@link Journal}:
+ * <pre>
+ * ENQUEUED = 1:u8 position:long count:short userId*count
+ * DRAINED  = 2:u8 userId endSequence:long
+ * SNAPSHOT = 3:u8 userId headSequence:long count:int position:long*count
+ * userId   = length:short utf8
+ * </pre>
+ * Every message put into a user's inbox gets the next sequence number of the inbox, so a DRAINED
+ * record names exactly the messages delivered even if older ones were dropped in the meantime.
+ * Replaying the journal when the server starts rebuilds the inboxes; a record only partly written
+ * is cut off. The journal is synced in the background like the message log, and rewritten as one
+ * SNAPSHOT per inbox once it has grown well beyond what the inboxes hold.
+ */
+public class OfflineInbox implements Closeable {
+    public static final int DEFAULT_CAPACITY = 1000; // Messages kept per user
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50; // Longest time a change waits to be synced
+    private static final String JOURNAL_NAME = "inbox.journal"; // File name of the journal
+    private static final long COMPACT_MIN_BYTES = 1024 * 1024; // Smallest journal that is compacted
+    private static final int COMPACT_RATIO = 4; // Journal bytes per live byte that trigger compaction
+    private static final byte ENQUEUED = 1; // Kind of a record putting a message into inboxes
+    private static final byte DRAINED = 2; // Kind of a record removing delivered messages from an inbox
+    private static final byte SNAPSHOT = 3; // Kind of a record holding a whole inbox
+
+    private final int capacity; // Messages kept per user
+    private final ReentrantLock lock = new ReentrantLock(); // Guards the inboxes and the journal
+    private final Map<String, Pending> inboxes = new HashMap<>(); // Non-empty inboxes by user id
+    private final Journal journal; // Records every change to the inboxes
+    private long pendingCount; // Messages held across all inboxes
+    private final ScheduledExecutorService syncer; // Thread syncing and compacting the journal
+    private final LongAdder enqueued = new LongAdder(); // Messages put into inboxes
+    private final LongAdder dropped = new LongAdder(); // Messages dropped from full inboxes
+    private final LongAdder compactions = new LongAdder(); // Number of times the journal was rewritten
+
+    /**
+     * Constructor for OfflineInbox.
+     * Opens the journal in a directory, creating it if needed, and replays it.
+     *
+     * @param directory          The directory of the journal
+     * @param capacity           Messages kept per user
+     * @param syncIntervalMillis Longest time a change waits to be synced
+     * @throws IOException if the journal cannot be opened
+     */
+    public OfflineInbox(Path directory, int capacity, long syncIntervalMillis) throws IOException {
+        this.capacity = capacity;
+        this.journal = new Journal(directory.resolve(JOURNAL_NAME), this::apply);
+
+        this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "offline-inbox-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens an inbox with the default capacity and sync interval.
+     *
+     * @param directory The directory of the journal
+     * @return The inbox
+     * @throws IOException if the journal cannot be opened
+     */
+    public static OfflineInbox withDefaults(Path directory) throws IOException {
+        return new OfflineInbox(directory, DEFAULT_CAPACITY, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Applies one journal record to the inboxes while the journal is replayed.
+     *
+     * @param body The body of the record
+     */
+    private void apply(ByteBuffer body) {
+        byte kind = body.get();
+        switch (kind) {
+            case ENQUEUED -> {
+                long position = body.getLong();
+                int count = body.getShort() & 0xFFFF;
+                for (int i = 0; i < count; i++) {
+                    add(Journal.getString(body), position);
+                }
+            }
+            case DRAINED -> {
+                String userId = Journal.getString(body);
+                remove(userId, body.getLong());
+            }
+            case SNAPSHOT -> {
+                String userId = Journal.getString(body);
+                Pending pending = new Pending();
+                pending.headSequence = body.getLong();
+                int count = body.getInt();
+                for (int i = 0; i < count; i++) {
+                    pending.add(body.getLong(), capacity);
+                }
+                Pending previous = inboxes.put(userId, pending);
+                pendingCount += pending.size - (previous != null ? previous.size : 0);
+            }
+            default -> throw new IllegalArgumentException("Unknown inbox record " + kind);
+        }
+    }
+
+    /**
+     * Puts a message into the inboxes of users who are offline.
+     *
+     * @param userIds  The ids of the users
+     * @param position The position of the message in the message log
+     * @throws IOException if the journal cannot be written
+     * @throws IllegalArgumentException if a user id is too long to be journaled, before any inbox is changed
+     */
+    public void enqueue(Collection<String> userIds, long position) throws IOException {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        byte[][] ids = new byte[userIds.size()][];
+        int bodyLength = 1 + 8 + 2;
+        int index = 0;
+        for (String userId : userIds) {
+            ids[index] = userId.getBytes(StandardCharsets.UTF_8);
+            if (ids[index].length > Journal.MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("User id is too long");
+            }
+            bodyLength += 2 + ids[index].length;
+            index++;
+        }
+        if (ids.length > 0xFFFF) {
+            throw new IllegalArgumentException("Too many recipients for one record");
+        }
+        ByteBuffer body = ByteBuffer.allocate(bodyLength).put(ENQUEUED).putLong(position).putShort((short) ids.length);
+        for (byte[] id : ids) {
+            Journal.putString(body, id);
+        }
+
+        lock.lock();
+        try {
+            journal.append(body.flip());
+            for (String userId : userIds) {
+                if (add(userId, position)) {
+                    dropped.increment();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        enqueued.add(userIds.size());
+    }
+
+    /**
+     * Gets the oldest messages waiting for a user, without removing them.
+     *
+     * @param userId The id of the user
+     * @param max    The largest number of messages to return
+     * @return The messages, or null if the user's inbox is empty
+     */
+    public Batch peek(String userId, int max) {
+        lock.lock();
+        try {
+            Pending pending = inboxes.get(userId);
+            if (pending == null || pending.size == 0) {
+                return null;
+            }
+            long[] positions = pending.peek(max);
+            return new Batch(positions, pending.headSequence + positions.length);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the messages of a batch that have been delivered.
+     * Messages the batch held that were dropped in the meantime are not removed twice.
+     *
+     * @param userId      The id of the user
+     * @param endSequence The end sequence of the delivered batch
+     * @throws IOException if the journal cannot be written
+     */
+    public void acknowledge(String userId, long endSequence) throws IOException {
+        byte[] id = userId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = Journal.putString(ByteBuffer.allocate(1 + 2 + id.length + 8).put(DRAINED), id).putLong(endSequence);
+        lock.lock();
+        try {
+            journal.append(body.flip());
+            remove(userId, endSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties a user's inbox without delivering it, for a user who is not coming back.
+     *
+     * @param userId The id of the user
+     * @throws IOException if the journal cannot be written
+     */
+    public void discard(String userId) throws IOException {
+        lock.lock();
+        try {
+            if (inboxes.containsKey(userId)) {
+                acknowledge(userId, Long.MAX_VALUE);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a message to a user's inbox. Must be called with the lock held.
+     *
+     * @param userId   The id of the user
+     * @param position The position of the message
+     * @return True if the oldest message of the inbox was dropped to make room
+     */
+    private boolean add(String userId, long position) {
+        boolean full = inboxes.computeIfAbsent(userId, id -> new Pending()).add(position, capacity);
+        if (!full) {
+            pendingCount++;
+        }
+        return full;
+    }
+
+    /**
+     * Removes the messages of a user's inbox before a sequence number. Must be called with the lock held.
+     *
+     * @param userId      The id of the user
+     * @param endSequence The sequence number of the first message to keep
+     */
+    private void remove(String userId, long endSequence) {
+        Pending pending = inboxes.get(userId);
+        if (pending == null) {
+            return;
+        }
+        pendingCount -= pending.removeBefore(endSequence);
+        if (pending.size == 0) {
+            inboxes.remove(userId);
+        }
+    }
+
+    /**
+     * Writes the buffered records, forces them to disk and compacts the journal if it has grown too large.
+     * The lock is only held to write the records and to take a snapshot of the inboxes, so messages
+     * keep being queued while the disk catches up.
+     *
+     * @throws IOException if writing, syncing or compacting fails
+     */
+    public void sync() throws IOException {
+        if (!journal.sync(lock)) {
+            return;
+        }
+        boolean compact;
+        lock.lock();
+        try {
+            compact = journal.size() >= COMPACT_MIN_BYTES && journal.size() > COMPACT_RATIO * liveBytes();
+        } finally {
+            lock.unlock();
+        }
+        if (compact && journal.rewrite(lock, this::snapshots)) {
+            compactions.increment();
+        }
+    }
+
+    /**
+     * Syncs the journal, reporting failures instead of throwing them.
+     */
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Error syncing the offline inbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Estimates the bytes a journal holding only snapshots of the inboxes would take.
+     * Must be called with the lock held.
+     *
+     * @return The estimated size
+     */
+    private long liveBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, Pending> inbox : inboxes.entrySet()) {
+            bytes += Journal.HEADER_SIZE + 1 + 2 + inbox.getKey().length() + 8 + 4 + 8L * inbox.getValue().size;
+        }
+        return bytes;
+    }
+
+    /**
+     * Builds one snapshot record per inbox, for rewriting the journal. Must be called with the lock held.
+     *
+     * @return The bodies of the records
+     */
+    private List<ByteBuffer> snapshots() {
+        List<ByteBuffer> snapshots = new ArrayList<>(inboxes.size());
+        for (Map.Entry<String, Pending> inbox : inboxes.entrySet()) {
+            byte[] id = inbox.getKey().getBytes(StandardCharsets.UTF_8);
+            Pending pending = inbox.getValue();
+            long[] positions = pending.peek(pending.size);
+            ByteBuffer body = Journal.putString(ByteBuffer.allocate(1 + 2 + id.length + 8 + 4 + 8 * positions.length).put(SNAPSHOT), id)
+                    .putLong(pending.headSequence).putInt(positions.length);
+            for (long position : positions) {
+                body.putLong(position);
+            }
+            snapshots.add(body.flip());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Syncs the journal and closes it.
+     *
+     * @throws IOException if syncing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        lock.lock();
+        try {
+            journal.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting for a user.
+     *
+     * @param userId The id of the user
+     * @return The size of the user's inbox
+     */
+    public int size(String userId) {
+        lock.lock();
+        try {
+            Pending pending = inboxes.get(userId);
+            return pending != null ? pending.size : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of users with messages waiting.
+     *
+     * @return The number of non-empty inboxes
+     */
+    public int getUserCount() {
+        lock.lock();
+        try {
+            return inboxes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting across all users.
+     *
+     * @return The pending message count
+     */
+    public long getPendingCount() {
+        lock.lock();
+        try {
+            return pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the size of the fullest inbox.
+     *
+     * @return The largest inbox size, or 0 if all inboxes are empty
+     */
+    public int getLargestInboxSize() {
+        lock.lock();
+        try {
+            int largest = 0;
+            for (Pending pending : inboxes.values()) {
+                largest = Math.max(largest, pending.size);
+            }
+            return largest;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of bytes in the journal.
+     *
+     * @return The journal size
+     */
+    public long getJournalSize() {
+        lock.lock();
+        try {
+            return journal.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of messages put into inboxes since the inbox was opened.
+     *
+     * @return The enqueued count
+     */
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * Gets the number of messages dropped from full inboxes since the inbox was opened.
+     *
+     * @return The dropped count
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the number of times the journal was compacted since the inbox was opened.
+     *
+     * @return The compaction count
+     */
+    public long getCompactionCount() {
+        return compactions.sum();
+    }
+
+    /**
+     * The oldest messages of an inbox, handed out for delivery.
+     *
+     * @param positions   The positions of the messages in the message log, oldest first
+     * @param endSequence The sequence number following the last message, to acknowledge the batch with
+     */
+    public record Batch(long[] positions, long endSequence) {
+    }
+
+    /**
+     * The messages waiting for one user, as a ring of log positions.
+     */
+    private static class Pending {
+        private long[] positions = new long[8]; // Ring of positions
+        private int head; // Index of the oldest position
+        private int size; // Number of positions held
+        private long headSequence; // Sequence number of the oldest position
+
+        /**
+         * Adds a position, dropping the oldest one if the inbox is full.
+         *
+         * @param position The position to add
+         * @param capacity The most positions kept
+         * @return True if the oldest position was dropped
+         */
+        private boolean add(long position, int capacity) {
+            if (size == capacity) {
+                positions[(head + size) % positions.length] = position;
+                head = (head + 1) % positions.length;
+                headSequence++;
+                return true;
+            }
+            if (size == positions.length) {
+                long[] grown = new long[Math.min(positions.length * 2, capacity)];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = positions[(head + i) % positions.length];
+                }
+                positions = grown;
+                head = 0;
+            }
+            positions[(head + size) % positions.length] = position;
+            size++;
+            return false;
+        }
+
+        /**
+         * Returns the oldest positions.
+         *
+         * @param max The largest number of positions to return
+         * @return The positions, oldest first
+         */
+        private long[] peek(int max) {
+            long[] oldest = new long[Math.min(max, size)];
+            for (int i = 0; i < oldest.length; i++) {
+                oldest[i] = positions[(head + i) % positions.length];
+            }
+            return oldest;
+        }
+
+        /**
+         * Removes the positions before a sequence number.
+         *
+         * @param endSequence The sequence number of the first position to keep
+         * @return The number of positions removed
+         */
+        private int removeBefore(long endSequence) {
+            int count = (int) Math.max(0, Math.min(size, endSequence - headSequence));
+            head = (head + count) % positions.length;
+            size -= count;
+            headSequence += count;
+            return count;
+        }
+    }
+}
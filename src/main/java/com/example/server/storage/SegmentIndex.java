@@ -0,0 +1,149 @@
+package com.example.server.storage;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sparse index of one log segment by chat id and time.
+ * For every chat it keeps the position and append time of the chat's first record in the segment
+ * and of every INTERVAL-th record after it, so a lookup narrows a scan down to a few records
+ * of the chat instead of the whole segment.
+ * Not thread-safe; the log guards it with its lock.
+ */
+class SegmentIndex {
+    static final int INTERVAL = 32; // Records of a chat between two index entries
+
+    private final Map<String, ChatEntries> chats = new HashMap<>(); // Entries by chat id
+
+    /**
+     * Records that a record of a chat was appended.
+     *
+     * @param chatId     The id of the chat
+     * @param appendedAt The append time of the record
+     * @param position   The position of the record
+     */
+    void add(String chatId, long appendedAt, long position) {
+        chats.computeIfAbsent(chatId, id -> new ChatEntries()).add(appendedAt, position);
+    }
+
+    /**
+     * Checks if the segment holds records of a chat.
+     *
+     * @param chatId The id of the chat
+     * @return True if the chat has records in the segment
+     */
+    boolean contains(String chatId) {
+        return chats.containsKey(chatId);
+    }
+
+    /**
+     * Finds where to start scanning for the records of a chat appended at or after a time.
+     *
+     * @param chatId     The id of the chat
+     * @param appendedAt The earliest append time wanted
+     * @return The position to scan from, or -1 if the chat has no records in the segment
+     */
+    long seek(String chatId, long appendedAt) {
+        ChatEntries entries = chats.get(chatId);
+        if (entries == null) {
+            return -1;
+        }
+        // Records between the last entry before the time and the next entry may still be wanted
+        int index = entries.lastBefore(appendedAt);
+        return entries.positions[Math.max(index, 0)];
+    }
+
+    /**
+     * Finds where to start scanning for the last records of a chat before a position.
+     * Entries are INTERVAL records apart, so stepping back enough entries from the last one before
+     * the position covers at least count records of the chat.
+     *
+     * @param chatId   The id of the chat
+     * @param position The position the records must come before
+     * @param count    The number of records wanted
+     * @return The position to scan from, or -1 if the chat has no records before the position in the segment
+     */
+    long seekBefore(String chatId, long position, int count) {
+        ChatEntries entries = chats.get(chatId);
+        if (entries == null) {
+            return -1;
+        }
+        int index = entries.lastPositionBefore(position);
+        if (index < 0) {
+            return -1;
+        }
+        int back = (count + INTERVAL - 1) / INTERVAL;
+        return entries.positions[Math.max(index - back, 0)];
+    }
+
+    /**
+     * Index entries of one chat, in append order.
+     */
+    private static class ChatEntries {
+        private long[] times = new long[4]; // Append times of the indexed records
+        private long[] positions = new long[4]; // Positions of the indexed records
+        private int count; // Number of entries
+        private int sinceLastEntry; // Records of the chat appended since the last entry
+
+        /**
+         * Records that a record of the chat was appended, indexing every INTERVAL-th one.
+         *
+         * @param appendedAt The append time of the record
+         * @param position   The position of the record
+         */
+        private void add(long appendedAt, long position) {
+            if (count > 0 && ++sinceLastEntry < INTERVAL) {
+                return;
+            }
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            times[count] = appendedAt;
+            positions[count] = position;
+            count++;
+            sinceLastEntry = 0;
+        }
+
+        /**
+         * Finds the last entry appended strictly before a time.
+         *
+         * @param appendedAt The time
+         * @return The index of the entry, or -1 if every entry is at or after the time
+         */
+        private int lastBefore(long appendedAt) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < appendedAt) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+
+        /**
+         * Finds the last entry strictly before a position.
+         *
+         * @param position The position
+         * @return The index of the entry, or -1 if every entry is at or after the position
+         */
+        private int lastPositionBefore(long position) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (positions[middle] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return high;
+        }
+    }
+}
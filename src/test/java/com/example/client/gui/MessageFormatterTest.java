@@ -0,0 +1,55 @@
+package com.example.client.gui;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageFormatter to validate the lines it formats and its cache of formatted minutes.
+ */
+class MessageFormatterTest {
+
+    // Formatter under test
+    private final MessageFormatter formatter = new MessageFormatter("EEEE, MMM dd yyyy HH:mm");
+
+    /**
+     * Gets the epoch time of a timestamp read as UTC.
+     *
+     * @param timestamp The timestamp
+     * @return The epoch milliseconds
+     */
+    private static long millis(LocalDateTime timestamp) {
+        return timestamp.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Verifies that a line shows the time, the sender and the content, as the timestamp pattern formats them.
+     */
+    @Test
+    void testFormat() {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 3, 5, 14, 7, 42);
+        String expected = "[" + DateTimeFormatter.ofPattern("EEEE, MMM dd yyyy HH:mm").format(timestamp) + "] alice: hi there";
+
+        assertEquals(expected, formatter.format(new StoredMessage("m1", "u1", "alice", millis(timestamp), "hi there")));
+        assertTrue(formatter.format(new StoredMessage("m2", "u2", null, millis(timestamp), "hi")).endsWith("] Unknown: hi"));
+    }
+
+    /**
+     * Verifies that messages of the same minute share its formatted time and other minutes get their own.
+     */
+    @Test
+    void testMinuteCache() {
+        LocalDateTime minute = LocalDateTime.of(2024, 3, 5, 14, 7);
+        String first = formatter.prefix(millis(minute));
+
+        assertSame(first, formatter.prefix(millis(minute.plusSeconds(59))));
+        assertNotEquals(first, formatter.prefix(millis(minute.plusMinutes(1))));
+        assertNotEquals(first, formatter.prefix(millis(minute.plusMinutes(64))), "a minute in the same slot replaces it");
+        assertEquals(first, formatter.prefix(millis(minute)));
+        assertTrue(formatter.prefix(millis(LocalDateTime.of(1969, 12, 31, 23, 59, 30))).contains("1969 23:59"));
+    }
+}
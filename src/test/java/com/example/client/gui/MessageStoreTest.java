@@ -0,0 +1,203 @@
+package com.example.client.gui;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageStore to validate its retention, its disk cache and reading messages by index.
+ */
+class MessageStoreTest {
+
+    // Directory of the disk cache
+    private Path cacheDirectory;
+
+    /**
+     * Creates an empty cache directory.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        cacheDirectory = Files.createTempDirectory("chat-cache");
+    }
+
+    /**
+     * Deletes the cache directory and anything left in it.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(cacheDirectory)) {
+            for (Path file : files.sorted((a, b) -> b.compareTo(a)).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Creates a message with its number in its ID, time and content.
+     *
+     * @param number The number of the message
+     * @return The message
+     */
+    private static StoredMessage message(int number) {
+        return new StoredMessage("m" + number, "u1", number % 2 == 0 ? "alice" : null, 1_000L * number, "message " + number);
+    }
+
+    /**
+     * Verifies that messages beyond the count retention are spilled and still read back in order.
+     */
+    @Test
+    void testSpillsOldestMessages() {
+        try (MessageStore store = new MessageStore(100, Long.MAX_VALUE, cacheDirectory)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(store.append(message(i)));
+            }
+
+            assertEquals(1000, store.size());
+            assertEquals(100, store.getMemoryCount());
+            assertEquals(900, store.getSpilledCount());
+            for (int i : new int[]{0, 1, 450, 899, 900, 999}) {
+                assertEquals(message(i), store.get(i));
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> store.get(1000));
+        }
+    }
+
+    /**
+     * Verifies that the estimated size of the messages in memory stays within the byte retention.
+     */
+    @Test
+    void testByteRetention() {
+        try (MessageStore store = new MessageStore(1000, 10 * (MessageStore.ENTRY_OVERHEAD + 40), cacheDirectory)) {
+            for (int i = 0; i < 100; i++) {
+                store.append(new StoredMessage("m" + i, "u1", "alice", i, "x".repeat(20)));
+            }
+
+            assertEquals(10, store.getMemoryCount());
+            assertEquals(10 * (MessageStore.ENTRY_OVERHEAD + 40), store.getMemoryBytes());
+            assertEquals(100, store.size());
+            assertEquals("m0", store.get(0).messageId());
+        }
+    }
+
+    /**
+     * Verifies that older pages go to memory while it has room, then to the disk cache, and that
+     * messages held already are skipped.
+     */
+    @Test
+    void testPrepend() {
+        try (MessageStore store = new MessageStore(5, Long.MAX_VALUE, cacheDirectory)) {
+            store.append(message(10));
+            store.append(message(11));
+
+            List<StoredMessage> page = new ArrayList<>();
+            for (int i = 4; i <= 10; i++) {
+                page.add(message(i));
+            }
+            List<StoredMessage> added = store.prepend(page);
+
+            assertEquals(page.subList(0, 6), added, "message 10 is held already");
+            assertEquals(8, store.size());
+            assertEquals(5, store.getMemoryCount());
+            for (int i = 0; i < 8; i++) {
+                assertEquals(message(i + 4), store.get(i));
+            }
+
+            store.prepend(List.of(message(2), message(3)));
+            assertEquals(message(2), store.get(0));
+            assertEquals(message(11), store.get(9));
+            assertFalse(store.append(message(11)));
+        }
+    }
+
+    /**
+     * Verifies that a page overlapping messages moved to the disk cache only adds those not held yet.
+     */
+    @Test
+    void testPrependOverlapsSpilled() {
+        try (MessageStore store = new MessageStore(5, Long.MAX_VALUE, cacheDirectory)) {
+            for (int i = 5; i < 15; i++) {
+                store.append(message(i));
+            }
+            assertEquals(5, store.getSpilledCount());
+
+            List<StoredMessage> page = new ArrayList<>();
+            for (int i = 3; i <= 7; i++) {
+                page.add(message(i));
+            }
+
+            assertEquals(List.of(message(3), message(4)), store.prepend(page));
+            assertEquals(12, store.size());
+            for (int i = 0; i < 12; i++) {
+                assertEquals(message(i + 3), store.get(i));
+            }
+        }
+    }
+
+    /**
+     * Verifies that a message is formatted once and its line counted in the memory estimate, and
+     * that lines of spilled messages are read back.
+     */
+    @Test
+    void testLines() {
+        try (MessageStore store = new MessageStore(2, Long.MAX_VALUE, cacheDirectory)) {
+            for (int i = 0; i < 4; i++) {
+                store.append(message(i));
+            }
+            long bytes = store.getMemoryBytes();
+            String line = store.getLine(3);
+
+            assertEquals(MessageFormatter.DEFAULT.format(message(3)), line);
+            assertSame(line, store.getLine(3));
+            assertEquals(bytes + 2L * line.length(), store.getMemoryBytes());
+            assertSame(store.getLine(0), store.getLine(0));
+            assertTrue(store.getLine(1).endsWith("] Unknown: message 1"));
+
+            store.append(message(4));
+            assertEquals(bytes + 2L * line.length(), store.getMemoryBytes(), "the line of message 2 left memory unformatted");
+        }
+    }
+
+    /**
+     * Verifies that without a disk cache older messages are dropped.
+     */
+    @Test
+    void testWithoutCache() {
+        try (MessageStore store = new MessageStore(3, Long.MAX_VALUE, null)) {
+            for (int i = 0; i < 10; i++) {
+                store.append(message(i));
+            }
+
+            assertEquals(3, store.size());
+            assertEquals(7, store.getDroppedCount());
+            assertEquals(message(7), store.get(0));
+            assertTrue(store.prepend(List.of(message(6))).isEmpty());
+        }
+    }
+
+    /**
+     * Verifies that closing the store deletes its spill file.
+     */
+    @Test
+    void testCloseDeletesCache() throws IOException {
+        MessageStore store = new MessageStore(1, Long.MAX_VALUE, cacheDirectory);
+        store.append(message(0));
+        store.append(message(1));
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            assertEquals(1, files.count());
+        }
+
+        store.close();
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
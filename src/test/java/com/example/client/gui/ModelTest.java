@@ -0,0 +1,128 @@
+package com.example.client.gui;
+
+import com.example.common.chats.Chat;
+import com.example.common.chats.GroupChat;
+import com.example.common.chats.PrivateChat;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for Model to validate looking up chats and users by ID and the chats kept for each user.
+ */
+class ModelTest {
+
+    // The user of the client
+    private final User alice = new User("alice");
+
+    // Another active user
+    private final User bob = new User("bob");
+
+    // The general chat, added first
+    private final GroupChat general = new GroupChat("General");
+
+    // Model under test
+    private Model model;
+
+    /**
+     * Creates a model holding the general chat, with bob online.
+     */
+    @BeforeEach
+    void setUp() {
+        model = new Model(alice);
+        general.addParticipant(alice);
+        model.addChat(general);
+        model.addActiveUser(bob);
+    }
+
+    /**
+     * Creates a private chat between alice and another user.
+     *
+     * @param other The other user
+     * @return The chat
+     */
+    private static PrivateChat privateChat(User alice, User other) {
+        PrivateChat chat = new PrivateChat();
+        chat.addParticipant(other);
+        chat.addParticipant(alice);
+        return chat;
+    }
+
+    /**
+     * Verifies that chats and users are found by their IDs.
+     */
+    @Test
+    void testLookups() {
+        assertSame(general, model.getChat(general.getId()));
+        assertNull(model.getChat("missing"));
+        assertSame(bob, model.getActiveUser(bob.getId()));
+        assertTrue(general.getParticipants().contains(bob), "active users join the general chat");
+        assertEquals(Set.of(bob), model.getActiveUsers());
+    }
+
+    /**
+     * Verifies that the private chat with a user is found, and forgotten once the chat is removed.
+     */
+    @Test
+    void testPrivateChatWith() {
+        PrivateChat chat = privateChat(alice, bob);
+        assertFalse(model.hasPrivateChatWith(bob));
+
+        model.addChat(chat);
+        assertTrue(model.hasPrivateChatWith(bob));
+        assertFalse(model.hasPrivateChatWith(alice), "the current user is in every private chat");
+
+        model.removeChat(chat);
+        assertFalse(model.hasPrivateChatWith(bob));
+    }
+
+    /**
+     * Verifies that the chats of a user follow the participants added and removed through the model.
+     */
+    @Test
+    void testChatsOf() {
+        GroupChat team = new GroupChat("Team");
+        team.addParticipant(alice);
+        model.addChat(team);
+        PrivateChat chat = privateChat(alice, bob);
+        model.addChat(chat);
+        model.addParticipant(team, bob);
+
+        assertEquals(Set.of(general, team, chat), Set.copyOf(model.getChatsOf(bob)));
+
+        model.removeParticipant(team, bob);
+        assertFalse(team.getParticipants().contains(bob));
+        assertEquals(Set.of(general, chat), Set.copyOf(model.getChatsOf(bob)));
+        assertTrue(model.getChatsOf(new User("carol")).isEmpty());
+    }
+
+    /**
+     * Verifies that a chat given a new ID keeps its history and is found by the new ID only.
+     */
+    @Test
+    void testChangeChatId() {
+        String oldId = general.getId();
+        TextMessage message = new TextMessage("m1", LocalDateTime.now(), oldId, bob.getId(), "hello");
+        message.setChat(general);
+        message.setSender(bob);
+        model.addMessageToChat(message);
+        ChatHistory history = model.getChatHistory(general);
+
+        model.changeChatId(general, "server-general");
+
+        assertSame(general, model.getChat("server-general"));
+        assertNull(model.getChat(oldId));
+        assertTrue(model.hasChat(general));
+        assertSame(history, model.getChatHistory(general));
+        assertEquals(1, model.getChatHistory(general).size());
+        assertTrue(model.getChatsOf(bob).contains(general));
+        Chat found = model.getChats().iterator().next();
+        assertSame(general, found);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.client.gui;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for TranscriptModel to validate the rows it reports to the transcript list.
+ */
+class TranscriptModelTest {
+
+    // Model under test
+    private final TranscriptModel transcript = new TranscriptModel();
+
+    // Events reported to the list, as "type first last"
+    private final List<String> events = new ArrayList<>();
+
+    /**
+     * Records the events the model fires.
+     */
+    @BeforeEach
+    void setUp() {
+        transcript.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) { record("added", e); }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) { record("removed", e); }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) { record("changed", e); }
+        });
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param type  The kind of event
+     * @param event The event
+     */
+    private void record(String type, ListDataEvent event) {
+        events.add(type + " " + event.getIndex0() + " " + event.getIndex1());
+    }
+
+    /**
+     * Creates a history in memory holding messages.
+     *
+     * @param maxMessages Most messages held
+     * @param count       Number of messages to add
+     * @return The history
+     */
+    private static ChatHistory history(int maxMessages, int count) {
+        MessageStore store = new MessageStore(maxMessages, Long.MAX_VALUE, null);
+        for (int i = 0; i < count; i++) {
+            store.append(new StoredMessage("m" + i, "u1", "alice", i, "message " + i));
+        }
+        return new ChatHistory(store);
+    }
+
+    /**
+     * Verifies that switching chats replaces the rows and rows are read from the history shown.
+     */
+    @Test
+    void testShow() {
+        transcript.show(history(100, 3));
+        transcript.show(history(100_000, 100_000));
+
+        assertEquals(List.of("added 0 2", "removed 0 2", "added 0 99999"), events);
+        assertEquals(100_000, transcript.getSize());
+        assertTrue(transcript.getElementAt(99_999).endsWith("] alice: message 99999"));
+    }
+
+    /**
+     * Verifies that messages appended in a batch are reported as one interval, and that messages
+     * put in front are reported at the top.
+     */
+    @Test
+    void testAppendedAndPrepended() {
+        ChatHistory history = history(100, 2);
+        transcript.show(history);
+        for (int i = 2; i < 7; i++) {
+            history.getStore().append(new StoredMessage("m" + i, "u1", "alice", i, "message " + i));
+        }
+        transcript.appended();
+        transcript.appended();
+        history.getStore().prepend(List.of(new StoredMessage("old", "u1", "alice", -1, "older")));
+        transcript.prepended(1);
+
+        assertEquals(List.of("added 0 1", "added 2 6", "added 0 0"), events);
+        assertEquals(8, transcript.getSize());
+        assertTrue(transcript.getElementAt(0).endsWith("] alice: older"));
+    }
+
+    /**
+     * Verifies that a history that drops older messages repaints its rows instead of adding any.
+     */
+    @Test
+    void testAppendedWhenDropping() {
+        ChatHistory history = history(3, 3);
+        transcript.show(history);
+        history.getStore().append(new StoredMessage("m3", "u1", "alice", 3, "message 3"));
+        transcript.appended();
+
+        assertEquals(List.of("added 0 2", "changed 0 2"), events);
+        assertTrue(transcript.getElementAt(0).endsWith("] alice: message 1"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.client.network;
+
+import com.example.common.codec.WireFormat;
+import com.example.common.utils.FlushCounters;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ChatConnection to validate that it falls back to JSON when talking to a server
+ * that predates the codec handshake.
+ */
+class ChatConnectionTest {
+
+    // Scheduler the connections flush on
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // Socket a fake server listens on
+    private ServerSocket listener;
+
+    // First line each accepted connection sent
+    private final List<String> firstLines = new CopyOnWriteArrayList<>();
+
+    /**
+     * Opens the listening socket.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        listener = new ServerSocket(0);
+    }
+
+    /**
+     * Closes the listening socket and the scheduler.
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        listener.close();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Accepts connections as a server without the handshake would: every line is taken to be JSON,
+     * and a line that is not ends the connection after answering with something other than a handshake reply.
+     */
+    private void serveLikeOldServer() {
+        Thread.ofVirtual().start(() -> {
+            while (!listener.isClosed()) {
+                try {
+                    Socket socket = listener.accept();
+                    Thread.ofVirtual().start(() -> handle(socket));
+                } catch (IOException e) {
+                    return; // The test is over
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the first line of a connection and answers a line that is not JSON with an error.
+     *
+     * @param socket The accepted connection
+     */
+    private void handle(Socket socket) {
+        try (socket) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = in.readLine();
+            firstLines.add(String.valueOf(line));
+            if (line != null && !line.startsWith("{")) {
+                OutputStream out = socket.getOutputStream();
+                out.write("{\"error\":\"malformed\"}\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                return;
+            }
+            while (in.readLine() != null) {
+                // Keep the connection open until the client closes it
+            }
+        } catch (IOException ignored) {
+            // The client went away
+        }
+    }
+
+    /**
+     * Verifies that a connection asking for the binary format ends up speaking JSON on a second
+     * connection when the server does not answer the handshake.
+     */
+    @Test
+    void testFallsBackToJson() throws IOException {
+        serveLikeOldServer();
+
+        try (ChatConnection connection = ChatConnection.open("localhost", listener.getLocalPort(), WireFormat.BINARY,
+                scheduler, new FlushCounters())) {
+            assertEquals(WireFormat.JSON, connection.getWireFormat());
+            assertFalse(connection.isClosed());
+        }
+        assertEquals("CODEC binary", firstLines.getFirst());
+    }
+
+    /**
+     * Verifies that asking for JSON sends no handshake at all.
+     */
+    @Test
+    void testJsonSendsNoHandshake() throws IOException {
+        serveLikeOldServer();
+
+        try (ChatConnection connection = ChatConnection.open("localhost", listener.getLocalPort(), WireFormat.JSON,
+                scheduler, new FlushCounters())) {
+            assertEquals(WireFormat.JSON, connection.getWireFormat());
+        }
+        assertTrue(firstLines.stream().noneMatch(line -> line.startsWith("CODEC")));
+    }
+}
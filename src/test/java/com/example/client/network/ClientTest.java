@@ -372,10 +372,8 @@ public class ClientTest {
             super.setOut(writer);
         }
 
-        @Override
         public void setIn(BufferedReader reader) {
             this.in = reader;
-            super.setIn(reader);
         }
 
         public void setSocket(Socket socket) {
@@ -0,0 +1,101 @@
+package com.example.client.processing;
+
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageDispatcher to validate that queued messages are applied in batches, in order.
+ */
+class MessageDispatcherTest {
+
+    // Ticks handed to the stand-in event dispatch thread, not run yet
+    private final BlockingQueue<Runnable> ticks = new ArrayBlockingQueue<>(100);
+
+    // Batches applied, in order
+    private final List<List<Communication>> batches = new ArrayList<>();
+
+    /**
+     * Creates a message with its index as content.
+     *
+     * @param index The index of the message
+     * @return The message
+     */
+    private static Communication message(int index) {
+        return new SystemMessage(SystemMessageType.HEARTBEAT, String.valueOf(index));
+    }
+
+    /**
+     * Verifies that a burst of messages is applied in one tick, in order of arrival.
+     */
+    @Test
+    void testBurstIsOneTick() {
+        MessageDispatcher dispatcher = new MessageDispatcher(batches::add, ticks::add, 16);
+        for (int i = 0; i < 1000; i++) {
+            dispatcher.submit(message(i));
+        }
+
+        assertEquals(1, ticks.size());
+        assertEquals(1000, dispatcher.getPendingCount());
+        ticks.poll().run();
+
+        assertEquals(1, batches.size());
+        List<Communication> batch = batches.getFirst();
+        assertEquals(1000, batch.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(String.valueOf(i), ((SystemMessage) batch.get(i)).getContent());
+        }
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    /**
+     * Verifies that a message arriving right after a tick waits for the next frame.
+     */
+    @Test
+    void testNextTickWaitsForFrame() throws Exception {
+        MessageDispatcher dispatcher = new MessageDispatcher(batches::add, ticks::add, 50);
+        dispatcher.submit(message(0));
+        ticks.poll().run();
+
+        long start = System.nanoTime();
+        dispatcher.submit(message(1));
+        dispatcher.submit(message(2));
+        Runnable tick = ticks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(tick);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), "tick came before the frame interval");
+        tick.run();
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(1).size());
+        assertTrue(ticks.isEmpty());
+    }
+
+    /**
+     * Verifies that a batch is capped and the messages left over get another tick.
+     */
+    @Test
+    void testLargeBurstIsSplit() throws Exception {
+        MessageDispatcher dispatcher = new MessageDispatcher(batches::add, ticks::add, 0);
+        for (int i = 0; i < MessageDispatcher.MAX_BATCH + 10; i++) {
+            dispatcher.submit(message(i));
+        }
+        ticks.poll().run();
+        Runnable next = ticks.poll(5, TimeUnit.SECONDS);
+        assertNotNull(next);
+        next.run();
+
+        assertEquals(2, batches.size());
+        assertEquals(MessageDispatcher.MAX_BATCH, batches.get(0).size());
+        assertEquals(10, batches.get(1).size());
+        assertEquals(String.valueOf(MessageDispatcher.MAX_BATCH), ((SystemMessage) batches.get(1).getFirst()).getContent());
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.common.codec;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.*;
+import com.example.common.users.User;
+import com.example.common.utils.MessageSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BinaryCodec to validate round trips, framing and frame size.
+ */
+class BinaryCodecTest {
+
+    // Codec under test
+    private final MessageCodec codec = MessageSerializer.getCodec(WireFormat.BINARY);
+
+    /**
+     * Encodes a message and decodes it again in one chunk.
+     *
+     * @param message The message to round-trip
+     * @return The decoded message
+     */
+    private Communication roundTrip(Communication message) {
+        ByteBuffer buffer = ByteBuffer.wrap(codec.encode(message));
+        Communication decoded = codec.newDecoder().decode(buffer);
+        assertFalse(buffer.hasRemaining());
+        return decoded;
+    }
+
+    /**
+     * Verifies that a text message keeps its ids, content and millisecond timestamp.
+     */
+    @Test
+    void testTextMessageRoundTrip() {
+        GroupChat chat = new GroupChat("Team");
+        User sender = new User("alice");
+        TextMessage message = new TextMessage(chat, sender, "Grüße 👋");
+
+        TextMessage decoded = (TextMessage) roundTrip(message);
+
+        assertEquals(message.getMessageId(), decoded.getMessageId());
+        assertEquals(message.getTimestamp().truncatedTo(ChronoUnit.MILLIS), decoded.getTimestamp());
+        assertEquals(chat.getId(), decoded.getChatId());
+        assertEquals(sender.getId(), decoded.getSenderId());
+        assertEquals("Grüße 👋", decoded.getContent());
+        assertEquals(CommunicationType.TEXT, decoded.getType());
+    }
+
+    /**
+     * Verifies that ids which are not UUIDs, such as the general chat's, survive the round trip.
+     */
+    @Test
+    void testNonUuidIds() {
+        SystemMessage message = new SystemMessage(SystemMessageType.ID_TRANSITION, "general-chat");
+        message.setMessageId("F00D");
+
+        SystemMessage decoded = (SystemMessage) roundTrip(message);
+
+        assertEquals("F00D", decoded.getMessageId());
+        assertEquals(SystemMessageType.ID_TRANSITION, decoded.getSystemType());
+        assertEquals("general-chat", decoded.getContent());
+    }
+
+    /**
+     * Verifies that a user update keeps the whole user and the secret of a login, and that nulls are preserved.
+     */
+    @Test
+    void testUserUpdateRoundTrip() {
+        User user = new User("bob");
+        user.setIsCoordinator(true);
+        user.setCreatedAt(LocalDateTime.of(1969, 7, 20, 20, 17, 40));
+
+        UserUpdateMessage decoded = (UserUpdateMessage) roundTrip(new UserUpdateMessage(user, UserStatus.OFFLINE));
+
+        assertEquals(UserStatus.OFFLINE, decoded.getStatus());
+        assertEquals(user, decoded.getUser());
+        assertEquals("bob", decoded.getUser().getUsername());
+        assertEquals(user.getCreatedAt(), decoded.getUser().getCreatedAt());
+        assertTrue(decoded.getUser().getIsCoordinator());
+        assertNull(decoded.getSecret());
+
+        UserUpdateMessage login = (UserUpdateMessage) roundTrip(new UserUpdateMessage(user, UserStatus.ONLINE, "s3cret"));
+        assertEquals("s3cret", login.getSecret());
+
+        SystemMessage heartbeat = (SystemMessage) roundTrip(new SystemMessage(SystemMessageType.HEARTBEAT, null));
+        assertNull(heartbeat.getContent());
+    }
+
+    /**
+     * Verifies that structured system payloads survive the round trip.
+     */
+    @Test
+    void testSystemPayloadRoundTrip() {
+        User alice = new User("alice");
+        User bob = new User("bob");
+
+        SystemMessage request = (SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.IP_REQUEST, new IpRequest(alice.getId(), bob.getId())));
+        assertEquals(new IpRequest(alice.getId(), bob.getId()), request.getPayload());
+
+        SystemMessage transition = (SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.IP_TRANSITION, new IpTransition("10.0.0.7", 52100)));
+        assertEquals(new IpTransition("10.0.0.7", 52100), transition.getPayload(IpTransition.class));
+        assertNull(transition.getPayload(IpRequest.class));
+
+        ChatDescriptor chat = new ChatDescriptor("team-chat", ChatType.GROUP, "Team", List.of(alice.getId(), bob.getId()));
+        ChatDescriptor decoded = ((SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.CHAT_CREATED, chat))).getPayload(ChatDescriptor.class);
+        assertEquals("team-chat", decoded.getId());
+        assertEquals(ChatType.GROUP, decoded.getType());
+        assertEquals("Team", decoded.getName());
+        assertEquals(List.of(alice.getId(), bob.getId()), decoded.getParticipantIds());
+
+        HistoryRequest history = new HistoryRequest("team-chat", HistoryRequest.LATEST, 50);
+        assertEquals(history, ((SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.HISTORY_REQUEST, history))).getPayload());
+    }
+
+    /**
+     * Verifies that a history page keeps its messages, which travel as complete text frames.
+     */
+    @Test
+    void testHistoryPageRoundTrip() {
+        GroupChat chat = new GroupChat("Team");
+        User alice = new User("alice");
+        TextMessage first = new TextMessage(chat, alice, "first");
+        TextMessage second = new TextMessage(chat, alice, "second");
+
+        HistoryPage page = ((SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.HISTORY_PAGE,
+                new HistoryPage(chat.getId(), List.of(first, second), 1234)))).getPayload(HistoryPage.class);
+        assertEquals(chat.getId(), page.chatId());
+        assertEquals(1234, page.nextCursor());
+        assertEquals(2, page.messages().size());
+        assertEquals(first.getMessageId(), page.messages().get(0).getMessageId());
+        assertEquals(chat.getId(), page.messages().get(0).getChatId());
+        assertEquals(alice.getId(), page.messages().get(1).getSenderId());
+        assertEquals("second", page.messages().get(1).getContent());
+
+        HistoryPage last = ((SystemMessage) roundTrip(SystemMessage.of(SystemMessageType.HISTORY_PAGE, HistoryPage.empty("c")))).getPayload(HistoryPage.class);
+        assertFalse(last.hasMore());
+        assertTrue(last.messages().isEmpty());
+    }
+
+    /**
+     * Verifies that a history page head followed by stored message frames is the same frame as the
+     * page encoded with its messages.
+     */
+    @Test
+    void testHistoryPageHead() {
+        GroupChat chat = new GroupChat("Team");
+        User alice = new User("alice");
+        TextMessage first = new TextMessage(chat, alice, "first");
+        TextMessage second = new TextMessage(chat, alice, "x".repeat(200));
+        byte[] firstFrame = codec.encode(first);
+        byte[] secondFrame = codec.encode(second);
+        SystemMessage page = SystemMessage.of(SystemMessageType.HISTORY_PAGE, new HistoryPage(chat.getId(), List.of(first, second), 42));
+
+        byte[] head = BinaryCodec.encodeHistoryPageHead(page, 2, firstFrame.length + secondFrame.length);
+        ByteBuffer gathered = ByteBuffer.allocate(head.length + firstFrame.length + secondFrame.length);
+        gathered.put(head).put(firstFrame).put(secondFrame);
+        assertArrayEquals(codec.encode(page), gathered.array());
+    }
+
+    /**
+     * Verifies that frames split at every possible byte are reassembled in order.
+     */
+    @Test
+    void testFramesSplitAcrossChunks() {
+        byte[] first = codec.encode(new SystemMessage(SystemMessageType.HEARTBEAT, "one"));
+        byte[] second = codec.encode(new SystemMessage(SystemMessageType.HEARTBEAT, "x".repeat(300)));
+        byte[] stream = new byte[first.length + second.length];
+        System.arraycopy(first, 0, stream, 0, first.length);
+        System.arraycopy(second, 0, stream, first.length, second.length);
+
+        for (int split = 1; split < stream.length; split++) {
+            FrameDecoder decoder = codec.newDecoder();
+            StringBuilder contents = new StringBuilder();
+            for (ByteBuffer chunk : new ByteBuffer[]{ByteBuffer.wrap(stream, 0, split), ByteBuffer.wrap(stream, split, stream.length - split)}) {
+                Communication message;
+                while ((message = decoder.decode(chunk)) != null) {
+                    contents.append(((SystemMessage) message).getContent().length()).append(' ');
+                }
+            }
+            assertEquals("3 300 ", contents.toString(), "split at " + split);
+        }
+    }
+
+    /**
+     * Verifies that a malformed frame is rejected instead of being misread.
+     */
+    @Test
+    void testMalformedFrame() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[]{2, 9, 0});
+        assertThrows(IllegalArgumentException.class, () -> codec.newDecoder().decode(frame));
+    }
+
+    /**
+     * Verifies that a binary text frame is much smaller than its JSON counterpart.
+     */
+    @Test
+    void testFrameSize() {
+        TextMessage message = new TextMessage(new GroupChat("Team"), new User("alice"), "Hello");
+        int binary = codec.encode(message).length;
+        int json = MessageSerializer.getCodec(WireFormat.JSON).encode(message).length;
+        assertTrue(binary * 3 < json, "binary=" + binary + " json=" + json);
+    }
+
+    /**
+     * Verifies that the handshake lines name the requested format.
+     */
+    @Test
+    void testHandshake() {
+        String request = new String(CodecHandshake.request(WireFormat.BINARY));
+        assertEquals("CODEC binary\n", request);
+        assertEquals(WireFormat.BINARY, CodecHandshake.parse(request));
+        assertNull(CodecHandshake.parse("CODEC morse"));
+        assertNull(CodecHandshake.parse("{\"type\":\"TEXT\"}"));
+    }
+}
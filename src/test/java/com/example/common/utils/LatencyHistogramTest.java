@@ -0,0 +1,105 @@
+package com.example.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyHistogram to validate its buckets and percentiles.
+ */
+class LatencyHistogramTest {
+
+    /**
+     * Verifies that every value falls in a bucket whose range holds it, within the stated precision.
+     */
+    @Test
+    void testBucketBounds() {
+        long[] values = {0, 1, 63, 64, 65, 127, 128, 1_000, 999_999, 1L << 40, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= value, "bucket of " + value + " ends at " + highest);
+            assertTrue(bucket == 0 || LatencyHistogram.highestValueOf(bucket - 1) < value, "bucket of " + value + " starts too late");
+            assertTrue(highest - value <= value / 32, "bucket of " + value + " is too wide");
+        }
+        // Values below 64 are counted exactly
+        assertEquals(63, LatencyHistogram.highestValueOf(LatencyHistogram.bucketOf(63)));
+    }
+
+    /**
+     * Verifies the percentiles, mean and maximum of a uniform run of values.
+     */
+    @Test
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.getCount());
+        assertEquals(10_000, snapshot.getMax());
+        assertEquals(5000.5, snapshot.getMean(), 0.001);
+        assertEquals(1, snapshot.getValueAtPercentile(0));
+        assertEquals(10_000, snapshot.getValueAtPercentile(100));
+        long median = snapshot.getValueAtPercentile(50);
+        assertTrue(median >= 5000 && median <= 5000 * 33 / 32, "median " + median);
+        long p99 = snapshot.getValueAtPercentile(99);
+        assertTrue(p99 >= 9900 && p99 <= 9900 * 33 / 32, "p99 " + p99);
+    }
+
+    /**
+     * Verifies that an empty histogram reports zeros.
+     */
+    @Test
+    void testEmpty() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getValueAtPercentile(99));
+        assertEquals(0, snapshot.getMean());
+    }
+
+    /**
+     * Verifies that the difference of two snapshots holds only the values recorded in between.
+     */
+    @Test
+    void testSince() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1_000_000);
+        LatencyHistogram.Snapshot earlier = histogram.snapshot();
+        histogram.record(10);
+        histogram.record(20);
+        LatencyHistogram.Snapshot interval = histogram.snapshot().since(earlier);
+
+        assertEquals(2, interval.getCount());
+        assertEquals(15, interval.getMean(), 0.001);
+        assertEquals(20, interval.getMax());
+        assertEquals(20, interval.getValueAtPercentile(100));
+        assertEquals(0, histogram.snapshot().since(histogram.snapshot()).getCount());
+    }
+
+    /**
+     * Verifies that values recorded from several threads at once are all counted.
+     */
+    @Test
+    void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i % 500);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.getCount());
+        assertEquals(80_000, histogram.snapshot().getCount());
+        assertEquals(499, histogram.snapshot().getMax());
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.common.utils;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.*;
+import com.example.common.users.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageSerializer to validate the JSON form of every message type.
+ */
+class MessageSerializerTest {
+
+    /**
+     * Verifies that a text message survives the round trip and is written with its type first.
+     */
+    @Test
+    void testTextMessageRoundTrip() {
+        GroupChat chat = new GroupChat("Team");
+        User sender = new User("alice");
+        TextMessage message = new TextMessage(chat, sender, "Hello \"team\"");
+
+        String json = MessageSerializer.serialize(message);
+        TextMessage decoded = (TextMessage) MessageSerializer.deserialize(json);
+
+        assertTrue(json.startsWith("{\"type\":\"TEXT\""), json);
+        assertEquals(CommunicationType.TEXT, decoded.getType());
+        assertEquals(message.getMessageId(), decoded.getMessageId());
+        assertEquals(message.getTimestamp(), decoded.getTimestamp());
+        assertEquals(chat.getId(), decoded.getChatId());
+        assertEquals(sender.getId(), decoded.getSenderId());
+        assertEquals("Hello \"team\"", decoded.getContent());
+    }
+
+    /**
+     * Verifies that a user update keeps the whole user and the secret of a login.
+     */
+    @Test
+    void testUserUpdateRoundTrip() {
+        User user = new User("bob");
+        user.setIsCoordinator(true);
+
+        UserUpdateMessage decoded = (UserUpdateMessage) MessageSerializer.deserialize(
+                MessageSerializer.serialize(new UserUpdateMessage(user, UserStatus.ONLINE)));
+
+        assertEquals(CommunicationType.USER_UPDATE, decoded.getType());
+        assertEquals(UserStatus.ONLINE, decoded.getStatus());
+        assertEquals(user, decoded.getUser());
+        assertEquals("bob", decoded.getUser().getUsername());
+        assertTrue(decoded.getUser().getIsCoordinator());
+        assertNull(decoded.getSecret());
+
+        UserUpdateMessage login = (UserUpdateMessage) MessageSerializer.deserialize(
+                MessageSerializer.serialize(new UserUpdateMessage(user, UserStatus.ONLINE, "s3cret")));
+        assertEquals("s3cret", login.getSecret());
+    }
+
+    /**
+     * Verifies that structured payloads are written as nested objects and bound to their class.
+     */
+    @Test
+    void testSystemPayloadRoundTrip() {
+        ChatDescriptor chat = new ChatDescriptor("team-chat", ChatType.GROUP, "Team", List.of("a", "b"));
+
+        String json = MessageSerializer.serialize(SystemMessage.of(SystemMessageType.CHAT_CREATE, chat));
+        SystemMessage decoded = (SystemMessage) MessageSerializer.deserialize(json);
+
+        assertTrue(json.contains("\"payload\":{"), json);
+        assertEquals(SystemMessageType.CHAT_CREATE, decoded.getSystemType());
+        ChatDescriptor payload = decoded.getPayload(ChatDescriptor.class);
+        assertEquals("team-chat", payload.getId());
+        assertEquals(ChatType.GROUP, payload.getType());
+        assertEquals(List.of("a", "b"), payload.getParticipantIds());
+
+        SystemMessage transition = (SystemMessage) MessageSerializer.deserialize(
+                MessageSerializer.serialize(SystemMessage.of(SystemMessageType.IP_TRANSITION, new IpTransition("10.0.0.7", 52100))));
+        assertEquals(new IpTransition("10.0.0.7", 52100), transition.getPayload());
+    }
+
+    /**
+     * Verifies that a history page keeps its nested text messages, and that a nested message
+     * of the wrong type is rejected.
+     */
+    @Test
+    void testHistoryPageRoundTrip() {
+        GroupChat chat = new GroupChat("Team");
+        User sender = new User("alice");
+        TextMessage first = new TextMessage(chat, sender, "first");
+        TextMessage second = new TextMessage(chat, sender, "second");
+
+        SystemMessage decoded = (SystemMessage) MessageSerializer.deserialize(MessageSerializer.serialize(
+                SystemMessage.of(SystemMessageType.HISTORY_PAGE, new HistoryPage(chat.getId(), List.of(first, second), 4096))));
+
+        HistoryPage page = decoded.getPayload(HistoryPage.class);
+        assertEquals(chat.getId(), page.chatId());
+        assertEquals(4096, page.nextCursor());
+        assertEquals(List.of("first", "second"), page.messages().stream().map(TextMessage::getContent).toList());
+        assertEquals(first.getMessageId(), page.messages().get(0).getMessageId());
+        assertEquals(sender.getId(), page.messages().get(1).getSenderId());
+
+        String wrongType = "{\"type\":\"SYSTEM\",\"systemType\":\"HISTORY_PAGE\",\"payload\":{\"chatId\":\"c\","
+                + "\"messages\":[{\"type\":\"SYSTEM\",\"systemType\":\"HEARTBEAT\"}],\"nextCursor\":-1}}";
+        assertThrows(RuntimeException.class, () -> MessageSerializer.deserialize(wrongType));
+    }
+
+    /**
+     * Verifies that messages written with the type after the other fields, as older peers do,
+     * are still read, including a payload that comes before its system type.
+     */
+    @Test
+    void testTypeAfterFields() {
+        String json = "{\"payload\":{\"senderId\":\"a\",\"selectedUserId\":\"b\"},\"content\":null,"
+                + "\"messageId\":\"m1\",\"timestamp\":\"2024-05-01T10:15:30\",\"systemType\":\"IP_REQUEST\",\"type\":\"SYSTEM\"}";
+
+        SystemMessage decoded = (SystemMessage) MessageSerializer.deserialize(json);
+
+        assertEquals(CommunicationType.SYSTEM, decoded.getType());
+        assertEquals("m1", decoded.getMessageId());
+        assertEquals(SystemMessageType.IP_REQUEST, decoded.getSystemType());
+        assertEquals(new IpRequest("a", "b"), decoded.getPayload());
+    }
+
+    /**
+     * Verifies that unknown fields and system types from newer peers are tolerated,
+     * and that a message without a type is rejected.
+     */
+    @Test
+    void testUnknownFields() {
+        SystemMessage decoded = (SystemMessage) MessageSerializer.deserialize(
+                "{\"type\":\"SYSTEM\",\"messageId\":\"m2\",\"priority\":{\"level\":3},\"systemType\":\"TELEPORT\",\"content\":\"x\"}");
+
+        assertEquals("m2", decoded.getMessageId());
+        assertNull(decoded.getSystemType());
+        assertEquals("x", decoded.getContent());
+
+        assertThrows(RuntimeException.class, () -> MessageSerializer.deserialize("{\"messageId\":\"m3\"}"));
+    }
+}
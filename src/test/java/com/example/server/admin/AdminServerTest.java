@@ -0,0 +1,152 @@
+package com.example.server.admin;
+
+import com.example.common.messages.SystemMessageType;
+import com.example.common.users.User;
+import com.example.server.network.PipelineMetrics;
+import com.example.server.network.Server;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for AdminServer to validate the metrics page and the sessions dump it serves.
+ */
+class AdminServerTest {
+
+    // Server reported on
+    private Server server;
+
+    // Admin listener under test
+    private AdminServer admin;
+
+    // Client fetching the pages
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    /**
+     * Starts an admin listener for a server with one logged-in user, who is the coordinator.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new Server();
+        User alice = new User("alice");
+        server.addClient(alice, new PrintWriter(new StringWriter()), null);
+        server.getCoordinatorManager().assignCoordinator(alice);
+        admin = new AdminServer(server, null);
+        admin.start("127.0.0.1", 0);
+    }
+
+    /**
+     * Stops the admin listener.
+     */
+    @AfterEach
+    void tearDown() {
+        admin.stop();
+    }
+
+    /**
+     * Fetches a page from the admin listener.
+     *
+     * @param path   The path of the page
+     * @param method The request method
+     * @return The response
+     */
+    private HttpResponse<String> fetch(String path, String method) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + admin.getLocalPort() + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        return http.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Verifies that the metrics page is in the Prometheus text format and holds the server's counters.
+     */
+    @Test
+    void testMetrics() throws Exception {
+        server.getCounters().messageReceived(PipelineMetrics.kindOf(SystemMessageType.HEARTBEAT));
+        server.getCounters().heartbeatExpired();
+
+        HttpResponse<String> response = fetch("/metrics", "GET");
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+        String body = response.body();
+        assertTrue(body.contains("# TYPE chat_sessions gauge\nchat_sessions 1\n"), body);
+        assertTrue(body.contains("chat_messages_received_total{type=\"SYSTEM\",system_type=\"HEARTBEAT\"} 1\n"), body);
+        assertTrue(body.contains("chat_messages_received_total{type=\"TEXT\"} 0\n"), body);
+        assertTrue(body.contains("chat_heartbeat_expirations_total 1\n"), body);
+        assertTrue(body.contains("chat_coordinator_changes_total 1\n"), body);
+        assertTrue(body.contains("jvm_memory_heap_used_bytes "), body);
+        assertTrue(body.contains("chat_pipeline_latency_seconds_count{stage=\"fan-out\""), body);
+        assertFalse(body.contains("chat_connections"), "no transport, so no connection count");
+    }
+
+    /**
+     * Verifies that the sessions dump names the coordinator and every logged-in user.
+     */
+    @Test
+    void testSessions() throws Exception {
+        server.getCoordinatorManager().setCoordinator(null);
+        User bob = new User("bob");
+        server.addClient(bob, new PrintWriter(new StringWriter()), null);
+        server.getCoordinatorManager().setCoordinator(bob);
+
+        HttpResponse<String> response = fetch("/sessions", "GET");
+        assertEquals(200, response.statusCode());
+        JsonObject dump = JsonParser.parseString(response.body()).getAsJsonObject();
+        assertEquals("bob", dump.getAsJsonObject("coordinator").get("username").getAsString());
+        assertEquals(2, dump.get("sessionCount").getAsInt());
+        JsonArray sessions = dump.getAsJsonArray("sessions");
+        assertEquals(2, sessions.size());
+        assertEquals("alice", sessions.get(0).getAsJsonObject().get("username").getAsString());
+        assertTrue(sessions.get(1).getAsJsonObject().get("coordinator").getAsBoolean());
+        assertEquals(0, sessions.get(1).getAsJsonObject().get("outboundQueueDepth").getAsInt());
+    }
+
+    /**
+     * Verifies that only GET requests are answered.
+     */
+    @Test
+    void testOnlyGet() throws Exception {
+        assertEquals(405, fetch("/metrics", "POST").statusCode());
+        assertEquals(404, fetch("/", "GET").statusCode());
+    }
+
+    /**
+     * Verifies that a page that fails to render is answered with an error status.
+     */
+    @Test
+    void testRenderFailure() throws Exception {
+        admin.stop();
+        admin = new AdminServer(server, null) {
+            @Override
+            public String renderMetrics() {
+                throw new IllegalStateException("broken gauge");
+            }
+        };
+        admin.start("127.0.0.1", 0);
+
+        assertEquals(500, fetch("/metrics", "GET").statusCode());
+        assertEquals(200, fetch("/sessions", "GET").statusCode());
+    }
+
+    /**
+     * Verifies that label values are escaped and null labels are left out.
+     */
+    @Test
+    void testLabels() {
+        assertEquals("{gc=\"G1 \\\"Young\\\"\"}", PrometheusText.labels("gc", "G1 \"Young\"", "quantile", null));
+        assertEquals("", PrometheusText.labels("quantile", null));
+        assertEquals("a 0.25\nb 3\n", new PrometheusText().sample("a", 0.25).sample("b", 3).toString());
+    }
+}
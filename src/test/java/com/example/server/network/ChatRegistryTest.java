@@ -0,0 +1,165 @@
+package com.example.server.network;
+
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for ChatRegistry to validate chat registration and membership bookkeeping.
+ */
+class ChatRegistryTest {
+
+    // Registry under test
+    private ChatRegistry registry;
+
+    // Directory of the journal of a registry that survives a restart
+    @TempDir
+    Path directory;
+
+    /**
+     * Creates an empty registry before each test case.
+     */
+    @BeforeEach
+    void setUp() {
+        registry = new ChatRegistry();
+    }
+
+    /**
+     * Verifies that a registered chat can be found with its members.
+     */
+    @Test
+    void testRegister() {
+        assertTrue(registry.register(new ChatDescriptor("chat-1", ChatType.GROUP, "Team", List.of("alice", "bob"))));
+
+        ChatRegistry.RegisteredChat chat = registry.get("chat-1");
+        assertNotNull(chat);
+        assertEquals("Team", chat.name());
+        assertEquals(Set.of("alice", "bob"), chat.members());
+        assertTrue(chat.hasMember("alice"));
+        assertFalse(chat.hasMember("mallory"));
+        assertEquals(Set.of("chat-1"), Set.copyOf(registry.chatsOf("bob")));
+    }
+
+    /**
+     * Verifies that a chat id cannot be taken over by a second registration.
+     */
+    @Test
+    void testRegisterExistingId() {
+        registry.register(new ChatDescriptor("chat-1", ChatType.PRIVATE, null, List.of("alice", "bob")));
+
+        assertFalse(registry.register(new ChatDescriptor("chat-1", ChatType.GROUP, "Takeover", List.of("mallory"))));
+        assertEquals(Set.of("alice", "bob"), registry.get("chat-1").members());
+        assertTrue(registry.chatsOf("mallory").isEmpty());
+    }
+
+    /**
+     * Verifies that a chat whose name a journal record cannot hold is rejected without registering anything.
+     */
+    @Test
+    void testRegisterTooLongName() {
+        String name = "x".repeat(0x10000);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> registry.register(new ChatDescriptor("chat-1", ChatType.GROUP, name, List.of("alice", "bob"))));
+        assertNull(registry.get("chat-1"));
+        assertTrue(registry.chatsOf("alice").isEmpty());
+    }
+
+    /**
+     * Verifies that a leaving user is removed from their chats and empty chats are dropped.
+     */
+    @Test
+    void testRemoveMember() {
+        registry.register(new ChatDescriptor("chat-1", ChatType.PRIVATE, null, List.of("alice", "bob")));
+        registry.register(new ChatDescriptor("chat-2", ChatType.GROUP, "Solo", List.of("alice")));
+
+        registry.removeMember("alice");
+
+        assertEquals(Set.of("bob"), registry.get("chat-1").members());
+        assertNull(registry.get("chat-2"));
+        assertEquals(1, registry.size());
+        assertTrue(registry.chatsOf("alice").isEmpty());
+    }
+
+    /**
+     * Verifies that members who went offline before the cutoff leave their chats, and members back online stay.
+     */
+    @Test
+    void testExpireMembers() {
+        registry.register(new ChatDescriptor("chat-1", ChatType.GROUP, "Team", List.of("alice", "bob", "carol")));
+        registry.memberOffline("alice", 100);
+        registry.memberOffline("bob", 100);
+        registry.memberOffline("carol", 300);
+        registry.memberOnline("bob");
+        registry.memberOffline("mallory", 100);
+
+        assertEquals(List.of("alice"), registry.expireMembers(200));
+
+        assertEquals(Set.of("bob", "carol"), registry.get("chat-1").members());
+        assertNull(registry.getOfflineSince("alice"));
+        assertNull(registry.getOfflineSince("bob"));
+        assertEquals(Long.valueOf(300), registry.getOfflineSince("carol"));
+        assertNull(registry.getOfflineSince("mallory"), "users in no chats are not tracked");
+    }
+
+    /**
+     * Verifies that chats, members and offline times are rebuilt when the journal is opened again,
+     * and that members who were online when it was closed count as offline from then on.
+     */
+    @Test
+    void testReopen() throws IOException {
+        try (ChatRegistry persistent = new ChatRegistry(directory, 1000)) {
+            persistent.register(new ChatDescriptor("chat-1", ChatType.GROUP, "Team", List.of("alice", "bob", "carol")));
+            persistent.register(new ChatDescriptor("chat-2", ChatType.PRIVATE, null, List.of("alice", "bob")));
+            persistent.register(new ChatDescriptor("chat-3", ChatType.GROUP, "Gone", List.of("alice")));
+            persistent.remove("chat-3");
+            persistent.memberOffline("bob", 100);
+            persistent.removeMember("carol");
+        }
+
+        long reopened = System.currentTimeMillis();
+        try (ChatRegistry persistent = new ChatRegistry(directory, 1000)) {
+            assertEquals(2, persistent.size());
+            assertEquals(Set.of("alice", "bob"), persistent.get("chat-1").members());
+            assertEquals("Team", persistent.get("chat-1").name());
+            assertEquals(ChatType.PRIVATE, persistent.get("chat-2").type());
+            assertNull(persistent.get("chat-2").name());
+            assertNull(persistent.get("chat-3"));
+            assertEquals(Long.valueOf(100), persistent.getOfflineSince("bob"));
+            assertTrue(persistent.getOfflineSince("alice") >= reopened);
+        }
+    }
+
+    /**
+     * Verifies that a journal grown well beyond the registry's state is rewritten with just that state.
+     */
+    @Test
+    void testCompaction() throws IOException {
+        Path journal = directory.resolve("chats.journal");
+        try (ChatRegistry persistent = new ChatRegistry(directory, 60_000)) {
+            persistent.register(new ChatDescriptor("chat-1", ChatType.GROUP, "Team", List.of("alice", "bob")));
+            for (int i = 0; i < 50_000; i++) {
+                persistent.memberOffline("bob", i);
+                persistent.memberOnline("bob");
+            }
+            persistent.memberOffline("bob", 42);
+            persistent.sync();
+            assertTrue(Files.size(journal) < 1024, "the journal was compacted");
+        }
+
+        try (ChatRegistry persistent = new ChatRegistry(directory, 1000)) {
+            assertEquals(Set.of("alice", "bob"), persistent.get("chat-1").members());
+            assertEquals(Long.valueOf(42), persistent.getOfflineSince("bob"));
+        }
+    }
+}
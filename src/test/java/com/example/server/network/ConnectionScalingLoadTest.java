@@ -0,0 +1,150 @@
+package com.example.server.network;
+
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.utils.MessageSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load test comparing how many idle connections each server transport can hold
+ * and what every connection costs in heap and threads.
+ * It is skipped by default; run it with
+ * {@code mvn test -Dtest=ConnectionScalingLoadTest -Dchat.loadTest=true [-Dchat.loadTest.connections=5000]}.
+ * Client sockets live in the same JVM, so the heap figures include their (identical) cost in every mode.
+ */
+@EnabledIfSystemProperty(named = "chat.loadTest", matches = "true")
+class ConnectionScalingLoadTest {
+
+    // Number of connections opened against each transport
+    private static final int CONNECTIONS = Integer.getInteger("chat.loadTest.connections", 2000);
+
+    // Ceiling of the fixed pool used by the blocking transport
+    private static final int BLOCKING_POOL_SIZE = 500;
+
+    /**
+     * Verifies that the blocking transport stops serving clients at its pool size.
+     */
+    @Test
+    void testBlockingTransport() throws Exception {
+        Result result = measure(TransportMode.BLOCKING);
+        assertEquals(Math.min(CONNECTIONS, BLOCKING_POOL_SIZE), result.served());
+    }
+
+    /**
+     * Verifies that the virtual-thread transport serves every client.
+     */
+    @Test
+    void testVirtualThreadTransport() throws Exception {
+        Result result = measure(TransportMode.VIRTUAL);
+        assertEquals(CONNECTIONS, result.served());
+    }
+
+    /**
+     * Verifies that the NIO transport serves every client.
+     */
+    @Test
+    void testNioTransport() throws Exception {
+        Result result = measure(TransportMode.NIO);
+        assertEquals(CONNECTIONS, result.served());
+    }
+
+    /**
+     * Opens the configured number of connections against a fresh server and reports
+     * served connections, platform threads and heap used per connection.
+     *
+     * @param mode The transport to measure
+     * @return The measurement
+     */
+    private Result measure(TransportMode mode) throws Exception {
+        Server server = new Server();
+        ServerTransport transport = ServerTransportFactory.create(mode, server);
+        transport.start(0);
+
+        List<Socket> sockets = new ArrayList<>(CONNECTIONS);
+        byte[] heartbeat = (MessageSerializer.serialize(new SystemMessage(SystemMessageType.HEARTBEAT, "load-test")) + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            long heapBefore = usedHeap();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            // Open the connections and send one frame on each, as an idle client would
+            for (int i = 0; i < CONNECTIONS; i++) {
+                Socket socket = new Socket("localhost", transport.getLocalPort());
+                OutputStream out = socket.getOutputStream();
+                out.write(heartbeat);
+                out.flush();
+                sockets.add(socket);
+            }
+
+            // Wait until the transport has picked up every connection it is able to serve
+            long deadline = System.currentTimeMillis() + 10_000;
+            int served = transport.getActiveConnections();
+            while (served < CONNECTIONS && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+                served = transport.getActiveConnections();
+            }
+
+            long heapPerConnection = (usedHeap() - heapBefore) / CONNECTIONS;
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+
+            // Log the measurement
+            System.out.printf("%-8s requested=%d served=%d platformThreads=+%d heapPerConnection=%d bytes%n",
+                    mode, CONNECTIONS, served, threads, heapPerConnection);
+            return new Result(served, threads, heapPerConnection);
+        } finally {
+            for (Socket socket : sockets) {
+                closeQuietly(socket);
+            }
+            transport.stop();
+            server.shutdown(); // Stop the server's scheduler, so that it does not outlive the test
+        }
+    }
+
+    /**
+     * Measures the used heap after asking the JVM to collect garbage.
+     *
+     * @return The used heap in bytes
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     *
+     * @param socket The socket to close
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Measurement of one transport.
+     *
+     * @param served            Connections being served by the transport
+     * @param platformThreads   Platform threads added while holding the connections
+     * @param heapPerConnection Heap used per connection in bytes
+     */
+    private record Result(int served, int platformThreads, long heapPerConnection) {
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.server.network;
+
+import com.example.common.users.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LivenessTracker to validate session expiry on the timer wheel.
+ */
+class LivenessTrackerTest {
+
+    // Registry the tracked sessions are logged into
+    private SessionRegistry sessions;
+
+    // Tracker under test, with a 20 second timeout and 1 second ticks
+    private LivenessTracker tracker;
+
+    /**
+     * Creates an empty registry and tracker before each test case.
+     */
+    @BeforeEach
+    void setUp() {
+        sessions = new SessionRegistry();
+        tracker = new LivenessTracker(sessions, 20000, 1000);
+    }
+
+    /**
+     * Creates, registers and tracks a session.
+     *
+     * @param username The name of the session's user
+     * @return The tracked session
+     */
+    private ClientSession login(String username) {
+        ClientSession session = new ClientSession(new User(username), frame -> { }, null);
+        sessions.add(session);
+        tracker.track(session);
+        return session;
+    }
+
+    /**
+     * Verifies that a silent session expires once its timeout has passed, and not before.
+     */
+    @Test
+    void testSilentSessionExpires() {
+        ClientSession session = login("silentUser");
+        long start = session.getLastHeartbeat();
+
+        // Verify that nothing expires before the timeout
+        assertTrue(tracker.expire(start + 10000).isEmpty());
+
+        // Verify that the session expires after the timeout
+        List<ClientSession> expired = tracker.expire(start + 22000);
+        assertEquals(List.of(session), expired);
+        assertEquals(1, tracker.getExpirations());
+    }
+
+    /**
+     * Verifies that a refreshed session is rescheduled instead of expiring.
+     */
+    @Test
+    void testRefreshedSessionSurvives() throws InterruptedException {
+        ClientSession session = login("activeUser");
+        long start = session.getLastHeartbeat();
+
+        // Refresh the session a little later than it was created
+        Thread.sleep(5);
+        session.recordHeartbeat();
+        long refreshed = session.getLastHeartbeat();
+
+        // Verify that the session survives its first deadline and expires after its refreshed one
+        assertTrue(refreshed > start);
+        assertTrue(tracker.expire(refreshed + 19999).isEmpty());
+        assertEquals(List.of(session), tracker.expire(refreshed + 21000));
+    }
+
+    /**
+     * Verifies that a logged-out session is dropped without expiring, and that ticks only scan due sessions.
+     */
+    @Test
+    void testLoggedOutSessionIsDropped() {
+        ClientSession leaving = login("leavingUser");
+        long start = leaving.getLastHeartbeat();
+        sessions.remove(leaving.getUserId());
+
+        // Verify that a tick before any deadline examines no session
+        tracker.expire(start + 5000);
+        assertEquals(0, tracker.getLastScanSessions());
+
+        // Verify that the logged-out session is examined once but not reported
+        assertTrue(tracker.expire(start + 22000).isEmpty());
+        assertEquals(1, tracker.getSessionsScanned());
+        assertEquals(0, tracker.getExpirations());
+    }
+}
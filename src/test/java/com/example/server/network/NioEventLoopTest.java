@@ -0,0 +1,56 @@
+package com.example.server.network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NioEventLoop to validate that a failing task does not stop the loop.
+ */
+class NioEventLoopTest {
+
+    // Loop under test, without a server since no connection is registered
+    private NioEventLoop loop;
+
+    /**
+     * Starts the loop.
+     */
+    @BeforeEach
+    void setUp() throws IOException {
+        loop = new NioEventLoop(null, "nio-test", new AtomicInteger());
+        loop.start();
+    }
+
+    /**
+     * Stops the loop.
+     */
+    @AfterEach
+    void tearDown() {
+        loop.shutdown();
+    }
+
+    /**
+     * Verifies that tasks handed over after one that throws still run on the loop's thread.
+     */
+    @Test
+    void testFailingTaskDoesNotStopLoop() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+
+        loop.execute(() -> {
+            throw new IllegalStateException("broken task");
+        });
+        loop.execute(() -> {
+            assertTrue(loop.inEventLoop());
+            ran.countDown();
+        });
+
+        assertTrue(ran.await(5, TimeUnit.SECONDS), "the loop kept running after the failing task");
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.server.network;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for NioServerTransport to validate that a failed accept does not stop it from accepting clients.
+ */
+class NioServerTransportTest {
+
+    // Server the accepted connections are served for
+    private final Server server = new Server();
+
+    // Number of accepts that have failed
+    private final AtomicInteger failures = new AtomicInteger();
+
+    // Transport under test, whose first accept fails as if the process had run out of file descriptors
+    private final NioServerTransport transport = new NioServerTransport(server, 1) {
+        @Override
+        SocketChannel accept() throws IOException {
+            if (failures.getAndIncrement() == 0) {
+                throw new IOException("Too many open files");
+            }
+            return super.accept();
+        }
+    };
+
+    /**
+     * Stops the transport and the server.
+     */
+    @AfterEach
+    void tearDown() {
+        transport.stop();
+        server.shutdown();
+    }
+
+    /**
+     * Verifies that a client is accepted once the accept that failed is retried.
+     */
+    @Test
+    void testAcceptFailureIsRetried() throws IOException, InterruptedException {
+        transport.start(0);
+
+        try (Socket ignored = new Socket("localhost", transport.getLocalPort())) {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (transport.getActiveConnections() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertEquals(1, transport.getActiveConnections());
+            assertTrue(failures.get() >= 2, "the accept was retried after failing");
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.server.network;
+
+import com.example.client.network.ChatConnection;
+import com.example.client.network.ClientIdentity;
+import com.example.common.chats.ChatDescriptor;
+import com.example.common.chats.ChatType;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.Communication;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.common.utils.FlushCounters;
+import com.example.server.storage.MessageLog;
+import com.example.server.storage.OfflineInbox;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * End-to-end tests for the messages kept for members of a chat who are offline, with clients that
+ * log in over the network under the ids and secrets ClientIdentity remembers for them, across a server restart.
+ */
+class OfflineDeliveryTest {
+
+    // Id of the group chat the tests create
+    private static final String CHAT_ID = "team-chat";
+
+    // Directory of the server's message log, inboxes and chats, kept across restarts
+    @TempDir
+    Path directory;
+
+    // Scheduler the client connections flush on
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    // Connections opened by a test
+    private final List<ChatConnection> connections = new ArrayList<>();
+
+    // Server under test and its transport, or null once stopped
+    private Server server;
+    private ServerTransport transport;
+
+    /**
+     * Closes the connections, the server and the scheduler.
+     */
+    @AfterEach
+    void tearDown() {
+        connections.forEach(ChatConnection::close);
+        if (server != null) {
+            stopServer();
+        }
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Starts a server keeping its log, inboxes, chats and credentials under the test directory, as Server.main does.
+     *
+     * @throws IOException if the storage cannot be opened or the port bound
+     */
+    private void startServer() throws IOException {
+        Path inboxDirectory = directory.resolve("inbox");
+        server = new Server(MessageLog.withDefaults(directory), OfflineInbox.withDefaults(inboxDirectory),
+                ChatRegistry.withDefaults(inboxDirectory), new UserCredentials(inboxDirectory));
+        transport = ServerTransportFactory.create(TransportMode.NIO, server);
+        transport.start(0);
+    }
+
+    /**
+     * Stops the transport and shuts the server down, closing its storage.
+     */
+    private void stopServer() {
+        transport.stop();
+        server.shutdown();
+        server = null;
+    }
+
+    /**
+     * Connects a client, logs a user in and waits until the server has added its session.
+     *
+     * @param login The user and their secret
+     * @return The client's connection and the messages it receives
+     * @throws IOException if connecting fails
+     */
+    private Peer connect(ClientIdentity.Login login) throws IOException {
+        ChatConnection connection = ChatConnection.open("localhost", transport.getLocalPort(), WireFormat.JSON, scheduler, new FlushCounters());
+        connections.add(connection);
+        BlockingQueue<Communication> received = new LinkedBlockingQueue<>();
+        connection.start(received::add, () -> { });
+        connection.login(login.user(), login.secret());
+        await(received, message -> message instanceof SystemMessage system && system.getSystemType() == SystemMessageType.ID_TRANSITION);
+        return new Peer(connection, received);
+    }
+
+    /**
+     * Logs a user out, closes their connection and waits until the server has removed the session.
+     *
+     * @param user The user
+     * @param peer The user's client
+     * @throws IOException if sending fails
+     */
+    private void disconnect(User user, Peer peer) throws IOException {
+        peer.connection().logout();
+        peer.connection().close();
+        waitFor(() -> !server.getSessions().contains(user.getId()));
+    }
+
+    /**
+     * Takes received messages until one matches.
+     *
+     * @param received The messages a client received
+     * @param match    Which message to wait for
+     * @return The matching message
+     */
+    private static Communication await(BlockingQueue<Communication> received, Predicate<Communication> match) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        try {
+            while (System.nanoTime() < deadline) {
+                Communication message = received.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (message != null && match.test(message)) {
+                    return message;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return fail("the expected message did not arrive");
+    }
+
+    /**
+     * Waits until a condition holds.
+     *
+     * @param condition The condition
+     */
+    private static void waitFor(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "the condition did not hold in time");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if a message announces the test's chat.
+     *
+     * @param message The message
+     * @return True for the CHAT_CREATED message of the chat
+     */
+    private static boolean isChatCreated(Communication message) {
+        return message instanceof SystemMessage system && system.getSystemType() == SystemMessageType.CHAT_CREATED
+                && CHAT_ID.equals(system.getPayload(ChatDescriptor.class).getId());
+    }
+
+    /**
+     * Has alice create a group chat with bob, then bob log out and alice write to the chat.
+     *
+     * @param aliceLogin The user who stays online
+     * @param bobLogin   The user who goes offline
+     * @return Alice's client
+     * @throws IOException if sending fails
+     */
+    private Peer messageWhileOffline(ClientIdentity.Login aliceLogin, ClientIdentity.Login bobLogin) throws IOException {
+        User alice = aliceLogin.user();
+        User bob = bobLogin.user();
+        Peer bobPeer = connect(bobLogin);
+        Peer alicePeer = connect(aliceLogin);
+        alicePeer.connection().send(SystemMessage.of(SystemMessageType.CHAT_CREATE,
+                new ChatDescriptor(CHAT_ID, ChatType.GROUP, "Team", List.of(alice.getId(), bob.getId()))));
+        await(bobPeer.received(), OfflineDeliveryTest::isChatCreated);
+
+        disconnect(bob, bobPeer);
+        alicePeer.connection().send(new TextMessage("m1", LocalDateTime.now(), CHAT_ID, alice.getId(), "while you were away"));
+        waitFor(() -> server.getInbox().size(bob.getId()) == 1);
+        return alicePeer;
+    }
+
+    /**
+     * Verifies that a user who starts the client again after the server restarted logs in under the
+     * same id, is told about the chat they are in and then gets the message sent while they were away.
+     */
+    @Test
+    void testReturnAfterRestart() throws IOException {
+        Path identityFile = directory.resolve("client").resolve("identity.properties");
+        ClientIdentity.Login alice = new ClientIdentity(identityFile).loginFor("alice");
+        ClientIdentity.Login bob = new ClientIdentity(identityFile).loginFor("bob");
+        startServer();
+        Peer alicePeer = messageWhileOffline(alice, bob);
+        disconnect(alice.user(), alicePeer);
+        stopServer();
+
+        startServer();
+        ClientIdentity.Login returning = new ClientIdentity(identityFile).loginFor("bob");
+        assertEquals(bob.user().getId(), returning.user().getId());
+        assertEquals(bob.secret(), returning.secret());
+        String bobId = bob.user().getId();
+        assertEquals(1, server.getInbox().size(bobId));
+        assertNotNull(server.getChats().getOfflineSince(alice.user().getId()), "members count as offline after a restart");
+        assertTrue(server.getCredentials().isClaimed(bobId), "claims survive a restart");
+
+        Peer bobPeer = connect(returning);
+        await(bobPeer.received(), OfflineDeliveryTest::isChatCreated);
+        TextMessage missed = (TextMessage) await(bobPeer.received(), message -> message instanceof TextMessage);
+        assertEquals("while you were away", missed.getContent());
+        assertEquals(CHAT_ID, missed.getChatId());
+        assertNull(server.getChats().getOfflineSince(bobId));
+        waitFor(() -> server.getInbox().size(bobId) == 0);
+    }
+
+    /**
+     * Verifies that a client logging in under the id of an offline user, which it learned when the
+     * user was online, is turned away without a secret or with a wrong one and does not get the
+     * messages kept for the user, who still gets them with their own secret.
+     */
+    @Test
+    void testRejectLoginWithoutSecret() throws IOException, InterruptedException {
+        Path identityFile = directory.resolve("client").resolve("identity.properties");
+        ClientIdentity.Login alice = new ClientIdentity(identityFile).loginFor("alice");
+        ClientIdentity.Login bob = new ClientIdentity(identityFile).loginFor("bob");
+        String bobId = bob.user().getId();
+        startServer();
+        messageWhileOffline(alice, bob);
+
+        for (String secret : new String[]{null, "guessed"}) {
+            ChatConnection impostor = ChatConnection.open("localhost", transport.getLocalPort(), WireFormat.JSON, scheduler, new FlushCounters());
+            connections.add(impostor);
+            BlockingQueue<Communication> received = new LinkedBlockingQueue<>();
+            CountDownLatch closed = new CountDownLatch(1);
+            impostor.start(received::add, closed::countDown);
+            impostor.login(new User(bobId, "mallory", LocalDateTime.now(), false), secret);
+
+            assertTrue(closed.await(10, TimeUnit.SECONDS), "the server closed the connection");
+            assertFalse(received.stream().anyMatch(message -> message instanceof TextMessage), "no kept message was delivered");
+            assertFalse(server.getSessions().contains(bobId));
+            assertEquals(1, server.getInbox().size(bobId));
+        }
+
+        Peer bobPeer = connect(bob);
+        TextMessage missed = (TextMessage) await(bobPeer.received(), message -> message instanceof TextMessage);
+        assertEquals("while you were away", missed.getContent());
+    }
+
+    /**
+     * Verifies that a member offline for longer than the TTL leaves their chats and their inbox is emptied,
+     * while members who are online stay.
+     */
+    @Test
+    void testExpireOfflineMember() throws IOException {
+        Path identityFile = directory.resolve("client").resolve("identity.properties");
+        ClientIdentity.Login alice = new ClientIdentity(identityFile).loginFor("alice");
+        ClientIdentity.Login bob = new ClientIdentity(identityFile).loginFor("bob");
+        startServer();
+        messageWhileOffline(alice, bob);
+
+        server.expireOfflineMembers(System.currentTimeMillis() + 1);
+
+        assertEquals(0, server.getInbox().size(bob.user().getId()));
+        assertTrue(server.getChats().chatsOf(bob.user().getId()).isEmpty());
+        assertTrue(server.getChats().get(CHAT_ID).hasMember(alice.user().getId()));
+    }
+
+    /**
+     * A client connected to the server under test.
+     *
+     * @param connection The client's connection
+     * @param received   The messages it received, oldest first
+     */
+    private record Peer(ChatConnection connection, BlockingQueue<Communication> received) {
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.server.network;
+
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.UserStatus;
+import com.example.common.messages.UserUpdateMessage;
+import com.example.common.users.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OutboundQueue to validate its overflow policies.
+ */
+class OutboundQueueTest {
+
+    // Frame carrying a heartbeat
+    private final Frame heartbeat = Frame.of(new SystemMessage(SystemMessageType.HEARTBEAT, null));
+
+    /**
+     * Verifies that a heartbeat arriving at a full queue is dropped.
+     */
+    @Test
+    void testDropIncomingHeartbeat() {
+        OutboundQueue queue = new OutboundQueue(1, EnumSet.of(OverflowPolicy.DROP_HEARTBEATS));
+        Frame text = Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "general-chat"));
+
+        assertTrue(queue.offer(text));
+        assertTrue(queue.offer(heartbeat));
+
+        // Verify that only the first frame is queued
+        assertEquals(1, queue.depth());
+        assertEquals(1, queue.getDroppedFrames());
+        assertSame(text, queue.poll());
+    }
+
+    /**
+     * Verifies that a queued heartbeat is evicted to make room for another frame.
+     */
+    @Test
+    void testEvictQueuedHeartbeat() {
+        OutboundQueue queue = new OutboundQueue(2, EnumSet.of(OverflowPolicy.DROP_HEARTBEATS));
+        Frame first = Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "first"));
+        Frame second = Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "second"));
+
+        queue.offer(heartbeat);
+        queue.offer(first);
+        assertTrue(queue.offer(second));
+
+        // Verify that the heartbeat made room and the order is kept
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Verifies that a presence update replaces the queued update for the same user.
+     */
+    @Test
+    void testCoalescePresence() {
+        OutboundQueue queue = new OutboundQueue(1, EnumSet.of(OverflowPolicy.COALESCE_PRESENCE));
+        User user = new User("testUser");
+        Frame online = Frame.of(new UserUpdateMessage(user, UserStatus.ONLINE));
+        Frame offline = Frame.of(new UserUpdateMessage(user, UserStatus.OFFLINE));
+
+        queue.offer(online);
+        assertTrue(queue.offer(offline));
+
+        // Verify that only the newest status is queued
+        assertEquals(1, queue.getCoalescedFrames());
+        assertSame(offline, queue.poll());
+    }
+
+    /**
+     * Verifies that a coalesced presence update is delivered after the frames queued before it,
+     * not in the place of the update it replaced.
+     */
+    @Test
+    void testCoalescePresenceKeepsOrder() {
+        OutboundQueue queue = new OutboundQueue(3, EnumSet.of(OverflowPolicy.COALESCE_PRESENCE));
+        User user = new User("testUser");
+        Frame online = Frame.of(new UserUpdateMessage(user, UserStatus.ONLINE));
+        Frame text = Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "text"));
+        Frame more = Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "more"));
+        Frame offline = Frame.of(new UserUpdateMessage(user, UserStatus.OFFLINE));
+
+        queue.offer(online);
+        queue.offer(text);
+        queue.offer(more);
+        assertTrue(queue.offer(offline));
+
+        // Verify that the newest status comes last
+        assertEquals(1, queue.getCoalescedFrames());
+        assertSame(text, queue.poll());
+        assertSame(more, queue.poll());
+        assertSame(offline, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    /**
+     * Verifies that a full queue asks for the slow consumer to be disconnected.
+     */
+    @Test
+    void testDisconnectSlowConsumer() {
+        OutboundQueue queue = new OutboundQueue(1, EnumSet.allOf(OverflowPolicy.class));
+        queue.offer(Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "first")));
+
+        // Verify that a frame no policy can absorb is refused
+        assertFalse(queue.offer(Frame.of(new SystemMessage(SystemMessageType.ID_TRANSITION, "second"))));
+    }
+
+    /**
+     * Verifies that draining returns the queued frames oldest first.
+     */
+    @Test
+    void testDrainTo() throws InterruptedException {
+        OutboundQueue queue = new OutboundQueue(4, EnumSet.noneOf(OverflowPolicy.class));
+        queue.offer(heartbeat);
+        Frame update = Frame.of(new UserUpdateMessage(new User("testUser"), UserStatus.ONLINE));
+        queue.offer(update);
+
+        List<Frame> batch = new ArrayList<>();
+        assertEquals(2, queue.drainTo(batch, 10, 0, TimeUnit.MILLISECONDS));
+
+        // Verify the order and that the queue is now empty
+        assertEquals(List.of(heartbeat, update), batch);
+        assertEquals(0, queue.depth());
+    }
+}
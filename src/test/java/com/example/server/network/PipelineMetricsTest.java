@@ -0,0 +1,122 @@
+package com.example.server.network;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.codec.WireFormat;
+import com.example.common.messages.CommunicationType;
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import com.example.common.utils.LatencyHistogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for PipelineMetrics to validate how latencies are recorded, broken down and dumped.
+ */
+class PipelineMetricsTest {
+
+    /**
+     * Verifies that text messages and every type of system message are counted as kinds of their own.
+     */
+    @Test
+    void testKinds() {
+        GroupChat chat = new GroupChat("Team");
+        int text = PipelineMetrics.kindOf(new TextMessage(chat, new User("alice"), "hello"));
+        int heartbeat = PipelineMetrics.kindOf(new SystemMessage(SystemMessageType.HEARTBEAT, null));
+
+        assertEquals(PipelineMetrics.kindOf(CommunicationType.TEXT), text);
+        assertEquals(PipelineMetrics.kindOf(SystemMessageType.HEARTBEAT), heartbeat);
+        assertNotEquals(heartbeat, PipelineMetrics.kindOf(SystemMessageType.HISTORY_PAGE));
+        assertEquals("TEXT", PipelineMetrics.kindName(text));
+        assertEquals("SYSTEM/HEARTBEAT", PipelineMetrics.kindName(heartbeat));
+        assertEquals("OTHER", PipelineMetrics.kindName(PipelineMetrics.OTHER));
+        assertEquals(PipelineMetrics.KIND_COUNT - 1, PipelineMetrics.kindOf(SystemMessageType.values()[SystemMessageType.values().length - 1]));
+    }
+
+    /**
+     * Verifies that latencies are kept apart by stage and kind, and that a snapshot taken later
+     * minus an earlier one holds only what was recorded in between.
+     */
+    @Test
+    void testRecordAndSnapshot() {
+        PipelineMetrics metrics = new PipelineMetrics(true);
+        int text = PipelineMetrics.kindOf(CommunicationType.TEXT);
+        metrics.record(PipelineStage.DECODE, text, 0, 2_000);
+        PipelineMetrics.Snapshot earlier = metrics.snapshot();
+        metrics.record(PipelineStage.DECODE, text, 0, 5_000);
+        metrics.record(PipelineStage.WRITE, PipelineMetrics.OTHER, 0, 40_000);
+
+        PipelineMetrics.Snapshot current = metrics.snapshot();
+        assertEquals(2, current.get(PipelineStage.DECODE, text).getCount());
+        assertNull(current.get(PipelineStage.DISPATCH, text));
+
+        PipelineMetrics.Snapshot interval = current.since(earlier);
+        LatencyHistogram.Snapshot decode = interval.get(PipelineStage.DECODE, text);
+        assertEquals(1, decode.getCount());
+        assertEquals(5_000, decode.getMax());
+        assertEquals(1, interval.get(PipelineStage.WRITE, PipelineMetrics.OTHER).getCount());
+    }
+
+    /**
+     * Verifies that a stage recorded from start() takes the time elapsed since, and returns the
+     * time it ended for the next stage.
+     */
+    @Test
+    void testRecordElapsed() throws InterruptedException {
+        PipelineMetrics metrics = new PipelineMetrics(true);
+        long start = metrics.start();
+        Thread.sleep(2);
+        long end = metrics.record(PipelineStage.DISPATCH, PipelineMetrics.OTHER, start);
+
+        assertTrue(end - start >= 2_000_000);
+        assertTrue(metrics.snapshot().get(PipelineStage.DISPATCH, PipelineMetrics.OTHER).getMax() >= 2_000_000);
+    }
+
+    /**
+     * Verifies that nothing is recorded when the metrics are disabled.
+     */
+    @Test
+    void testDisabled() {
+        PipelineMetrics metrics = new PipelineMetrics(false);
+        metrics.record(PipelineStage.DECODE, PipelineMetrics.OTHER, metrics.start());
+        metrics.record(PipelineStage.WRITE, PipelineMetrics.OTHER, 0, 1_000);
+
+        assertNull(metrics.snapshot().get(PipelineStage.DECODE, PipelineMetrics.OTHER));
+        assertNull(metrics.snapshot().get(PipelineStage.WRITE, PipelineMetrics.OTHER));
+    }
+
+    /**
+     * Verifies that a frame's first encoding in a format is recorded under the frame's kind, and
+     * later uses of the same format are not.
+     */
+    @Test
+    void testFrameEncoding() {
+        PipelineMetrics metrics = new PipelineMetrics(true);
+        Frame frame = Frame.of(new SystemMessage(SystemMessageType.HEARTBEAT, null));
+        frame.encode(WireFormat.BINARY, metrics);
+        frame.encode(WireFormat.BINARY, metrics);
+
+        LatencyHistogram.Snapshot encode = metrics.snapshot().get(PipelineStage.ENCODE, PipelineMetrics.kindOf(SystemMessageType.HEARTBEAT));
+        assertEquals(1, encode.getCount());
+    }
+
+    /**
+     * Verifies that the dumped lines name the stage and kind, in pipeline order, and skip what is empty.
+     */
+    @Test
+    void testFormat() {
+        PipelineMetrics metrics = new PipelineMetrics(true);
+        metrics.record(PipelineStage.WRITE, PipelineMetrics.OTHER, 0, 40_000);
+        metrics.record(PipelineStage.DECODE, PipelineMetrics.kindOf(CommunicationType.TEXT), 0, 1_500);
+
+        List<String> lines = metrics.snapshot().format("now");
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("metrics now decode TEXT count=1 mean=1.5us p50=1.5us"), lines.get(0));
+        assertTrue(lines.get(0).contains(" p99.9=1.5us max=1.5us"), lines.get(0));
+        assertTrue(lines.get(1).startsWith("metrics now write OTHER count=1"), lines.get(1));
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.server.network;
+
+import com.example.common.messages.SystemMessage;
+import com.example.common.messages.SystemMessageType;
+import com.example.common.users.User;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the flight recorder events the server emits.
+ */
+class ServerEventsTest {
+
+    /**
+     * Records the events emitted while running an action, with every chat event enabled and no threshold.
+     *
+     * @param action The action to record
+     * @return The chat events recorded
+     */
+    private static List<RecordedEvent> record(Runnable action) throws Exception {
+        Path file = Files.createTempFile("chat-events", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String name : List.of("MessageReceived", "MessageDispatched", "FanOut", "SlowWrite", "HeartbeatExpired", "CoordinatorChanged")) {
+                recording.enable("com.example.chat." + name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            action.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("com.example.chat."))
+                    .toList();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Verifies that a fan-out reports its recipients and the bytes queued for them.
+     */
+    @Test
+    void testFanOutEvent() throws Exception {
+        Server server = new Server();
+        User alice = new User("alice");
+        User bob = new User("bob");
+        server.addClient(alice, new PrintWriter(new StringWriter()), null);
+        server.addClient(bob, new PrintWriter(new StringWriter()), null);
+        Frame frame = Frame.of(new SystemMessage(SystemMessageType.HEARTBEAT, null));
+
+        List<RecordedEvent> events = record(() -> server.broadcast(frame));
+
+        RecordedEvent fanOut = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.example.chat.FanOut"))
+                .findFirst().orElseThrow();
+        assertEquals("SYSTEM/HEARTBEAT", fanOut.getString("messageType"));
+        assertEquals(2, fanOut.getInt("recipients"));
+        assertEquals(2L * frame.length(), fanOut.getLong("bytes"));
+    }
+
+    /**
+     * Verifies that assigning and reassigning the coordinator is recorded with both users.
+     */
+    @Test
+    void testCoordinatorChangedEvent() throws Exception {
+        Server server = new Server();
+        User alice = new User("alice");
+        User bob = new User("bob");
+
+        List<RecordedEvent> events = record(() -> {
+            server.getCoordinatorManager().setCoordinator(alice);
+            server.getCoordinatorManager().setCoordinator(bob);
+        }).stream().filter(event -> event.getEventType().getName().equals("com.example.chat.CoordinatorChanged")).toList();
+
+        assertEquals(2, events.size());
+        assertNull(events.get(0).getString("previousId"));
+        assertEquals("alice", events.get(0).getString("coordinatorUsername"));
+        assertEquals(alice.getId(), events.get(1).getString("previousId"));
+        assertEquals("bob", events.get(1).getString("coordinatorUsername"));
+    }
+}
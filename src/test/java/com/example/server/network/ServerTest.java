@@ -1,10 +1,17 @@
 package com.example.server.network;
 
 // Import required classes for server testing
+import com.example.common.chats.GroupChat;
+import com.example.common.codec.MessageCodec;
+import com.example.common.codec.WireFormat;
 import com.example.common.messages.Communication;
+import com.example.common.messages.HistoryPage;
 import com.example.common.messages.SystemMessage;
 import com.example.common.messages.SystemMessageType;
+import com.example.common.messages.TextMessage;
 import com.example.common.users.User;
+import com.example.common.utils.MessageSerializer;
+import com.example.server.storage.FramePage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -12,6 +19,8 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -90,8 +99,12 @@ class ServerTest {
         System.out.println("Client added: " + user.getUsername());
 
         // Verify client addition
-        assertTrue(server.getClientWriters().containsKey(user));
-        assertEquals(writer, server.getClient(user));
+        assertTrue(server.getSessions().contains(user.getId()));
+        assertNotNull(server.getClient(user));
+
+        // Verify that frames sent to the client's sink reach its writer
+        server.getClient(user).send(Frame.of(new SystemMessage(SystemMessageType.HEARTBEAT, "")));
+        assertTrue(stringWriter.toString().contains("HEARTBEAT"));
     }
 
     /**
@@ -107,7 +120,24 @@ class ServerTest {
         System.out.println("Client removed: " + user.getUsername());
 
         // Verify client removal
-        assertFalse(server.getClientWriters().containsKey(user));
+        assertFalse(server.getSessions().contains(user.getId()));
+    }
+
+    /**
+     * Verifies that removing a session the user has replaced by logging in again leaves the new session alone.
+     */
+    @Test
+    void testRemoveReplacedSession() {
+        server.addClient(user, writer, handler);
+        ClientSession expired = server.getSessions().get(user.getId());
+        server.addClient(user, writer, handler);
+        ClientSession current = server.getSessions().get(user.getId());
+
+        // Verify that only the current session can be removed
+        assertFalse(server.removeClient(expired));
+        assertSame(current, server.getSessions().get(user.getId()));
+        assertTrue(server.removeClient(current));
+        assertFalse(server.getSessions().contains(user.getId()));
     }
 
     /**
@@ -209,6 +239,33 @@ class ServerTest {
         System.out.println("Sent message: " + stringWriter.toString());
     }
 
+    /**
+     * Verifies that a page of stored frames reaches a client using JSON as a decoded history page.
+     */
+    @Test
+    void testSendHistory() {
+        // Add client to server
+        server.addClient(user, writer, handler);
+
+        // Encode two messages the way the message log stores them
+        GroupChat chat = new GroupChat("Team");
+        MessageCodec codec = MessageSerializer.getCodec(WireFormat.BINARY);
+        List<ByteBuffer> frames = List.of(
+                ByteBuffer.wrap(codec.encode(new TextMessage(chat, user, "first"))),
+                ByteBuffer.wrap(codec.encode(new TextMessage(chat, user, "second"))));
+
+        // Send the page of frames
+        server.sendHistory(user, new FramePage(chat.getId(), frames, 7));
+
+        // Verify that the page was decoded for the client, after the messages sent on login
+        String[] lines = stringWriter.toString().split("\n");
+        SystemMessage sent = (SystemMessage) MessageSerializer.deserialize(lines[lines.length - 1]);
+        HistoryPage page = sent.getPayload(HistoryPage.class);
+        assertEquals(SystemMessageType.HISTORY_PAGE, sent.getSystemType());
+        assertEquals(7, page.nextCursor());
+        assertEquals("second", page.messages().get(1).getContent());
+    }
+
     /**
      * Verifies that the server shutdown procedure is initiated correctly.
      */
@@ -231,7 +288,7 @@ class ServerTest {
         }
 
         // Verify that client data still exists (shutdown process is graceful)
-        assertTrue(server.getClientWriters().containsKey(user));
+        assertTrue(server.getSessions().contains(user.getId()));
 
         // Log server termination
         System.out.println("Server terminated.");
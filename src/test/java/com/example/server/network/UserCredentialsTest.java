@@ -0,0 +1,68 @@
+package com.example.server.network;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for UserCredentials to validate that a user id is only accepted with the secret it was claimed with.
+ */
+class UserCredentialsTest {
+
+    // Directory of the journal of credentials that survive a restart
+    @TempDir
+    Path directory;
+
+    /**
+     * Verifies that the first secret claims an id, which then takes that secret and no other,
+     * while ids nobody claimed can still be used without one.
+     */
+    @Test
+    void testClaim() throws IOException {
+        UserCredentials credentials = new UserCredentials();
+        assertTrue(credentials.verify("alice", null));
+        assertFalse(credentials.isClaimed("alice"));
+
+        assertTrue(credentials.verify("alice", "secret"));
+        assertTrue(credentials.isClaimed("alice"));
+        assertTrue(credentials.verify("alice", "secret"));
+        assertFalse(credentials.verify("alice", "guessed"));
+        assertFalse(credentials.verify("alice", null));
+        assertTrue(credentials.verify("bob", null));
+    }
+
+    /**
+     * Verifies that claims are kept when the journal is opened again.
+     */
+    @Test
+    void testReopen() throws IOException {
+        try (UserCredentials persistent = new UserCredentials(directory)) {
+            assertTrue(persistent.verify("alice", "secret"));
+            assertTrue(persistent.verify("bob", "other"));
+        }
+
+        try (UserCredentials persistent = new UserCredentials(directory)) {
+            assertTrue(persistent.verify("alice", "secret"));
+            assertFalse(persistent.verify("bob", "secret"));
+            assertFalse(persistent.verify("bob", null));
+            assertFalse(persistent.isClaimed("carol"));
+        }
+    }
+
+    /**
+     * Verifies that an id a journal record cannot hold is rejected without being claimed.
+     */
+    @Test
+    void testTooLongId() throws IOException {
+        try (UserCredentials persistent = new UserCredentials(directory)) {
+            String userId = "x".repeat(0x10000);
+
+            assertThrows(IllegalArgumentException.class, () -> persistent.verify(userId, "secret"));
+            assertFalse(persistent.isClaimed(userId));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.server.storage;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.HistoryPage;
+import com.example.common.messages.HistoryRequest;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for HistoryStore to validate paging through a chat's history from memory and from the log.
+ */
+class HistoryStoreTest {
+
+    // Directory of the log under test
+    @TempDir
+    Path directory;
+
+    private final GroupChat team = new GroupChat("Team"); // Chat the history is read of
+    private final User alice = new User("alice"); // Sender of the messages
+    private MessageLog log; // Log behind the store
+
+    /**
+     * Closes the log after each test case.
+     *
+     * @throws IOException if closing fails
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Gets the contents of a page's messages.
+     *
+     * @param page The page
+     * @return The contents, oldest first
+     */
+    private static List<String> contents(HistoryPage page) {
+        return page.messages().stream().map(TextMessage::getContent).toList();
+    }
+
+    /**
+     * Verifies that paging back from the latest message walks the whole history once,
+     * answering from the cached tail while it reaches and from the log beyond it.
+     */
+    @Test
+    void testPagingBack() throws IOException {
+        log = new MessageLog(directory, 4096, 1000, 1000);
+        HistoryStore store = new HistoryStore(log, 20, 4);
+        for (int i = 0; i < 55; i++) {
+            store.append(new TextMessage(team, alice, "message " + i));
+        }
+
+        HistoryPage page = store.page(team.getId(), HistoryRequest.LATEST, 10);
+        assertEquals("message 45", contents(page).get(0));
+        assertEquals("message 54", contents(page).get(9));
+        assertTrue(page.hasMore());
+
+        page = store.page(team.getId(), page.nextCursor(), 10);
+        assertEquals("message 35", contents(page).get(0));
+        assertEquals(1, store.getHitCount());
+
+        page = store.page(team.getId(), page.nextCursor(), 30);
+        assertEquals(30, page.messages().size());
+        assertEquals("message 5", contents(page).get(0));
+        assertTrue(page.hasMore());
+
+        page = store.page(team.getId(), page.nextCursor(), 30);
+        assertEquals(List.of("message 0", "message 1", "message 2", "message 3", "message 4"), contents(page));
+        assertFalse(page.hasMore());
+    }
+
+    /**
+     * Verifies that messages appended after a chat's tail was loaded show up in the next page,
+     * and that a short history is answered entirely from memory.
+     */
+    @Test
+    void testAppendsAfterLoad() throws IOException {
+        log = MessageLog.withDefaults(directory);
+        HistoryStore store = HistoryStore.withDefaults(log);
+        store.append(new TextMessage(team, alice, "before"));
+
+        HistoryPage page = store.page(team.getId(), HistoryRequest.LATEST, 50);
+        assertEquals(List.of("before"), contents(page));
+        assertFalse(page.hasMore());
+
+        store.append(new TextMessage(team, alice, "after"));
+        page = store.page(team.getId(), HistoryRequest.LATEST, 50);
+        assertEquals(List.of("before", "after"), contents(page));
+        assertFalse(page.hasMore());
+        assertEquals(1, store.getHitCount());
+        assertEquals(1, store.getCachedChatCount());
+
+        assertTrue(store.page("unknown", HistoryRequest.LATEST, 50).messages().isEmpty());
+    }
+
+    /**
+     * Verifies that pages of stored frames hold the same messages and cursors as pages of messages,
+     * from the cached tail as well as from the log.
+     */
+    @Test
+    void testFramePage() throws IOException {
+        log = new MessageLog(directory, 4096, 1000, 1000);
+        HistoryStore store = new HistoryStore(log, 20, 4);
+        for (int i = 0; i < 50; i++) {
+            store.append(new TextMessage(team, alice, "message " + i));
+        }
+
+        long cursor = HistoryRequest.LATEST;
+        do {
+            HistoryPage page = store.page(team.getId(), cursor, 15);
+            FramePage frames = store.framePage(team.getId(), cursor, 15);
+            assertEquals(page.nextCursor(), frames.nextCursor());
+            List<String> decoded = frames.frames().stream()
+                    .map(frame -> new LogRecord(0, 0, team.getId(), frame).toMessage().getContent())
+                    .toList();
+            assertEquals(contents(page), decoded);
+            cursor = page.nextCursor();
+        } while (cursor != HistoryPage.NO_MORE);
+    }
+
+    /**
+     * Verifies that the tails of the least recently queried chats are evicted.
+     */
+    @Test
+    void testEviction() throws IOException {
+        log = MessageLog.withDefaults(directory);
+        HistoryStore store = new HistoryStore(log, 16, 2);
+        for (int i = 0; i < 3; i++) {
+            GroupChat chat = new GroupChat("Chat " + i);
+            store.append(new TextMessage(chat, alice, "hello " + i));
+            assertEquals(List.of("hello " + i), contents(store.page(chat.getId(), HistoryRequest.LATEST, 10)));
+        }
+        assertEquals(2, store.getCachedChatCount());
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.server.storage;
+
+import com.example.common.chats.GroupChat;
+import com.example.common.messages.TextMessage;
+import com.example.common.users.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for MessageLog to validate appends, reads, recovery and segment rolling.
+ */
+class MessageLogTest {
+
+    // Directory of the log under test
+    @TempDir
+    Path directory;
+
+    private final GroupChat team = new GroupChat("Team"); // Chat most messages are sent in
+    private final GroupChat other = new GroupChat("Other"); // Chat whose messages must be skipped
+    private final User alice = new User("alice"); // Sender of the messages
+    private MessageLog log; // Log under test
+
+    /**
+     * Closes the log after each test case.
+     *
+     * @throws IOException if closing fails
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    /**
+     * Opens the log with a small segment size, so that tests can make it roll.
+     *
+     * @param segmentBytes Size at which a new segment is started
+     * @return The log
+     * @throws IOException if the log cannot be opened
+     */
+    private MessageLog open(long segmentBytes) throws IOException {
+        log = new MessageLog(directory, segmentBytes, 1000, 1000);
+        return log;
+    }
+
+    /**
+     * Reads the contents of a chat's messages from the beginning of the log.
+     *
+     * @param chat The chat
+     * @return The contents in log order
+     * @throws IOException if the log cannot be read
+     */
+    private List<String> contents(GroupChat chat) throws IOException {
+        return log.read(chat.getId(), 0, Integer.MAX_VALUE).stream().map(record -> record.toMessage().getContent()).toList();
+    }
+
+    /**
+     * Returns the segment files of the log, in position order.
+     *
+     * @return The segment files
+     * @throws IOException if the directory cannot be listed
+     */
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    /**
+     * Verifies that the messages of a chat are read back in order, without those of other chats.
+     */
+    @Test
+    void testAppendAndRead() throws IOException {
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        long first = log.append(new TextMessage(team, alice, "one"));
+        log.append(new TextMessage(other, alice, "elsewhere"));
+        long third = log.append(new TextMessage(team, alice, "two"));
+
+        assertTrue(third > first);
+        assertEquals(List.of("one", "two"), contents(team));
+        assertEquals(List.of("elsewhere"), contents(other));
+
+        List<LogRecord> records = log.read(team.getId(), 0, 1);
+        assertEquals(1, records.size());
+        assertEquals(first, records.get(0).position());
+        assertEquals(team.getId(), records.get(0).toMessage().getChatId());
+        assertEquals(alice.getId(), records.get(0).toMessage().getSenderId());
+        assertEquals(3, log.getAppendCount());
+    }
+
+    /**
+     * Verifies that a reopened log keeps its messages and appends after them.
+     */
+    @Test
+    void testReopen() throws IOException {
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        log.append(new TextMessage(team, alice, "before restart"));
+        long next = log.getNextPosition();
+        log.close();
+
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        assertEquals(next, log.getNextPosition());
+        assertEquals(next, log.append(new TextMessage(team, alice, "after restart")));
+        assertEquals(List.of("before restart", "after restart"), contents(team));
+    }
+
+    /**
+     * Verifies that a record only partly written before a crash is cut off when the log is reopened.
+     */
+    @Test
+    void testTornTail() throws IOException {
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        log.append(new TextMessage(team, alice, "complete"));
+        long next = log.getNextPosition();
+        log.close();
+        Files.write(segmentFiles().get(0), new byte[]{0, 0, 0, 90, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        assertEquals(next, Files.size(segmentFiles().get(0)));
+        log.append(new TextMessage(team, alice, "after crash"));
+        assertEquals(List.of("complete", "after crash"), contents(team));
+    }
+
+    /**
+     * Verifies that a record whose bytes changed on disk fails its CRC and ends the log there.
+     */
+    @Test
+    void testCorruptRecord() throws IOException {
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        log.append(new TextMessage(team, alice, "intact"));
+        long damaged = log.append(new TextMessage(team, alice, "damaged"));
+        log.append(new TextMessage(team, alice, "lost"));
+        log.close();
+        try (FileChannel channel = FileChannel.open(segmentFiles().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), damaged + 30);
+        }
+
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        assertEquals(List.of("intact"), contents(team));
+        assertEquals(damaged, log.getNextPosition());
+    }
+
+    /**
+     * Verifies that full segments are rolled and that reads continue across them.
+     */
+    @Test
+    void testSegmentRoll() throws IOException {
+        open(1024);
+        for (int i = 0; i < 100; i++) {
+            log.append(new TextMessage(i % 3 == 0 ? other : team, alice, "message " + i));
+        }
+
+        assertTrue(log.getSegmentCount() > 5, "segments=" + log.getSegmentCount());
+        assertEquals(log.getSegmentCount(), segmentFiles().size());
+        List<String> contents = contents(team);
+        assertEquals(66, contents.size());
+        assertEquals("message 1", contents.get(0));
+        assertEquals("message 98", contents.get(65));
+
+        log.close();
+        open(1024);
+        assertEquals(66, contents(team).size());
+    }
+
+    /**
+     * Verifies that seeking by time skips the messages appended before it.
+     */
+    @Test
+    void testReadFromTime() throws IOException, InterruptedException {
+        open(4096);
+        for (int i = 0; i < 200; i++) {
+            log.append(new TextMessage(team, alice, "early " + i));
+        }
+        Thread.sleep(5);
+        long from = System.currentTimeMillis();
+        for (int i = 0; i < 50; i++) {
+            log.append(new TextMessage(other, alice, "noise " + i));
+            log.append(new TextMessage(team, alice, "late " + i));
+        }
+
+        List<LogRecord> records = log.read(team.getId(), from, 1000);
+        assertEquals(50, records.size());
+        assertEquals("late 0", records.get(0).toMessage().getContent());
+        assertTrue(records.stream().allMatch(record -> record.appendedAt() >= from));
+    }
+
+    /**
+     * Verifies that paging back from the end returns the last messages before each cursor,
+     * across segments and without those of other chats.
+     */
+    @Test
+    void testReadBefore() throws IOException {
+        open(2048);
+        for (int i = 0; i < 150; i++) {
+            log.append(new TextMessage(other, alice, "noise " + i));
+            log.append(new TextMessage(team, alice, "message " + i));
+        }
+        assertTrue(log.getSegmentCount() > 3, "segments=" + log.getSegmentCount());
+
+        List<LogRecord> latest = log.readBefore(team.getId(), Long.MAX_VALUE, 40);
+        assertEquals(40, latest.size());
+        assertEquals("message 110", latest.get(0).toMessage().getContent());
+        assertEquals("message 149", latest.get(39).toMessage().getContent());
+
+        List<LogRecord> older = log.readBefore(team.getId(), latest.get(0).position(), 100);
+        assertEquals(100, older.size());
+        assertEquals("message 10", older.get(0).toMessage().getContent());
+        assertEquals("message 109", older.get(99).toMessage().getContent());
+
+        List<LogRecord> oldest = log.readBefore(team.getId(), older.get(0).position(), 100);
+        assertEquals(10, oldest.size());
+        assertEquals("message 0", oldest.get(0).toMessage().getContent());
+        assertTrue(log.readBefore(team.getId(), oldest.get(0).position(), 100).isEmpty());
+        assertTrue(log.readBefore("unknown", Long.MAX_VALUE, 10).isEmpty());
+    }
+
+    /**
+     * Verifies that completed segments are read through their mapping, handing out views of the file
+     * that stay valid after the log is closed, while the segment being appended to is copied.
+     */
+    @Test
+    void testMappedSegments() throws IOException {
+        open(2048);
+        for (int i = 0; i < 60; i++) {
+            log.append(new TextMessage(team, alice, "message " + i));
+        }
+        assertTrue(log.getSegmentCount() > 1, "segments=" + log.getSegmentCount());
+
+        List<LogRecord> records = log.read(team.getId(), 0, 60);
+        assertEquals(60, records.size());
+        LogRecord oldest = records.get(0);
+        LogRecord newest = records.get(59);
+        assertTrue(oldest.frame().isDirect());
+        assertTrue(oldest.frame().isReadOnly());
+        assertFalse(newest.frame().isDirect());
+        log.close();
+        log = null;
+        assertEquals("message 0", oldest.toMessage().getContent());
+        assertEquals("message 59", newest.toMessage().getContent());
+
+        // Segments completed before the log was opened are mapped too
+        open(2048);
+        assertTrue(log.readAt(new long[]{oldest.position()}).get(0).frame().isDirect());
+    }
+
+    /**
+     * Verifies that a cursor a few bytes past a record of a mapped segment, such as one a client
+     * made up, reads the records before it instead of failing.
+     */
+    @Test
+    void testReadBeforeInsideHeader() throws IOException {
+        open(2048);
+        for (int i = 0; i < 60; i++) {
+            log.append(new TextMessage(team, alice, "message " + i));
+        }
+        List<LogRecord> records = log.read(team.getId(), 0, 3);
+        assertTrue(records.get(2).frame().isDirect(), "the third record is in a completed segment");
+
+        List<LogRecord> before = log.readBefore(team.getId(), records.get(2).position() + 3, 100);
+
+        assertEquals(List.of(records.get(0).position(), records.get(1).position()),
+                before.stream().map(LogRecord::position).toList());
+    }
+
+    /**
+     * Verifies that records are read back by position across segments, including unsynced ones.
+     */
+    @Test
+    void testReadAt() throws IOException {
+        open(2048);
+        long[] positions = new long[3];
+        for (int i = 0; i < 90; i++) {
+            long position = log.append(new TextMessage(team, alice, "message " + i));
+            if (i % 40 == 0) {
+                positions[i / 40] = position;
+            }
+        }
+        assertTrue(log.getSegmentCount() > 1, "segments=" + log.getSegmentCount());
+
+        List<LogRecord> records = log.readAt(positions);
+        assertEquals(List.of("message 0", "message 40", "message 80"),
+                records.stream().map(record -> record.toMessage().getContent()).toList());
+        assertEquals(positions[1], records.get(1).position());
+    }
+
+    /**
+     * Verifies that a sync writes pending records and that an idle log is not synced.
+     */
+    @Test
+    void testSync() throws IOException {
+        open(MessageLog.DEFAULT_SEGMENT_BYTES);
+        log.append(new TextMessage(team, alice, "durable"));
+        log.sync();
+        long syncs = log.getSyncCount();
+        assertTrue(syncs >= 1);
+        assertEquals(log.getNextPosition(), Files.size(segmentFiles().get(0)));
+
+        log.sync();
+        assertEquals(syncs, log.getSyncCount());
+    }
+}
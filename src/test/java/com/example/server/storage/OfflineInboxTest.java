@@ -0,0 +1,143 @@
+package com.example.server.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for OfflineInbox to validate queuing, delivery, bounds and recovery of users' inboxes.
+ */
+class OfflineInboxTest {
+
+    // Directory of the inbox under test
+    @TempDir
+    Path directory;
+
+    private OfflineInbox inbox; // Inbox under test
+
+    /**
+     * Closes the inbox after each test case.
+     *
+     * @throws IOException if closing fails
+     */
+    @AfterEach
+    void tearDown() throws IOException {
+        if (inbox != null) {
+            inbox.close();
+        }
+    }
+
+    /**
+     * Verifies that queued positions are peeked in order and removed only once acknowledged,
+     * keeping those queued after the peek.
+     */
+    @Test
+    void testEnqueuePeekAcknowledge() throws IOException {
+        inbox = new OfflineInbox(directory, 100, 1000);
+        inbox.enqueue(List.of("alice", "bob"), 10);
+        inbox.enqueue(List.of("alice"), 20);
+
+        OfflineInbox.Batch batch = inbox.peek("alice", 10);
+        assertArrayEquals(new long[]{10, 20}, batch.positions());
+        inbox.enqueue(List.of("alice"), 30);
+        inbox.acknowledge("alice", batch.endSequence());
+
+        assertArrayEquals(new long[]{30}, inbox.peek("alice", 10).positions());
+        assertEquals(1, inbox.size("bob"));
+        assertEquals(2, inbox.getPendingCount());
+        assertNull(inbox.peek("carol", 10));
+    }
+
+    /**
+     * Verifies that a full inbox drops its oldest messages.
+     */
+    @Test
+    void testCapacity() throws IOException {
+        inbox = new OfflineInbox(directory, 3, 1000);
+        for (int i = 1; i <= 5; i++) {
+            inbox.enqueue(List.of("alice"), i);
+        }
+        assertArrayEquals(new long[]{3, 4, 5}, inbox.peek("alice", 10).positions());
+        assertEquals(2, inbox.getDroppedCount());
+        assertEquals(3, inbox.getLargestInboxSize());
+    }
+
+    /**
+     * Verifies that inboxes are rebuilt from the journal when it is opened again.
+     */
+    @Test
+    void testReopen() throws IOException {
+        inbox = new OfflineInbox(directory, 100, 1000);
+        inbox.enqueue(List.of("alice", "bob"), 10);
+        inbox.enqueue(List.of("alice"), 20);
+        inbox.acknowledge("alice", inbox.peek("alice", 1).endSequence());
+        inbox.close();
+
+        inbox = new OfflineInbox(directory, 100, 1000);
+        assertArrayEquals(new long[]{20}, inbox.peek("alice", 10).positions());
+        assertArrayEquals(new long[]{10}, inbox.peek("bob", 10).positions());
+        assertEquals(2, inbox.getUserCount());
+    }
+
+    /**
+     * Verifies that a record torn by a crash is cut off and the records before it are kept.
+     */
+    @Test
+    void testTornTail() throws IOException {
+        inbox = new OfflineInbox(directory, 100, 1000);
+        inbox.enqueue(List.of("alice"), 10);
+        inbox.enqueue(List.of("alice"), 20);
+        inbox.close();
+        long size;
+        try (FileChannel channel = FileChannel.open(directory.resolve("inbox.journal"), StandardOpenOption.WRITE)) {
+            size = channel.size();
+            channel.truncate(size - 3);
+        }
+
+        inbox = new OfflineInbox(directory, 100, 1000);
+        assertArrayEquals(new long[]{10}, inbox.peek("alice", 10).positions());
+        assertTrue(inbox.getJournalSize() < size - 3);
+        inbox.enqueue(List.of("alice"), 30);
+        inbox.close();
+
+        inbox = new OfflineInbox(directory, 100, 1000);
+        assertArrayEquals(new long[]{10, 30}, inbox.peek("alice", 10).positions());
+    }
+
+    /**
+     * Verifies that a user id a journal record cannot hold is rejected without queuing for any user.
+     */
+    @Test
+    void testEnqueueTooLongId() throws IOException {
+        inbox = new OfflineInbox(directory, 100, 1000);
+
+        assertThrows(IllegalArgumentException.class, () -> inbox.enqueue(List.of("alice", "x".repeat(0x10000)), 10));
+        assertNull(inbox.peek("alice", 10));
+        assertEquals(0, inbox.getPendingCount());
+    }
+
+    /**
+     * Verifies that discarding an inbox empties it for good, leaving other inboxes alone.
+     */
+    @Test
+    void testDiscard() throws IOException {
+        inbox = new OfflineInbox(directory, 100, 1000);
+        inbox.enqueue(List.of("alice", "bob"), 10);
+        inbox.discard("alice");
+        inbox.discard("carol");
+        inbox.close();
+
+        inbox = new OfflineInbox(directory, 100, 1000);
+        assertNull(inbox.peek("alice", 10));
+        assertEquals(1, inbox.size("bob"));
+        assertEquals(1, inbox.getPendingCount());
+    }
+}